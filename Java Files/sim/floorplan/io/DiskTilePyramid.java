@@ -0,0 +1,384 @@
+package sim.floorplan.io;
+
+import javax.imageio.ImageIO;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * ✅ Floorplan render kept on disk as a mipmapped tile pyramid (PNG tiles of {@link #TILE} px).
+ * Level 0 is full resolution; each level above halves both sides (2x2 box filter) until one tile covers it.
+ *
+ * Built band by band while a page streams in ({@link Writer}), so the full-resolution composite never
+ * has to exist in memory. Readers pull single tiles (small LRU), replay level 0 as bands for the mask
+ * pipeline, or wrap the pyramid as a read-only {@link BufferedImage} ({@link #asImage}).
+ */
+public final class DiskTilePyramid {
+
+    public static final int TILE = 256;
+
+    /** BufferedImage property holding the pyramid behind an {@link #asImage} image. */
+    public static final String IMAGE_PROPERTY = "sim.floorplan.tilePyramid";
+
+    private static final String META = "pyramid.properties";
+    private static final int CACHED_TILES = 96;
+
+    private final File dir;
+    private final int width;
+    private final int height;
+    private final int levels;
+
+    private final Map<Long, BufferedImage> tileCache = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > CACHED_TILES;
+        }
+    };
+
+    private BufferedImage image; // lazily created asImage() view
+
+    // ✅ createTemp() directories not deleted yet (a shutdown hook removes what's left)
+    private static final Set<File> TEMP_DIRS = new LinkedHashSet<>();
+    private static boolean cleanupHooked;
+
+    private DiskTilePyramid(File dir, int width, int height) {
+        this.dir = dir;
+        this.width = width;
+        this.height = height;
+        this.levels = levelCountFor(width, height);
+    }
+
+    /** Starts a pyramid for a width x height page in dir (created if needed). */
+    public static Writer create(File dir, int width, int height) throws IOException {
+        if (dir == null) throw new IllegalArgumentException("dir is null");
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir.getAbsolutePath());
+        return new Writer(new DiskTilePyramid(dir, width, height));
+    }
+
+    /**
+     * Starts a pyramid in a new temp directory. The directory is deleted at exit unless
+     * {@link #delete()} got to it first (crashes aside, temp tiles don't pile up between runs).
+     */
+    public static Writer createTemp(int width, int height) throws IOException {
+        File dir = Files.createTempDirectory("floorplan-tiles-").toFile();
+        synchronized (TEMP_DIRS) {
+            if (!cleanupHooked) {
+                Runtime.getRuntime().addShutdownHook(new Thread(DiskTilePyramid::deleteTempDirs, "floorplan-tiles-cleanup"));
+                cleanupHooked = true;
+            }
+            TEMP_DIRS.add(dir);
+        }
+        try {
+            return create(dir, width, height);
+        } catch (IOException | RuntimeException ex) {
+            deleteTree(dir);
+            throw ex;
+        }
+    }
+
+    /** Opens a finished pyramid. */
+    public static DiskTilePyramid open(File dir) throws IOException {
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(new File(dir, META))) {
+            props.load(in);
+        }
+        int w = Integer.parseInt(props.getProperty("width", "0").trim());
+        int h = Integer.parseInt(props.getProperty("height", "0").trim());
+        int tile = Integer.parseInt(props.getProperty("tile", "0").trim());
+        if (w <= 0 || h <= 0 || tile != TILE) throw new IOException("Not a tile pyramid: " + dir.getAbsolutePath());
+        return new DiskTilePyramid(dir, w, h);
+    }
+
+    public File getDirectory() { return dir; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getLevelCount() { return levels; }
+
+    public int levelWidth(int level) { return Math.max(1, ceilShift(width, level)); }
+    public int levelHeight(int level) { return Math.max(1, ceilShift(height, level)); }
+    public int tilesX(int level) { return (levelWidth(level) + TILE - 1) / TILE; }
+    public int tilesY(int level) { return (levelHeight(level) + TILE - 1) / TILE; }
+
+    /** Coarsest level whose pixels are still at least as fine as the screen at this zoom (screen px per image px). */
+    public int levelForZoom(double zoom) {
+        int level = 0;
+        while (level + 1 < levels && zoom * (1 << (level + 1)) <= 1.0) level++;
+        return level;
+    }
+
+    /** Tile (tx,ty) of a level; edge tiles are cropped to the level size. */
+    public synchronized BufferedImage readTile(int level, int tx, int ty) throws IOException {
+        long key = ((long) level << 48) | ((long) ty << 24) | tx;
+        BufferedImage t = tileCache.get(key);
+        if (t != null) return t;
+
+        File f = tileFile(level, tx, ty);
+        t = ImageIO.read(f);
+        if (t == null) throw new IOException("Unreadable tile " + f.getAbsolutePath());
+        tileCache.put(key, t);
+        return t;
+    }
+
+    /** Feeds level 0 to the sink as full-width bands of {@link #TILE} rows, top to bottom. */
+    public void replay(PdfFloorplanImporter.BandSink sink) throws IOException {
+        BufferedImage band = new BufferedImage(width, Math.min(TILE, height), BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[TILE];
+
+        for (int ty = 0; ty < tilesY(0); ty++) {
+            int y0 = ty * TILE;
+            int rows = Math.min(TILE, height - y0);
+            for (int tx = 0; tx < tilesX(0); tx++) {
+                BufferedImage t = readTile(0, tx, ty);
+                int cols = Math.min(TILE, width - tx * TILE);
+                for (int y = 0; y < rows; y++) {
+                    t.getRGB(0, y, cols, 1, row, 0, cols);
+                    band.setRGB(tx * TILE, y, cols, 1, row, 0, cols);
+                }
+            }
+            sink.band(rows == band.getHeight() ? band : band.getSubimage(0, 0, width, rows), y0);
+        }
+    }
+
+    /**
+     * Read-only full-resolution view backed by level-0 tiles (pixels are fetched on demand through the tile LRU).
+     * Fine for sampling and for small regions; anything that wants to paint the whole page should draw
+     * tiles of the right level instead (the pyramid is in the image's {@link #IMAGE_PROPERTY}).
+     */
+    public synchronized BufferedImage asImage() {
+        if (image != null) return image;
+        if ((long) width * height > Integer.MAX_VALUE) throw new IllegalStateException("Page too large for one image view.");
+
+        DirectColorModel cm = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+        SinglePixelPackedSampleModel sm = new SinglePixelPackedSampleModel(
+                DataBuffer.TYPE_INT, width, height, cm.getMasks());
+        WritableRaster raster = Raster.createWritableRaster(sm, new TileBackedBuffer(), null);
+
+        Hashtable<String, Object> props = new Hashtable<>();
+        props.put(IMAGE_PROPERTY, this);
+        image = new BufferedImage(cm, raster, false, props);
+        return image;
+    }
+
+    /** Deletes the tiles and the directory. Views of this pyramid can't read tiles afterwards. */
+    public synchronized void delete() {
+        tileCache.clear();
+        deleteTree(dir);
+    }
+
+    /** The pyramid behind img, or null for an ordinary image. */
+    public static DiskTilePyramid of(Image img) {
+        if (img == null) return null;
+        Object p = img.getProperty(IMAGE_PROPERTY, null);
+        return (p instanceof DiskTilePyramid) ? (DiskTilePyramid) p : null;
+    }
+
+    // ---------- internals ----------
+
+    private static void deleteTempDirs() {
+        synchronized (TEMP_DIRS) {
+            for (File d : new ArrayList<>(TEMP_DIRS)) deleteTree(d);
+        }
+    }
+
+    private static void deleteTree(File dir) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                if (c.isDirectory()) deleteTree(c);
+                else c.delete();
+            }
+        }
+        dir.delete();
+        synchronized (TEMP_DIRS) {
+            TEMP_DIRS.remove(dir);
+        }
+    }
+
+    private File tileFile(int level, int tx, int ty) {
+        return new File(new File(dir, "L" + level), ty + "_" + tx + ".png");
+    }
+
+    private static int ceilShift(int v, int level) {
+        return (int) (((long) v + (1L << level) - 1) >> level);
+    }
+
+    private static int levelCountFor(int w, int h) {
+        int levels = 1;
+        while (ceilShift(w, levels - 1) > TILE || ceilShift(h, levels - 1) > TILE) levels++;
+        return levels;
+    }
+
+    /** Level-0 pixels as a DataBuffer (one int per pixel, row-major); writes are rejected. */
+    private final class TileBackedBuffer extends DataBuffer {
+
+        TileBackedBuffer() {
+            super(DataBuffer.TYPE_INT, width * height);
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            int y = i / width;
+            int x = i - y * width;
+            try {
+                return readTile(0, x / TILE, y / TILE).getRGB(x % TILE, y % TILE) & 0xFFFFFF;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("tile pyramid images are read-only");
+        }
+    }
+
+    /**
+     * Streams a page into a new pyramid. Bands must arrive top to bottom, full width,
+     * {@link #TILE} rows each (the last one may be shorter). Implements the importer's band sink.
+     */
+    public static final class Writer implements PdfFloorplanImporter.BandSink {
+
+        private final DiskTilePyramid pyramid;
+        private final BufferedImage[] pending;  // per level: rows waiting for a full band
+        private final int[] pendingRows;
+        private final int[] nextY;              // per level: next row expected
+        private final int[] rowBuf;
+
+        Writer(DiskTilePyramid pyramid) {
+            this.pyramid = pyramid;
+            int n = pyramid.levels;
+            this.pending = new BufferedImage[n];
+            this.pendingRows = new int[n];
+            this.nextY = new int[n];
+            this.rowBuf = new int[pyramid.width];
+            for (int l = 0; l < n; l++) {
+                File d = new File(pyramid.dir, "L" + l);
+                if (!d.isDirectory()) d.mkdirs();
+                pending[l] = new BufferedImage(pyramid.levelWidth(l), Math.min(TILE, pyramid.levelHeight(l)),
+                        BufferedImage.TYPE_INT_RGB);
+            }
+        }
+
+        @Override
+        public void band(BufferedImage band, int y0) throws IOException {
+            if (band.getWidth() != pyramid.width || y0 != nextY[0]) {
+                throw new IllegalArgumentException("bands must be full width and in order (expected y=" + nextY[0] + ")");
+            }
+            push(0, band, band.getHeight());
+        }
+
+        /** Gives up on an unfinished pyramid and deletes what was written. */
+        public void abort() {
+            pyramid.delete();
+        }
+
+        /** Finishes the pyramid (all rows must have arrived) and writes its metadata. */
+        public DiskTilePyramid finish() throws IOException {
+            if (nextY[0] != pyramid.height) {
+                throw new IllegalStateException("only " + nextY[0] + " of " + pyramid.height + " rows written");
+            }
+
+            Properties props = new Properties();
+            props.setProperty("width", Integer.toString(pyramid.width));
+            props.setProperty("height", Integer.toString(pyramid.height));
+            props.setProperty("tile", Integer.toString(TILE));
+            props.setProperty("levels", Integer.toString(pyramid.levels));
+            try (OutputStream out = new FileOutputStream(new File(pyramid.dir, META))) {
+                props.store(out, "floorplan tile pyramid");
+            }
+            return pyramid;
+        }
+
+        /** Appends rows to a level; every full band (or the level's last rows) becomes tiles + half-size rows above. */
+        private void push(int level, BufferedImage src, int rows) throws IOException {
+            int lw = pyramid.levelWidth(level);
+            int lh = pyramid.levelHeight(level);
+            int[] row = (lw <= rowBuf.length) ? rowBuf : new int[lw];
+
+            int copied = 0;
+            while (copied < rows) {
+                BufferedImage buf = pending[level];
+                int take = Math.min(rows - copied, buf.getHeight() - pendingRows[level]);
+                for (int y = 0; y < take; y++) {
+                    src.getRGB(0, copied + y, lw, 1, row, 0, lw);
+                    buf.setRGB(0, pendingRows[level] + y, lw, 1, row, 0, lw);
+                }
+                copied += take;
+                pendingRows[level] += take;
+                nextY[level] += take;
+
+                boolean full = pendingRows[level] == buf.getHeight();
+                boolean last = nextY[level] == lh;
+                if (full || last) flush(level, pendingRows[level]);
+            }
+        }
+
+        private void flush(int level, int rows) throws IOException {
+            BufferedImage buf = pending[level];
+            int lw = pyramid.levelWidth(level);
+            int y0 = nextY[level] - rows;
+            int ty = y0 / TILE;
+
+            for (int tx = 0; tx * TILE < lw; tx++) {
+                int cols = Math.min(TILE, lw - tx * TILE);
+                BufferedImage tile = buf.getSubimage(tx * TILE, 0, cols, rows);
+                File f = pyramid.tileFile(level, tx, ty);
+                if (!ImageIO.write(tile, "png", f)) throw new IOException("No PNG writer for " + f.getAbsolutePath());
+            }
+
+            if (level + 1 < pyramid.levels) {
+                BufferedImage half = downsample(buf, lw, rows, pyramid.levelWidth(level + 1));
+                push(level + 1, half, half.getHeight());
+            }
+            pendingRows[level] = 0;
+        }
+
+        /** 2x2 box filter of rows [0, rows) (odd edges reuse the last column/row). */
+        private static BufferedImage downsample(BufferedImage src, int w, int rows, int hw) {
+            int hh = (rows + 1) / 2;
+            BufferedImage out = new BufferedImage(hw, hh, BufferedImage.TYPE_INT_RGB);
+            int[] a = new int[w];
+            int[] b = new int[w];
+            int[] o = new int[hw];
+
+            for (int y = 0; y < hh; y++) {
+                src.getRGB(0, 2 * y, w, 1, a, 0, w);
+                src.getRGB(0, Math.min(rows - 1, 2 * y + 1), w, 1, b, 0, w);
+                for (int x = 0; x < hw; x++) {
+                    int x0 = 2 * x;
+                    int x1 = Math.min(w - 1, x0 + 1);
+                    o[x] = avg4(a[x0], a[x1], b[x0], b[x1]);
+                }
+                out.setRGB(0, y, hw, 1, o, 0, hw);
+            }
+            return out;
+        }
+
+        private static int avg4(int p, int q, int r, int s) {
+            int red = (((p >> 16) & 0xFF) + ((q >> 16) & 0xFF) + ((r >> 16) & 0xFF) + ((s >> 16) & 0xFF) + 2) >> 2;
+            int grn = (((p >> 8) & 0xFF) + ((q >> 8) & 0xFF) + ((r >> 8) & 0xFF) + ((s >> 8) & 0xFF) + 2) >> 2;
+            int blu = ((p & 0xFF) + (q & 0xFF) + (r & 0xFF) + (s & 0xFF) + 2) >> 2;
+            return (red << 16) | (grn << 8) | blu;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package sim.floorplan.io;
+
+import sim.floorplan.model.FloorplanProject;
+import sim.floorplan.model.WalkMask;
+import sim.floorplan.model.Zone;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ✅ Append-only edit journal next to an .fsp ({@code plan.fsp.journal}), so edits survive a crash without
+ * rewriting the project after every stroke.
+ *
+ * Records are small ops: brush dabs, polygon fills, replaced mask regions (run lengths) and zone put/delete
+ * (zones are diffed against the last journaled state). They are encoded on the caller's thread and written
+ * by one background thread, in order. {@link FloorplanProjectIO#loadFromFile} replays the journal when it
+ * belongs to the archive being opened (the header carries a hash of the archive's entry CRCs).
+ *
+ * Once the journal grows past {@link #COMPACT_BYTES}, {@link #compactIfNeeded} saves a snapshot of the project
+ * into the .fsp on the same background thread and starts a fresh journal for the new archive. If that is
+ * interrupted, the old journal no longer matches the archive and is simply ignored.
+ *
+ * Closing the editor, loading another project or rendering a new page keeps the journal: like any autosave,
+ * unsaved edits come back when the .fsp is opened again. Only saving to another file {@link #discard}s it.
+ *
+ * Each record is {@code length, type, payload, crc32}; replay stops at the first torn or corrupt record.
+ */
+public final class EditJournal {
+
+    /** Journal size that triggers a background save into the .fsp. */
+    public static final long COMPACT_BYTES = 4L << 20;
+
+    private static final int MAGIC = 0x46534A31;   // "FSJ1"
+    private static final int HEADER_BYTES = 12;    // magic + archive key
+
+    private static final byte OP_CIRCLE = 1;
+    private static final byte OP_POLYGON = 2;
+    private static final byte OP_REGION = 3;
+    private static final byte OP_ZONE_PUT = 4;
+    private static final byte OP_ZONE_DELETE = 5;
+
+    private final File fsp;
+    private final File file;
+    private final ExecutorService writer;
+
+    // zones as last journaled: key (type + id) -> encoded record
+    private final Map<String, byte[]> zoneState = new LinkedHashMap<>();
+
+    private FileChannel channel;         // writer thread only
+    private volatile long bytes;         // journal length including queued records
+    private volatile boolean compacting;
+    private volatile IOException failure;
+
+    private EditJournal(File fsp) {
+        this.fsp = fsp;
+        this.file = fileFor(fsp);
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "fsp-journal");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static File fileFor(File fsp) {
+        return new File(fsp.getAbsoluteFile().getParentFile(), fsp.getName() + ".journal");
+    }
+
+    /**
+     * Journal for a project just saved to / opened from fsp. Records already in a journal of this archive are
+     * kept (they were replayed on open); anything else is discarded. zones is the project's current zone list.
+     */
+    public static EditJournal start(File fsp, List<Zone> zones) throws IOException {
+        EditJournal j = new EditJournal(fsp);
+        long key = archiveKey(fsp);
+
+        FileChannel ch = FileChannel.open(j.file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long good = (headerKey(ch) == key) ? validLength(ch) : -1;
+            if (good < 0) {
+                ch.truncate(0);
+                ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putLong(key);
+                h.flip();
+                while (h.hasRemaining()) ch.write(h, h.position());
+                good = HEADER_BYTES;
+            }
+            ch.truncate(good);   // drop a torn tail so new records stay reachable
+            ch.position(good);
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+
+        j.channel = ch;
+        j.bytes = ch.position();
+        j.rememberZones(zones);
+        return j;
+    }
+
+    /**
+     * Applies the records of fsp's journal to a project just loaded from fsp. Returns the number applied
+     * (0 when there is no journal or it belongs to another version of the archive).
+     */
+    public static int replay(File fsp, FloorplanProject p) throws IOException {
+        File f = fileFor(fsp);
+        if (!f.isFile() || p == null || p.getMask() == null) return 0;
+
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            if (headerKey(ch) != archiveKey(fsp)) return 0;
+
+            int applied = 0;
+            ch.position(HEADER_BYTES);
+            byte[] rec;
+            while ((rec = nextRecord(ch)) != null) {
+                apply(rec, p);
+                applied++;
+            }
+            return applied;
+        }
+    }
+
+    public File getFile() { return file; }
+    public long getBytes() { return bytes; }
+    public boolean isCompacting() { return compacting; }
+
+    /** Last background write failure (journaling stops being reliable), or null. */
+    public IOException getFailure() { return failure; }
+
+    // ---------- recording ----------
+
+    public void circle(int cx, int cy, int radius, boolean walkable) {
+        append(OP_CIRCLE, out -> {
+            out.writeInt(cx);
+            out.writeInt(cy);
+            out.writeInt(radius);
+            out.writeBoolean(walkable);
+        });
+    }
+
+    public void polygon(Polygon poly, boolean walkable) {
+        if (poly == null || poly.npoints < 3) return;
+        append(OP_POLYGON, out -> {
+            out.writeBoolean(walkable);
+            out.writeInt(poly.npoints);
+            for (int i = 0; i < poly.npoints; i++) {
+                out.writeInt(poly.xpoints[i]);
+                out.writeInt(poly.ypoints[i]);
+            }
+        });
+    }
+
+    /** The mask's current pixels inside r (e.g. after an ROI regeneration or a full auto-mask rebuild). */
+    public void region(WalkMask mask, Rectangle r) {
+        if (mask == null) return;
+        Rectangle c = (r == null) ? new Rectangle(0, 0, mask.getWidth(), mask.getHeight())
+                : r.intersection(new Rectangle(0, 0, mask.getWidth(), mask.getHeight()));
+        if (c.isEmpty()) return;
+        append(OP_REGION, out -> {
+            out.writeInt(mask.getWidth());
+            out.writeInt(mask.getHeight());
+            out.writeInt(c.x);
+            out.writeInt(c.y);
+            out.writeInt(c.width);
+            out.writeInt(c.height);
+            FloorplanProjectIO.writeRuns(out, mask, c);
+        });
+    }
+
+    /** Journals whatever changed in the zone list since the last call (adds, moves, edits, deletes). */
+    public void zones(List<Zone> zones) {
+        Map<String, byte[]> now = encodeZones(zones);
+
+        for (Map.Entry<String, byte[]> e : now.entrySet()) {
+            byte[] old = zoneState.get(e.getKey());
+            if (old != null && Arrays.equals(old, e.getValue())) continue;
+            byte[] rec = e.getValue();
+            append(OP_ZONE_PUT, out -> out.write(rec));
+        }
+        for (String key : zoneState.keySet()) {
+            if (now.containsKey(key)) continue;
+            append(OP_ZONE_DELETE, out -> out.writeUTF(key));
+        }
+
+        zoneState.clear();
+        zoneState.putAll(now);
+    }
+
+    // ---------- compaction ----------
+
+    /** Saves a snapshot into the .fsp in the background once the journal is large enough. */
+    public void compactIfNeeded(Supplier<FloorplanProject> snapshot) {
+        if (bytes < COMPACT_BYTES || compacting || failure != null) return;
+        compact(snapshot.get());
+    }
+
+    /**
+     * Writes snapshot into the .fsp on the journal thread (after every record queued so far) and restarts
+     * the journal for the new archive. Records queued meanwhile land in the new journal.
+     */
+    public void compact(FloorplanProject snapshot) {
+        if (snapshot == null) return;
+        compacting = true;
+        submit(() -> {
+            try {
+                FloorplanProjectIO.saveToFile(snapshot, fsp);
+                long key = archiveKey(fsp);
+                ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putLong(key);
+                h.flip();
+                channel.truncate(0);
+                while (h.hasRemaining()) channel.write(h, h.position());
+                channel.position(HEADER_BYTES);
+                bytes = HEADER_BYTES;
+            } finally {
+                compacting = false;
+            }
+        });
+    }
+
+    /** Waits for queued records and stops the writer (the journal file stays for the next open). */
+    public void close() {
+        submit(() -> {
+            if (channel != null) channel.close();
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Stops journaling and deletes the journal (its edits were saved to another file). */
+    public void discard() {
+        close();
+        file.delete();
+    }
+
+    // ---------- internals ----------
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    private void append(byte op, Payload payload) {
+        byte[] rec;
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeByte(op);
+            payload.write(out);
+            out.flush();
+            byte[] b = body.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(b);
+            rec = ByteBuffer.allocate(8 + b.length).putInt(b.length).put(b).putInt((int) crc.getValue()).array();
+        } catch (IOException ex) {
+            failure = ex;
+            return;
+        }
+
+        bytes += rec.length;
+        submit(() -> {
+            ByteBuffer buf = ByteBuffer.wrap(rec);
+            while (buf.hasRemaining()) channel.write(buf);
+        });
+    }
+
+    private void submit(IoTask task) {
+        if (writer.isShutdown()) return;
+        writer.execute(() -> {
+            if (failure != null) return;
+            try {
+                task.run();
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        });
+    }
+
+    private void rememberZones(List<Zone> zones) {
+        zoneState.clear();
+        zoneState.putAll(encodeZones(zones));
+    }
+
+    private static Map<String, byte[]> encodeZones(List<Zone> zones) {
+        Map<String, byte[]> out = new LinkedHashMap<>();
+        if (zones == null) return out;
+        for (Zone z : zones) {
+            if (z == null || z.getType() == null) continue;
+            try {
+                ByteArrayOutputStream b = new ByteArrayOutputStream(96);
+                DataOutputStream d = new DataOutputStream(b);
+                FloorplanProjectIO.writeZone(d, z);
+                d.flush();
+                out.put(zoneKey(z), b.toByteArray());
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex); // in-memory stream
+            }
+        }
+        return out;
+    }
+
+    private static String zoneKey(Zone z) {
+        return z.getType().name() + '\t' + (z.getId() == null ? "" : z.getId());
+    }
+
+    private static void apply(byte[] rec, FloorplanProject p) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(rec));
+        WalkMask mask = p.getMask();
+        switch (in.readByte()) {
+            case OP_CIRCLE: {
+                int cx = in.readInt(), cy = in.readInt(), r = in.readInt();
+                mask.fillCircle(cx, cy, r, in.readBoolean());
+                break;
+            }
+            case OP_POLYGON: {
+                boolean walkable = in.readBoolean();
+                int n = in.readInt();
+                Polygon poly = new Polygon();
+                for (int i = 0; i < n; i++) poly.addPoint(in.readInt(), in.readInt());
+                mask.fillPolygon(poly, walkable);
+                break;
+            }
+            case OP_REGION: {
+                int w = in.readInt(), h = in.readInt();
+                Rectangle r = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                if (w != mask.getWidth() || h != mask.getHeight()) throw new IOException("journal is for another mask size");
+                long[] bits = FloorplanProjectIO.readRuns(in, r.width, r.height);
+                if (r.x == 0 && r.y == 0 && r.width == w && r.height == h) {
+                    mask.setAllWalkableBits(bits);
+                } else {
+                    mask.setWalkableRegion(r, unpack(bits, r.width, r.height));
+                }
+                break;
+            }
+            case OP_ZONE_PUT: {
+                Zone z = FloorplanProjectIO.readZone(in);
+                if (z == null) break;
+                List<Zone> zones = p.getZones();
+                String key = zoneKey(z);
+                int at = -1;
+                for (int i = 0; i < zones.size() && at < 0; i++) {
+                    Zone o = zones.get(i);
+                    if (o != null && o.getType() != null && zoneKey(o).equals(key)) at = i;
+                }
+                if (at >= 0) zones.set(at, z); else zones.add(z);
+                break;
+            }
+            case OP_ZONE_DELETE: {
+                String key = in.readUTF();
+                p.getZones().removeIf(o -> o != null && o.getType() != null && zoneKey(o).equals(key));
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record");
+        }
+    }
+
+    private static boolean[] unpack(long[] bits, int w, int h) {
+        int wordsPerRow = (w + 63) >>> 6;
+        boolean[] out = new boolean[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                out[y * w + x] = (bits[y * wordsPerRow + (x >>> 6)] << (x & 63)) < 0;
+            }
+        }
+        return out;
+    }
+
+    /** Next intact record body at the channel position, or null at the end / at a torn or corrupt record. */
+    private static byte[] nextRecord(FileChannel ch) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(4);
+        if (!readFully(ch, len)) return null;
+        int n = len.flip().getInt();
+        if (n <= 0 || n > ch.size() - ch.position() - 4) return null;
+
+        ByteBuffer body = ByteBuffer.allocate(n + 4);
+        if (!readFully(ch, body)) return null;
+        body.flip();
+        byte[] b = new byte[n];
+        body.get(b);
+
+        CRC32 crc = new CRC32();
+        crc.update(b);
+        return (body.getInt() == (int) crc.getValue()) ? b : null;
+    }
+
+    /** Length of the header plus every intact record. */
+    private static long validLength(FileChannel ch) throws IOException {
+        ch.position(HEADER_BYTES);
+        long good = HEADER_BYTES;
+        while (nextRecord(ch) != null) good = ch.position();
+        return good;
+    }
+
+    /** Archive key from the journal header, or 0 if there's no valid header. */
+    private static long headerKey(FileChannel ch) throws IOException {
+        if (ch.size() < HEADER_BYTES) return 0;
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES);
+        ch.position(0);
+        if (!readFully(ch, h)) return 0;
+        h.flip();
+        return (h.getInt() == MAGIC) ? h.getLong() : 0;
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            if (ch.read(b) < 0) return false;
+        }
+        return true;
+    }
+
+    /** FNV-1a over the archive's entry names, CRCs and sizes (the central directory only). */
+    static long archiveKey(File fsp) throws IOException {
+        long h = 0xcbf29ce484222325L;
+        try (ZipFile zip = new ZipFile(fsp)) {
+            List<ZipEntry> entries = new ArrayList<>();
+            Enumeration<? extends ZipEntry> en = zip.entries();
+            while (en.hasMoreElements()) entries.add(en.nextElement());
+            entries.sort((a, b) -> a.getName().compareTo(b.getName()));
+
+            Set<String> seen = new HashSet<>();
+            for (ZipEntry e : entries) {
+                if (!seen.add(e.getName())) continue;
+                for (byte c : e.getName().getBytes(java.nio.charset.StandardCharsets.UTF_8)) h = fnv(h, c);
+                h = fnv(h, e.getCrc());
+                h = fnv(h, e.getSize());
+            }
+        }
+        return (h == 0) ? 1 : h;
+    }
+
+    private static long fnv(long h, long v) {
+        for (int i = 0; i < 8; i++) {
+            h ^= (v >>> (8 * i)) & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
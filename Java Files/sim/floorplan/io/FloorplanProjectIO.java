@@ -4,30 +4,71 @@ import sim.floorplan.model.FloorplanProject;
 import sim.floorplan.model.WalkMask;
 import sim.floorplan.model.Zone;
 import sim.floorplan.model.ZoneType;
+import sim.floorplan.path.Polyline;
+import sim.floorplan.path.RouteStore;
 
 import javax.imageio.ImageIO;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * .fsp project files (a zip).
+ *
+ * v2 (written): project.properties, floorplan.png, mask.rle (run lengths), zones.bin, optional routes.tsv.
+ * v1 (still read): the mask is a 1-bit PNG and zones are TSV.
+ *
+ * ✅ The floorplan PNG is the bulk of a project and never changes after rendering, so it's decoded
+ * lazily on load and copied entry-to-entry (no decode / re-encode) by later saves of the same image.
+ */
 public final class FloorplanProjectIO {
 
+    private static final int FORMAT_VERSION = 2;
+
     private static final String ENTRY_PROPS = "project.properties";
     private static final String ENTRY_IMAGE = "floorplan.png";
+    private static final String ENTRY_MASK_RLE = "mask.rle";
+    private static final String ENTRY_ZONES_BIN = "zones.bin";
+    private static final String ENTRY_ROUTES = "routes.tsv"; // optional: warm route cache
+
+    // v1 entries
     private static final String ENTRY_MASK  = "mask.png";
     private static final String ENTRY_ZONES = "zones.tsv";
 
+    // ✅ sidecar cache (see ProjectCache) only pays off once PNG decode takes seconds
+    private static final long CACHE_MIN_PIXELS = 8_000_000L;
+    private static volatile boolean projectCacheEnabled =
+            !"false".equalsIgnoreCase(System.getProperty("sim.floorplan.projectCache", "true"));
+
+    private static final int MASK_MAGIC = 0x46534D31;   // "FSM1"
+    private static final int ZONES_MAGIC = 0x46535A31;  // "FSZ1"
+
     private FloorplanProjectIO() {}
 
-    public static void saveToFile(FloorplanProject p, File file) throws IOException {
+    /** Turns the memory-mapped sidecar cache for large projects on or off (on by default). */
+    public static void setProjectCacheEnabled(boolean enabled) { projectCacheEnabled = enabled; }
+    public static boolean isProjectCacheEnabled() { return projectCacheEnabled; }
+
+    /** Writes the project (".fsp" is appended when missing) and returns the file written. */
+    public static File saveToFile(FloorplanProject p, File file) throws IOException {
         if (p == null) throw new IllegalArgumentException("project is null");
         if (file == null) throw new IllegalArgumentException("file is null");
 
@@ -35,70 +76,165 @@ public final class FloorplanProjectIO {
             file = new File(file.getParentFile(), file.getName() + ".fsp");
         }
 
-        BufferedImage img = p.getFloorplanImage();
         WalkMask mask = p.getMask();
-        if (img == null) throw new IllegalStateException("Project has no floorplan image.");
+        if (!p.hasFloorplanImage()) throw new IllegalStateException("Project has no floorplan image.");
         if (mask == null) throw new IllegalStateException("Project has no mask.");
 
+        // ✅ reuse the stored PNG when this image came from (or was already written to) a project file
+        BufferedImage img = p.isFloorplanImageLoaded() ? p.getFloorplanImage() : null;
+        StoredImage stored = StoredImage.of(p.getFloorplanImageSource(), img);
+        if (stored == null && img == null) img = p.getFloorplanImage();
+
         Properties props = new Properties();
-        props.setProperty("version", "1");
+        props.setProperty("version", Integer.toString(FORMAT_VERSION));
         props.setProperty("pageIndex", Integer.toString(p.getPageIndex()));
         props.setProperty("dpi", p.getDpi() == null ? "" : p.getDpi().toString());
         props.setProperty("pdfPath", p.getPdfFile() == null ? "" : p.getPdfFile().getAbsolutePath());
-        props.setProperty("imageWidth", Integer.toString(img.getWidth()));
-        props.setProperty("imageHeight", Integer.toString(img.getHeight()));
+        props.setProperty("imageWidth", Integer.toString(p.getFloorplanWidth()));
+        props.setProperty("imageHeight", Integer.toString(p.getFloorplanHeight()));
+        props.setProperty("metersPerPixel", Double.toString(p.getMetersPerPixel()));
 
-        byte[] propsBytes = propsToBytes(props);
-        byte[] imgBytes = imageToPngBytes(img);
-        byte[] maskBytes = imageToPngBytes(mask.toBinaryImage());
-        byte[] zonesBytes = zonesToTsvBytes(p.getZones());
+        byte[] routesBytes = routesToTsvBytes(mask.contentHash(), RouteStore.shared());
 
-        File parent = file.getParentFile();
+        File parent = file.getAbsoluteFile().getParentFile();
         if (parent != null && !parent.exists()) parent.mkdirs();
 
-        try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
-            writeEntry(zos, ENTRY_PROPS, propsBytes);
-            writeEntry(zos, ENTRY_IMAGE, imgBytes);
-            writeEntry(zos, ENTRY_MASK, maskBytes);
-            writeEntry(zos, ENTRY_ZONES, zonesBytes);
+        // write next to the target and swap in: the image may be copied out of the file being replaced
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        try {
+            try (ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                writeEntry(zos, ENTRY_PROPS, propsToBytes(props));
+
+                if (stored == null || !stored.copyTo(zos, ENTRY_IMAGE)) {
+                    if (img == null) img = p.getFloorplanImage();
+                    writeImageEntry(zos, ENTRY_IMAGE, img);
+                }
+
+                zos.setLevel(Deflater.BEST_SPEED);
+                zos.putNextEntry(new ZipEntry(ENTRY_MASK_RLE));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(zos, 1 << 16));
+                writeMaskRle(out, mask);
+                out.flush();
+                zos.closeEntry();
+
+                zos.putNextEntry(new ZipEntry(ENTRY_ZONES_BIN));
+                out = new DataOutputStream(new BufferedOutputStream(zos));
+                writeZonesBin(out, p.getZones());
+                out.flush();
+                zos.closeEntry();
+
+                if (routesBytes.length > 0) writeEntry(zos, ENTRY_ROUTES, routesBytes);
+            }
+            moveReplacing(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        // later saves of this image copy it from the new file
+        if (img != null && stored == null) {
+            StoredImage.remember(img, StoredImage.open(file, ENTRY_IMAGE, img.getWidth(), img.getHeight(), null));
+        }
+
+        if (wantsCache(p.getFloorplanWidth(), p.getFloorplanHeight())) {
+            try {
+                updateCache(file, mask, (img != null) ? img : (p.isFloorplanImageLoaded() ? p.getFloorplanImage() : null));
+            } catch (IOException | RuntimeException ignored) {
+                // best-effort: the .fsp itself is complete, the next open just decodes
+            }
         }
+        return file;
     }
 
     public static FloorplanProject loadFromFile(File file) throws IOException {
         if (file == null) throw new IllegalArgumentException("file is null");
         if (!file.exists()) throw new FileNotFoundException(file.getAbsolutePath());
 
-        byte[] propsBytes = null;
-        byte[] imgBytes = null;
-        byte[] maskBytes = null;
-        byte[] zonesBytes = null;
-
-        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(file)))) {
-            ZipEntry e;
-            while ((e = zis.getNextEntry()) != null) {
-                byte[] data = readAllBytes(zis);
-                if (ENTRY_PROPS.equals(e.getName())) propsBytes = data;
-                else if (ENTRY_IMAGE.equals(e.getName())) imgBytes = data;
-                else if (ENTRY_MASK.equals(e.getName())) maskBytes = data;
-                else if (ENTRY_ZONES.equals(e.getName())) zonesBytes = data;
-                zis.closeEntry();
+        FloorplanProject p = new FloorplanProject();
+        WalkMask mask = null;
+        Properties props;
+
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry propsEntry = zip.getEntry(ENTRY_PROPS);
+            ZipEntry imgEntry = zip.getEntry(ENTRY_IMAGE);
+            ZipEntry rleEntry = zip.getEntry(ENTRY_MASK_RLE);
+            ZipEntry pngMaskEntry = zip.getEntry(ENTRY_MASK);
+
+            if (propsEntry == null || imgEntry == null || (rleEntry == null && pngMaskEntry == null)) {
+                throw new IOException("Invalid .fsp file: missing required entries.");
             }
-        }
 
-        if (propsBytes == null || imgBytes == null || maskBytes == null) {
-            throw new IOException("Invalid .fsp file: missing required entries.");
-        }
+            try (InputStream in = zip.getInputStream(propsEntry)) {
+                props = new Properties();
+                props.load(in);
+            }
 
-        Properties props = bytesToProps(propsBytes);
-        BufferedImage img = ImageIO.read(new ByteArrayInputStream(imgBytes));
-        BufferedImage maskImg = ImageIO.read(new ByteArrayInputStream(maskBytes));
-        if (img == null) throw new IOException("Failed to decode floorplan.png");
-        if (maskImg == null) throw new IOException("Failed to decode mask.png");
+            // ✅ a large project may have a mapped copy next to it; every part is checked against its entry
+            int w = parseIntSafe(props.getProperty("imageWidth"), 0);
+            int h = parseIntSafe(props.getProperty("imageHeight"), 0);
+            ProjectCache cache = null;
+            if (wantsCache(w, h)) {
+                cache = ProjectCache.open(file);
+                if (cache == null) {
+                    try { cache = ProjectCache.create(file); } catch (IOException ignored) { }
+                }
+            }
 
-        WalkMask mask = WalkMask.fromBinaryImage(maskImg);
+            ZipEntry maskEntry = (rleEntry != null) ? rleEntry : pngMaskEntry;
+            String maskKey = ProjectCache.entryKey(maskEntry.getCrc(), maskEntry.getSize());
+            if (cache != null) {
+                try { mask = cache.readMask(maskKey); } catch (IOException ignored) { }
+            }
+
+            // mask: v2 run lengths, or the v1 1-bit PNG
+            if (mask == null && rleEntry != null) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(zip.getInputStream(rleEntry), 1 << 16))) {
+                    mask = readMaskRle(in);
+                }
+            } else if (mask == null) {
+                BufferedImage maskImg;
+                try (InputStream in = new BufferedInputStream(zip.getInputStream(pngMaskEntry), 1 << 16)) {
+                    maskImg = ImageIO.read(in);
+                }
+                if (maskImg == null) throw new IOException("Failed to decode mask.png");
+                mask = WalkMask.fromBinaryImage(maskImg);
+            }
+
+            if (cache != null) {
+                try {
+                    if (!cache.hasMask(maskKey)) cache.writeMask(maskKey, mask);
+                } catch (IOException ignored) { }
+                cache.seedNavigation(mask.contentHash());
+            }
+
+            // ✅ the floorplan stays in the zip (or the cache) until someone asks for it
+            if (w <= 0 || h <= 0) {
+                w = mask.getWidth();
+                h = mask.getHeight();
+            }
+            p.setFloorplanImageSource(new StoredImage(file, imgEntry, w, h, cache));
+
+            ZipEntry zonesBin = zip.getEntry(ENTRY_ZONES_BIN);
+            ZipEntry zonesTsv = zip.getEntry(ENTRY_ZONES);
+            if (zonesBin != null) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(zip.getInputStream(zonesBin)))) {
+                    p.setZones(readZonesBin(in));
+                }
+            } else if (zonesTsv != null) {
+                try (InputStream in = zip.getInputStream(zonesTsv)) {
+                    p.setZones(zonesFromTsv(new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+                }
+            }
+
+            // ✅ best-effort: a reopened project starts with warm routes (ignored if the mask doesn't match)
+            ZipEntry routes = zip.getEntry(ENTRY_ROUTES);
+            if (routes != null) {
+                try (InputStream in = zip.getInputStream(routes)) {
+                    routesFromTsv(new String(in.readAllBytes(), StandardCharsets.UTF_8), mask.contentHash(), RouteStore.shared());
+                } catch (Exception ignored) { }
+            }
+        }
 
-        FloorplanProject p = new FloorplanProject();
-        p.setFloorplanImage(img);
         p.setMask(mask);
 
         // optional metadata
@@ -106,20 +242,161 @@ public final class FloorplanProjectIO {
         String dpiStr = props.getProperty("dpi");
         p.setDpi((dpiStr == null || dpiStr.isBlank()) ? null : parseIntSafe(dpiStr, 200));
 
+        String mpp = props.getProperty("metersPerPixel");
+        if (mpp != null && !mpp.isBlank()) {
+            try { p.setMetersPerPixel(Double.parseDouble(mpp.trim())); } catch (NumberFormatException ignored) { }
+        }
+
         String pdfPath = props.getProperty("pdfPath");
         if (pdfPath != null && !pdfPath.isBlank()) {
             File pdf = new File(pdfPath);
             if (pdf.exists()) p.setPdfFile(pdf); // only set if present
         }
 
-        if (zonesBytes != null) {
-            List<Zone> zones = zonesFromTsv(new String(zonesBytes, StandardCharsets.UTF_8));
-            p.setZones(zones);
-        }
+        // ✅ edits journaled since this archive was written (a crash before the next save)
+        try { EditJournal.replay(file, p); } catch (IOException | RuntimeException ignored) { }
 
         return p;
     }
 
+    // =========================
+    // Stored floorplan image
+    // =========================
+
+    /**
+     * The floorplan PNG inside a project file, identified by the entry's CRC and size so a file that was
+     * overwritten with a different image is noticed. Decodes on demand and copies itself into new saves.
+     */
+    private static final class StoredImage implements FloorplanProject.ImageSource {
+
+        // images decoded from / written to a project file -> where that PNG lives
+        private static final Map<BufferedImage, StoredImage> ORIGINS = Collections.synchronizedMap(new WeakHashMap<>());
+
+        private final File file;
+        private final String entry;
+        private final long crc;
+        private final long size;
+        private final int width;
+        private final int height;
+        private final ProjectCache cache;   // mapped copy of the decoded pixels, or null
+
+        // weak: the project holds the decoded image; this only avoids decoding twice for copies
+        private WeakReference<BufferedImage> decoded = new WeakReference<>(null);
+
+        StoredImage(File file, ZipEntry e, int width, int height, ProjectCache cache) {
+            this.file = file;
+            this.entry = e.getName();
+            this.crc = e.getCrc();
+            this.size = e.getSize();
+            this.width = width;
+            this.height = height;
+            this.cache = cache;
+        }
+
+        static StoredImage open(File file, String entry, int width, int height, ProjectCache cache) throws IOException {
+            try (ZipFile zip = new ZipFile(file)) {
+                ZipEntry e = zip.getEntry(entry);
+                return (e == null) ? null : new StoredImage(file, e, width, height, cache);
+            }
+        }
+
+        /** The stored copy of this project's image, if there is one. */
+        static StoredImage of(FloorplanProject.ImageSource source, BufferedImage img) {
+            if (source instanceof StoredImage) return (StoredImage) source;
+            return (img == null) ? null : ORIGINS.get(img);
+        }
+
+        static void remember(BufferedImage img, StoredImage s) {
+            if (img == null || s == null) return;
+            s.decoded = new WeakReference<>(img);
+            ORIGINS.put(img, s);
+        }
+
+        @Override public int getWidth() { return width; }
+        @Override public int getHeight() { return height; }
+
+        @Override
+        public synchronized BufferedImage load() throws IOException {
+            BufferedImage img = decoded.get();
+            if (img != null) return img;
+
+            // ✅ reopen: map the cached pixels instead of decoding the PNG
+            String key = ProjectCache.entryKey(crc, size);
+            if (cache != null) {
+                try { img = cache.mapImage(key); } catch (IOException ignored) { }
+                if (img != null) {
+                    remember(img, this);
+                    return img;
+                }
+            }
+
+            try (ZipFile zip = new ZipFile(file)) {
+                ZipEntry e = currentEntry(zip);
+                if (e == null) throw new IOException(file.getName() + " changed since the project was opened");
+                try (InputStream in = new BufferedInputStream(zip.getInputStream(e), 1 << 16)) {
+                    img = ImageIO.read(in);
+                }
+            }
+            if (img == null) throw new IOException("Failed to decode " + entry);
+            remember(img, this);
+
+            if (cache != null) {
+                try { cache.writeImage(key, img); } catch (IOException ignored) { }
+            }
+            return img;
+        }
+
+        /** Copies the PNG bytes as-is (stored, it's already deflated). False if the source entry is gone or changed. */
+        boolean copyTo(ZipOutputStream zos, String name) throws IOException {
+            if (!file.isFile()) return false;
+            try (ZipFile zip = new ZipFile(file)) {
+                ZipEntry src = currentEntry(zip);
+                if (src == null) return false;
+
+                ZipEntry e = new ZipEntry(name);
+                e.setMethod(ZipEntry.STORED);
+                e.setSize(size);
+                e.setCompressedSize(size);
+                e.setCrc(crc);
+                zos.putNextEntry(e);
+                try (InputStream in = zip.getInputStream(src)) {
+                    in.transferTo(zos);
+                }
+                zos.closeEntry();
+                return true;
+            }
+        }
+
+        private ZipEntry currentEntry(ZipFile zip) {
+            ZipEntry e = zip.getEntry(entry);
+            return (e != null && e.getCrc() == crc && e.getSize() == size) ? e : null;
+        }
+    }
+
+    // =========================
+    // Project cache
+    // =========================
+
+    private static boolean wantsCache(int w, int h) {
+        return projectCacheEnabled && (long) w * h >= CACHE_MIN_PIXELS;
+    }
+
+    /** Brings the sidecar in line with a just-saved file (parts that already match are left alone). */
+    private static void updateCache(File file, WalkMask mask, BufferedImage img) throws IOException {
+        String imgKey, maskKey;
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry ie = zip.getEntry(ENTRY_IMAGE);
+            ZipEntry me = zip.getEntry(ENTRY_MASK_RLE);
+            imgKey = ProjectCache.entryKey(ie.getCrc(), ie.getSize());
+            maskKey = ProjectCache.entryKey(me.getCrc(), me.getSize());
+        }
+
+        ProjectCache cache = ProjectCache.create(file);
+        if (img != null && !cache.hasImage(imgKey)) cache.writeImage(imgKey, img);
+        if (!cache.hasMask(maskKey)) cache.writeMask(maskKey, mask);
+        cache.writeNavigation(mask.contentHash());
+    }
+
     // =========================
     // Zip helpers
     // =========================
@@ -131,14 +408,23 @@ public final class FloorplanProjectIO {
         zos.closeEntry();
     }
 
-    private static byte[] readAllBytes(InputStream in) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] buf = new byte[8192];
-        int n;
-        while ((n = in.read(buf)) >= 0) {
-            baos.write(buf, 0, n);
+    /** PNG is already deflated: write it through without compressing it again. */
+    private static void writeImageEntry(ZipOutputStream zos, String name, BufferedImage img) throws IOException {
+        zos.setLevel(Deflater.NO_COMPRESSION);
+        zos.putNextEntry(new ZipEntry(name));
+        if (!ImageIO.write(img, "png", zos)) {
+            throw new IOException("PNG writer not available");
+        }
+        zos.closeEntry();
+        zos.setLevel(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private static void moveReplacing(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
         }
-        return baos.toByteArray();
     }
 
     // =========================
@@ -151,72 +437,223 @@ public final class FloorplanProjectIO {
         return baos.toByteArray();
     }
 
-    private static Properties bytesToProps(byte[] bytes) throws IOException {
-        Properties p = new Properties();
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes)) {
-            p.load(bais);
-        }
-        return p;
-    }
-
     private static int parseIntSafe(String s, int def) {
         try { return Integer.parseInt(s.trim()); } catch (Exception ignored) { return def; }
     }
 
     // =========================
-    // Image helpers
+    // Mask run lengths (v2)
     // =========================
+    // magic, width, height, then alternating blocked/walkable run lengths (varints) over the
+    // pixels in row-major order, starting with blocked. Runs may cross rows.
+
+    private static void writeMaskRle(DataOutputStream out, WalkMask mask) throws IOException {
+        out.writeInt(MASK_MAGIC);
+        out.writeInt(mask.getWidth());
+        out.writeInt(mask.getHeight());
+        writeRuns(out, mask, new Rectangle(0, 0, mask.getWidth(), mask.getHeight()));
+    }
 
-    private static byte[] imageToPngBytes(BufferedImage img) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        if (!ImageIO.write(img, "png", baos)) {
-            throw new IOException("PNG writer not available");
+    /** Run lengths over the pixels of r (inside the mask), row-major, starting with blocked. */
+    static void writeRuns(DataOutputStream out, WalkMask mask, Rectangle r) throws IOException {
+        long[] row = new long[(mask.getWidth() + 63) >>> 6];
+        int end = r.x + r.width;
+        boolean walkable = false;
+        long run = 0;
+        for (int y = r.y; y < r.y + r.height; y++) {
+            mask.getRowBits(y, row, 0);
+            int x = r.x;
+            while (x < end) {
+                int next = nextChange(row, x, end, walkable);
+                run += next - x;
+                x = next;
+                if (x < end) {
+                    writeVarLong(out, run);
+                    run = 0;
+                    walkable = !walkable;
+                }
+            }
         }
-        return baos.toByteArray();
+        writeVarLong(out, run);
+    }
+
+    /** First x' >= x whose bit differs from {@code value}, or w (word at a time). */
+    private static int nextChange(long[] row, int x, int w, boolean value) {
+        long flip = value ? -1L : 0L;
+        int wi = x >>> 6;
+        long word = (row[wi] ^ flip) & (-1L >>> (x & 63));
+        while (word == 0) {
+            if (++wi >= row.length) return w;
+            word = row[wi] ^ flip;
+        }
+        return Math.min(w, (wi << 6) + Long.numberOfLeadingZeros(word));
+    }
+
+    private static WalkMask readMaskRle(DataInputStream in) throws IOException {
+        if (in.readInt() != MASK_MAGIC) throw new IOException("Invalid mask.rle header");
+        int w = in.readInt();
+        int h = in.readInt();
+        if (w <= 0 || h <= 0) throw new IOException("Invalid mask size " + w + "x" + h);
+
+        WalkMask m = new WalkMask(w, h);
+        m.setAllWalkableBits(readRuns(in, w, h));
+        return m;
+    }
+
+    /** Reads runs over a w x h area into packed rows (ceil(w/64) words per row, leftmost pixel = MSB). */
+    static long[] readRuns(DataInputStream in, int w, int h) throws IOException {
+        int wordsPerRow = (w + 63) >>> 6;
+        long[] bits = new long[Math.multiplyExact(wordsPerRow, h)];
+        long total = (long) w * h;
+
+        long pos = 0;
+        boolean walkable = false;
+        while (pos < total) {
+            long run = readVarLong(in);
+            if (run < 0 || run > total - pos) throw new IOException("Corrupt mask runs (run past the end)");
+            if (walkable) setRun(bits, wordsPerRow, w, pos, run);
+            pos += run;
+            walkable = !walkable;
+        }
+        return bits;
+    }
+
+    /** Sets pixels [pos, pos + run) of the row-major packed bitmap. */
+    private static void setRun(long[] bits, int wordsPerRow, int w, long pos, long run) {
+        while (run > 0) {
+            int y = (int) (pos / w);
+            int x0 = (int) (pos - (long) y * w);
+            int n = (int) Math.min(run, w - x0);
+            int x1 = x0 + n - 1;
+            int base = y * wordsPerRow;
+
+            int w0 = x0 >>> 6, w1 = x1 >>> 6;
+            long first = -1L >>> (x0 & 63);
+            long last = -1L << (63 - (x1 & 63));
+            if (w0 == w1) {
+                bits[base + w0] |= first & last;
+            } else {
+                bits[base + w0] |= first;
+                for (int wi = w0 + 1; wi < w1; wi++) bits[base + wi] = -1L;
+                bits[base + w1] |= last;
+            }
+            pos += n;
+            run -= n;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Corrupt mask runs (varint too long)");
     }
 
     // =========================
-    // Zones TSV
+    // Zones (v2 binary)
     // =========================
-    // type \t id \t ax \t ay \t polyPoints
-    // polyPoints = "x,y;x,y;..."
-    private static byte[] zonesToTsvBytes(List<Zone> zones) {
-        StringBuilder sb = new StringBuilder();
-        if (zones != null) {
-            for (Zone z : zones) {
-                if (z == null || z.getType() == null) continue;
+    // magic, count, then per zone: type name, id, anchor, polygon, rates, allowed flights.
+    // The type is stored by name so reordering ZoneType doesn't break old files.
 
-                String type = z.getType().name();
-                String id = z.getId() == null ? "" : z.getId();
+    private static void writeZonesBin(DataOutputStream out, List<Zone> zones) throws IOException {
+        List<Zone> list = new ArrayList<>();
+        if (zones != null) for (Zone z : zones) if (z != null && z.getType() != null) list.add(z);
 
-                int ax = -1, ay = -1;
-                if (z.getAnchor() != null) {
-                    ax = z.getAnchor().x;
-                    ay = z.getAnchor().y;
-                }
+        out.writeInt(ZONES_MAGIC);
+        out.writeInt(list.size());
+        for (Zone z : list) writeZone(out, z);
+    }
 
-                String poly = "";
-                if (z.getArea() != null && z.getArea().npoints >= 3) {
-                    StringBuilder ps = new StringBuilder();
-                    Polygon p = z.getArea();
-                    for (int i = 0; i < p.npoints; i++) {
-                        if (i > 0) ps.append(';');
-                        ps.append(p.xpoints[i]).append(',').append(p.ypoints[i]);
-                    }
-                    poly = ps.toString();
-                }
+    private static List<Zone> readZonesBin(DataInputStream in) throws IOException {
+        if (in.readInt() != ZONES_MAGIC) throw new IOException("Invalid zones.bin header");
+        int count = in.readInt();
+        if (count < 0) throw new IOException("Corrupt zones.bin");
 
-                sb.append(type).append('\t')
-                  .append(id).append('\t')
-                  .append(ax).append('\t')
-                  .append(ay).append('\t')
-                  .append(poly)
-                  .append('\n');
-            }
+        List<Zone> out = new ArrayList<>(Math.min(count, 4096));
+        for (int k = 0; k < count; k++) {
+            Zone z = readZone(in);
+            if (z != null) out.add(z);
         }
-        return sb.toString().getBytes(StandardCharsets.UTF_8);
+        return out;
     }
 
+    /** One zone record (type must be non-null). */
+    static void writeZone(DataOutputStream out, Zone z) throws IOException {
+        out.writeUTF(z.getType().name());
+        out.writeUTF(z.getId() == null ? "" : z.getId());
+
+        Point a = z.getAnchor();
+        out.writeBoolean(a != null);
+        if (a != null) {
+            out.writeInt(a.x);
+            out.writeInt(a.y);
+        }
+
+        Polygon poly = z.getArea();
+        int n = (poly == null || poly.npoints < 3) ? 0 : poly.npoints;
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            out.writeInt(poly.xpoints[i]);
+            out.writeInt(poly.ypoints[i]);
+        }
+
+        out.writeDouble(z.hasTicketRatePerMinute() ? z.getTicketRatePerMinute() : Double.NaN);
+        out.writeDouble(z.hasCheckpointRatePerHour() ? z.getCheckpointRatePerHour() : Double.NaN);
+
+        out.writeInt(z.getAllowedFlightNumbers().size());
+        for (String f : z.getAllowedFlightNumbers()) out.writeUTF(f);
+    }
+
+    /** Reads one zone record; null (record consumed) if its type is unknown to this build. */
+    static Zone readZone(DataInputStream in) throws IOException {
+        ZoneType type = ZoneType.fromName(in.readUTF());
+        String id = in.readUTF();
+
+        Point anchor = in.readBoolean() ? new Point(in.readInt(), in.readInt()) : null;
+
+        int n = in.readInt();
+        if (n < 0) throw new IOException("Corrupt zone record");
+        int[] xs = new int[n], ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = in.readInt();
+            ys[i] = in.readInt();
+        }
+
+        double ticketRate = in.readDouble();
+        double checkpointRate = in.readDouble();
+
+        int flights = in.readInt();
+        if (flights < 0) throw new IOException("Corrupt zone record");
+        List<String> nums = new ArrayList<>(Math.min(flights, 4096));
+        for (int i = 0; i < flights; i++) nums.add(in.readUTF());
+
+        if (type == null) return null; // zone type from a newer build
+
+        Zone z = new Zone(id, type);
+        z.setAnchor(anchor);
+        if (n >= 3) z.setArea(new Polygon(xs, ys, n));
+        z.setTicketRatePerMinute(ticketRate);
+        z.setCheckpointRatePerHour(checkpointRate);
+        z.setAllowedFlightNumbers(nums);
+        return z;
+    }
+
+    // =========================
+    // Zones TSV (v1, read only)
+    // =========================
+    // type \t id \t ax \t ay \t polyPoints
+    // polyPoints = "x,y;x,y;..."
     private static List<Zone> zonesFromTsv(String text) {
         List<Zone> out = new ArrayList<>();
         if (text == null || text.isBlank()) return out;
@@ -262,4 +699,79 @@ public final class FloorplanProjectIO {
         }
         return out;
     }
+
+    // =========================
+    // Routes TSV
+    // =========================
+    // first line: maskHash \t <hex>
+    // then: stride \t diagonal \t ax,ay \t bx,by \t "x,y;x,y;..." (empty = no route)
+    private static byte[] routesToTsvBytes(long maskHash, RouteStore store) {
+        Map<RouteStore.Key, Polyline> routes = store.routesFor(maskHash);
+        if (routes.isEmpty()) return new byte[0];
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("maskHash\t").append(Long.toHexString(maskHash)).append('\n');
+
+        for (Map.Entry<RouteStore.Key, Polyline> e : routes.entrySet()) {
+            RouteStore.Key k = e.getKey();
+            Polyline r = e.getValue();
+
+            sb.append(k.stride).append('\t')
+              .append(k.diagonal).append('\t')
+              .append(k.ax).append(',').append(k.ay).append('\t')
+              .append(k.bx).append(',').append(k.by).append('\t');
+            for (int i = 0; i < r.size(); i++) {
+                if (i > 0) sb.append(';');
+                sb.append(r.getX(i)).append(',').append(r.getY(i));
+            }
+            sb.append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void routesFromTsv(String text, long maskHash, RouteStore store) {
+        if (text == null || text.isBlank()) return;
+
+        String[] lines = text.split("\\R");
+        if (lines.length == 0) return;
+
+        String[] head = lines[0].trim().split("\t", -1);
+        if (head.length < 2 || !"maskHash".equals(head[0])) return;
+        if (Long.parseUnsignedLong(head[1].trim(), 16) != maskHash) return; // stale routes for another mask
+
+        for (int li = 1; li < lines.length; li++) {
+            String line = lines[li];
+            if (line == null || line.isBlank()) continue;
+
+            String[] parts = line.split("\t", -1);
+            if (parts.length < 5) continue;
+
+            int stride = parseIntSafe(parts[0], -1);
+            if (stride <= 0) continue;
+            boolean diag = Boolean.parseBoolean(parts[1].trim());
+
+            Point a = parsePoint(parts[2]);
+            Point b = parsePoint(parts[3]);
+            if (a == null || b == null) continue;
+
+            List<Point> pts = new ArrayList<>();
+            if (!parts[4].isBlank()) {
+                for (String pt : parts[4].split(";")) {
+                    Point q = parsePoint(pt);
+                    if (q != null) pts.add(q);
+                }
+            }
+
+            store.put(new RouteStore.Key(maskHash, stride, diag, a.x, a.y, b.x, b.y), Polyline.of(pts));
+        }
+    }
+
+    private static Point parsePoint(String s) {
+        if (s == null) return null;
+        String[] xy = s.split(",");
+        if (xy.length != 2) return null;
+        int x = parseIntSafe(xy[0], -1);
+        int y = parseIntSafe(xy[1], -1);
+        return (x >= 0 && y >= 0) ? new Point(x, y) : null;
+    }
 }
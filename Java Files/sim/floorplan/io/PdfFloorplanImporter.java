@@ -1,15 +1,26 @@
 package sim.floorplan.io;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
 public class PdfFloorplanImporter {
 
+    /** Receives one rendered band: rows [y0, y0 + band.getHeight()) of the page, full width. */
+    public interface BandSink {
+        void band(BufferedImage band, int y0) throws IOException;
+    }
+
     /**
      * Render a single PDF page to a BufferedImage at the requested DPI.
      *
@@ -18,15 +29,10 @@ public class PdfFloorplanImporter {
      * @param dpi       e.g. 150 / 200 / 300
      */
     public static BufferedImage renderPage(File pdfFile, int pageIndex, int dpi) throws IOException {
-        if (pdfFile == null) throw new IllegalArgumentException("pdfFile is null");
-        if (!pdfFile.exists()) throw new IllegalArgumentException("PDF does not exist: " + pdfFile.getAbsolutePath());
-        if (dpi <= 0) throw new IllegalArgumentException("dpi must be > 0");
+        checkArgs(pdfFile, dpi);
 
         try (PDDocument doc = PDDocument.load(pdfFile)) {
-            int pageCount = doc.getNumberOfPages();
-            if (pageCount <= 0) throw new IllegalArgumentException("PDF has no pages.");
-
-            int idx = Math.max(0, Math.min(pageIndex, pageCount - 1));
+            int idx = pageIndexIn(doc, pageIndex);
 
             PDFRenderer renderer = new PDFRenderer(doc);
 
@@ -34,4 +40,82 @@ public class PdfFloorplanImporter {
             return renderer.renderImageWithDPI(idx, dpi, ImageType.RGB);
         }
     }
+
+    /** Pixel size {@link #renderPage} would produce (crop box, page rotation applied), without rendering. */
+    public static Dimension pageSizePx(File pdfFile, int pageIndex, int dpi) throws IOException {
+        checkArgs(pdfFile, dpi);
+
+        try (PDDocument doc = PDDocument.load(pdfFile)) {
+            return sizeAt(doc.getPage(pageIndexIn(doc, pageIndex)), dpi / 72f);
+        }
+    }
+
+    /**
+     * ✅ Streaming render for high-DPI sheets: the page is drawn bandRows rows at a time into one reused
+     * band image (translate + clip, so each pass only rasterizes its own rows) and handed to the sink.
+     * Pixels match {@link #renderPage}; the full-page composite never exists in memory.
+     *
+     * The page's content stream is re-interpreted per band, so this trades CPU for memory:
+     * use it only when the full image won't fit. Returns the page size in pixels.
+     */
+    public static Dimension renderPageBands(File pdfFile, int pageIndex, int dpi, int bandRows, BandSink sink)
+            throws IOException {
+        checkArgs(pdfFile, dpi);
+        if (bandRows <= 0) throw new IllegalArgumentException("bandRows must be > 0");
+        if (sink == null) throw new IllegalArgumentException("sink is null");
+
+        try (PDDocument doc = PDDocument.load(pdfFile)) {
+            int idx = pageIndexIn(doc, pageIndex);
+            float scale = dpi / 72f;
+            Dimension size = sizeAt(doc.getPage(idx), scale);
+
+            PDFRenderer renderer = new PDFRenderer(doc);
+            BufferedImage band = new BufferedImage(size.width, Math.min(bandRows, size.height), BufferedImage.TYPE_INT_RGB);
+
+            for (int y0 = 0; y0 < size.height; y0 += bandRows) {
+                int rows = Math.min(bandRows, size.height - y0);
+                BufferedImage out = (rows == band.getHeight()) ? band : band.getSubimage(0, 0, size.width, rows);
+
+                Graphics2D g = band.createGraphics();
+                try {
+                    g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    g.setBackground(Color.WHITE);            // renderPageToGraphics clears with it
+                    g.clearRect(0, 0, size.width, rows);
+                    g.clipRect(0, 0, size.width, rows);
+                    g.translate(0, -y0);
+                    renderer.renderPageToGraphics(idx, g, scale);
+                } finally {
+                    g.dispose();
+                }
+
+                sink.band(out, y0);
+            }
+            return size;
+        }
+    }
+
+    // ---------- helpers ----------
+
+    private static void checkArgs(File pdfFile, int dpi) {
+        if (pdfFile == null) throw new IllegalArgumentException("pdfFile is null");
+        if (!pdfFile.exists()) throw new IllegalArgumentException("PDF does not exist: " + pdfFile.getAbsolutePath());
+        if (dpi <= 0) throw new IllegalArgumentException("dpi must be > 0");
+    }
+
+    private static int pageIndexIn(PDDocument doc, int pageIndex) {
+        int pageCount = doc.getNumberOfPages();
+        if (pageCount <= 0) throw new IllegalArgumentException("PDF has no pages.");
+        return Math.max(0, Math.min(pageIndex, pageCount - 1));
+    }
+
+    /** Same rounding as PDFRenderer.renderImage. */
+    private static Dimension sizeAt(PDPage page, float scale) {
+        PDRectangle crop = page.getCropBox();
+        int w = Math.max(1, (int) Math.max(Math.floor(crop.getWidth() * scale), 1));
+        int h = Math.max(1, (int) Math.max(Math.floor(crop.getHeight() * scale), 1));
+
+        int rotation = page.getRotation();
+        if (rotation == 90 || rotation == 270) return new Dimension(h, w);
+        return new Dimension(w, h);
+    }
 }
@@ -0,0 +1,466 @@
+package sim.floorplan.io;
+
+import sim.floorplan.model.WalkMask;
+import sim.floorplan.path.VisibilityGraphRouter;
+import sim.floorplan.sim.FloorplanTravelTimeProvider;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * ✅ Sidecar cache next to a large .fsp ({@code plan.fsp.cache/}) so reopening maps files instead of decoding.
+ *
+ * Holds the floorplan as raw level-0 tiles, the packed mask words, the visibility-graph corners and the
+ * anchor-pair travel distances, all little-endian. The image and mask parts are keyed by the CRC-32 and size
+ * of the zip entry they were decoded from; corners and distances by the mask content hash. A part whose key
+ * doesn't match is ignored (and rewritten on the next save), so the cache never needs explicit invalidation.
+ *
+ * The image stays in the mapped file: {@link #mapImage} returns a read-only view that costs almost no heap,
+ * and tile painters pull whole tiles from it ({@link Mapping#readTile}). Everything here is best-effort; callers
+ * fall back to the .fsp itself on any IOException.
+ */
+public final class ProjectCache {
+
+    public static final int TILE = DiskTilePyramid.TILE;
+
+    /** BufferedImage property holding the {@link Mapping} behind a {@link #mapImage} image. */
+    public static final String IMAGE_PROPERTY = "sim.floorplan.projectCache";
+
+    private static final String META = "cache.properties";
+    private static final String IMAGE = "image.bin";
+    private static final String MASK = "mask.bin";
+    private static final String CORNERS = "corners.bin";
+    private static final String TRAVEL = "travel.bin";
+
+    private static final int TILE_INTS = TILE * TILE;
+    private static final long TILE_BYTES = 4L * TILE_INTS;
+    private static final int TILES_PER_CHUNK = 4096;   // 1 GB per mapping (a mapping can't exceed 2 GB)
+
+    private final File dir;
+    private final Properties meta = new Properties();
+
+    // mapped image (lazily)
+    private BufferedImage image;
+
+    private ProjectCache(File dir) {
+        this.dir = dir;
+    }
+
+    /** Sidecar directory for a project file. */
+    public static File dirFor(File fsp) {
+        return new File(fsp.getAbsoluteFile().getParentFile(), fsp.getName() + ".cache");
+    }
+
+    /** The cache next to fsp, or null if there isn't one. */
+    public static ProjectCache open(File fsp) {
+        File dir = dirFor(fsp);
+        if (!dir.isDirectory()) return null;
+        ProjectCache c = new ProjectCache(dir);
+        try (InputStream in = new FileInputStream(new File(dir, META))) {
+            c.meta.load(in);
+        } catch (IOException ex) {
+            return c; // empty: every part misses
+        }
+        return c;
+    }
+
+    /** The cache next to fsp, created if needed. */
+    public static ProjectCache create(File fsp) throws IOException {
+        ProjectCache c = open(fsp);
+        if (c != null) return c;
+        File dir = dirFor(fsp);
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir.getAbsolutePath());
+        return new ProjectCache(dir);
+    }
+
+    /** Key for a part decoded from a zip entry: its CRC-32 and uncompressed size. */
+    public static String entryKey(long crc, long size) {
+        return Long.toHexString(crc) + ":" + size;
+    }
+
+    // ---------- image ----------
+
+    /** Whether image.bin holds the image stored under this entry key. */
+    public boolean hasImage(String key) {
+        return key.equals(meta.getProperty("image.key")) && new File(dir, IMAGE).isFile();
+    }
+
+    /**
+     * Read-only image over the mapped tiles, or null if the cached image isn't the one with this key.
+     * Pixels are fetched from the mapping on demand; painters should use {@link Mapping#readTile}.
+     */
+    public synchronized BufferedImage mapImage(String key) throws IOException {
+        if (!hasImage(key)) return null;
+        if (image != null) return image;
+
+        int imageWidth = parseInt(meta.getProperty("image.width"));
+        int imageHeight = parseInt(meta.getProperty("image.height"));
+        if (imageWidth <= 0 || imageHeight <= 0) return null;
+        if ((long) imageWidth * imageHeight > Integer.MAX_VALUE) return null;
+        int tilesX = (imageWidth + TILE - 1) / TILE;
+        int tilesY = (imageHeight + TILE - 1) / TILE;
+
+        int tiles = tilesX * tilesY;
+        File f = new File(dir, IMAGE);
+        if (f.length() != tiles * TILE_BYTES) return null;
+
+        IntBuffer[] chunks = new IntBuffer[(tiles + TILES_PER_CHUNK - 1) / TILES_PER_CHUNK];
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < chunks.length; i++) {
+                long pos = (long) i * TILES_PER_CHUNK * TILE_BYTES;
+                long len = Math.min(TILES_PER_CHUNK * TILE_BYTES, ch.size() - pos);
+                MappedByteBuffer mb = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                chunks[i] = mb.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+        }
+
+        DirectColorModel cm = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+        SinglePixelPackedSampleModel sm = new SinglePixelPackedSampleModel(
+                DataBuffer.TYPE_INT, imageWidth, imageHeight, cm.getMasks());
+        Mapping mapping = new Mapping(imageWidth, imageHeight, tilesX, chunks);
+        WritableRaster raster = Raster.createWritableRaster(sm, new MappedTileBuffer(mapping), null);
+
+        Hashtable<String, Object> props = new Hashtable<>();
+        props.put(IMAGE_PROPERTY, mapping);
+        image = new BufferedImage(cm, raster, false, props);
+        return image;
+    }
+
+    /** The mapping behind img, or null for an ordinary image. */
+    public static Mapping of(Image img) {
+        if (img == null) return null;
+        Object p = img.getProperty(IMAGE_PROPERTY, null);
+        return (p instanceof Mapping) ? (Mapping) p : null;
+    }
+
+    /**
+     * One mapping of image.bin. Views keep the mapping they were made over, so replacing the file
+     * ({@link #writeImage}) never changes what an existing view shows.
+     */
+    public static final class Mapping {
+        private final int width, height, tilesX;
+        private final IntBuffer[] chunks;
+
+        private Mapping(int width, int height, int tilesX, IntBuffer[] chunks) {
+            this.width = width;
+            this.height = height;
+            this.tilesX = tilesX;
+            this.chunks = chunks;
+        }
+
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+
+        /** Tile (tx,ty) of the mapped image copied to the heap (edge tiles cropped). */
+        public BufferedImage readTile(int tx, int ty) {
+            int cols = Math.min(TILE, width - tx * TILE);
+            int rows = Math.min(TILE, height - ty * TILE);
+            BufferedImage out = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+            int[] dst = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
+
+            IntBuffer src = tileBuffer(tx, ty);
+            for (int y = 0; y < rows; y++) {
+                src.position(y * TILE);
+                src.get(dst, y * cols, cols);
+            }
+            return out;
+        }
+
+        /** Duplicate (own position) of one tile's mapped ints. */
+        private IntBuffer tileBuffer(int tx, int ty) {
+            int t = ty * tilesX + tx;
+            IntBuffer chunk = chunks[t / TILES_PER_CHUNK].duplicate();
+            int off = (t % TILES_PER_CHUNK) * TILE_INTS;
+            chunk.position(off).limit(off + TILE_INTS);
+            return chunk.slice();
+        }
+
+        /** Pixel i (row-major) of the image. */
+        int pixel(int i) {
+            int y = i / width;
+            int x = i - y * width;
+            int t = (y / TILE) * tilesX + (x / TILE);
+            int off = (t % TILES_PER_CHUNK) * TILE_INTS + (y % TILE) * TILE + (x % TILE);
+            return chunks[t / TILES_PER_CHUNK].get(off) & 0xFFFFFF;
+        }
+    }
+
+    /** Writes image.bin (tiles padded to full size, row-major inside a tile) for the image under this entry key. */
+    public synchronized void writeImage(String key, BufferedImage img) throws IOException {
+        int w = img.getWidth(), h = img.getHeight();
+        int tx = (w + TILE - 1) / TILE, ty = (h + TILE - 1) / TILE;
+
+        invalidate("image.key");
+        ByteBuffer band = ByteBuffer.allocateDirect((int) (tx * TILE_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        IntBuffer ints = band.asIntBuffer();
+        int[] row = new int[w];
+
+        Path tmp = tempFor(IMAGE);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int j = 0; j < ty; j++) {
+                // one band of tiles: tile i occupies ints [i * TILE_INTS, (i + 1) * TILE_INTS);
+                // padding past the image edge is never read, so it isn't cleared
+                band.clear();
+                ints.clear();
+                int rows = Math.min(TILE, h - j * TILE);
+                for (int y = 0; y < rows; y++) {
+                    img.getRGB(0, j * TILE + y, w, 1, row, 0, w);
+                    for (int i = 0; i < tx; i++) {
+                        int cols = Math.min(TILE, w - i * TILE);
+                        ints.position(i * TILE_INTS + y * TILE);
+                        ints.put(row, i * TILE, cols);
+                    }
+                }
+                band.position(0).limit((int) (tx * TILE_BYTES));
+                while (band.hasRemaining()) ch.write(band);
+            }
+        }
+        replace(tmp, IMAGE);
+
+        image = null;   // views of the old file keep their own Mapping
+        meta.setProperty("image.width", Integer.toString(w));
+        meta.setProperty("image.height", Integer.toString(h));
+        commit("image.key", key);
+    }
+
+    /** Level-0 pixels of the mapped tiles as a DataBuffer (one int per pixel, row-major); writes are rejected. */
+    private static final class MappedTileBuffer extends DataBuffer {
+        private final Mapping mapping;
+
+        MappedTileBuffer(Mapping mapping) {
+            super(DataBuffer.TYPE_INT, mapping.width * mapping.height);
+            this.mapping = mapping;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            return mapping.pixel(i);
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+            throw new UnsupportedOperationException("cached floorplan images are read-only");
+        }
+    }
+
+    // ---------- mask ----------
+
+    public boolean hasMask(String key) {
+        return key.equals(meta.getProperty("mask.key")) && new File(dir, MASK).isFile();
+    }
+
+    /** The mask decoded from the entry with this key, or null if the cache holds a different one. */
+    public WalkMask readMask(String key) throws IOException {
+        if (!hasMask(key)) return null;
+        int w = parseInt(meta.getProperty("mask.width"));
+        int h = parseInt(meta.getProperty("mask.height"));
+        if (w <= 0 || h <= 0) return null;
+
+        File f = new File(dir, MASK);
+        long words = (long) ((w + 63) >>> 6) * h;
+        if (words > Integer.MAX_VALUE - 8 || f.length() != words * 8) return null;
+
+        long[] bits = new long[(int) words];
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            LongBuffer lb = ch.map(FileChannel.MapMode.READ_ONLY, 0, words * 8)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            lb.get(bits);
+        }
+
+        WalkMask m = new WalkMask(w, h);
+        m.setAllWalkableBits(bits);
+        return m;
+    }
+
+    /** Writes mask.bin (packed rows, ceil(w/64) words each) for the mask stored under this entry key. */
+    public synchronized void writeMask(String key, WalkMask mask) throws IOException {
+        int w = mask.getWidth(), h = mask.getHeight();
+        int wordsPerRow = (w + 63) >>> 6;
+
+        invalidate("mask.key");
+        int rowsPerBuf = Math.max(1, (1 << 20) / (wordsPerRow * 8));
+        ByteBuffer buf = ByteBuffer.allocateDirect(rowsPerBuf * wordsPerRow * 8).order(ByteOrder.LITTLE_ENDIAN);
+        LongBuffer longs = buf.asLongBuffer();
+        long[] row = new long[wordsPerRow];
+
+        Path tmp = tempFor(MASK);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int y0 = 0; y0 < h; y0 += rowsPerBuf) {
+                int rows = Math.min(rowsPerBuf, h - y0);
+                longs.clear();
+                for (int y = 0; y < rows; y++) {
+                    mask.getRowBits(y0 + y, row, 0);
+                    longs.put(row);
+                }
+                buf.position(0).limit(rows * wordsPerRow * 8);
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+        }
+        replace(tmp, MASK);
+
+        meta.setProperty("mask.width", Integer.toString(w));
+        meta.setProperty("mask.height", Integer.toString(h));
+        commit("mask.key", key);
+    }
+
+    // ---------- navigation ----------
+    // corners.bin: n, x[n], y[n], quadrants[n]
+    // travel.bin:  tables, then per table: routing key, n, n x (ax, ay, bx, by, px)
+
+    /** Seeds the routers' corner sets and the travel-time tables for this mask content. */
+    public void seedNavigation(long maskHash) {
+        String key = Long.toHexString(maskHash);
+        try {
+            if (key.equals(meta.getProperty("corners.key"))) {
+                ByteBuffer b = readAll(CORNERS);
+                int n = b.getInt();
+                int[] x = new int[n], y = new int[n];
+                byte[] q = new byte[n];
+                b.asIntBuffer().get(x);
+                b.position(b.position() + 4 * n);
+                b.asIntBuffer().get(y);
+                b.position(b.position() + 4 * n);
+                b.get(q);
+                VisibilityGraphRouter.seedCorners(maskHash, new VisibilityGraphRouter.Corners(x, y, q));
+            }
+            if (key.equals(meta.getProperty("travel.key"))) {
+                ByteBuffer b = readAll(TRAVEL);
+                int tables = b.getInt();
+                for (int t = 0; t < tables; t++) {
+                    int routingKey = b.getInt();
+                    int n = b.getInt();
+                    Map<Map.Entry<Point, Point>, Double> px = new HashMap<>();
+                    for (int i = 0; i < n; i++) {
+                        Point a = new Point(b.getInt(), b.getInt());
+                        Point c = new Point(b.getInt(), b.getInt());
+                        px.put(new AbstractMap.SimpleImmutableEntry<>(a, c), b.getDouble());
+                    }
+                    FloorplanTravelTimeProvider.seedDistancesPx(maskHash, routingKey, px);
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // best-effort: routers just rebuild
+        }
+    }
+
+    /** Saves whatever corners / travel distances are known for this mask content. */
+    public synchronized void writeNavigation(long maskHash) throws IOException {
+        String key = Long.toHexString(maskHash);
+
+        VisibilityGraphRouter.Corners c = VisibilityGraphRouter.cornersFor(maskHash);
+        if (c != null && !key.equals(meta.getProperty("corners.key"))) {
+            int n = c.size();
+            ByteBuffer b = ByteBuffer.allocate(4 + 9 * n).order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(n);
+            for (int v : c.x) b.putInt(v);
+            for (int v : c.y) b.putInt(v);
+            b.put(c.quadrants);
+            invalidate("corners.key");
+            writeAll(CORNERS, b);
+            commit("corners.key", key);
+        }
+
+        Map<Integer, Map<Map.Entry<Point, Point>, Double>> tables = FloorplanTravelTimeProvider.knownDistancesPx(maskHash);
+        if (!tables.isEmpty()) {
+            int size = 4;
+            for (Map<Map.Entry<Point, Point>, Double> t : tables.values()) size += 8 + 24 * t.size();
+            ByteBuffer b = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(tables.size());
+            for (Map.Entry<Integer, Map<Map.Entry<Point, Point>, Double>> t : tables.entrySet()) {
+                b.putInt(t.getKey());
+                b.putInt(t.getValue().size());
+                for (Map.Entry<Map.Entry<Point, Point>, Double> e : t.getValue().entrySet()) {
+                    Point a = e.getKey().getKey(), d = e.getKey().getValue();
+                    b.putInt(a.x).putInt(a.y).putInt(d.x).putInt(d.y).putDouble(e.getValue());
+                }
+            }
+            invalidate("travel.key");
+            writeAll(TRAVEL, b);
+            commit("travel.key", key);
+        }
+    }
+
+    // ---------- internals ----------
+
+    private ByteBuffer readAll(String name) throws IOException {
+        try (FileChannel ch = FileChannel.open(new File(dir, name).toPath(), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private void writeAll(String name, ByteBuffer b) throws IOException {
+        b.flip();
+        Path tmp = tempFor(name);
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (b.hasRemaining()) ch.write(b);
+        }
+        replace(tmp, name);
+    }
+
+    // parts are written beside the old file and renamed over it: an open mapping keeps the old
+    // file's pages, whereas truncating a mapped file in place faults the next read
+    private Path tempFor(String name) {
+        return new File(dir, name + ".tmp").toPath();
+    }
+
+    private void replace(Path tmp, String name) throws IOException {
+        Path target = new File(dir, name).toPath();
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Drops a part's key before its file is rewritten, so a crash mid-write leaves it unmatched. */
+    private void invalidate(String keyName) throws IOException {
+        if (meta.remove(keyName) != null) storeMeta();
+    }
+
+    private void commit(String keyName, String key) throws IOException {
+        meta.setProperty(keyName, key);
+        storeMeta();
+    }
+
+    private void storeMeta() throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(dir, META))) {
+            meta.store(out, "floorplan project cache");
+        }
+    }
+
+    private static int parseInt(String s) {
+        try { return Integer.parseInt(s.trim()); } catch (Exception ignored) { return 0; }
+    }
+}
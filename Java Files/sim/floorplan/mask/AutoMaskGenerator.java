@@ -2,12 +2,10 @@ package sim.floorplan.mask;
 
 import sim.floorplan.model.WalkMask;
 
-import java.awt.*;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.List;
 
 public class AutoMaskGenerator {
 
@@ -34,35 +32,30 @@ public class AutoMaskGenerator {
 
     /** New improved generator. */
     public static WalkMask generate(BufferedImage img, Params p) {
+        return generate(img, p, null);
+    }
+
+    /** Same, reusing distance fields kept in cache (null = nothing kept between calls). */
+    public static WalkMask generate(BufferedImage img, Params p, FieldCache cache) {
         if (img == null) throw new IllegalArgumentException("img is null");
 
         int w = img.getWidth();
         int h = img.getHeight();
 
-        // 1) Grayscale
-        int[] gray = toGrayscale(img);
-
-        // 2) Threshold (manual or auto)
-        int thr = (p != null && p.autoThreshold) ? otsuThreshold(gray) : (p == null ? 200 : p.threshold);
-        thr = clamp(thr, 0, 255);
+        // 1-3) Grayscale + threshold -> distance to the nearest dark pixel (cached per image/threshold)
+        Fields fields = fieldsFor(img, p, cache);
 
-        // 3) Raw blocked map: dark pixels = blocked
-        boolean[] blocked = new boolean[w * h];
-        for (int i = 0; i < blocked.length; i++) {
-            blocked[i] = gray[i] < thr;
-        }
-
-        // 4) Inflate walls (thicken blocked)
+        // 4) Inflate walls (thicken blocked): a threshold on the distance field
         int inflate = Math.max(0, p == null ? 6 : p.inflatePx);
-        boolean[] blockedInflated = (inflate > 0) ? dilate(blocked, w, h, inflate) : blocked;
+        boolean[] blockedInflated = fields.walls.dilate(inflate);
 
         // 5) Remove outside (FIX: seal gaps FIRST so flood-fill can't leak through doors)
         boolean removeOutside = (p == null) || p.removeOutside;
         if (removeOutside) {
             int seal = Math.max(0, p == null ? 14 : p.sealGapsPx);
 
-            // Only for outside-detection: extra dilation to “close” perimeter openings.
-            boolean[] sealed = (seal > 0) ? dilate(blockedInflated, w, h, seal) : blockedInflated;
+            // Only for outside-detection: extra dilation (of the inflated walls) to “close” perimeter openings.
+            boolean[] sealed = (seal > 0) ? fields.sealField(inflate, blockedInflated, w, h).dilate(seal) : blockedInflated;
 
             boolean[] outside = floodFillOutside(sealed, w, h);
             // Anything reachable from image border through “walkable” is outside => force blocked
@@ -72,47 +65,184 @@ public class AutoMaskGenerator {
         }
 
         // 6) Convert to WalkMask (walkable = NOT blocked)
+        boolean[] walkable = blockedInflated;
+        for (int i = 0; i < walkable.length; i++) walkable[i] = !walkable[i];
+
         WalkMask mask = newMask(w, h);
-        for (int y = 0; y < h; y++) {
-            int row = y * w;
-            for (int x = 0; x < w; x++) {
-                boolean walkable = !blockedInflated[row + x];
-                mask.setWalkable(x, y, walkable);
+        mask.setAllWalkable(walkable);
+        return mask;
+    }
+
+    /**
+     * ✅ ROI mode: regenerates only {@code roi} (IMAGE pixels) of an existing mask and merges it in place.
+     *
+     * The image is read over the ROI padded by the inflate (+ seal) radius, so walls just outside the ROI
+     * still inflate into it exactly as a full run would. Pixels outside the ROI (manual edits included)
+     * are untouched, and the mask version is bumped once with the ROI as the changed region.
+     *
+     * Outside removal floods from the image edges the padded ROI touches, like a full run. Across the other
+     * crop edges the outside status can't be decided locally, so the current mask decides it: pixels the new
+     * pass leaves open but the mask blocks stay blocked when they connect (through such pixels) to a blocked
+     * pixel on one of those edges. Outside areas that continue past an interior ROI therefore stay blocked,
+     * while areas the mask already has walkable get the regenerated result. Returns true if the mask changed.
+     */
+    public static boolean regenerateRegion(BufferedImage img, Params p, WalkMask target, Rectangle roi) {
+        if (img == null) throw new IllegalArgumentException("img is null");
+        if (target == null) throw new IllegalArgumentException("target is null");
+        if (target.getWidth() != img.getWidth() || target.getHeight() != img.getHeight()) {
+            throw new IllegalArgumentException("mask size doesn't match image");
+        }
+
+        Rectangle bounds = new Rectangle(0, 0, img.getWidth(), img.getHeight());
+        Rectangle r = (roi == null) ? new Rectangle() : roi.intersection(bounds);
+        if (r.isEmpty()) return false;
+
+        int inflate = Math.max(0, p == null ? 6 : p.inflatePx);
+        boolean removeOutside = (p == null) || p.removeOutside;
+        int seal = removeOutside ? Math.max(0, p == null ? 14 : p.sealGapsPx) : 0;
+
+        int pad = inflate + seal;
+        Rectangle crop = new Rectangle(r.x - pad, r.y - pad, r.width + 2 * pad, r.height + 2 * pad).intersection(bounds);
+        int cw = crop.width;
+        int ch = crop.height;
+
+        // 1-3) threshold over the crop (auto threshold still comes from the whole page)
+        int thr = (p != null && p.autoThreshold)
+                ? clamp(otsuThreshold(LumaRaster.histogram(img)), 0, 255)
+                : clamp(p == null ? 200 : p.threshold, 0, 255);
+        boolean[] blocked = LumaRaster.threshold(img, thr, crop);
+
+        // 4) inflate
+        boolean[] blockedInflated = DistanceField.ofBlocked(blocked, cw, ch).dilate(inflate);
+
+        // 5) outside: flooded from crop edges that are image edges...
+        if (removeOutside) {
+            boolean top = crop.y == 0, left = crop.x == 0;
+            boolean bottom = crop.y + ch == bounds.height, right = crop.x + cw == bounds.width;
+
+            boolean[] sealed = (seal > 0) ? DistanceField.ofBlocked(blockedInflated, cw, ch).dilate(seal) : blockedInflated;
+            boolean[] outside = ScanlineFill.fromEdges(sealed, false, cw, ch, top, left, bottom, right);
+
+            // ...and carried in from the current mask across the other edges (open here, blocked there)
+            if (!(top && left && bottom && right)) {
+                boolean[] carried = new boolean[cw * ch];
+                for (int y = 0; y < ch; y++) {
+                    for (int x = 0; x < cw; x++) {
+                        int i = y * cw + x;
+                        carried[i] = !sealed[i] && !target.isWalkable(crop.x + x, crop.y + y);
+                    }
+                }
+                boolean[] kept = ScanlineFill.fromEdges(carried, true, cw, ch, !top, !left, !bottom, !right);
+                for (int i = 0; i < kept.length; i++) {
+                    if (kept[i]) outside[i] = true;
+                }
+            }
+
+            for (int i = 0; i < outside.length; i++) {
+                if (outside[i]) blockedInflated[i] = true;
             }
         }
-        return mask;
+
+        // 6) merge the ROI (not the padding) into the mask
+        boolean[] walkable = new boolean[r.width * r.height];
+        for (int y = 0; y < r.height; y++) {
+            int src = (r.y - crop.y + y) * cw + (r.x - crop.x);
+            int dst = y * r.width;
+            for (int x = 0; x < r.width; x++) walkable[dst + x] = !blockedInflated[src + x];
+        }
+
+        int before = target.getVersion();
+        target.setWalkableRegion(r, walkable);
+        return target.getVersion() != before;
     }
 
     // =========================
-    // Helpers
+    // Distance-field cache
     // =========================
 
-    private static int[] toGrayscale(BufferedImage img) {
+    /**
+     * ✅ Distance fields of the last image one owner (e.g. an editor) generated from.
+     * Changing inflate/seal only re-thresholds these; changing the threshold (or the image) rebuilds.
+     * Keyed by image identity: rendered pages are never modified in place.
+     *
+     * The fields take ~8 bytes/px, so the owner {@link #clear()}s this when its image goes away
+     * (they are also dropped once the image itself has been collected).
+     */
+    public static final class FieldCache {
+        private Fields last;
+
+        public synchronized void clear() { last = null; }
+    }
+
+    private static final class Fields {
+        final WeakReference<BufferedImage> image;
+        final int thresholdKey;          // -1 = auto (Otsu)
+        final DistanceField walls;       // distance to raw dark pixels
+
+        private int sealInflate = -1;
+        private DistanceField seal;      // distance to the walls inflated by sealInflate
+
+        Fields(BufferedImage image, int thresholdKey, DistanceField walls) {
+            this.image = new WeakReference<>(image);
+            this.thresholdKey = thresholdKey;
+            this.walls = walls;
+        }
+
+        synchronized DistanceField sealField(int inflate, boolean[] blockedInflated, int w, int h) {
+            if (seal == null || sealInflate != inflate) {
+                seal = DistanceField.ofBlocked(blockedInflated, w, h);
+                sealInflate = inflate;
+            }
+            return seal;
+        }
+    }
+
+    private static Fields fieldsFor(BufferedImage img, Params p, FieldCache cache) {
+        int key = (p != null && p.autoThreshold) ? -1 : clamp(p == null ? 200 : p.threshold, 0, 255);
+        if (cache == null) return buildFields(img, key);
+
+        synchronized (cache) {
+            Fields f = cache.last;
+            if (f != null && f.image.get() == img && f.thresholdKey == key) return f;
+            cache.last = null; // let the old fields go (also when their image was collected) before allocating
+
+            f = buildFields(img, key);
+            cache.last = f;
+            return f;
+        }
+    }
+
+    private static Fields buildFields(BufferedImage img, int key) {
         int w = img.getWidth();
         int h = img.getHeight();
-        int[] out = new int[w * h];
-
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int argb = img.getRGB(x, y);
-                int r = (argb >> 16) & 0xFF;
-                int g = (argb >> 8) & 0xFF;
-                int b = (argb) & 0xFF;
-
-                // Luma (good for plans)
-                int gray = (int) Math.round(0.2126 * r + 0.7152 * g + 0.0722 * b);
-                out[y * w + x] = gray;
+
+        // 1-3) Grayscale + threshold (manual or auto), fused and straight from the raster:
+        // dark pixels = blocked
+        boolean[] blocked;
+        if (key >= 0) {
+            blocked = LumaRaster.threshold(img, key);
+        } else {
+            int[] hist = new int[256];
+            byte[] gray = LumaRaster.lumaWithHistogram(img, hist);
+            int thr = clamp(otsuThreshold(hist), 0, 255);
+
+            blocked = new boolean[w * h];
+            for (int i = 0; i < blocked.length; i++) {
+                blocked[i] = (gray[i] & 0xFF) < thr;
             }
         }
-        return out;
+
+        return new Fields(img, key, DistanceField.ofBlocked(blocked, w, h));
     }
 
-    /** Otsu threshold: robust for “black lines on white background” plans. */
-    private static int otsuThreshold(int[] gray) {
-        int[] hist = new int[256];
-        for (int v : gray) hist[clamp(v, 0, 255)]++;
+    // =========================
+    // Helpers
+    // =========================
 
-        int total = gray.length;
+    /** Otsu threshold: robust for “black lines on white background” plans. */
+    static int otsuThreshold(int[] hist) {
+        int total = 0;
+        for (int c : hist) total += c;
         long sum = 0;
         for (int i = 0; i < 256; i++) sum += (long) i * hist[i];
 
@@ -144,39 +274,6 @@ public class AutoMaskGenerator {
         return threshold;
     }
 
-    /** Dilation with a circular structuring element. */
-    private static boolean[] dilate(boolean[] src, int w, int h, int radius) {
-        if (radius <= 0) return src;
-
-        int r = radius;
-        int rr = r * r;
-
-        // offsets in a disk
-        List<Point> offsets = new ArrayList<>();
-        for (int dy = -r; dy <= r; dy++) {
-            for (int dx = -r; dx <= r; dx++) {
-                if (dx * dx + dy * dy <= rr) offsets.add(new Point(dx, dy));
-            }
-        }
-
-        boolean[] out = new boolean[w * h];
-
-        for (int y = 0; y < h; y++) {
-            int row = y * w;
-            for (int x = 0; x < w; x++) {
-                if (!src[row + x]) continue;
-
-                for (Point o : offsets) {
-                    int nx = x + o.x;
-                    int ny = y + o.y;
-                    if (nx < 0 || ny < 0 || nx >= w || ny >= h) continue;
-                    out[ny * w + nx] = true;
-                }
-            }
-        }
-        return out;
-    }
-
     /**
      * Flood-fill "outside": start from border pixels that are WALKABLE (not blocked),
      * and mark everything reachable as outside.
@@ -185,53 +282,12 @@ public class AutoMaskGenerator {
      * Outside fill moves through !blocked.
      */
     private static boolean[] floodFillOutside(boolean[] srcBlocked, int w, int h) {
-        boolean[] outside = new boolean[w * h];
-        ArrayDeque<Integer> q = new ArrayDeque<>();
-
-        // Seed from borders where NOT blocked
-        for (int x = 0; x < w; x++) {
-            seedIfWalkable(0, x, srcBlocked, w, outside, q);
-            seedIfWalkable(h - 1, x, srcBlocked, w, outside, q);
-        }
-        for (int y = 0; y < h; y++) {
-            seedIfWalkable(y, 0, srcBlocked, w, outside, q);
-            seedIfWalkable(y, w - 1, srcBlocked, w, outside, q);
-        }
-
-        // BFS 4-neighbor
-        while (!q.isEmpty()) {
-            int idx = q.removeFirst();
-            int x = idx % w;
-            int y = idx / w;
-
-            // neighbors
-            if (x > 0)       tryVisit(idx - 1, srcBlocked, outside, q);
-            if (x < w - 1)   tryVisit(idx + 1, srcBlocked, outside, q);
-            if (y > 0)       tryVisit(idx - w, srcBlocked, outside, q);
-            if (y < h - 1)   tryVisit(idx + w, srcBlocked, outside, q);
-        }
-
-        return outside;
-    }
-
-    private static void seedIfWalkable(int y, int x, boolean[] blocked, int w,
-                                       boolean[] outside, ArrayDeque<Integer> q) {
-        int idx = y * w + x;
-        if (!blocked[idx] && !outside[idx]) {
-            outside[idx] = true;
-            q.add(idx);
-        }
-    }
-
-    private static void tryVisit(int idx, boolean[] blocked, boolean[] outside, ArrayDeque<Integer> q) {
-        if (outside[idx]) return;
-        if (blocked[idx]) return;
-        outside[idx] = true;
-        q.add(idx);
+        // ✅ span fill on primitive arrays (same pixels as the old 4-neighbor BFS, no boxed queue)
+        return ScanlineFill.fromBorder(srcBlocked, false, w, h);
     }
 
     /** Create WalkMask with reflection so we don't depend on a specific constructor signature. */
-    private static WalkMask newMask(int w, int h) {
+    static WalkMask newMask(int w, int h) {
         try {
             Constructor<WalkMask> c = WalkMask.class.getConstructor(int.class, int.class);
             return c.newInstance(w, h);
@@ -0,0 +1,180 @@
+package sim.floorplan.mask;
+
+import sim.floorplan.model.WalkMask;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Exact squared Euclidean distance from every pixel to the nearest blocked pixel
+ * (Felzenszwalb &amp; Huttenlocher: a column pass, then a lower-envelope-of-parabolas row pass; O(pixels)).
+ * Both passes run in bands on the common ForkJoin pool.
+ *
+ * Dilating the blocked set by a disk of radius r is then just {@code squaredDistance <= r*r},
+ * which is the same pixel set as stamping a disk on every blocked pixel, for any r, without recomputing.
+ */
+public final class DistanceField {
+
+    /** Squared distance reported when there is no blocked pixel at all. */
+    public static final int NONE = Integer.MAX_VALUE;
+
+    private static final int COLUMN_BAND = 256;
+    private static final int ROW_BAND = 32;
+
+    private final int width;
+    private final int height;
+    private final int[] d2;
+
+    private DistanceField(int width, int height, int[] d2) {
+        this.width = width;
+        this.height = height;
+        this.d2 = d2;
+    }
+
+    /** Field over a row-major blocked map (true = blocked). */
+    public static DistanceField ofBlocked(boolean[] blocked, int w, int h) {
+        if (blocked == null || w <= 0 || h <= 0 || blocked.length < w * h) {
+            throw new IllegalArgumentException("blocked map doesn't match " + w + "x" + h);
+        }
+
+        final int[] d2 = new int[w * h];
+
+        // 1) columns: distance to the nearest blocked pixel in the same column.
+        // Walked row by row (cache-friendly) over bands of columns, one band per task.
+        forEachBand(w, COLUMN_BAND, (x0, x1) -> {
+            int[] last = new int[x1 - x0];
+            Arrays.fill(last, -1);
+            for (int y = 0; y < h; y++) {
+                int row = y * w;
+                for (int x = x0; x < x1; x++) {
+                    if (blocked[row + x]) last[x - x0] = y;
+                    int l = last[x - x0];
+                    d2[row + x] = (l < 0) ? -1 : y - l; // distance up, -1 = none
+                }
+            }
+            Arrays.fill(last, -1);
+            for (int y = h - 1; y >= 0; y--) {
+                int row = y * w;
+                for (int x = x0; x < x1; x++) {
+                    if (blocked[row + x]) last[x - x0] = y;
+                    int l = last[x - x0];
+                    int best = d2[row + x];
+                    if (l >= 0 && (best < 0 || l - y < best)) best = l - y;
+                    d2[row + x] = (best < 0) ? NONE : best * best;
+                }
+            }
+        });
+
+        // 2) rows: 1D transform over the column distances, one band of rows per task
+        forEachBand(h, ROW_BAND, (y0, y1) -> {
+            long[] f = new long[w];
+            long[] out = new long[w];
+            int[] v = new int[w];
+            double[] z = new double[w + 1];
+
+            for (int y = y0; y < y1; y++) {
+                int row = y * w;
+                for (int x = 0; x < w; x++) f[x] = d2[row + x];
+                transform1D(f, w, out, v, z);
+                for (int x = 0; x < w; x++) d2[row + x] = (int) Math.min(NONE, out[x]);
+            }
+        });
+
+        return new DistanceField(w, h, d2);
+    }
+
+    /** Field over a mask's blocked pixels. */
+    public static DistanceField ofMask(WalkMask mask) {
+        if (mask == null) throw new IllegalArgumentException("mask is null");
+        int w = mask.getWidth();
+        int h = mask.getHeight();
+
+        boolean[] blocked = new boolean[w * h];
+        for (int y = 0; y < h; y++) {
+            int row = y * w;
+            for (int x = 0; x < w; x++) blocked[row + x] = !mask.isWalkable(x, y);
+        }
+        return ofBlocked(blocked, w, h);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    /** Squared distance (pixels^2) from (x,y) to the nearest blocked pixel; {@link #NONE} if there is none. */
+    public int squaredDistance(int x, int y) {
+        return d2[y * width + x];
+    }
+
+    /** True if (x,y) is within radius of a blocked pixel (blocked pixels themselves included). */
+    public boolean within(int x, int y, int radius) {
+        return d2[y * width + x] <= radiusSq(radius);
+    }
+
+    /** Blocked map dilated by a disk of the given radius (row-major, true = blocked). */
+    public boolean[] dilate(int radius) {
+        long r2 = radiusSq(radius);
+        boolean[] out = new boolean[d2.length];
+        for (int i = 0; i < d2.length; i++) out[i] = d2[i] <= r2;
+        return out;
+    }
+
+    private interface Band {
+        void run(int from, int to);
+    }
+
+    private static void forEachBand(int n, int bandSize, Band band) {
+        int bands = (n + bandSize - 1) / bandSize;
+        IntStream.range(0, bands).parallel().forEach(b -> {
+            int from = b * bandSize;
+            band.run(from, Math.min(n, from + bandSize));
+        });
+    }
+
+    private static long radiusSq(int radius) {
+        long r = Math.max(0, radius);
+        return Math.min((long) NONE - 1, r * r);
+    }
+
+    /**
+     * d[q] = min over p of (q - p)^2 + f[p]; f[p] &gt;= NONE means "no source at p".
+     * Only finite samples become parabolas, so unreachable entries never enter the arithmetic.
+     */
+    private static void transform1D(long[] f, int n, long[] d, int[] v, double[] z) {
+        int k = -1;
+        for (int q = 0; q < n; q++) {
+            if (f[q] >= NONE) continue;
+
+            if (k < 0) {
+                k = 0;
+                v[0] = q;
+                z[0] = Double.NEGATIVE_INFINITY;
+                z[1] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+
+            double s;
+            while (true) {
+                int p = v[k];
+                s = ((f[q] + (long) q * q) - (f[p] + (long) p * p)) / (2.0 * (q - p));
+                if (s > z[k]) break;
+                k--; // z[0] is -inf, so this never drops below 0
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+
+        if (k < 0) {
+            Arrays.fill(d, 0, n, NONE);
+            return;
+        }
+
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) k++;
+            long dq = q - v[k];
+            d[q] = dq * dq + f[v[k]];
+        }
+    }
+}
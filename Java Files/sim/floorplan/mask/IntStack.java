@@ -0,0 +1,26 @@
+package sim.floorplan.mask;
+
+import java.util.Arrays;
+
+/** Growable stack of primitive ints (no boxing), for flood fills over pixel indices. */
+final class IntStack {
+    private int[] items;
+    private int size;
+
+    IntStack(int initialCapacity) {
+        items = new int[Math.max(16, initialCapacity)];
+    }
+
+    void push(int v) {
+        if (size == items.length) items = Arrays.copyOf(items, size * 2);
+        items[size++] = v;
+    }
+
+    int pop() {
+        return items[--size];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,242 @@
+package sim.floorplan.mask;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.stream.IntStream;
+
+/**
+ * Luma (grayscale) of a floorplan render, read straight from the raster's DataBuffer.
+ *
+ * Known layouts (INT_RGB/ARGB, 3BYTE_BGR, BYTE_GRAY) skip the per-pixel color-model round trip of getRGB;
+ * anything else falls back to row-at-a-time getRGB. Rows are processed in bands on the common ForkJoin pool.
+ * Values are identical to {@code round(0.2126 r + 0.7152 g + 0.0722 b)} of {@code getRGB}.
+ */
+final class LumaRaster {
+
+    private static final int BAND_ROWS = 64;
+
+    // BYTE_GRAY's getRGB maps through the (linear) gray color space: reproduce it exactly once
+    private static final int[] GRAY_LUT = buildGrayLut();
+
+    private LumaRaster() { }
+
+    /** Reads luma values (0..255) of pixels [x0, x0+n) of row y into out[0..n). One reader per band/thread. */
+    private interface RowReader {
+        void read(int y, int x0, int n, int[] out);
+    }
+
+    /** Fused luma + threshold: true = blocked (luma &lt; thr). */
+    static boolean[] threshold(BufferedImage img, int thr) {
+        return threshold(img, thr, new Rectangle(0, 0, img.getWidth(), img.getHeight()));
+    }
+
+    /** Same, for one rectangle of the image (row-major, r.width x r.height). */
+    static boolean[] threshold(BufferedImage img, int thr, Rectangle r) {
+        final int w = r.width;
+        final boolean[] blocked = new boolean[w * r.height];
+
+        forEachBand(r.height, (y0, y1) -> {
+            RowReader reader = readerFor(img);
+            int[] row = new int[w];
+            for (int y = y0; y < y1; y++) {
+                reader.read(r.y + y, r.x, w, row);
+                int o = y * w;
+                for (int x = 0; x < w; x++) blocked[o + x] = row[x] < thr;
+            }
+        });
+        return blocked;
+    }
+
+    /**
+     * Fused luma + threshold straight into packed rows (leftmost pixel = MSB, set = blocked):
+     * image row y goes to dst[(firstRow + y) * wordsPerRow ...]. Whole words are written, so no locking between bands.
+     */
+    static void thresholdPacked(BufferedImage img, int thr, long[] dst, int firstRow, int wordsPerRow) {
+        final int w = img.getWidth();
+
+        forEachBand(img.getHeight(), (y0, y1) -> {
+            RowReader reader = readerFor(img);
+            int[] row = new int[w];
+            for (int y = y0; y < y1; y++) {
+                reader.read(y, 0, w, row);
+                int o = (firstRow + y) * wordsPerRow;
+                for (int wi = 0; wi < wordsPerRow; wi++) {
+                    long bits = 0;
+                    for (int x = wi << 6, end = Math.min(w, x + 64); x < end; x++) {
+                        if (row[x] < thr) bits |= 1L << (63 - (x & 63));
+                    }
+                    dst[o + wi] = bits;
+                }
+            }
+        });
+    }
+
+    /** Luma histogram of the whole image (hist[256]), without keeping the luma. */
+    static int[] histogram(BufferedImage img) {
+        final int w = img.getWidth();
+        final int h = img.getHeight();
+
+        int bands = (h + BAND_ROWS - 1) / BAND_ROWS;
+        final int[][] bandHist = new int[bands][];
+
+        forEachBand(h, (y0, y1) -> {
+            RowReader reader = readerFor(img);
+            int[] row = new int[w];
+            int[] local = new int[256];
+            for (int y = y0; y < y1; y++) {
+                reader.read(y, 0, w, row);
+                for (int x = 0; x < w; x++) local[row[x]]++;
+            }
+            bandHist[y0 / BAND_ROWS] = local;
+        });
+
+        int[] hist = new int[256];
+        for (int[] local : bandHist) {
+            for (int i = 0; i < 256; i++) hist[i] += local[i];
+        }
+        return hist;
+    }
+
+    /** Fused luma + histogram: fills hist[256] and returns luma per pixel (row-major, unsigned bytes). */
+    static byte[] lumaWithHistogram(BufferedImage img, int[] hist) {
+        final int w = img.getWidth();
+        final int h = img.getHeight();
+        final byte[] gray = new byte[w * h];
+
+        int bands = (h + BAND_ROWS - 1) / BAND_ROWS;
+        final int[][] bandHist = new int[bands][];
+
+        forEachBand(h, (y0, y1) -> {
+            RowReader reader = readerFor(img);
+            int[] row = new int[w];
+            int[] local = new int[256];
+            for (int y = y0; y < y1; y++) {
+                reader.read(y, 0, w, row);
+                int o = y * w;
+                for (int x = 0; x < w; x++) {
+                    int v = row[x];
+                    gray[o + x] = (byte) v;
+                    local[v]++;
+                }
+            }
+            bandHist[y0 / BAND_ROWS] = local;
+        });
+
+        for (int[] local : bandHist) {
+            for (int i = 0; i < 256; i++) hist[i] += local[i];
+        }
+        return gray;
+    }
+
+    // ---------- bands ----------
+
+    private interface Band {
+        void run(int y0, int y1);
+    }
+
+    private static void forEachBand(int h, Band band) {
+        int bands = (h + BAND_ROWS - 1) / BAND_ROWS;
+        IntStream.range(0, bands).parallel().forEach(b -> {
+            int y0 = b * BAND_ROWS;
+            band.run(y0, Math.min(h, y0 + BAND_ROWS));
+        });
+    }
+
+    // ---------- readers ----------
+
+    private static RowReader readerFor(BufferedImage img) {
+        Raster r = img.getRaster();
+        SampleModel sm = r.getSampleModel();
+        DataBuffer db = r.getDataBuffer();
+
+        boolean plain = r.getSampleModelTranslateX() == 0 && r.getSampleModelTranslateY() == 0
+                && db.getNumBanks() == 1;
+        if (plain) {
+            switch (img.getType()) {
+                case BufferedImage.TYPE_INT_RGB:
+                case BufferedImage.TYPE_INT_ARGB:
+                    if (db instanceof DataBufferInt && sm instanceof SinglePixelPackedSampleModel) {
+                        int[] data = ((DataBufferInt) db).getData();
+                        int stride = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+                        int off = db.getOffset();
+                        return (y, x0, n, out) -> {
+                            int o = off + y * stride + x0;
+                            for (int x = 0; x < n; x++) {
+                                int rgb = data[o + x];
+                                out[x] = luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+                            }
+                        };
+                    }
+                    break;
+
+                case BufferedImage.TYPE_3BYTE_BGR:
+                    if (db instanceof DataBufferByte && sm instanceof PixelInterleavedSampleModel) {
+                        byte[] data = ((DataBufferByte) db).getData();
+                        PixelInterleavedSampleModel pm = (PixelInterleavedSampleModel) sm;
+                        int stride = pm.getScanlineStride();
+                        int ps = pm.getPixelStride();
+                        int[] bo = pm.getBandOffsets(); // r, g, b
+                        int off = db.getOffset();
+                        return (y, x0, n, out) -> {
+                            int o = off + y * stride + x0 * ps;
+                            for (int x = 0; x < n; x++, o += ps) {
+                                out[x] = luma(data[o + bo[0]] & 0xFF, data[o + bo[1]] & 0xFF, data[o + bo[2]] & 0xFF);
+                            }
+                        };
+                    }
+                    break;
+
+                case BufferedImage.TYPE_BYTE_GRAY:
+                    if (db instanceof DataBufferByte && sm instanceof PixelInterleavedSampleModel) {
+                        byte[] data = ((DataBufferByte) db).getData();
+                        PixelInterleavedSampleModel pm = (PixelInterleavedSampleModel) sm;
+                        int stride = pm.getScanlineStride();
+                        int ps = pm.getPixelStride();
+                        int off = db.getOffset() + pm.getBandOffsets()[0];
+                        return (y, x0, n, out) -> {
+                            int o = off + y * stride + x0 * ps;
+                            for (int x = 0; x < n; x++, o += ps) out[x] = GRAY_LUT[data[o] & 0xFF];
+                        };
+                    }
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        // fallback: still one getRGB call per row instead of per pixel
+        int[] argb = new int[img.getWidth()];
+        return (y, x0, n, out) -> {
+            img.getRGB(x0, y, n, 1, argb, 0, n);
+            for (int x = 0; x < n; x++) {
+                int rgb = argb[x];
+                out[x] = luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+            }
+        };
+    }
+
+    /** Luma (good for plans). */
+    private static int luma(int r, int g, int b) {
+        return (int) Math.round(0.2126 * r + 0.7152 * g + 0.0722 * b);
+    }
+
+    private static int[] buildGrayLut() {
+        BufferedImage probe = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+        for (int v = 0; v < 256; v++) probe.getRaster().setSample(v, 0, 0, v);
+
+        int[] lut = new int[256];
+        for (int v = 0; v < 256; v++) {
+            int rgb = probe.getRGB(v, 0);
+            lut[v] = luma((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+        }
+        return lut;
+    }
+}
@@ -0,0 +1,247 @@
+package sim.floorplan.mask;
+
+import java.util.stream.IntStream;
+
+/**
+ * Row-major bitmap, 1 bit per pixel, ceil(width/64) words per row, leftmost pixel = MSB
+ * (the same layout as {@code WalkMask.setAllWalkableBits}). Bits past the width are always 0.
+ *
+ * Used where a plan is too big for a boolean[] / int[] per pixel: disk dilation and the
+ * outside flood fill both work 64 pixels per word op, and give the same pixels as
+ * {@link DistanceField#dilate} and {@link ScanlineFill#fromBorder}.
+ */
+final class PackedBits {
+
+    private static final int ROW_BAND = 32;
+
+    final int width;
+    final int height;
+    final int wordsPerRow;
+    final long[] bits;
+    private final long tail; // valid bits of the last word of a row
+
+    PackedBits(int width, int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        long words = (long) ((width + 63) >>> 6) * height;
+        if (words > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Bitmap too large.");
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.bits = new long[(int) words];
+        int r = width & 63;
+        this.tail = (r == 0) ? -1L : (-1L << (64 - r));
+    }
+
+    boolean get(int x, int y) {
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << (63 - (x & 63)))) != 0;
+    }
+
+    void set(int x, int y) {
+        bits[y * wordsPerRow + (x >>> 6)] |= 1L << (63 - (x & 63));
+    }
+
+    /** this |= other. */
+    void or(PackedBits other) {
+        for (int i = 0; i < bits.length; i++) bits[i] |= other.bits[i];
+    }
+
+    /** Complement within the width (padding stays 0). */
+    PackedBits not() {
+        PackedBits out = new PackedBits(width, height);
+        for (int y = 0; y < height; y++) {
+            int o = y * wordsPerRow;
+            for (int wi = 0; wi < wordsPerRow; wi++) out.bits[o + wi] = ~bits[o + wi];
+            out.bits[o + wordsPerRow - 1] &= tail;
+        }
+        return out;
+    }
+
+    // ---------- dilation ----------
+
+    /**
+     * Set bits dilated by a disk of the given radius: a pixel is set if some set pixel is within
+     * Euclidean distance radius (dx*dx + dy*dy &lt;= r*r), i.e. {@code DistanceField.dilate(radius)}.
+     * Each output row ORs the 2r+1 source rows around it, each widened by its chord half-width.
+     */
+    PackedBits dilateDisk(int radius) {
+        final int r = Math.max(0, radius);
+        final PackedBits out = new PackedBits(width, height);
+        if (r == 0) {
+            System.arraycopy(bits, 0, out.bits, 0, bits.length);
+            return out;
+        }
+
+        final int[] half = new int[r + 1]; // chord half-width at |dy|
+        for (int dy = 0; dy <= r; dy++) half[dy] = isqrt((long) r * r - (long) dy * dy);
+
+        int bands = (height + ROW_BAND - 1) / ROW_BAND;
+        IntStream.range(0, bands).parallel().forEach(b -> {
+            long[] acc = new long[wordsPerRow];
+            long[] tmp = new long[wordsPerRow];
+            int y0 = b * ROW_BAND;
+            int y1 = Math.min(height, y0 + ROW_BAND);
+
+            for (int y = y0; y < y1; y++) {
+                int o = y * wordsPerRow;
+                for (int dy = -r; dy <= r; dy++) {
+                    int sy = y + dy;
+                    if (sy < 0 || sy >= height) continue;
+                    int so = sy * wordsPerRow;
+                    if (isZero(bits, so, wordsPerRow)) continue;
+
+                    System.arraycopy(bits, so, acc, 0, wordsPerRow);
+                    widen(acc, tmp, half[Math.abs(dy)]);
+                    for (int wi = 0; wi < wordsPerRow; wi++) out.bits[o + wi] |= acc[wi];
+                }
+                out.bits[o + wordsPerRow - 1] &= tail;
+            }
+        });
+        return out;
+    }
+
+    /** row |= row shifted by every d in [-k..k] (doubling: each step extends the covered span). */
+    private void widen(long[] row, long[] tmp, int k) {
+        int covered = 0;
+        while (covered < k) {
+            int s = Math.min(2 * covered + 1, k - covered);
+            System.arraycopy(row, 0, tmp, 0, wordsPerRow);
+            orShifted(tmp, row, s);
+            orShifted(tmp, row, -s);
+            covered += s;
+        }
+        row[wordsPerRow - 1] &= tail;
+    }
+
+    /** dst |= src moved s pixels right (s &gt; 0, toward higher x) or left (s &lt; 0). */
+    private void orShifted(long[] src, long[] dst, int s) {
+        int n = wordsPerRow;
+        int q = Math.abs(s) >>> 6;
+        int m = Math.abs(s) & 63;
+
+        if (s > 0) {
+            for (int i = n - 1; i >= q; i--) {
+                long v = src[i - q] >>> m;
+                if (m != 0 && i - q - 1 >= 0) v |= src[i - q - 1] << (64 - m);
+                dst[i] |= v;
+            }
+        } else {
+            for (int i = 0; i + q < n; i++) {
+                long v = src[i + q] << m;
+                if (m != 0 && i + q + 1 < n) v |= src[i + q + 1] >>> (64 - m);
+                dst[i] |= v;
+            }
+        }
+    }
+
+    // ---------- outside fill ----------
+
+    /**
+     * Clear pixels 4-connected to a clear border pixel (set = reached): the packed twin of
+     * {@code ScanlineFill.fromBorder(blocked, false, ...)} with this bitmap as the blocked map.
+     *
+     * Seeds are widened to their whole horizontal run with carry propagation (a row is one big integer),
+     * then pushed to the row below / above; down and up sweeps repeat until nothing changes.
+     */
+    PackedBits outsideFromBorder() {
+        final int n = wordsPerRow;
+        PackedBits free = not();
+        PackedBits out = new PackedBits(width, height);
+
+        // seeds: the top and bottom rows, plus the first and last pixel of every row
+        System.arraycopy(free.bits, 0, out.bits, 0, n);
+        System.arraycopy(free.bits, (height - 1) * n, out.bits, (height - 1) * n, n);
+        for (int y = 0; y < height; y++) {
+            if (free.get(0, y)) out.set(0, y);
+            if (free.get(width - 1, y)) out.set(width - 1, y);
+        }
+
+        long[] seed = new long[n];
+        long[] fill = new long[n];
+        long[] revFree = new long[n];
+        long[] revSeed = new long[n];
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int y = 0; y < height; y++) {
+                changed |= spreadRow(free, out, y, y - 1, seed, fill, revFree, revSeed);
+            }
+            for (int y = height - 1; y >= 0; y--) {
+                changed |= spreadRow(free, out, y, y + 1, seed, fill, revFree, revSeed);
+            }
+        }
+        return out;
+    }
+
+    /** Row y of out := its runs of free touched by out[y] or by out[from]. Returns true if the row grew. */
+    private boolean spreadRow(PackedBits free, PackedBits out, int y, int from,
+                              long[] seed, long[] fill, long[] revFree, long[] revSeed) {
+        int n = wordsPerRow;
+        int o = y * n;
+
+        boolean any = false;
+        for (int wi = 0; wi < n; wi++) {
+            long s = out.bits[o + wi];
+            if (from >= 0 && from < height) s |= out.bits[from * n + wi] & free.bits[o + wi];
+            seed[wi] = s;
+            any |= s != 0;
+        }
+        if (!any) return false;
+
+        // leftward (toward lower x = more significant bits)
+        fillTowardMsb(free.bits, o, seed, 0, fill);
+
+        // rightward: the same on the reversed row
+        for (int wi = 0; wi < n; wi++) {
+            revFree[n - 1 - wi] = Long.reverse(free.bits[o + wi]);
+            revSeed[n - 1 - wi] = Long.reverse(seed[wi]);
+        }
+        fillTowardMsb(revFree, 0, revSeed, 0, revSeed);
+
+        boolean grew = false;
+        for (int wi = 0; wi < n; wi++) {
+            long v = fill[wi] | Long.reverse(revSeed[n - 1 - wi]);
+            if (v != out.bits[o + wi]) {
+                out.bits[o + wi] = v;
+                grew = true;
+            }
+        }
+        return grew;
+    }
+
+    /**
+     * dst = seeds plus every free pixel left of a seed in the same run of free pixels.
+     * With the row as one integer (word 0 most significant), free + seed carries exactly through those pixels.
+     */
+    private void fillTowardMsb(long[] free, int fo, long[] seed, int so, long[] dst) {
+        long carry = 0;
+        for (int wi = wordsPerRow - 1; wi >= 0; wi--) {
+            long f = free[fo + wi];
+            long s = seed[so + wi];
+            long sum = f + s;
+            long c1 = Long.compareUnsigned(sum, f) < 0 ? 1 : 0;
+            long sum2 = sum + carry;
+            long c2 = Long.compareUnsigned(sum2, sum) < 0 ? 1 : 0;
+
+            long carriedInto = sum2 ^ f ^ s; // carry into each bit position
+            dst[wi] = s | (f & carriedInto);
+            carry = c1 | c2;
+        }
+    }
+
+    // ---------- helpers ----------
+
+    private static boolean isZero(long[] a, int off, int n) {
+        for (int i = 0; i < n; i++) {
+            if (a[off + i] != 0) return false;
+        }
+        return true;
+    }
+
+    private static int isqrt(long v) {
+        long r = (long) Math.sqrt((double) v);
+        while (r * r > v) r--;
+        while ((r + 1) * (r + 1) <= v) r++;
+        return (int) r;
+    }
+}
@@ -0,0 +1,111 @@
+package sim.floorplan.mask;
+
+import sim.floorplan.model.WalkMask;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * ✅ Auto mask for plans too big to hold as one image: fed horizontal bands of the page, top to bottom.
+ *
+ * Everything is kept 1 bit per pixel ({@link PackedBits}), so a 250 MP sheet needs ~30 MB per pass
+ * instead of a 1 GB RGB composite plus boolean[]/int[] fields. Produces the same mask as
+ * {@link AutoMaskGenerator#generate(BufferedImage, AutoMaskGenerator.Params)} on the full image.
+ *
+ * With a fixed threshold one pass over the bands is enough. Auto threshold (Otsu) needs the whole-page
+ * histogram first, so {@link #finish} replays the bands (e.g. from the on-disk tile pyramid) to threshold them.
+ */
+public final class StreamingMaskBuilder {
+
+    /** Receives one band: rows [y0, y0 + band.getHeight()) of the page, full width. */
+    public interface Sink {
+        void band(BufferedImage band, int y0) throws IOException;
+    }
+
+    /** Feeds every band of the page to the sink again, top to bottom. */
+    public interface Bands {
+        void replay(Sink sink) throws IOException;
+    }
+
+    private final int width;
+    private final int height;
+    private final AutoMaskGenerator.Params params;
+    private final int fixedThreshold;   // -1 = auto (Otsu)
+
+    private final int[] hist = new int[256];
+    private final PackedBits blocked;
+    private int rowsSeen = 0;
+
+    public StreamingMaskBuilder(int width, int height, AutoMaskGenerator.Params p) {
+        this.width = width;
+        this.height = height;
+        this.params = p;
+        this.fixedThreshold = (p != null && p.autoThreshold) ? -1 : clamp(p == null ? 200 : p.threshold);
+        this.blocked = new PackedBits(width, height);
+    }
+
+    /** One-shot: reads the bands (twice with auto threshold) and returns the mask. */
+    public static WalkMask build(int width, int height, AutoMaskGenerator.Params p, Bands source) throws IOException {
+        StreamingMaskBuilder b = new StreamingMaskBuilder(width, height, p);
+        source.replay(b::band);
+        return b.finish(source);
+    }
+
+    /** Takes the next band (a histogram with auto threshold, packed dark pixels otherwise). */
+    public void band(BufferedImage band, int y0) {
+        checkBand(band, y0);
+        if (fixedThreshold >= 0) {
+            LumaRaster.thresholdPacked(band, fixedThreshold, blocked.bits, y0, blocked.wordsPerRow);
+        } else {
+            int[] h = LumaRaster.histogram(band);
+            for (int i = 0; i < 256; i++) hist[i] += h[i];
+        }
+        rowsSeen += band.getHeight();
+    }
+
+    /**
+     * Threshold (replaying for auto), inflate, seal + remove outside, and build the mask.
+     * replay may be null with a fixed threshold.
+     */
+    public WalkMask finish(Bands replay) throws IOException {
+        if (rowsSeen < height) throw new IllegalStateException("only " + rowsSeen + " of " + height + " rows received");
+
+        if (fixedThreshold < 0) {
+            if (replay == null) throw new IllegalStateException("auto threshold needs the bands replayed");
+            int thr = clamp(AutoMaskGenerator.otsuThreshold(hist));
+            replay.replay((band, y0) -> {
+                checkBand(band, y0);
+                LumaRaster.thresholdPacked(band, thr, blocked.bits, y0, blocked.wordsPerRow);
+            });
+        }
+
+        // 4) inflate walls
+        int inflate = Math.max(0, params == null ? 6 : params.inflatePx);
+        PackedBits inflated = blocked.dilateDisk(inflate);
+
+        // 5) seal door gaps, then anything reachable from the border is outside
+        boolean removeOutside = (params == null) || params.removeOutside;
+        if (removeOutside) {
+            int seal = Math.max(0, params == null ? 14 : params.sealGapsPx);
+            PackedBits sealed = (seal > 0) ? inflated.dilateDisk(seal) : inflated;
+            inflated.or(sealed.outsideFromBorder());
+        }
+
+        // 6) walkable = NOT blocked
+        WalkMask mask = AutoMaskGenerator.newMask(width, height);
+        mask.setAllWalkableBits(inflated.not().bits);
+        return mask;
+    }
+
+    private void checkBand(BufferedImage band, int y0) {
+        if (band == null) throw new IllegalArgumentException("band is null");
+        if (band.getWidth() != width || y0 < 0 || y0 + band.getHeight() > height) {
+            throw new IllegalArgumentException("band " + band.getWidth() + "x" + band.getHeight()
+                    + " at y=" + y0 + " doesn't fit " + width + "x" + height);
+        }
+    }
+
+    private static int clamp(int v) {
+        return Math.max(0, Math.min(255, v));
+    }
+}
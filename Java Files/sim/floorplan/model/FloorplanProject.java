@@ -1,22 +1,34 @@
 package sim.floorplan.model;
 
 import java.awt.Polygon;
-import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 public class FloorplanProject {
+
+    /** ✅ A floorplan image that hasn't been decoded yet (e.g. still inside a saved project file). */
+    public interface ImageSource {
+        int getWidth();
+        int getHeight();
+        BufferedImage load() throws IOException;
+    }
+
     private File pdfFile;
     private int pageIndex;
     private Integer dpi;
 
-    // not meant for disk serialization right now; fine for runtime
+    // saved as PNG inside the .fsp (see FloorplanProjectIO)
     private BufferedImage floorplanImage;
 
+    // ✅ where floorplanImage comes from when it's loaded lazily (null once replaced by setFloorplanImage)
+    private ImageSource floorplanImageSource;
+
     private WalkMask mask;
 
     // ✅ Tier 2: scale (meters per pixel)
@@ -35,8 +47,44 @@ public class FloorplanProject {
     public Integer getDpi() { return dpi; }
     public void setDpi(Integer dpi) { this.dpi = dpi; }
 
-    public BufferedImage getFloorplanImage() { return floorplanImage; }
-    public void setFloorplanImage(BufferedImage floorplanImage) { this.floorplanImage = floorplanImage; }
+    /** Decodes the image on first use when it was set through {@link #setFloorplanImageSource}. */
+    public BufferedImage getFloorplanImage() {
+        if (floorplanImage == null && floorplanImageSource != null) {
+            try {
+                floorplanImage = floorplanImageSource.load();
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to load floorplan image: " + ex.getMessage(), ex);
+            }
+        }
+        return floorplanImage;
+    }
+
+    public void setFloorplanImage(BufferedImage floorplanImage) {
+        this.floorplanImage = floorplanImage;
+        this.floorplanImageSource = null;
+    }
+
+    public ImageSource getFloorplanImageSource() { return floorplanImageSource; }
+
+    public void setFloorplanImageSource(ImageSource source) {
+        this.floorplanImage = null;
+        this.floorplanImageSource = source;
+    }
+
+    /** True once the image is in memory (always true for images set directly). */
+    public boolean isFloorplanImageLoaded() { return floorplanImage != null; }
+
+    public boolean hasFloorplanImage() { return floorplanImage != null || floorplanImageSource != null; }
+
+    public int getFloorplanWidth() {
+        if (floorplanImage != null) return floorplanImage.getWidth();
+        return (floorplanImageSource == null) ? 0 : floorplanImageSource.getWidth();
+    }
+
+    public int getFloorplanHeight() {
+        if (floorplanImage != null) return floorplanImage.getHeight();
+        return (floorplanImageSource == null) ? 0 : floorplanImageSource.getHeight();
+    }
 
     public WalkMask getMask() { return mask; }
     public void setMask(WalkMask mask) { this.mask = mask; }
@@ -69,7 +117,8 @@ public class FloorplanProject {
         p.setPdfFile(pdfFile);
         p.setPageIndex(pageIndex);
         p.setDpi(dpi);
-        p.setFloorplanImage(floorplanImage);
+        p.floorplanImage = floorplanImage;
+        p.floorplanImageSource = floorplanImageSource;
         p.setMask(mask == null ? null : mask.copy());
         p.setMetersPerPixel(metersPerPixel);
         p.setZones(zones);
@@ -83,12 +132,12 @@ public class FloorplanProject {
     public List<String> validate() {
         List<String> errs = new ArrayList<>();
 
-        if (floorplanImage == null) errs.add("No floorplan image rendered.");
+        if (!hasFloorplanImage()) errs.add("No floorplan image rendered.");
         if (mask == null) errs.add("No walk mask exists (generate auto-mask first).");
 
         // If both exist, ensure dimensions match
-        if (floorplanImage != null && mask != null) {
-            if (mask.getWidth() != floorplanImage.getWidth() || mask.getHeight() != floorplanImage.getHeight()) {
+        if (hasFloorplanImage() && mask != null) {
+            if (mask.getWidth() != getFloorplanWidth() || mask.getHeight() != getFloorplanHeight()) {
                 errs.add("Mask dimensions do not match image dimensions. Rebuild mask after rendering/loading.");
             }
         }
@@ -150,7 +199,7 @@ public class FloorplanProject {
                         errs.add(t.getLabel() + " polygon too small: " + safeId(z));
                     }
                     if (mask != null) {
-                        double frac = walkableFraction(pz, mask);
+                        double frac = mask.walkableFraction(pz);
                         if (frac < 0.50) {
                             errs.add(t.getLabel() + " polygon is mostly RED/blocked (walkable "
                                     + String.format("%.0f%%", frac * 100) + "): " + safeId(z));
@@ -259,35 +308,4 @@ public class FloorplanProject {
         }
         return Math.abs(sum) / 2.0;
     }
-
-    private static double walkableFraction(Polygon poly, WalkMask mask) {
-        Rectangle r = poly.getBounds();
-        if (r.width <= 0 || r.height <= 0) return 0.0;
-
-        int maxSamples = 12000;
-        long cells = (long) r.width * (long) r.height;
-        int step = 1;
-        if (cells > maxSamples) step = (int) Math.ceil(Math.sqrt(cells / (double) maxSamples));
-        step = Math.max(1, step);
-
-        long inside = 0;
-        long walk = 0;
-
-        int x0 = r.x;
-        int y0 = r.y;
-        int x1 = r.x + r.width;
-        int y1 = r.y + r.height;
-
-        for (int y = y0; y < y1; y += step) {
-            for (int x = x0; x < x1; x += step) {
-                if (!mask.inBounds(x, y)) continue;
-                if (!poly.contains(x + 0.5, y + 0.5)) continue;
-                inside++;
-                if (mask.isWalkable(x, y)) walk++;
-            }
-        }
-
-        if (inside == 0) return 0.0;
-        return walk / (double) inside;
-    }
 }
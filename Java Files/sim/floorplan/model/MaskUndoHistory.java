@@ -0,0 +1,194 @@
+package sim.floorplan.model;
+
+import java.awt.Rectangle;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ✅ Undo/redo for {@link WalkMask} edits, one {@link WalkMask.TileDelta} per stroke / fill.
+ *
+ * A delta only references the tiles the edit rewrote (copy-on-write arrays, no pixel copies), so recording
+ * and undoing are O(tiles touched). Deltas past the memory budget spill to a temp file, least recently
+ * used first, and are read back when undo/redo reaches them.
+ */
+public final class MaskUndoHistory {
+
+    /** Deltas kept at most (oldest dropped first). */
+    public static final int MAX_STEPS = 500;
+
+    private static final class Step {
+        final String label;
+        WalkMask.TileDelta delta;     // null while spilled
+        long fileOffset = -1;
+        int fileLength;
+        long lastUse;
+
+        Step(String label, WalkMask.TileDelta delta) {
+            this.label = label;
+            this.delta = delta;
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private int cursor = 0;   // steps[0..cursor) are undoable, steps[cursor..) redoable
+
+    private long budgetBytes;
+    private long residentBytes;
+    private long clock;
+
+    private File spillFile;
+    private RandomAccessFile spill;
+
+    public MaskUndoHistory(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+    }
+
+    public long getBudgetBytes() { return budgetBytes; }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+        enforceBudget();
+    }
+
+    /** Bytes of tile data currently on the heap. */
+    public long getResidentBytes() { return residentBytes; }
+
+    public boolean canUndo() { return cursor > 0; }
+    public boolean canRedo() { return cursor < steps.size(); }
+
+    public String getUndoLabel() { return canUndo() ? steps.get(cursor - 1).label : null; }
+    public String getRedoLabel() { return canRedo() ? steps.get(cursor).label : null; }
+
+    /** Records a finished edit; drops anything that could be redone. */
+    public void record(String label, WalkMask.TileDelta delta) {
+        if (delta == null) return;
+
+        while (steps.size() > cursor) forget(steps.remove(steps.size() - 1));
+
+        Step s = new Step(label, delta);
+        s.lastUse = ++clock;
+        steps.add(s);
+        cursor++;
+        residentBytes += delta.getBytes();
+
+        while (steps.size() > MAX_STEPS) {
+            forget(steps.remove(0));
+            cursor--;
+        }
+        enforceBudget();
+    }
+
+    /** Reverts the last edit on mask. Returns the changed pixel bounds, or null if there was nothing to undo. */
+    public Rectangle undo(WalkMask mask) {
+        if (!canUndo()) return null;
+        Step s = steps.get(cursor - 1);
+        WalkMask.TileDelta d = load(s);
+        mask.applyTiles(d, false);
+        cursor--;
+        enforceBudget();
+        return d.getBounds();
+    }
+
+    /** Re-applies the next undone edit. Returns the changed pixel bounds, or null if there was nothing to redo. */
+    public Rectangle redo(WalkMask mask) {
+        if (!canRedo()) return null;
+        Step s = steps.get(cursor);
+        WalkMask.TileDelta d = load(s);
+        mask.applyTiles(d, true);
+        cursor++;
+        enforceBudget();
+        return d.getBounds();
+    }
+
+    /** Forgets everything (the mask was replaced) and deletes the spill file. */
+    public void clear() {
+        steps.clear();
+        cursor = 0;
+        residentBytes = 0;
+        closeSpill();
+    }
+
+    // ---------- spill ----------
+
+    private WalkMask.TileDelta load(Step s) {
+        s.lastUse = ++clock;
+        if (s.delta != null) return s.delta;
+
+        try {
+            byte[] b = new byte[s.fileLength];
+            spill.seek(s.fileOffset);
+            spill.readFully(b);
+            s.delta = WalkMask.TileDelta.readFrom(
+                    new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(b))));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Undo history could not be read back", ex);
+        }
+        residentBytes += s.delta.getBytes();
+        return s.delta;
+    }
+
+    /** Spills least recently used deltas until the resident ones fit the budget (the next undo and redo stay put). */
+    private void enforceBudget() {
+        while (residentBytes > budgetBytes) {
+            Step lru = null;
+            for (int i = 0; i < steps.size(); i++) {
+                Step s = steps.get(i);
+                if (s.delta == null || i == cursor - 1 || i == cursor) continue;
+                if (lru == null || s.lastUse < lru.lastUse) lru = s;
+            }
+            if (lru == null || !spill(lru)) return;
+        }
+    }
+
+    private boolean spill(Step s) {
+        try {
+            if (s.fileOffset < 0) {
+                if (spill == null) {
+                    spillFile = File.createTempFile("floorplan-undo-", ".bin");
+                    spillFile.deleteOnExit();
+                    spill = new RandomAccessFile(spillFile, "rw");
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes, 1 << 16))) {
+                    s.delta.writeTo(out);
+                }
+                s.fileOffset = spill.length();
+                s.fileLength = bytes.size();
+                spill.seek(s.fileOffset);
+                spill.write(bytes.toByteArray());
+            }
+        } catch (IOException ex) {
+            return false; // no temp space: keep it on the heap
+        }
+        residentBytes -= s.delta.getBytes();
+        s.delta = null;   // written once; later spills of the same step are free
+        return true;
+    }
+
+    private void forget(Step s) {
+        if (s.delta != null) residentBytes -= s.delta.getBytes();
+        s.delta = null;
+        if (steps.isEmpty()) closeSpill();
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            try { spill.close(); } catch (IOException ignored) { }
+            spill = null;
+        }
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+}
@@ -3,21 +3,75 @@ package sim.floorplan.model;
 import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class WalkMask {
+
+    /** ✅ Tile edge in pixels (tiles are the unit of sharing between copies). */
+    public static final int TILE_SIZE = 256;
+
+    private static final int TILE_SHIFT = 8;
+    private static final int TILE_ROW_WORDS = TILE_SIZE / 64;              // words per tile row
+    private static final int TILE_WORDS = TILE_ROW_WORDS * TILE_SIZE;      // words per tile
+
+    // shared read-only tiles: never written (writers clone first)
+    private static final long[] EMPTY_TILE = new long[TILE_WORDS];
+    private static final long[] FULL_TILE = new long[TILE_WORDS];
+    static { Arrays.fill(FULL_TILE, -1L); }
+
     private final int width;
     private final int height;
-    // true = walkable, false = blocked
-    private final boolean[] walkable;
+
+    // ✅ 1 bit per pixel, set = walkable, stored in TILE_SIZE x TILE_SIZE tiles.
+    // Within a tile each row is TILE_ROW_WORDS words; pixel x is bit (63 - x%64) (leftmost pixel = MSB).
+    // Bits past the mask width are always 0.
+    private final int wordsPerRow;
+    private final int tilesX, tilesY;
+    private final long[][] tiles;
+
+    // ✅ copy-on-write: a tile may be shared with copies (or be a shared constant tile) until we own it
+    private final boolean[] owned;
+
+    // version at which each tile last changed
+    private final int[] tileVersion;
 
     // ✅ increments whenever the mask meaningfully changes
     private int version = 0;
 
+    // ✅ small ring of "what changed" per version, so routers can rebuild only dirty areas
+    private static final int CHANGE_LOG_SIZE = 64;
+    private final Rectangle[] changeLog = new Rectangle[CHANGE_LOG_SIZE];
+    private int changeLogCount = 0;
+
+    // content hash is O(pixels), so keep it until the next change
+    private long contentHash;
+    private int contentHashVersion = -1;
+
     public WalkMask(int width, int height) {
         if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid mask size.");
         this.width = width;
         this.height = height;
-        this.walkable = new boolean[width * height];
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.tilesX = (width + TILE_SIZE - 1) >>> TILE_SHIFT;
+        this.tilesY = (height + TILE_SIZE - 1) >>> TILE_SHIFT;
+
+        long n = (long) tilesX * tilesY;
+        if (n > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Mask too large.");
+        this.tiles = new long[(int) n][];
+        Arrays.fill(tiles, EMPTY_TILE);
+        this.owned = new boolean[(int) n];
+        this.tileVersion = new int[(int) n];
     }
 
     public int getWidth() { return width; }
@@ -26,7 +80,75 @@ public class WalkMask {
     /** ✅ Monotonic version used to invalidate routing caches. */
     public int getVersion() { return version; }
 
-    private void bumpVersion() { version++; }
+    private void bumpVersion() { bumpVersion(0, 0, width, height); }
+
+    private void bumpVersion(int x, int y, int w, int h) {
+        version++;
+        changeLog[version % CHANGE_LOG_SIZE] = new Rectangle(x, y, w, h);
+        changeLogCount = Math.min(CHANGE_LOG_SIZE, changeLogCount + 1);
+    }
+
+    /**
+     * ✅ Pixel regions changed after {@code sinceVersion}.
+     * Recent history is one rectangle per version step; older history falls back to the
+     * changed tiles. Returns an empty list if nothing changed, or null if {@code sinceVersion}
+     * isn't from this mask's history (callers should then treat the whole mask as dirty).
+     */
+    public List<Rectangle> getChangedRegionsSince(int sinceVersion) {
+        if (sinceVersion == version) return Collections.emptyList();
+        if (sinceVersion > version || sinceVersion < 0) return null;
+
+        if (version - sinceVersion <= changeLogCount) {
+            ArrayList<Rectangle> out = new ArrayList<>(version - sinceVersion);
+            for (int v = sinceVersion + 1; v <= version; v++) {
+                out.add(new Rectangle(changeLog[v % CHANGE_LOG_SIZE]));
+            }
+            return out;
+        }
+
+        ArrayList<Rectangle> out = new ArrayList<>();
+        for (int t = 0; t < tiles.length; t++) {
+            if (tileVersion[t] > sinceVersion) out.add(tileBounds(t));
+        }
+        return out;
+    }
+
+    private Rectangle tileBounds(int t) {
+        int x = (t % tilesX) << TILE_SHIFT;
+        int y = (t / tilesX) << TILE_SHIFT;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+    }
+
+    /**
+     * ✅ 64-bit hash of size + walkable pixels (FNV-1a over the packed row words).
+     * Equal masks hash equal across copies, reloads and app restarts; used to key persistent route caches.
+     */
+    public long contentHash() {
+        if (contentHashVersion == version) return contentHash;
+
+        long h = 0xcbf29ce484222325L;
+        h = fnv(h, width);
+        h = fnv(h, height);
+        for (int y = 0; y < height; y++) {
+            for (int wi = 0; wi < wordsPerRow; wi++) {
+                long word = word(y, wi);
+                h = fnv(h, (int) (word >>> 32));
+                h = fnv(h, (int) word);
+            }
+        }
+
+        contentHash = h;
+        contentHashVersion = version;
+        return h;
+    }
+
+    private static long fnv(long h, int v) {
+        for (int i = 0; i < 4; i++) {
+            h ^= (v >>> (i * 8)) & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
 
     public boolean inBounds(int x, int y) {
         return x >= 0 && y >= 0 && x < width && y < height;
@@ -34,37 +156,154 @@ public class WalkMask {
 
     public boolean isWalkable(int x, int y) {
         if (!inBounds(x, y)) return false;
-        return walkable[y * width + x];
+        return (word(y, x >>> 6) & bitOf(x)) != 0;
     }
 
     public void setWalkable(int x, int y, boolean value) {
         if (!inBounds(x, y)) return;
-        int idx = y * width + x;
-        if (walkable[idx] == value) return; // ✅ no-op -> no version bump
-        walkable[idx] = value;
-        bumpVersion();
+        if (!setWalkableNoVersion(x, y, value)) return; // ✅ no-op -> no version bump
+        bumpVersion(x, y, 1, 1);
     }
 
-    /** Fast set without repeated version bumps (callers can bump once). */
-    private void setWalkableNoVersion(int x, int y, boolean value) {
-        if (!inBounds(x, y)) return;
-        walkable[y * width + x] = value;
+    /** Fast set without a version bump (callers bump once). Returns true if the pixel changed. */
+    private boolean setWalkableNoVersion(int x, int y, boolean value) {
+        int wi = x >>> 6;
+        long old = word(y, wi);
+        long now = value ? (old | bitOf(x)) : (old & ~bitOf(x));
+        if (now == old) return false;
+        setWord(y, wi, now);
+        return true;
     }
 
     public void fillWalkable(boolean value) {
         boolean changed = false;
-        for (int i = 0; i < walkable.length; i++) {
-            if (walkable[i] != value) {
-                walkable[i] = value;
-                changed = true;
+        for (int t = 0; t < tiles.length; t++) {
+            long[] want = value ? fullTileFor(t) : EMPTY_TILE;
+            if (tiles[t] == want || sameVisibleRows(t, tiles[t], want)) continue;
+            tiles[t] = want;
+            owned[t] = (want != EMPTY_TILE && want != FULL_TILE);
+            tileVersion[t] = version + 1;
+            changed = true;
+        }
+        if (changed) bumpVersion();
+    }
+
+    /**
+     * ✅ Bulk load from a row-major map (true = walkable), 64 pixels per word write.
+     * Bumps version once if anything changed.
+     */
+    public void setAllWalkable(boolean[] walkable) {
+        if (walkable == null || walkable.length < width * height) {
+            throw new IllegalArgumentException("walkable map doesn't match " + width + "x" + height);
+        }
+        if (writeRegion(0, 0, width, height, walkable)) bumpVersion();
+    }
+
+    /**
+     * ✅ Bulk load of one rectangle from a row-major map of r.width x r.height (true = walkable).
+     * Pixels outside r are untouched; bumps version once (change region = r) if anything changed,
+     * so only tiles under r look dirty to routers.
+     */
+    public void setWalkableRegion(Rectangle r, boolean[] walkable) {
+        if (r == null || r.isEmpty()) return;
+        if (r.x < 0 || r.y < 0 || r.x + r.width > width || r.y + r.height > height) {
+            throw new IllegalArgumentException("region outside mask: " + r);
+        }
+        if (walkable == null || walkable.length < r.width * r.height) {
+            throw new IllegalArgumentException("walkable map doesn't match " + r.width + "x" + r.height);
+        }
+        if (writeRegion(r.x, r.y, r.width, r.height, walkable)) bumpVersion(r.x, r.y, r.width, r.height);
+    }
+
+    /**
+     * ✅ Bulk load from packed rows: ceil(width/64) words per row, same bit order as the mask
+     * (leftmost pixel = MSB, set = walkable). Bits past the width are ignored. Bumps version once if anything changed.
+     */
+    public void setAllWalkableBits(long[] rows) {
+        if (rows == null || rows.length < (long) wordsPerRow * height) {
+            throw new IllegalArgumentException("packed rows don't match " + width + "x" + height);
+        }
+        long tail = tailBits();
+        boolean changed = false;
+        for (int y = 0; y < height; y++) {
+            int o = y * wordsPerRow;
+            for (int wi = 0; wi < wordsPerRow; wi++) {
+                long now = rows[o + wi];
+                if (wi == wordsPerRow - 1) now &= tail;
+                if (now != word(y, wi)) {
+                    setWord(y, wi, now);
+                    changed = true;
+                }
             }
         }
         if (changed) bumpVersion();
     }
 
+    /** Copies row y as packed words (same layout as {@link #setAllWalkableBits}) into dst[off..off+ceil(width/64)). */
+    public void getRowBits(int y, long[] dst, int off) {
+        for (int wi = 0; wi < wordsPerRow; wi++) dst[off + wi] = word(y, wi);
+    }
+
+    /** Valid bits of the last word of a row. */
+    private long tailBits() {
+        int r = width & 63;
+        return (r == 0) ? -1L : (-1L << (64 - r));
+    }
+
+    /** Writes a w x h row-major map at (rx,ry), whole words at a time. Returns true if anything changed. */
+    private boolean writeRegion(int rx, int ry, int rw, int rh, boolean[] walkable) {
+        boolean changed = false;
+        int x1 = rx + rw - 1;
+
+        for (int y = ry; y < ry + rh; y++) {
+            int src = (y - ry) * rw - rx;
+            for (int wi = rx >>> 6, end = x1 >>> 6; wi <= end; wi++) {
+                long m = spanBits(wi, rx, x1);
+                int from = Math.max(rx, wi << 6);
+                int to = Math.min(x1, (wi << 6) + 63);
+
+                long bits = 0;
+                for (int x = from; x <= to; x++) {
+                    if (walkable[src + x]) bits |= bitOf(x);
+                }
+
+                long old = word(y, wi);
+                long now = (old & ~m) | bits;
+                if (now != old) {
+                    setWord(y, wi, now);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** True if a and b agree on tile t's rows inside the mask (FULL_TILE has bits set past the height). */
+    private boolean sameVisibleRows(int t, long[] a, long[] b) {
+        int rows = Math.min(TILE_SIZE, height - ((t / tilesX) << TILE_SHIFT));
+        int n = rows * TILE_ROW_WORDS;
+        return Arrays.equals(a, 0, n, b, 0, n);
+    }
+
+    /** All-walkable content for tile t (the shared constant unless the tile overhangs the right edge). */
+    private long[] fullTileFor(int t) {
+        int x0 = (t % tilesX) << TILE_SHIFT;
+        if (x0 + TILE_SIZE <= width) return FULL_TILE;
+
+        long[] tile = new long[TILE_WORDS];
+        for (int ly = 0; ly < TILE_SIZE; ly++) {
+            for (int lw = 0; lw < TILE_ROW_WORDS; lw++) {
+                int px0 = x0 + (lw << 6);
+                if (px0 >= width) break;
+                tile[ly * TILE_ROW_WORDS + lw] = (px0 + 64 <= width) ? -1L : (-1L << (64 - (width - px0)));
+            }
+        }
+        return tile;
+    }
+
     /**
      * ✅ Brush fill: sets a circle of radius r around (cx,cy) to walkable/blocked.
-     * Bumps version once if anything changed.
+     * One word-parallel span per row; bumps version once if anything changed.
      */
     public void fillCircle(int cx, int cy, int radius, boolean value) {
         int r = Math.max(0, radius);
@@ -73,36 +312,38 @@ public class WalkMask {
             return;
         }
 
-        int r2 = r * r;
+        long r2 = (long) r * r;
 
         int x0 = Math.max(0, cx - r);
         int x1 = Math.min(width - 1, cx + r);
         int y0 = Math.max(0, cy - r);
         int y1 = Math.min(height - 1, cy + r);
 
+        if (x0 > x1 || y0 > y1) return;
+
         boolean changed = false;
 
         for (int y = y0; y <= y1; y++) {
-            int dy = y - cy;
-            int dy2 = dy * dy;
-            for (int x = x0; x <= x1; x++) {
-                int dx = x - cx;
-                if (dx * dx + dy2 <= r2) {
-                    int idx = y * width + x;
-                    if (walkable[idx] != value) {
-                        walkable[idx] = value;
-                        changed = true;
-                    }
-                }
-            }
+            long dy = y - cy;
+            long rem = r2 - dy * dy;
+
+            // widest dx with dx*dx + dy*dy <= r*r (same pixels as the per-pixel test)
+            long dx = (long) Math.sqrt((double) rem);
+            while ((dx + 1) * (dx + 1) <= rem) dx++;
+            while (dx * dx > rem) dx--;
+
+            int sx0 = (int) Math.max(x0, cx - dx);
+            int sx1 = (int) Math.min(x1, cx + dx);
+            if (fillRowSpan(y, sx0, sx1, value)) changed = true;
         }
 
-        if (changed) bumpVersion();
+        if (changed) bumpVersion(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
     }
 
     /**
      * ✅ Polygon fill: sets pixels inside polygon to walkable/blocked.
-     * Bumps version once if anything changed.
+     * Scanline spans (pixel centers, same rule as {@link Polygon#contains(double, double)});
+     * bumps version once if anything changed.
      */
     public void fillPolygon(Polygon poly, boolean value) {
         if (poly == null || poly.npoints < 3) return;
@@ -115,30 +356,363 @@ public class WalkMask {
         int x1 = Math.min(width - 1, b.x + b.width);
         int y1 = Math.min(height - 1, b.y + b.height);
 
+        if (x0 > x1 || y0 > y1) return;
+
         boolean changed = false;
+        int[] xs = new int[poly.npoints];
 
         for (int y = y0; y <= y1; y++) {
-            int row = y * width;
-            for (int x = x0; x <= x1; x++) {
-                if (!poly.contains(x + 0.5, y + 0.5)) continue;
-                int idx = row + x;
-                if (walkable[idx] != value) {
-                    walkable[idx] = value;
-                    changed = true;
-                }
+            int n = rowCrossings(poly, y, xs);
+            for (int i = 0; i + 1 < n; i += 2) {
+                int sx0 = Math.max(x0, xs[i]);
+                int sx1 = Math.min(x1, xs[i + 1] - 1);
+                if (fillRowSpan(y, sx0, sx1, value)) changed = true;
             }
         }
 
-        if (changed) bumpVersion();
+        if (changed) bumpVersion(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    /**
+     * ✅ Exact share of walkable pixels inside a polygon (pixel centers, clipped to the mask),
+     * counted by popcount over row spans. 0 if the polygon covers no mask pixel.
+     */
+    public double walkableFraction(Polygon poly) {
+        if (poly == null || poly.npoints < 3) return 0.0;
+
+        Rectangle b = poly.getBounds();
+        int y0 = Math.max(0, b.y);
+        int y1 = Math.min(height - 1, b.y + b.height);
+
+        long inside = 0;
+        long walk = 0;
+        int[] xs = new int[poly.npoints];
+
+        for (int y = y0; y <= y1; y++) {
+            int n = rowCrossings(poly, y, xs);
+            for (int i = 0; i + 1 < n; i += 2) {
+                int sx0 = Math.max(0, xs[i]);
+                int sx1 = Math.min(width - 1, xs[i + 1] - 1);
+                if (sx0 > sx1) continue;
+                inside += sx1 - sx0 + 1;
+                walk += countRowSpan(y, sx0, sx1);
+            }
+        }
+
+        if (inside == 0) return 0.0;
+        return walk / (double) inside;
+    }
+
+    // ---------- tiles ----------
+
+    /** Word wi of row y (64 pixels starting at x = wi * 64). */
+    private long word(int y, int wi) {
+        long[] tile = tiles[(y >>> TILE_SHIFT) * tilesX + (wi / TILE_ROW_WORDS)];
+        return tile[(y & (TILE_SIZE - 1)) * TILE_ROW_WORDS + (wi % TILE_ROW_WORDS)];
+    }
+
+    /** Writes word wi of row y, cloning a shared tile first. Stamps the tile with the upcoming version. */
+    private void setWord(int y, int wi, long value) {
+        int t = (y >>> TILE_SHIFT) * tilesX + (wi / TILE_ROW_WORDS);
+        long[] tile = tiles[t];
+        if (!owned[t]) {
+            tile = tile.clone();
+            tiles[t] = tile;
+            owned[t] = true;
+        }
+        tile[(y & (TILE_SIZE - 1)) * TILE_ROW_WORDS + (wi % TILE_ROW_WORDS)] = value;
+        tileVersion[t] = version + 1;
+    }
+
+    // ---------- word-parallel row ops ----------
+
+    private static long bitOf(int x) {
+        return 1L << (63 - (x & 63));
+    }
+
+    /** Bits of pixels [x0..x1] within word wi (x0/x1 already clamped to the row). */
+    private static long spanBits(int wi, int x0, int x1) {
+        long m = -1L;
+        if (wi == (x0 >>> 6)) m &= -1L >>> (x0 & 63);
+        if (wi == (x1 >>> 6)) m &= -1L << (63 - (x1 & 63));
+        return m;
+    }
+
+    /** Sets pixels [x0..x1] of row y (clamped by the caller). Returns true if anything changed. */
+    private boolean fillRowSpan(int y, int x0, int x1, boolean value) {
+        if (x0 > x1) return false;
+
+        boolean changed = false;
+        for (int wi = x0 >>> 6, end = x1 >>> 6; wi <= end; wi++) {
+            long m = spanBits(wi, x0, x1);
+            long old = word(y, wi);
+            long now = value ? (old | m) : (old & ~m);
+            if (now != old) {
+                setWord(y, wi, now); // ✅ untouched tiles stay shared
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Walkable pixels in [x0..x1] of row y (clamped by the caller). */
+    private int countRowSpan(int y, int x0, int x1) {
+        if (x0 > x1) return 0;
+
+        int n = 0;
+        for (int wi = x0 >>> 6, end = x1 >>> 6; wi <= end; wi++) {
+            n += Long.bitCount(word(y, wi) & spanBits(wi, x0, x1));
+        }
+        return n;
+    }
+
+    /**
+     * Sorted crossings of row y with the polygon: pixel x is inside iff xs[2k] <= x < xs[2k+1].
+     * Per edge, the crossing is the first pixel whose center is no longer left of the edge,
+     * decided with the exact Polygon.contains() edge test, so spans match it pixel for pixel.
+     */
+    private static int rowCrossings(Polygon poly, int y, int[] xs) {
+        final double py = y + 0.5;
+        int n = 0;
+
+        int lastx = poly.xpoints[poly.npoints - 1];
+        int lasty = poly.ypoints[poly.npoints - 1];
+        for (int i = 0; i < poly.npoints; lastx = poly.xpoints[i], lasty = poly.ypoints[i], i++) {
+            int curx = poly.xpoints[i];
+            int cury = poly.ypoints[i];
+            if (cury == lasty) continue;
+            if (py < Math.min(cury, lasty) || py >= Math.max(cury, lasty)) continue;
+
+            // estimate, then settle on the exact boundary
+            double ix = curx + (py - cury) / (lasty - cury) * (lastx - curx);
+            int b = (int) Math.ceil(ix - 0.5);
+            while (!leftOfEdge(b - 1, py, curx, cury, lastx, lasty)) b--;
+            while (leftOfEdge(b, py, curx, cury, lastx, lasty)) b++;
+
+            xs[n++] = b;
+        }
+
+        Arrays.sort(xs, 0, n);
+        return n;
     }
 
+    /** Edge hit test of java.awt.Polygon.contains() for the pixel center (x + 0.5, py). */
+    private static boolean leftOfEdge(int x, double py, int curx, int cury, int lastx, int lasty) {
+        double px = x + 0.5;
+
+        int leftx;
+        if (curx < lastx) {
+            if (px >= lastx) return false;
+            leftx = curx;
+        } else {
+            if (px >= curx) return false;
+            leftx = lastx;
+        }
+        if (px < leftx) return true;
+
+        double test1, test2;
+        if (cury < lasty) {
+            test1 = px - curx;
+            test2 = py - cury;
+        } else {
+            test1 = px - lastx;
+            test2 = py - lasty;
+        }
+        return test1 < (test2 / (lasty - cury) * (lastx - curx));
+    }
+
+    /**
+     * ✅ O(tiles): the copy shares every tile, and both masks give up ownership, so the first write to a
+     * tile on either side clones it. Like any edit, call it from the thread that writes this mask.
+     */
     public WalkMask copy() {
         WalkMask c = new WalkMask(width, height);
-        System.arraycopy(this.walkable, 0, c.walkable, 0, this.walkable.length);
+        Arrays.fill(owned, false);
+        System.arraycopy(this.tiles, 0, c.tiles, 0, tiles.length);
+        System.arraycopy(this.tileVersion, 0, c.tileVersion, 0, this.tileVersion.length);
         c.version = this.version;
+        for (int i = 0; i < CHANGE_LOG_SIZE; i++) {
+            if (changeLog[i] != null) c.changeLog[i] = new Rectangle(changeLog[i]);
+        }
+        c.changeLogCount = this.changeLogCount;
+        c.contentHash = this.contentHash;
+        c.contentHashVersion = this.contentHashVersion;
         return c;
     }
 
+    // ---------- undo ----------
+
+    /**
+     * ✅ The mask's tiles at one point in time. O(tiles) references, no pixels copied:
+     * every tile becomes shared, so the next write to it clones (the marked array stays as it was).
+     */
+    public TileMark markTiles() {
+        Arrays.fill(owned, false);
+        return new TileMark(this, tiles.clone());
+    }
+
+    /**
+     * ✅ Tiles rewritten since mark, as their before/after arrays (shared, not copied), or null if none.
+     * The after arrays become shared too, so later edits can't change a delta.
+     */
+    public TileDelta tilesChangedSince(TileMark mark) {
+        if (mark == null || mark.mask != this) return null;
+
+        int n = 0;
+        for (int t = 0; t < tiles.length; t++) {
+            if (tiles[t] != mark.tiles[t]) n++;
+        }
+        if (n == 0) return null;
+
+        int[] index = new int[n];
+        long[][] before = new long[n][];
+        long[][] after = new long[n][];
+        Rectangle bounds = null;
+        for (int t = 0, i = 0; t < tiles.length; t++) {
+            if (tiles[t] == mark.tiles[t]) continue;
+            owned[t] = false;
+            index[i] = t;
+            before[i] = mark.tiles[t];
+            after[i] = tiles[t];
+            i++;
+            bounds = (bounds == null) ? tileBounds(t) : bounds.union(tileBounds(t));
+        }
+        return new TileDelta(width, height, index, before, after, bounds);
+    }
+
+    /**
+     * ✅ Undo (after = false) / redo (after = true) of a delta taken from this mask: swaps the tile arrays in
+     * and bumps the version once over the delta's bounds, so routers and caches see an ordinary edit.
+     */
+    public void applyTiles(TileDelta d, boolean after) {
+        if (d.width != width || d.height != height) {
+            throw new IllegalArgumentException("delta is for a " + d.width + "x" + d.height + " mask");
+        }
+        long[][] src = after ? d.after : d.before;
+        for (int i = 0; i < d.index.length; i++) {
+            int t = d.index[i];
+            tiles[t] = src[i];
+            owned[t] = false;   // the delta keeps it
+            tileVersion[t] = version + 1;
+        }
+        bumpVersion(d.bounds.x, d.bounds.y, d.bounds.width, d.bounds.height);
+    }
+
+    /** Opaque {@link #markTiles()} result. */
+    public static final class TileMark {
+        private final WalkMask mask;
+        private final long[][] tiles;
+
+        private TileMark(WalkMask mask, long[][] tiles) {
+            this.mask = mask;
+            this.tiles = tiles;
+        }
+    }
+
+    /** ✅ Before/after content of the tiles one edit touched (immutable; can be written out and read back). */
+    public static final class TileDelta {
+        private final int width, height;
+        private final int[] index;
+        private final long[][] before, after;
+        private final Rectangle bounds;
+
+        private TileDelta(int width, int height, int[] index, long[][] before, long[][] after, Rectangle bounds) {
+            this.width = width;
+            this.height = height;
+            this.index = index;
+            this.before = before;
+            this.after = after;
+            this.bounds = bounds;
+        }
+
+        public int getTileCount() { return index.length; }
+        public Rectangle getBounds() { return new Rectangle(bounds); }
+
+        /** Heap held by the tile arrays (the shared empty/full tiles are free). */
+        public long getBytes() {
+            long n = 0;
+            for (int i = 0; i < index.length; i++) {
+                if (!isConstant(before[i])) n++;
+                if (!isConstant(after[i])) n++;
+            }
+            return n * TILE_WORDS * 8L;
+        }
+
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(bounds.x);
+            out.writeInt(bounds.y);
+            out.writeInt(bounds.width);
+            out.writeInt(bounds.height);
+            out.writeInt(index.length);
+            for (int i = 0; i < index.length; i++) {
+                out.writeInt(index[i]);
+                writeTile(out, before[i]);
+                writeTile(out, after[i]);
+            }
+        }
+
+        public static TileDelta readFrom(DataInput in) throws IOException {
+            int w = in.readInt(), h = in.readInt();
+            Rectangle b = new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            int n = in.readInt();
+            int[] index = new int[n];
+            long[][] before = new long[n][];
+            long[][] after = new long[n][];
+            for (int i = 0; i < n; i++) {
+                index[i] = in.readInt();
+                before[i] = readTile(in);
+                after[i] = readTile(in);
+            }
+            return new TileDelta(w, h, index, before, after, b);
+        }
+
+        private static boolean isConstant(long[] tile) {
+            return tile == EMPTY_TILE || tile == FULL_TILE;
+        }
+
+        private static void writeTile(DataOutput out, long[] tile) throws IOException {
+            if (tile == EMPTY_TILE) {
+                out.writeByte(0);
+            } else if (tile == FULL_TILE) {
+                out.writeByte(1);
+            } else {
+                out.writeByte(2);
+                for (long w : tile) out.writeLong(w);
+            }
+        }
+
+        private static long[] readTile(DataInput in) throws IOException {
+            switch (in.readByte()) {
+                case 0: return EMPTY_TILE;
+                case 1: return FULL_TILE;
+                case 2: {
+                    long[] tile = new long[TILE_WORDS];
+                    for (int i = 0; i < TILE_WORDS; i++) tile[i] = in.readLong();
+                    return tile;
+                }
+                default: throw new IOException("Bad tile record");
+            }
+        }
+    }
+
+    // ---------- overlay ----------
+
+    /** Overlay tints (RGB, no alpha): walkable = green-ish, blocked = red-ish. */
+    public static final int OVERLAY_WALK_RGB = 0x00CC00;
+    public static final int OVERLAY_BLOCK_RGB = 0xCC0000;
+
+    /** ✅ 1-bit overlay palette: index 0 = blocked, 1 = walkable, both at the given alpha. Swapping it never touches pixels. */
+    public static IndexColorModel overlayPalette(int alpha /*0..255*/) {
+        int a = Math.max(0, Math.min(255, alpha));
+        byte[] r = { (byte) (OVERLAY_BLOCK_RGB >> 16), (byte) (OVERLAY_WALK_RGB >> 16) };
+        byte[] g = { (byte) (OVERLAY_BLOCK_RGB >> 8), (byte) (OVERLAY_WALK_RGB >> 8) };
+        byte[] b = { (byte) OVERLAY_BLOCK_RGB, (byte) OVERLAY_WALK_RGB };
+        byte[] al = { (byte) a, (byte) a };
+        return new IndexColorModel(1, 2, r, g, b, al);
+    }
+
     /**
      * Utility: builds a semi-transparent overlay image.
      * Walkable pixels -> green tint, blocked -> red tint.
@@ -147,31 +721,85 @@ public class WalkMask {
         int a = Math.max(0, Math.min(255, alpha));
         BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 
-        int walkARGB  = (a << 24) | (0x00 << 16) | (0xCC << 8) | 0x00; // green-ish
-        int blockARGB = (a << 24) | (0xCC << 16) | (0x00 << 8) | 0x00; // red-ish
+        int walkARGB  = (a << 24) | OVERLAY_WALK_RGB;
+        int blockARGB = (a << 24) | OVERLAY_BLOCK_RGB;
 
+        // ✅ write the pixel array directly (setRGB per pixel is a color-model round trip)
+        int[] px = ((DataBufferInt) out.getRaster().getDataBuffer()).getData();
         for (int y = 0; y < height; y++) {
-            int row = y * width;
-            for (int x = 0; x < width; x++) {
-                out.setRGB(x, y, walkable[row + x] ? walkARGB : blockARGB);
+            int o = y * width;
+            for (int wi = 0; wi < wordsPerRow; wi++) {
+                long word = word(y, wi);
+                int xEnd = Math.min(width, (wi + 1) << 6);
+                for (int x = wi << 6; x < xEnd; x++) {
+                    px[o + x] = (word & bitOf(x)) != 0 ? walkARGB : blockARGB;
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * ✅ One rectangle of the mask as a small 1-bit image (same layout as {@link #toBinaryImage}) with the given palette.
+     * Whole bytes are copied from the mask words, 8 pixels at a time.
+     */
+    public BufferedImage toOverlayTile(Rectangle r, IndexColorModel palette) {
+        BufferedImage out = new BufferedImage(r.width, r.height, BufferedImage.TYPE_BYTE_BINARY, palette);
+        Raster raster = out.getRaster();
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = ((MultiPixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int bytesPerRow = (r.width + 7) >>> 3;
+
+        for (int y = 0; y < r.height; y++) {
+            int o = y * stride;
+            for (int j = 0; j < bytesPerRow; j += 8) {
+                long bits = bitsAt(r.y + y, r.x + (j << 3));
+                for (int k = 0; k < 8 && j + k < bytesPerRow; k++) {
+                    data[o + j + k] = (byte) (bits >>> (56 - 8 * k));
+                }
             }
+            int rem = r.width & 7; // clear pixels past the rectangle in the last byte
+            if (rem != 0) data[o + bytesPerRow - 1] &= (byte) (0xFF << (8 - rem));
         }
         return out;
     }
 
+    /** Walkable pixels in [x, x+w) x [y, y+h) (clamped to the mask), by popcount. */
+    public int countWalkable(int x, int y, int w, int h) {
+        int x0 = Math.max(0, x), x1 = Math.min(width, x + w) - 1;
+        int y0 = Math.max(0, y), y1 = Math.min(height, y + h) - 1;
+        int n = 0;
+        for (int yy = y0; yy <= y1; yy++) n += countRowSpan(yy, x0, x1);
+        return n;
+    }
+
+    /** 64 pixels of row y starting at x (leftmost = MSB), 0 past the width. */
+    private long bitsAt(int y, int x) {
+        if (x >= width) return 0L;
+        int wi = x >>> 6;
+        int sh = x & 63;
+        long hi = word(y, wi) << sh;
+        if (sh == 0 || wi + 1 >= wordsPerRow) return hi;
+        return hi | (word(y, wi + 1) >>> (64 - sh));
+    }
+
     /**
      * Save-friendly representation:
      * White = walkable, Black = blocked (TYPE_BYTE_BINARY).
      */
     public BufferedImage toBinaryImage() {
         BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
-        int white = 0xFFFFFF;
-        int black = 0x000000;
+
+        // ✅ the default 1-bit palette is 0 = black, 1 = white, MSB = leftmost: same layout as our words
+        Raster r = out.getRaster();
+        byte[] data = ((DataBufferByte) r.getDataBuffer()).getData();
+        int stride = ((MultiPixelPackedSampleModel) r.getSampleModel()).getScanlineStride();
+        int bytesPerRow = (width + 7) >>> 3;
 
         for (int y = 0; y < height; y++) {
-            int row = y * width;
-            for (int x = 0; x < width; x++) {
-                out.setRGB(x, y, walkable[row + x] ? white : black);
+            int o = y * stride;
+            for (int j = 0; j < bytesPerRow; j++) {
+                data[o + j] = (byte) (word(y, j >>> 3) >>> (56 - 8 * (j & 7)));
             }
         }
         return out;
@@ -186,19 +814,75 @@ public class WalkMask {
         int h = img.getHeight();
         WalkMask m = new WalkMask(w, h);
 
-        boolean any = false;
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgb = img.getRGB(x, y) & 0xFFFFFF;
-                boolean v = (rgb != 0x000000);
-                int idx = y * w + x;
-                if (m.walkable[idx] != v) {
-                    m.walkable[idx] = v;
-                    any = true;
+        boolean any;
+        if (m.isPacked1Bit(img)) {
+            any = m.readPacked1Bit(img);
+        } else {
+            any = false;
+            int[] row = new int[w];
+            for (int y = 0; y < h; y++) {
+                img.getRGB(0, y, w, 1, row, 0, w);
+                for (int x = 0; x < w; x++) {
+                    if ((row[x] & 0xFFFFFF) != 0x000000) {
+                        m.setWalkableNoVersion(x, y, true);
+                        any = true;
+                    }
                 }
             }
         }
         if (any) m.bumpVersion();
         return m;
     }
+
+    /** 1-bit indexed image (what toBinaryImage() writes and ImageIO reads back for a mask PNG). */
+    private boolean isPacked1Bit(BufferedImage img) {
+        if (!(img.getColorModel() instanceof IndexColorModel)) return false;
+        if (((IndexColorModel) img.getColorModel()).getMapSize() < 2) return false;
+
+        Raster r = img.getRaster();
+        if (!(r.getSampleModel() instanceof MultiPixelPackedSampleModel)) return false;
+        if (!(r.getDataBuffer() instanceof DataBufferByte)) return false;
+        if (r.getSampleModelTranslateX() != 0 || r.getSampleModelTranslateY() != 0) return false;
+
+        MultiPixelPackedSampleModel sm = (MultiPixelPackedSampleModel) r.getSampleModel();
+        return sm.getPixelBitStride() == 1 && sm.getDataBitOffset() == 0;
+    }
+
+    /** Copies 1-bit rows into the words (whole bytes at a time). Returns true if any pixel is walkable. */
+    private boolean readPacked1Bit(BufferedImage img) {
+        IndexColorModel icm = (IndexColorModel) img.getColorModel();
+        boolean zeroWalk = (icm.getRGB(0) & 0xFFFFFF) != 0;
+        boolean oneWalk = (icm.getRGB(1) & 0xFFFFFF) != 0;
+
+        if (zeroWalk == oneWalk) {
+            if (!zeroWalk) return false;
+            for (int y = 0; y < height; y++) fillRowSpan(y, 0, width - 1, true);
+            return true;
+        }
+
+        Raster r = img.getRaster();
+        byte[] data = ((DataBufferByte) r.getDataBuffer()).getData();
+        int stride = ((MultiPixelPackedSampleModel) r.getSampleModel()).getScanlineStride();
+        int bytesPerRow = (width + 7) >>> 3;
+        int tailBits = width & 63;
+        long tail = (tailBits == 0) ? -1L : (-1L << (64 - tailBits));
+
+        boolean any = false;
+        for (int y = 0; y < height; y++) {
+            int o = y * stride;
+            for (int wi = 0; wi < wordsPerRow; wi++) {
+                long word = 0;
+                for (int k = 0, j = wi * 8; k < 8 && j < bytesPerRow; k++, j++) {
+                    word |= (data[o + j] & 0xFFL) << (56 - 8 * k);
+                }
+                if (zeroWalk) word = ~word;
+                if (wi == wordsPerRow - 1) word &= tail;
+                if (word != 0) {
+                    setWord(y, wi, word); // all-blocked tiles stay on the shared empty tile
+                    any = true;
+                }
+            }
+        }
+        return any;
+    }
 }
@@ -91,9 +91,6 @@ public class AStarRouter {
             int cx = cIdx % gw;
             int cy = cIdx / gw;
 
-            int cpx = Math.min(w - 1, cx * stride);
-            int cpy = Math.min(h - 1, cy * stride);
-
             int[] dx = allowDiagonal ? dx8 : dx4;
             int[] dy = allowDiagonal ? dy8 : dy4;
 
@@ -102,26 +99,10 @@ public class AStarRouter {
                 int ny = cy + dy[k];
                 if (nx < 0 || ny < 0 || nx >= gw || ny >= gh) continue;
 
-                int npx = Math.min(w - 1, nx * stride);
-                int npy = Math.min(h - 1, ny * stride);
-
-                if (!mask.isWalkable(npx, npy)) continue;
+                if (!canStep(mask, stride, cx, cy, nx, ny)) continue;
 
                 boolean isDiag = (dx[k] != 0 && dy[k] != 0);
 
-                // Prevent diagonal corner-cutting: require both cardinal neighbors open
-                if (isDiag) {
-                    int px1 = Math.min(w - 1, (cx + dx[k]) * stride);
-                    int py1 = Math.min(h - 1, (cy) * stride);
-                    int px2 = Math.min(w - 1, (cx) * stride);
-                    int py2 = Math.min(h - 1, (cy + dy[k]) * stride);
-                    if (!mask.isWalkable(px1, py1) || !mask.isWalkable(px2, py2)) continue;
-                }
-
-                // ✅ Critical fix: stride steps can "jump through" walls.
-                // Ensure the segment between coarse nodes is fully walkable.
-                if (!segmentAllWalkable(mask, cpx, cpy, npx, npy)) continue;
-
                 int nIdx = ny * gw + nx;
                 if (closed[nIdx]) continue;
 
@@ -187,9 +168,39 @@ public class AStarRouter {
         return null;
     }
 
+    /**
+     * ✅ Single stride-grid step rule shared by all routers (flat A*, hierarchical, ...).
+     * (cx,cy) -> (nx,ny) must be 4/8-neighbors in grid coordinates.
+     *
+     * The segment is always traced in the same direction, so canStep(a,b) == canStep(b,a).
+     */
+    static boolean canStep(WalkMask mask, int stride, int cx, int cy, int nx, int ny) {
+        final int w = mask.getWidth();
+        final int h = mask.getHeight();
+
+        int cpx = Math.min(w - 1, cx * stride);
+        int cpy = Math.min(h - 1, cy * stride);
+        int npx = Math.min(w - 1, nx * stride);
+        int npy = Math.min(h - 1, ny * stride);
+
+        if (!mask.isWalkable(npx, npy)) return false;
+
+        // Prevent diagonal corner-cutting: require both cardinal neighbors open
+        if (cx != nx && cy != ny) {
+            if (!mask.isWalkable(npx, cpy) || !mask.isWalkable(cpx, npy)) return false;
+        }
+
+        // ✅ Critical fix: stride steps can "jump through" walls.
+        // Ensure the segment between coarse nodes is fully walkable.
+        if (npy < cpy || (npy == cpy && npx < cpx)) {
+            return segmentAllWalkable(mask, npx, npy, cpx, cpy);
+        }
+        return segmentAllWalkable(mask, cpx, cpy, npx, npy);
+    }
+
     // ---------- smoothing ----------
 
-    private static List<Point> smoothLineOfSight(WalkMask mask, List<Point> path) {
+    static List<Point> smoothLineOfSight(WalkMask mask, List<Point> path) {
         if (mask == null || path == null || path.size() <= 2) return path;
 
         ArrayList<Point> out = new ArrayList<>();
@@ -227,7 +238,7 @@ public class AStarRouter {
      * ✅ Segment walkability check (Bresenham).
      * Used both for smoothing and to prevent stride-jumps through walls.
      */
-    private static boolean segmentAllWalkable(WalkMask mask, int x0, int y0, int x1, int y1) {
+    static boolean segmentAllWalkable(WalkMask mask, int x0, int y0, int x1, int y1) {
         if (mask == null) return false;
         if (!inBounds(mask, x0, y0) || !inBounds(mask, x1, y1)) return false;
 
@@ -255,7 +266,7 @@ public class AStarRouter {
         return x >= 0 && y >= 0 && x < m.getWidth() && y < m.getHeight();
     }
 
-    private static float heuristicOctile(int x, int y, int gx, int gy) {
+    static float heuristicOctile(int x, int y, int gx, int gy) {
         int dx = Math.abs(gx - x);
         int dy = Math.abs(gy - y);
         int min = Math.min(dx, dy);
@@ -278,40 +289,44 @@ public class AStarRouter {
         return rev;
     }
 
-    /** Keep only turning points. */
-    private static List<Point> simplifyCollinear(List<Point> path) {
+    /**
+     * Keep only turning points.
+     * ✅ Exact collinearity (not just same dx/dy signs): after smoothing, merging "same direction"
+     * points could produce a shortcut that cuts through a wall.
+     */
+    static List<Point> simplifyCollinear(List<Point> path) {
         if (path == null || path.size() <= 2) return path;
 
         ArrayList<Point> out = new ArrayList<>();
         out.add(path.get(0));
 
-        int lastDx = 0, lastDy = 0;
+        long lastDx = 0, lastDy = 0;
 
         for (int i = 1; i < path.size(); i++) {
-            Point prev = out.get(out.size() - 1);
+            Point prev = path.get(i - 1);
             Point cur = path.get(i);
 
-            int dx = Integer.compare(cur.x - prev.x, 0);
-            int dy = Integer.compare(cur.y - prev.y, 0);
+            long dx = cur.x - prev.x;
+            long dy = cur.y - prev.y;
+            if (dx == 0 && dy == 0) continue;
 
-            if (i == 1) {
-                lastDx = dx; lastDy = dy;
-                out.add(cur);
-                continue;
-            }
+            boolean sameLine = out.size() >= 2
+                    && lastDx * dy - lastDy * dx == 0
+                    && lastDx * dx + lastDy * dy > 0;
 
-            if (dx == lastDx && dy == lastDy) {
+            if (sameLine) {
                 out.set(out.size() - 1, cur);
             } else {
                 out.add(cur);
-                lastDx = dx; lastDy = dy;
             }
+            lastDx = dx; lastDy = dy;
         }
 
+        if (out.size() == 1) out.add(path.get(path.size() - 1));
         return out;
     }
 
-    private static int clamp(int v, int lo, int hi) {
+    static int clamp(int v, int lo, int hi) {
         return Math.max(lo, Math.min(hi, v));
     }
 }
@@ -4,21 +4,22 @@ import sim.floorplan.model.FloorplanProject;
 import sim.floorplan.model.WalkMask;
 import sim.floorplan.model.Zone;
 import sim.floorplan.model.ZoneIndex;
-import sim.floorplan.model.ZoneType;
 
 import java.awt.Point;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
- * Checks reachability between required anchors using A* over the WalkMask.
+ * Checks reachability between required anchors over the WalkMask.
  * Used during Validate & Lock so you catch bad masks before running the sim.
+ *
+ * ✅ One connected-component pass over the stride grid (same step rules as A*),
+ * then every check is a label comparison, however many anchors there are.
  */
 public class FloorplanConnectivity {
 
-    // Safety cap (keeps A* from running forever on huge plans)
-    private static final int MAX_EXPANDED = 2_000_000;
-
     public static List<String> check(FloorplanProject project, int stridePx, boolean allowDiagonal) {
         List<String> errs = new ArrayList<>();
         if (project == null) return errs;
@@ -36,44 +37,40 @@ public class FloorplanConnectivity {
         // If basics missing, normal validate already reports — avoid spam here.
         if (spawns.isEmpty() || tickets.isEmpty() || checks.isEmpty() || holds.isEmpty()) return errs;
 
+        GridComponents comps = new GridComponents(mask, Math.max(1, stridePx), allowDiagonal);
+
         // Use the (single) spawn if multiple exist; validate() should enforce exactly one.
         Zone spawn = spawns.get(0);
-        Point sPt = safeAnchor(spawn);
+        int sLabel = comps.componentAt(safeAnchor(spawn));
 
         // SPAWN -> each Ticket
         for (Zone t : tickets) {
-            if (!reachable(mask, sPt, safeAnchor(t), stridePx, allowDiagonal)) {
-                errs.add("No route (A*) from SPAWN " + safeId(spawn) + " to TICKET_COUNTER " + safeId(t)
-                        + ". Fix mask gaps / lower inflate / try smaller stride.");
+            int tLabel = comps.componentAt(safeAnchor(t));
+            if (sLabel == 0 || tLabel != sLabel) {
+                errs.add("No route from SPAWN " + safeId(spawn) + " (" + where(comps, sLabel) + ") to TICKET_COUNTER "
+                        + safeId(t) + " (" + where(comps, tLabel) + ")."
+                        + " Fix mask gaps / lower inflate / try smaller stride.");
             }
         }
 
         // Ticket -> each Checkpoint (we require tickets can reach at least one checkpoint)
+        Set<Integer> checkLabels = labelsOf(comps, checks);
         for (Zone t : tickets) {
-            boolean ok = false;
-            for (Zone c : checks) {
-                if (reachable(mask, safeAnchor(t), safeAnchor(c), stridePx, allowDiagonal)) {
-                    ok = true;
-                    break;
-                }
-            }
-            if (!ok) {
-                errs.add("No route (A*) from TICKET_COUNTER " + safeId(t) + " to ANY CHECKPOINT."
+            int tLabel = comps.componentAt(safeAnchor(t));
+            if (tLabel == 0 || !checkLabels.contains(tLabel)) {
+                errs.add("No route from TICKET_COUNTER " + safeId(t) + " (" + where(comps, tLabel) + ") to ANY CHECKPOINT"
+                        + " (checkpoints are in " + describe(comps, checkLabels) + ")."
                         + " Fix mask connectivity between ticketing and security.");
             }
         }
 
         // Checkpoint -> each Holdroom (each checkpoint must reach at least one holdroom)
+        Set<Integer> holdLabels = labelsOf(comps, holds);
         for (Zone c : checks) {
-            boolean ok = false;
-            for (Zone h : holds) {
-                if (reachable(mask, safeAnchor(c), safeAnchor(h), stridePx, allowDiagonal)) {
-                    ok = true;
-                    break;
-                }
-            }
-            if (!ok) {
-                errs.add("No route (A*) from CHECKPOINT " + safeId(c) + " to ANY HOLDROOM."
+            int cLabel = comps.componentAt(safeAnchor(c));
+            if (cLabel == 0 || !holdLabels.contains(cLabel)) {
+                errs.add("No route from CHECKPOINT " + safeId(c) + " (" + where(comps, cLabel) + ") to ANY HOLDROOM"
+                        + " (holdrooms are in " + describe(comps, holdLabels) + ")."
                         + " Fix mask connectivity between security and gates.");
             }
         }
@@ -81,10 +78,49 @@ public class FloorplanConnectivity {
         return errs;
     }
 
-    private static boolean reachable(WalkMask mask, Point a, Point b, int stridePx, boolean allowDiagonal) {
-        if (mask == null || a == null || b == null) return false;
-        List<Point> path = AStarRouter.findPath(mask, a, b, Math.max(1, stridePx), MAX_EXPANDED, allowDiagonal);
-        return path != null && path.size() >= 2;
+    /**
+     * Non-blocking note for the validation output: null if exact any-angle routing is available, else why
+     * travel times and walking routes will come from the stride-grid flow fields instead.
+     * Answers from the shared corner set of the mask content when there is one; otherwise it scans the
+     * whole mask for corners, so call it off the EDT.
+     */
+    public static String exactRoutingWarning(FloorplanProject project, int stridePx) {
+        if (project == null || project.getMask() == null) return null;
+
+        VisibilityGraphRouter.Corners known = VisibilityGraphRouter.cornersFor(project.getMask().contentHash());
+        if (known != null && known.size() <= VisibilityGraphRouter.DEFAULT_MAX_VERTICES) return null;
+
+        VisibilityGraphRouter vis = new VisibilityGraphRouter(project.getMask(), Math.max(1, stridePx));
+        if (vis.getVertexCount() >= 0) return null;
+        return "Plan has more than " + vis.getMaxVertices() + " wall corners: travel times use grid flow fields"
+                + " (stride " + Math.max(1, stridePx) + "px) instead of exact routes. Smoothing stair-stepped walls helps.";
+    }
+
+    private static Set<Integer> labelsOf(GridComponents comps, List<Zone> zones) {
+        Set<Integer> out = new TreeSet<>();
+        for (Zone z : zones) {
+            int l = comps.componentAt(safeAnchor(z));
+            if (l != 0) out.add(l);
+        }
+        return out;
+    }
+
+    private static String where(GridComponents comps, int label) {
+        if (label == 0) return "not near any walkable area";
+        return "walkable area #" + label + " of " + comps.getComponentCount()
+                + ", " + comps.componentSize(label) + " cells";
+    }
+
+    private static String describe(GridComponents comps, Set<Integer> labels) {
+        if (labels.isEmpty()) return "no walkable area";
+        StringBuilder sb = new StringBuilder(labels.size() == 1 ? "area " : "areas ");
+        boolean first = true;
+        for (int l : labels) {
+            if (!first) sb.append(", ");
+            sb.append('#').append(l);
+            first = false;
+        }
+        return sb.toString();
     }
 
     private static Point safeAnchor(Zone z) {
@@ -0,0 +1,267 @@
+package sim.floorplan.path;
+
+import sim.floorplan.model.WalkMask;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distance-to-goal field over a WalkMask stride grid (one reverse Dijkstra from a single goal).
+ *
+ * Stores per cell:
+ *  - distance to the goal (in stride cells, octile costs)
+ *  - the next step toward the goal (direction byte, -1 = goal / unreachable)
+ *
+ * Travel distance from any point is then a lookup, and a walking route is just
+ * "follow the arrows". Same step rule as {@link AStarRouter}, so routes never cut walls.
+ */
+public class FlowField {
+
+    private static final float DIAG = 1.41421356f;
+    private static final byte NONE = -1;
+
+    // direction k -> (DX[k], DY[k]); first 4 are cardinal
+    private static final int[] DX = { 1, -1, 0, 0, 1, 1, -1, -1 };
+    private static final int[] DY = { 0, 0, 1, -1, 1, -1, 1, -1 };
+
+    // followed routes are cheap to rebuild, but animation asks for the same few sources every frame
+    private static final int MAX_CACHED_ROUTES = 256;
+
+    private final WalkMask mask;
+    private final int stride;
+    private final boolean allowDiagonal;
+    private final int gw, gh;
+
+    private final Point goal;     // snapped goal pixel (null if goal couldn't be snapped)
+    private final float[] dist;   // per cell, +INF if unreachable
+    private final byte[] dir;     // per cell, index into DX/DY toward the goal
+    private final int maskVersion;
+
+    private final Map<Integer, List<Point>> routeByCell = new LinkedHashMap<Integer, List<Point>>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Point>> eldest) {
+            return size() > MAX_CACHED_ROUTES;
+        }
+    };
+
+    public FlowField(WalkMask mask, Point goalPx, int stridePx, boolean allowDiagonal) {
+        if (mask == null) throw new IllegalArgumentException("mask is null");
+        this.mask = mask;
+        this.stride = Math.max(1, stridePx);
+        this.allowDiagonal = allowDiagonal;
+        this.gw = (mask.getWidth() + stride - 1) / stride;
+        this.gh = (mask.getHeight() + stride - 1) / stride;
+        this.maskVersion = mask.getVersion();
+
+        this.dist = new float[gw * gh];
+        this.dir = new byte[gw * gh];
+        Arrays.fill(dist, Float.POSITIVE_INFINITY);
+        Arrays.fill(dir, NONE);
+
+        this.goal = (goalPx == null) ? null : AStarRouter.snapToNearestWalkable(mask, goalPx, stride, 240);
+        if (goal != null) build(cellOf(goal));
+    }
+
+    public Point getGoal() { return goal == null ? null : new Point(goal); }
+    public int getStridePx() { return stride; }
+
+    /** Mask version this field was built from (stale once the mask changes). */
+    public int getMaskVersion() { return maskVersion; }
+
+    /** Heap held by the field itself (distance + direction per cell; followed routes not counted). */
+    public long approxBytes() {
+        return 64L + 5L * dist.length;
+    }
+
+    /**
+     * ✅ True if no reachable cell lies within one stride of the pixel rectangle. Every step whose
+     * validity an edit of that rectangle could change has both ends there, so the field's distances
+     * and directions survive such an edit. Followed routes may have been smoothed across it, so
+     * callers keeping the field should {@link #forgetRoutes()}.
+     */
+    public boolean unreachableNear(Rectangle pxRect) {
+        if (pxRect == null || pxRect.isEmpty()) return true;
+        int x0 = Math.max(0, (pxRect.x - stride) / stride);
+        int y0 = Math.max(0, (pxRect.y - stride) / stride);
+        int x1 = Math.min(gw - 1, (pxRect.x + pxRect.width - 1 + stride + stride - 1) / stride);
+        int y1 = Math.min(gh - 1, (pxRect.y + pxRect.height - 1 + stride + stride - 1) / stride);
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (dist[y * gw + x] != Float.POSITIVE_INFINITY) return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void forgetRoutes() {
+        routeByCell.clear();
+    }
+
+    /**
+     * Walking distance in pixels from p to the goal (grid distance plus the snap offset),
+     * or +INF if p can't reach the goal.
+     */
+    public double distancePx(Point p) {
+        if (p == null || goal == null) return Double.POSITIVE_INFINITY;
+        Point s = AStarRouter.snapToNearestWalkable(mask, p, stride, 240);
+        if (s == null) return Double.POSITIVE_INFINITY;
+
+        float d = dist[cellOf(s)];
+        if (d == Float.POSITIVE_INFINITY) return Double.POSITIVE_INFINITY;
+        return d * (double) stride + p.distance(s);
+    }
+
+    /**
+     * Route from p to the goal by following the field (smoothed like the A* routers).
+     * Returns null if unreachable. The returned route is shared and immutable.
+     */
+    public synchronized List<Point> routeFrom(Point p) {
+        if (p == null || goal == null) return null;
+        Point s = AStarRouter.snapToNearestWalkable(mask, p, stride, 240);
+        if (s == null) return null;
+
+        int cell = cellOf(s);
+        if (dist[cell] == Float.POSITIVE_INFINITY) return null;
+
+        List<Point> cached = routeByCell.get(cell);
+        if (cached != null) return cached;
+
+        ArrayList<Point> raw = new ArrayList<>();
+        int c = cell;
+        raw.add(cellPoint(c));
+        while (dir[c] != NONE) {
+            int k = dir[c];
+            c = (c / gw + DY[k]) * gw + (c % gw + DX[k]);
+            raw.add(cellPoint(c));
+        }
+
+        List<Point> out = AStarRouter.simplifyCollinear(raw);
+        out = AStarRouter.smoothLineOfSight(mask, out);
+        out = AStarRouter.simplifyCollinear(out);
+        if (out.size() == 1) out = new ArrayList<>(Arrays.asList(out.get(0), out.get(0)));
+
+        Polyline route = Polyline.of(out);
+        routeByCell.put(cell, route);
+        return route;
+    }
+
+    // ---------- build ----------
+
+    private void build(int goalCell) {
+        final int dirs = allowDiagonal ? 8 : 4;
+
+        IndexHeap open = new IndexHeap(Math.max(16, gw * gh / 8));
+        dist[goalCell] = 0f;
+        open.push(goalCell, 0f);
+
+        while (!open.isEmpty()) {
+            float d = open.peekKey();
+            int c = open.pop();
+            if (d > dist[c]) continue; // stale entry
+
+            int cx = c % gw;
+            int cy = c / gw;
+
+            for (int k = 0; k < dirs; k++) {
+                int nx = cx + DX[k];
+                int ny = cy + DY[k];
+                if (nx < 0 || ny < 0 || nx >= gw || ny >= gh) continue;
+
+                float nd = d + (k >= 4 ? DIAG : 1f);
+                int n = ny * gw + nx;
+                if (nd >= dist[n]) continue;
+
+                // step rule is symmetric, so (n -> c) is allowed iff (c -> n) is
+                if (!AStarRouter.canStep(mask, stride, nx, ny, cx, cy)) continue;
+
+                dist[n] = nd;
+                dir[n] = (byte) opposite(k);
+                open.push(n, nd);
+            }
+        }
+    }
+
+    private static int opposite(int k) {
+        switch (k) {
+            case 0: return 1;
+            case 1: return 0;
+            case 2: return 3;
+            case 3: return 2;
+            case 4: return 7;
+            case 5: return 6;
+            case 6: return 5;
+            default: return 4;
+        }
+    }
+
+    private int cellOf(Point p) {
+        int x = Math.max(0, Math.min(gw - 1, p.x / stride));
+        int y = Math.max(0, Math.min(gh - 1, p.y / stride));
+        return y * gw + x;
+    }
+
+    private Point cellPoint(int cell) {
+        int x = Math.min(mask.getWidth() - 1, (cell % gw) * stride);
+        int y = Math.min(mask.getHeight() - 1, (cell / gw) * stride);
+        return new Point(x, y);
+    }
+
+    /** Binary min-heap of (cell, key) without boxing; duplicates allowed (lazy deletion). */
+    private static final class IndexHeap {
+        private int[] idx;
+        private float[] key;
+        private int size;
+
+        IndexHeap(int cap) {
+            idx = new int[cap];
+            key = new float[cap];
+        }
+
+        boolean isEmpty() { return size == 0; }
+        float peekKey() { return key[0]; }
+
+        void push(int i, float k) {
+            if (size == idx.length) {
+                idx = Arrays.copyOf(idx, size * 2);
+                key = Arrays.copyOf(key, size * 2);
+            }
+            int at = size++;
+            while (at > 0) {
+                int parent = (at - 1) >>> 1;
+                if (key[parent] <= k) break;
+                idx[at] = idx[parent];
+                key[at] = key[parent];
+                at = parent;
+            }
+            idx[at] = i;
+            key[at] = k;
+        }
+
+        int pop() {
+            int top = idx[0];
+            int lastI = idx[--size];
+            float lastK = key[size];
+
+            int at = 0;
+            int half = size >>> 1;
+            while (at < half) {
+                int child = 2 * at + 1;
+                if (child + 1 < size && key[child + 1] < key[child]) child++;
+                if (key[child] >= lastK) break;
+                idx[at] = idx[child];
+                key[at] = key[child];
+                at = child;
+            }
+            if (size > 0) {
+                idx[at] = lastI;
+                key[at] = lastK;
+            }
+            return top;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package sim.floorplan.path;
+
+import sim.floorplan.model.WalkMask;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * Connected components of the WalkMask stride grid (union-find, one linear pass).
+ *
+ * Uses the same step rule as {@link AStarRouter} (diagonals without corner cutting, no stride
+ * jumps through walls), so "same component" means "A* would find a route".
+ *
+ * Component ids are renumbered by size: 1 = largest walkable area, 2 = next, ...
+ * 0 means "no walkable cell".
+ */
+public class GridComponents {
+
+    private final WalkMask mask;
+    private final int stride;
+    private final int gw, gh;
+    private final int maskVersion;
+
+    private final int[] label;       // per cell, 0 = blocked
+    private final int[] sizeById;    // index = component id, value = cell count
+    private final int componentCount;
+
+    public GridComponents(WalkMask mask, int stridePx, boolean allowDiagonal) {
+        if (mask == null) throw new IllegalArgumentException("mask is null");
+        this.mask = mask;
+        this.stride = Math.max(1, stridePx);
+        this.gw = (mask.getWidth() + stride - 1) / stride;
+        this.gh = (mask.getHeight() + stride - 1) / stride;
+        this.maskVersion = mask.getVersion();
+
+        final int n = gw * gh;
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1); // -1 = blocked cell
+
+        for (int cy = 0; cy < gh; cy++) {
+            for (int cx = 0; cx < gw; cx++) {
+                int px = Math.min(mask.getWidth() - 1, cx * stride);
+                int py = Math.min(mask.getHeight() - 1, cy * stride);
+                if (mask.isWalkable(px, py)) parent[cy * gw + cx] = cy * gw + cx;
+            }
+        }
+
+        // forward neighbors only: every undirected step is seen exactly once
+        for (int cy = 0; cy < gh; cy++) {
+            for (int cx = 0; cx < gw; cx++) {
+                int c = cy * gw + cx;
+                if (parent[c] < 0) continue;
+
+                if (cx + 1 < gw) join(parent, c, cx, cy, cx + 1, cy);
+                if (cy + 1 < gh) {
+                    join(parent, c, cx, cy, cx, cy + 1);
+                    if (allowDiagonal) {
+                        if (cx + 1 < gw) join(parent, c, cx, cy, cx + 1, cy + 1);
+                        if (cx > 0) join(parent, c, cx, cy, cx - 1, cy + 1);
+                    }
+                }
+            }
+        }
+
+        // count roots
+        int[] rootSize = new int[n];
+        for (int c = 0; c < n; c++) {
+            if (parent[c] >= 0) rootSize[find(parent, c)]++;
+        }
+
+        int roots = 0;
+        for (int c = 0; c < n; c++) if (rootSize[c] > 0) roots++;
+
+        // order roots by size (desc) -> ids 1..roots
+        long[] bySize = new long[roots];
+        int r = 0;
+        for (int c = 0; c < n; c++) {
+            if (rootSize[c] > 0) bySize[r++] = ((long) (Integer.MAX_VALUE - rootSize[c]) << 32) | c;
+        }
+        Arrays.sort(bySize);
+
+        int[] idOfRoot = new int[n];
+        this.sizeById = new int[roots + 1];
+        for (int i = 0; i < roots; i++) {
+            int root = (int) bySize[i];
+            idOfRoot[root] = i + 1;
+            sizeById[i + 1] = rootSize[root];
+        }
+
+        this.label = new int[n];
+        for (int c = 0; c < n; c++) {
+            if (parent[c] >= 0) label[c] = idOfRoot[find(parent, c)];
+        }
+        this.componentCount = roots;
+    }
+
+    public int getStridePx() { return stride; }
+    public int getComponentCount() { return componentCount; }
+
+    /** Mask version these labels were computed from. */
+    public int getMaskVersion() { return maskVersion; }
+
+    /** Component of the walkable cell nearest to p (same snapping as the routers), 0 if none. */
+    public int componentAt(Point p) {
+        if (p == null) return 0;
+        Point s = AStarRouter.snapToNearestWalkable(mask, p, stride, 240);
+        if (s == null) return 0;
+        int x = Math.max(0, Math.min(gw - 1, s.x / stride));
+        int y = Math.max(0, Math.min(gh - 1, s.y / stride));
+        return label[y * gw + x];
+    }
+
+    /** Cell count of a component (0 for unknown ids). */
+    public int componentSize(int id) {
+        return (id <= 0 || id >= sizeById.length) ? 0 : sizeById[id];
+    }
+
+    public boolean connected(Point a, Point b) {
+        int la = componentAt(a);
+        return la != 0 && la == componentAt(b);
+    }
+
+    // ---------- union-find ----------
+
+    private void join(int[] parent, int c, int cx, int cy, int nx, int ny) {
+        int n = ny * gw + nx;
+        if (parent[n] < 0) return;
+
+        int ra = find(parent, c);
+        int rb = find(parent, n);
+        if (ra == rb) return; // already joined: skip the (costly) segment check
+
+        if (!AStarRouter.canStep(mask, stride, cx, cy, nx, ny)) return;
+
+        // smaller index becomes root (keeps trees shallow enough with path halving)
+        if (ra < rb) parent[rb] = ra; else parent[ra] = rb;
+    }
+
+    private static int find(int[] parent, int c) {
+        while (parent[c] != c) {
+            parent[c] = parent[parent[c]]; // path halving
+            c = parent[c];
+        }
+        return c;
+    }
+}
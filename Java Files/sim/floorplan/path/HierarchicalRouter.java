@@ -0,0 +1,583 @@
+package sim.floorplan.path;
+
+import sim.floorplan.model.WalkMask;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.*;
+
+/**
+ * Hierarchical A* (HPA*) over a WalkMask stride grid.
+ *
+ * The stride grid is split into square clusters. Steps across a cluster border become
+ * "entrance" nodes, and the distances between entrances of the same cluster are precomputed.
+ * A query searches that small abstract graph first and then refines only the clusters on the
+ * chosen route, so long routes across big plans never hit a flat A* expansion cap.
+ *
+ * Uses the same step rule as {@link AStarRouter} (no corner cutting, no stride jumps through walls)
+ * and the same smoothing, so drawn routes look the same.
+ *
+ * When the mask is repainted only clusters touching the changed regions are rebuilt.
+ * Not cheap to build on a huge plan, so keep one instance per mask and reuse it.
+ */
+public class HierarchicalRouter {
+
+    /** Cluster edge length in stride cells. */
+    public static final int DEFAULT_CLUSTER_CELLS = 32;
+
+    // border runs up to this long get one transition in the middle; longer runs get one at each end
+    private static final int MAX_SINGLE_ENTRANCE = 6;
+
+    private static final float DIAG = 1.41421356f;
+    private static final float INF = Float.POSITIVE_INFINITY;
+
+    private static final int START = -2;
+    private static final int GOAL = -3;
+
+    private static final class Node {
+        final int idx;
+        final float f;
+        Node(int idx, float f) { this.idx = idx; this.f = f; }
+    }
+
+    private static final class Cluster {
+        int[] nodes = new int[0];       // entrance cells (global cell index), sorted
+        float[] dist = new float[0];    // nodes.length^2 intra-cluster distances (INF = not connected inside)
+        int[][] links = new int[0][];   // per node: cells in neighboring clusters one step away
+        float[][] linkCost = new float[0][];
+    }
+
+    private final WalkMask mask;
+    private final int stride;
+    private final boolean allowDiagonal;
+    private final int clusterCells;
+
+    private final int gw, gh;   // stride grid
+    private final int cw, ch;   // cluster grid
+
+    // per cluster: {cellHere, cellInNeighbor, isDiagonal} triples across its east / south border
+    private final int[][] eastLinks;
+    private final int[][] southLinks;
+    private final Cluster[] clusters;
+
+    private boolean built = false;
+    private int builtVersion;
+
+    // scratch for cluster-bounded searches (reused, guarded by "this")
+    private final float[] localG;
+    private final int[] localParent;
+    private final boolean[] localClosed;
+
+    public HierarchicalRouter(WalkMask mask, int stridePx, boolean allowDiagonal) {
+        this(mask, stridePx, allowDiagonal, DEFAULT_CLUSTER_CELLS);
+    }
+
+    public HierarchicalRouter(WalkMask mask, int stridePx, boolean allowDiagonal, int clusterCells) {
+        if (mask == null) throw new IllegalArgumentException("mask is null");
+        this.mask = mask;
+        this.stride = Math.max(1, stridePx);
+        this.allowDiagonal = allowDiagonal;
+        this.clusterCells = Math.max(4, clusterCells);
+
+        this.gw = (mask.getWidth() + stride - 1) / stride;
+        this.gh = (mask.getHeight() + stride - 1) / stride;
+        this.cw = (gw + this.clusterCells - 1) / this.clusterCells;
+        this.ch = (gh + this.clusterCells - 1) / this.clusterCells;
+
+        int nc = cw * ch;
+        this.eastLinks = new int[nc][];
+        this.southLinks = new int[nc][];
+        this.clusters = new Cluster[nc];
+
+        int area = this.clusterCells * this.clusterCells;
+        this.localG = new float[area];
+        this.localParent = new int[area];
+        this.localClosed = new boolean[area];
+    }
+
+    public WalkMask getMask() { return mask; }
+    public int getStridePx() { return stride; }
+    public boolean isAllowDiagonal() { return allowDiagonal; }
+
+    /**
+     * Route in IMAGE pixel coordinates (endpoints snapped to the stride grid), or null if unreachable.
+     */
+    public synchronized List<Point> findPath(Point startPx, Point goalPx) {
+        List<Integer> cells = findCells(startPx, goalPx, true);
+        if (cells == null) return null;
+
+        ArrayList<Point> raw = new ArrayList<>(cells.size());
+        for (int c : cells) raw.add(cellPoint(c));
+
+        List<Point> out = AStarRouter.simplifyCollinear(raw);
+        out = AStarRouter.smoothLineOfSight(mask, out);
+        out = AStarRouter.simplifyCollinear(out);
+        return out;
+    }
+
+    /** Reachability only (skips refinement). */
+    public synchronized boolean isReachable(Point startPx, Point goalPx) {
+        return findCells(startPx, goalPx, false) != null;
+    }
+
+    // ---------- query ----------
+
+    private List<Integer> findCells(Point startPx, Point goalPx, boolean refine) {
+        if (startPx == null || goalPx == null) return null;
+
+        ensureBuilt();
+
+        Point s = AStarRouter.snapToNearestWalkable(mask, startPx, stride, 240);
+        Point g = AStarRouter.snapToNearestWalkable(mask, goalPx, stride, 240);
+        if (s == null || g == null) return null;
+
+        int sc = cellOf(s);
+        int gc = cellOf(g);
+
+        if (sc == gc) return new ArrayList<>(Collections.singletonList(sc));
+
+        int ks = clusterOfCell(sc);
+        int kg = clusterOfCell(gc);
+
+        // same cluster: try the short way first (may still need to leave the cluster)
+        if (ks == kg) {
+            List<Integer> local = localPath(sc, gc, ks);
+            if (local != null) return local;
+        }
+
+        float[] startDist = distancesToEntrances(sc, ks);
+        float[] goalDist = distancesToEntrances(gc, kg);
+
+        List<Integer> abs = abstractSearch(sc, gc, ks, kg, startDist, goalDist);
+        if (abs == null) return null;
+        if (!refine) return abs;
+
+        ArrayList<Integer> out = new ArrayList<>();
+        out.add(abs.get(0));
+        for (int i = 1; i < abs.size(); i++) {
+            int a = abs.get(i - 1);
+            int b = abs.get(i);
+            if (a == b) continue;
+
+            int ka = clusterOfCell(a);
+            if (ka != clusterOfCell(b)) {
+                out.add(b); // single border step
+                continue;
+            }
+
+            List<Integer> seg = localPath(a, b, ka);
+            if (seg == null) return null; // shouldn't happen (distances came from the same search)
+            out.addAll(seg.subList(1, seg.size()));
+        }
+        return out;
+    }
+
+    /** A* over entrance nodes. Returns [startCell, entrances..., goalCell] or null. */
+    private List<Integer> abstractSearch(int sc, int gc, int ks, int kg, float[] startDist, float[] goalDist) {
+        final int gx = gc % gw;
+        final int gy = gc / gw;
+
+        HashMap<Integer, Float> gScore = new HashMap<>();
+        HashMap<Integer, Integer> cameFrom = new HashMap<>();
+        HashSet<Integer> closed = new HashSet<>();
+        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingDouble(a -> a.f));
+
+        gScore.put(START, 0f);
+        open.add(new Node(START, 0f));
+
+        while (!open.isEmpty()) {
+            Node cur = open.poll();
+            int id = cur.idx;
+            if (!closed.add(id)) continue;
+
+            if (id == GOAL) {
+                ArrayList<Integer> rev = new ArrayList<>();
+                Integer at = GOAL;
+                while (at != null) {
+                    rev.add(at == GOAL ? gc : (at == START ? sc : at));
+                    at = cameFrom.get(at);
+                }
+                Collections.reverse(rev);
+                return rev;
+            }
+
+            float base = gScore.get(id);
+
+            if (id == START) {
+                Cluster c = clusters[ks];
+                for (int i = 0; i < c.nodes.length; i++) {
+                    if (startDist[i] < INF) relax(c.nodes[i], id, base + startDist[i], gScore, cameFrom, closed, open, gx, gy);
+                }
+                continue;
+            }
+
+            int k = clusterOfCell(id);
+            Cluster c = clusters[k];
+            int i = Arrays.binarySearch(c.nodes, id);
+            if (i < 0) continue;
+
+            int m = c.nodes.length;
+            for (int j = 0; j < m; j++) {
+                float d = c.dist[i * m + j];
+                if (j != i && d < INF) relax(c.nodes[j], id, base + d, gScore, cameFrom, closed, open, gx, gy);
+            }
+            for (int j = 0; j < c.links[i].length; j++) {
+                relax(c.links[i][j], id, base + c.linkCost[i][j], gScore, cameFrom, closed, open, gx, gy);
+            }
+            if (k == kg && goalDist[i] < INF) {
+                relax(GOAL, id, base + goalDist[i], gScore, cameFrom, closed, open, gx, gy);
+            }
+        }
+        return null;
+    }
+
+    private void relax(int to, int from, float tentative,
+                       HashMap<Integer, Float> gScore, HashMap<Integer, Integer> cameFrom,
+                       HashSet<Integer> closed, PriorityQueue<Node> open, int gx, int gy) {
+        if (closed.contains(to)) return;
+        Float old = gScore.get(to);
+        if (old != null && old <= tentative) return;
+
+        gScore.put(to, tentative);
+        cameFrom.put(to, from);
+
+        float hh = (to == GOAL) ? 0f : AStarRouter.heuristicOctile(to % gw, to / gw, gx, gy);
+        open.add(new Node(to, tentative + hh));
+    }
+
+    private float[] distancesToEntrances(int cell, int k) {
+        Cluster c = clusters[k];
+        float[] out = new float[c.nodes.length];
+        int[] b = clusterBounds(k);
+        localSearch(cell, -1, b[0], b[1], b[2], b[3]);
+
+        int bw = b[2] - b[0] + 1;
+        for (int i = 0; i < out.length; i++) {
+            int n = c.nodes[i];
+            out[i] = localG[(n / gw - b[1]) * bw + (n % gw - b[0])];
+        }
+        return out;
+    }
+
+    /** Cell path a -> b staying inside cluster k, or null. */
+    private List<Integer> localPath(int a, int b, int k) {
+        int[] bb = clusterBounds(k);
+        if (!localSearch(a, b, bb[0], bb[1], bb[2], bb[3])) return null;
+
+        int bw = bb[2] - bb[0] + 1;
+        ArrayList<Integer> rev = new ArrayList<>();
+        int li = (b / gw - bb[1]) * bw + (b % gw - bb[0]);
+        while (li != -1) {
+            rev.add((bb[1] + li / bw) * gw + (bb[0] + li % bw));
+            li = localParent[li];
+        }
+        Collections.reverse(rev);
+        return rev;
+    }
+
+    /**
+     * Grid search confined to cells [x0..x1] x [y0..y1] (at most one cluster).
+     * goal >= 0: A* to that cell (returns true if reached). goal < 0: full Dijkstra into localG.
+     */
+    private boolean localSearch(int start, int goal, int x0, int y0, int x1, int y1) {
+        final int bw = x1 - x0 + 1;
+        final int bh = y1 - y0 + 1;
+        final int n = bw * bh;
+
+        Arrays.fill(localG, 0, n, INF);
+        Arrays.fill(localParent, 0, n, -1);
+        Arrays.fill(localClosed, 0, n, false);
+
+        final int gx = goal >= 0 ? goal % gw : 0;
+        final int gy = goal >= 0 ? goal / gw : 0;
+
+        int s = (start / gw - y0) * bw + (start % gw - x0);
+        localG[s] = 0f;
+
+        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingDouble(a -> a.f));
+        open.add(new Node(s, 0f));
+
+        final int[] dx = allowDiagonal ? new int[] { 1, -1, 0, 0, 1, 1, -1, -1 } : new int[] { 1, -1, 0, 0 };
+        final int[] dy = allowDiagonal ? new int[] { 0, 0, 1, -1, 1, -1, 1, -1 } : new int[] { 0, 0, 1, -1 };
+
+        while (!open.isEmpty()) {
+            Node cur = open.poll();
+            int li = cur.idx;
+            if (localClosed[li]) continue;
+            localClosed[li] = true;
+
+            int cx = x0 + li % bw;
+            int cy = y0 + li / bw;
+            if (goal >= 0 && cx == gx && cy == gy) return true;
+
+            for (int k = 0; k < dx.length; k++) {
+                int nx = cx + dx[k];
+                int ny = cy + dy[k];
+                if (nx < x0 || ny < y0 || nx > x1 || ny > y1) continue;
+
+                int ni = (ny - y0) * bw + (nx - x0);
+                if (localClosed[ni]) continue;
+                if (!AStarRouter.canStep(mask, stride, cx, cy, nx, ny)) continue;
+
+                float tentative = localG[li] + ((dx[k] != 0 && dy[k] != 0) ? DIAG : 1f);
+                if (tentative < localG[ni]) {
+                    localG[ni] = tentative;
+                    localParent[ni] = li;
+                    float hh = goal >= 0 ? AStarRouter.heuristicOctile(nx, ny, gx, gy) : 0f;
+                    open.add(new Node(ni, tentative + hh));
+                }
+            }
+        }
+        return goal < 0;
+    }
+
+    // ---------- build / incremental rebuild ----------
+
+    private void ensureBuilt() {
+        int v = mask.getVersion();
+        if (built && v == builtVersion) return;
+
+        List<Rectangle> changed = built ? mask.getChangedRegionsSince(builtVersion) : null;
+        if (changed == null) {
+            buildAll();
+        } else {
+            rebuildDirty(changed);
+        }
+
+        built = true;
+        builtVersion = v;
+    }
+
+    private void buildAll() {
+        for (int k = 0; k < clusters.length; k++) {
+            eastLinks[k] = computeLinks(k, true);
+            southLinks[k] = computeLinks(k, false);
+        }
+        for (int k = 0; k < clusters.length; k++) rebuildCluster(k);
+    }
+
+    private void rebuildDirty(List<Rectangle> changed) {
+        boolean[] dirty = new boolean[clusters.length];
+        boolean any = false;
+
+        for (Rectangle r : changed) {
+            if (r == null || r.isEmpty()) continue;
+            // a pixel touches every cell whose node or step segment can reach it: pad by one stride
+            int gx0 = clamp(Math.floorDiv(r.x - stride, stride), 0, gw - 1);
+            int gy0 = clamp(Math.floorDiv(r.y - stride, stride), 0, gh - 1);
+            int gx1 = clamp((r.x + r.width - 1 + stride) / stride, 0, gw - 1);
+            int gy1 = clamp((r.y + r.height - 1 + stride) / stride, 0, gh - 1);
+
+            for (int ky = gy0 / clusterCells; ky <= gy1 / clusterCells; ky++) {
+                for (int kx = gx0 / clusterCells; kx <= gx1 / clusterCells; kx++) {
+                    dirty[ky * cw + kx] = true;
+                    any = true;
+                }
+            }
+        }
+        if (!any) return;
+
+        // links and entrance sets can change anywhere in the 3x3 block around a dirty cluster
+        boolean[] touched = new boolean[clusters.length];
+        for (int k = 0; k < clusters.length; k++) {
+            if (!dirty[k]) continue;
+            int kx = k % cw, ky = k / cw;
+            for (int y = Math.max(0, ky - 1); y <= Math.min(ch - 1, ky + 1); y++) {
+                for (int x = Math.max(0, kx - 1); x <= Math.min(cw - 1, kx + 1); x++) {
+                    touched[y * cw + x] = true;
+                }
+            }
+        }
+
+        for (int k = 0; k < clusters.length; k++) {
+            if (!touched[k]) continue;
+            eastLinks[k] = computeLinks(k, true);
+            southLinks[k] = computeLinks(k, false);
+        }
+        for (int k = 0; k < clusters.length; k++) {
+            if (touched[k]) rebuildCluster(k);
+        }
+    }
+
+    /**
+     * Transitions leaving cluster k across its east (or south) border as {here, there, isDiagonal} triples.
+     *
+     * Straight crossings are grouped into runs that are also connected ALONG the border on both sides,
+     * so one or two representatives per run keep connectivity. Diagonal crossings are only added
+     * when no such run already covers them (e.g. squeezing past a wall end or a cluster corner).
+     */
+    private int[] computeLinks(int k, boolean east) {
+        int kx = k % cw, ky = k / cw;
+        if (east ? kx >= cw - 1 : ky >= ch - 1) return new int[0];
+
+        int[] b = clusterBounds(k);
+        final int from = east ? b[1] : b[0];
+        final int to = east ? b[3] : b[2];
+        final int last = east ? gh - 1 : gw - 1;
+        final int side = east ? b[2] : b[3]; // border column (east) or row (south) on our side
+
+        int len = to - from + 1;
+        int[] runId = new int[len];
+        Arrays.fill(runId, -1);
+
+        int[] out = new int[12];
+        int n = 0;
+
+        // straight runs
+        int runs = 0;
+        int runStart = -1;
+        for (int t = from; t <= to + 1; t++) {
+            boolean open = t <= to && crossing(east, side, t, t);
+            boolean joined = open && runStart >= 0
+                    && along(east, side, t - 1, t) && along(east, side + 1, t - 1, t);
+
+            if (runStart >= 0 && !joined) {
+                int runEnd = t - 1;
+                int[] picks = (runEnd - runStart + 1 <= MAX_SINGLE_ENTRANCE)
+                        ? new int[] { (runStart + runEnd) / 2 }
+                        : new int[] { runStart, runEnd };
+                for (int p : picks) {
+                    if (n + 3 > out.length) out = Arrays.copyOf(out, out.length * 2);
+                    out[n++] = cell(east, side, p);
+                    out[n++] = cell(east, side + 1, p);
+                    out[n++] = 0;
+                }
+                runs++;
+                runStart = -1;
+            }
+            if (open) {
+                if (runStart < 0) runStart = t;
+                runId[t - from] = runs;
+            }
+        }
+
+        // uncovered diagonals
+        if (allowDiagonal) {
+            for (int t = from; t <= to; t++) {
+                for (int d = -1; d <= 1; d += 2) {
+                    int t2 = t + d;
+                    if (t2 < 0 || t2 > last) continue;
+                    // corner diagonals are owned by the east scan
+                    if (!east && (t2 < from || t2 > to)) continue;
+
+                    boolean covered = t2 >= from && t2 <= to
+                            && runId[t - from] >= 0 && runId[t - from] == runId[t2 - from];
+                    if (covered || !crossing(east, side, t, t2)) continue;
+
+                    if (n + 3 > out.length) out = Arrays.copyOf(out, out.length * 2);
+                    out[n++] = cell(east, side, t);
+                    out[n++] = cell(east, side + 1, t2);
+                    out[n++] = 1;
+                }
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Step across the border from (side, t) to (side+1, t2). */
+    private boolean crossing(boolean east, int side, int t, int t2) {
+        return east
+                ? AStarRouter.canStep(mask, stride, side, t, side + 1, t2)
+                : AStarRouter.canStep(mask, stride, t, side, t2, side + 1);
+    }
+
+    /** Step along the border line "line" from t1 to t2. */
+    private boolean along(boolean east, int line, int t1, int t2) {
+        return east
+                ? AStarRouter.canStep(mask, stride, line, t1, line, t2)
+                : AStarRouter.canStep(mask, stride, t1, line, t2, line);
+    }
+
+    private int cell(boolean east, int line, int t) {
+        return east ? t * gw + line : line * gw + t;
+    }
+
+    private void rebuildCluster(int k) {
+        int kx = k % cw, ky = k / cw;
+
+        // node -> {other, isDiagonal} pairs, from every border link with an end inside k
+        TreeMap<Integer, List<int[]>> byNode = new TreeMap<>();
+        for (int y = Math.max(0, ky - 1); y <= Math.min(ch - 1, ky + 1); y++) {
+            for (int x = Math.max(0, kx - 1); x <= Math.min(cw - 1, kx + 1); x++) {
+                addLinks(byNode, eastLinks[y * cw + x], k);
+                addLinks(byNode, southLinks[y * cw + x], k);
+            }
+        }
+
+        Cluster c = new Cluster();
+        int m = byNode.size();
+        c.nodes = new int[m];
+        c.links = new int[m][];
+        c.linkCost = new float[m][];
+        int i = 0;
+        for (Map.Entry<Integer, List<int[]>> e : byNode.entrySet()) {
+            c.nodes[i] = e.getKey();
+            List<int[]> others = e.getValue();
+            c.links[i] = new int[others.size()];
+            c.linkCost[i] = new float[others.size()];
+            for (int j = 0; j < others.size(); j++) {
+                c.links[i][j] = others.get(j)[0];
+                c.linkCost[i][j] = others.get(j)[1] != 0 ? DIAG : 1f;
+            }
+            i++;
+        }
+
+        c.dist = new float[m * m];
+        Arrays.fill(c.dist, INF);
+
+        int[] b = clusterBounds(k);
+        int bw = b[2] - b[0] + 1;
+        for (i = 0; i < m; i++) {
+            c.dist[i * m + i] = 0f;
+            if (i == m - 1) break;
+            localSearch(c.nodes[i], -1, b[0], b[1], b[2], b[3]);
+            for (int j = i + 1; j < m; j++) {
+                int n = c.nodes[j];
+                float d = localG[(n / gw - b[1]) * bw + (n % gw - b[0])];
+                c.dist[i * m + j] = d;
+                c.dist[j * m + i] = d; // step rule is symmetric
+            }
+        }
+
+        clusters[k] = c;
+    }
+
+    private void addLinks(TreeMap<Integer, List<int[]>> byNode, int[] triples, int k) {
+        if (triples == null) return;
+        for (int i = 0; i + 2 < triples.length; i += 3) {
+            int a = triples[i], b = triples[i + 1], diag = triples[i + 2];
+            if (clusterOfCell(a) == k) byNode.computeIfAbsent(a, key -> new ArrayList<>()).add(new int[] { b, diag });
+            if (clusterOfCell(b) == k) byNode.computeIfAbsent(b, key -> new ArrayList<>()).add(new int[] { a, diag });
+        }
+    }
+
+    // ---------- internals ----------
+
+    /** {x0, y0, x1, y1} in cells, inclusive. */
+    private int[] clusterBounds(int k) {
+        int kx = k % cw, ky = k / cw;
+        int x0 = kx * clusterCells;
+        int y0 = ky * clusterCells;
+        return new int[] { x0, y0, Math.min(gw - 1, x0 + clusterCells - 1), Math.min(gh - 1, y0 + clusterCells - 1) };
+    }
+
+    private int clusterOfCell(int cell) {
+        return ((cell / gw) / clusterCells) * cw + (cell % gw) / clusterCells;
+    }
+
+    private int cellOf(Point p) {
+        int x = clamp(p.x / stride, 0, gw - 1);
+        int y = clamp(p.y / stride, 0, gh - 1);
+        return y * gw + x;
+    }
+
+    private Point cellPoint(int cell) {
+        int x = Math.min(mask.getWidth() - 1, (cell % gw) * stride);
+        int y = Math.min(mask.getHeight() - 1, (cell / gw) * stride);
+        return new Point(x, y);
+    }
+
+    private static int clamp(int v, int lo, int hi) {
+        return Math.max(lo, Math.min(hi, v));
+    }
+}
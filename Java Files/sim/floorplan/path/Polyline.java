@@ -0,0 +1,112 @@
+package sim.floorplan.path;
+
+import java.awt.Point;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable route (IMAGE pixel points) with cumulative lengths precomputed,
+ * so "where is a passenger at t" never re-measures the route.
+ */
+public final class Polyline extends AbstractList<Point> implements RandomAccess {
+
+    /** Cached "no route" marker (size 0). */
+    public static final Polyline EMPTY = new Polyline(new int[0], new int[0]);
+
+    private final int[] xs;
+    private final int[] ys;
+    private final double[] cum; // cumulative distance at each vertex
+
+    private Polyline(int[] xs, int[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        this.cum = new double[xs.length];
+        double total = 0.0;
+        for (int i = 1; i < xs.length; i++) {
+            double dx = xs[i] - xs[i - 1];
+            double dy = ys[i] - ys[i - 1];
+            total += Math.sqrt(dx * dx + dy * dy);
+            cum[i] = total;
+        }
+    }
+
+    /** Copies pts (null points are skipped). Returns pts itself if it already is a Polyline. */
+    public static Polyline of(List<Point> pts) {
+        if (pts instanceof Polyline) return (Polyline) pts;
+        if (pts == null || pts.isEmpty()) return EMPTY;
+
+        int[] xs = new int[pts.size()];
+        int[] ys = new int[pts.size()];
+        int n = 0;
+        for (Point p : pts) {
+            if (p == null) continue;
+            xs[n] = p.x;
+            ys[n] = p.y;
+            n++;
+        }
+        if (n == 0) return EMPTY;
+        if (n < xs.length) {
+            xs = Arrays.copyOf(xs, n);
+            ys = Arrays.copyOf(ys, n);
+        }
+        return new Polyline(xs, ys);
+    }
+
+    @Override
+    public Point get(int index) {
+        return new Point(xs[index], ys[index]);
+    }
+
+    @Override
+    public int size() {
+        return xs.length;
+    }
+
+    public int getX(int index) { return xs[index]; }
+    public int getY(int index) { return ys[index]; }
+
+    /** Total length in pixels. */
+    public double length() {
+        return cum.length == 0 ? 0.0 : cum[cum.length - 1];
+    }
+
+    /** Point at fraction t01 of the length (Euclidean), null for an empty route. */
+    public Point pointAt(double t01) {
+        Point out = new Point();
+        return pointAt(t01, out) ? out : null;
+    }
+
+    /** Same as {@link #pointAt(double)} but writes into out (no allocation); false for an empty route. */
+    public boolean pointAt(double t01, Point out) {
+        int n = xs.length;
+        if (n == 0) return false;
+        if (n == 1 || length() <= 0.0001) {
+            out.setLocation(xs[0], ys[0]);
+            return true;
+        }
+
+        double target = Math.max(0.0, Math.min(1.0, t01)) * length();
+
+        // first vertex at or past target
+        int lo = 1, hi = n - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cum[mid] < target) lo = mid + 1; else hi = mid;
+        }
+
+        double d0 = cum[lo - 1];
+        double seg = Math.max(0.0001, cum[lo] - d0);
+        double u = Math.max(0.0, Math.min(1.0, (target - d0) / seg));
+
+        out.x = (int) Math.round(xs[lo - 1] + (xs[lo] - xs[lo - 1]) * u);
+        out.y = (int) Math.round(ys[lo - 1] + (ys[lo] - ys[lo - 1]) * u);
+        return true;
+    }
+
+    /** Rough heap footprint, used for cache budgets. */
+    public long approxBytes() {
+        return 64L + 16L * xs.length;
+    }
+}
@@ -0,0 +1,169 @@
+package sim.floorplan.path;
+
+import java.awt.Rectangle;
+import java.util.*;
+
+/**
+ * Process-wide LRU of computed routes with a memory budget.
+ *
+ * Keys carry the mask CONTENT hash (not the instance or version), so a rebuilt
+ * FloorplanBindings, a project copy, or a reopened .fsp all hit the same entries.
+ * Unreachable pairs are cached as {@link Polyline#EMPTY}.
+ *
+ * All methods are synchronized; routing itself happens outside the lock.
+ */
+public final class RouteStore {
+
+    public static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+
+    private static final RouteStore SHARED = new RouteStore(DEFAULT_BUDGET_BYTES);
+
+    public static RouteStore shared() { return SHARED; }
+
+    public static final class Key {
+        public final long maskHash;
+        public final int stride;
+        public final boolean diagonal;
+        public final int ax, ay, bx, by;
+
+        public Key(long maskHash, int stride, boolean diagonal, int ax, int ay, int bx, int by) {
+            this.maskHash = maskHash;
+            this.stride = stride;
+            this.diagonal = diagonal;
+            this.ax = ax; this.ay = ay; this.bx = bx; this.by = by;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return maskHash == k.maskHash && stride == k.stride && diagonal == k.diagonal
+                    && ax == k.ax && ay == k.ay && bx == k.bx && by == k.by;
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(maskHash, stride, diagonal, ax, ay, bx, by);
+        }
+    }
+
+    private final LinkedHashMap<Key, Polyline> routes = new LinkedHashMap<>(256, 0.75f, true);
+    private long budgetBytes;
+    private long usedBytes = 0;
+
+    public RouteStore(long budgetBytes) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+    }
+
+    public synchronized Polyline get(Key k) {
+        return (k == null) ? null : routes.get(k);
+    }
+
+    public synchronized void put(Key k, Polyline route) {
+        if (k == null || route == null) return;
+
+        Polyline old = routes.put(k, route);
+        if (old != null) usedBytes -= entryBytes(old);
+        usedBytes += entryBytes(route);
+
+        trimToBudget();
+    }
+
+    /** Everything currently cached for one mask content (e.g. to persist with the project). */
+    public synchronized Map<Key, Polyline> routesFor(long maskHash) {
+        LinkedHashMap<Key, Polyline> out = new LinkedHashMap<>();
+        for (Map.Entry<Key, Polyline> e : routes.entrySet()) {
+            if (e.getKey().maskHash == maskHash) out.put(e.getKey(), e.getValue());
+        }
+        return out;
+    }
+
+    /**
+     * ✅ After a local mask edit, re-keys routes of the old content under the new content hash
+     * when the edit can't have affected them. A route of length L from A to B lies inside the
+     * ellipse |pA| + |pB| &lt;= L, and so would any shorter route, so if no changed rectangle
+     * (padded by padPx) reaches into that ellipse the route is still valid and still as short.
+     * Unreachable entries are not carried over (an edit anywhere could connect them).
+     * Returns the number of routes carried over.
+     */
+    public synchronized int carryOver(long oldHash, long newHash, List<Rectangle> changed, int padPx) {
+        if (oldHash == newHash || changed == null) return 0;
+
+        List<Rectangle> padded = padded(changed, padPx);
+
+        ArrayList<Map.Entry<Key, Polyline>> keep = new ArrayList<>();
+        for (Map.Entry<Key, Polyline> e : routes.entrySet()) {
+            Key k = e.getKey();
+            Polyline route = e.getValue();
+            if (k.maskHash != oldHash || route.isEmpty()) continue;
+            if (touchesEllipse(k.ax, k.ay, k.bx, k.by, route.length(), padded)) continue;
+            keep.add(e);
+        }
+
+        int n = 0;
+        for (Map.Entry<Key, Polyline> e : keep) {
+            Key k = e.getKey();
+            Key moved = new Key(newHash, k.stride, k.diagonal, k.ax, k.ay, k.bx, k.by);
+            if (routes.containsKey(moved)) continue;
+            routes.put(moved, e.getValue());
+            usedBytes += entryBytes(e.getValue());
+            n++;
+        }
+        trimToBudget();
+        return n;
+    }
+
+    /** Non-empty rectangles grown by padPx on every side. */
+    public static List<Rectangle> padded(List<Rectangle> rects, int padPx) {
+        ArrayList<Rectangle> out = new ArrayList<>(rects.size());
+        for (Rectangle r : rects) {
+            if (r == null || r.isEmpty()) continue;
+            Rectangle p = new Rectangle(r);
+            p.grow(Math.max(0, padPx), Math.max(0, padPx));
+            out.add(p);
+        }
+        return out;
+    }
+
+    /**
+     * True if some rectangle may reach into the ellipse |pA| + |pB| &lt;= length.
+     * Conservative: dist(A, r) + dist(B, r) never exceeds the true minimum of |pA| + |pB| over r.
+     */
+    public static boolean touchesEllipse(int ax, int ay, int bx, int by, double length, List<Rectangle> rects) {
+        for (Rectangle r : rects) {
+            if (distToRect(ax, ay, r) + distToRect(bx, by, r) <= length + 1e-6) return true;
+        }
+        return false;
+    }
+
+    private static double distToRect(int x, int y, Rectangle r) {
+        double dx = Math.max(0, Math.max(r.x - x, x - (r.x + r.width - 1)));
+        double dy = Math.max(0, Math.max(r.y - y, y - (r.y + r.height - 1)));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    public synchronized void setBudgetBytes(long bytes) {
+        budgetBytes = Math.max(0, bytes);
+        trimToBudget();
+    }
+
+    public synchronized long getBudgetBytes() { return budgetBytes; }
+    public synchronized long getUsedBytes() { return usedBytes; }
+    public synchronized int size() { return routes.size(); }
+
+    public synchronized void clear() {
+        routes.clear();
+        usedBytes = 0;
+    }
+
+    private void trimToBudget() {
+        Iterator<Map.Entry<Key, Polyline>> it = routes.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<Key, Polyline> eldest = it.next();
+            usedBytes -= entryBytes(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    private static long entryBytes(Polyline p) {
+        return 96L + p.approxBytes(); // key + map entry + route
+    }
+}
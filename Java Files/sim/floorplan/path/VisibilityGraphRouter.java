@@ -0,0 +1,547 @@
+package sim.floorplan.path;
+
+import sim.floorplan.model.WalkMask;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.*;
+
+/**
+ * Any-angle shortest paths over a visibility graph of convex wall corners.
+ *
+ * Vertices are walkable pixels at a convex corner of the (inflated) walls: the diagonal pixel is
+ * blocked while both pixels beside it are open. Edges are straight
+ * pixel-accurate line-of-sight segments between vertices that are tangent to the corner at both
+ * ends (a shortest path only ever bends around a corner, never into it). Edges are found lazily
+ * the first time they're needed and kept until the mask version changes. A vertex's edges are looked
+ * for ring by ring ({@link #DEFAULT_RING_PX}, then doubling, corners found through spatial buckets):
+ * an outer ring is only scanned once A* could still improve on its best path through it, so an expansion
+ * usually costs the corners nearby, yet no edge is ever left out. Start and goal see every corner.
+ *
+ * Endpoints are snapped to the stride grid like the other routers; everything in between is exact,
+ * with no stride bias and no smoothing pass. If a plan has too many corners
+ * for this to stay fast (see {@link #DEFAULT_MAX_VERTICES}) or no path is found, queries return null
+ * and callers should fall back to the grid routers.
+ */
+public class VisibilityGraphRouter {
+
+    /** Above this many corners the graph is not built (fall back to grid routing). */
+    public static final int DEFAULT_MAX_VERTICES = 100_000;
+
+    /** Radius of a vertex's first ring of edges; each further ring doubles it. */
+    public static final int DEFAULT_RING_PX = 2000;
+
+    // endpoints are mostly the same few anchors, so their visible-vertex lists are kept too
+    private static final int MAX_CACHED_ENDPOINTS = 256;
+
+    private static final class Node {
+        final int idx;
+        final float f;
+        final int ring;   // 0 = first expansion of idx; k > 0 = scan ring k of an already closed vertex
+        Node(int idx, float f) { this(idx, f, 0); }
+        Node(int idx, float f, int ring) { this.idx = idx; this.f = f; this.ring = ring; }
+    }
+
+    private final WalkMask mask;
+    private final int stride;
+    private final int maxVertices;
+    private final int ringPx;
+
+    private boolean built = false;
+    private int builtVersion;
+    private boolean tooManyCorners;
+
+    // vertices
+    private int vertexCount;
+    private int[] vx = new int[0];
+    private int[] vy = new int[0];
+    private byte[] quadrants = new byte[0]; // bit k set = diagonal (QDX[k], QDY[k]) is the blocked side
+
+    // spatial buckets of vertices: bucket b holds bucketItems[bucketStart[b] .. bucketStart[b + 1])
+    private int bucketPx, bucketCols, bucketRows;
+    private int[] bucketStart = new int[1];
+    private int[] bucketItems = new int[0];
+
+    // lazily computed edges: all edges of u up to edgeRadius[u] px (0 = none computed yet)
+    private int[][] edgeTo = new int[0][];
+    private float[][] edgeLen = new float[0][];
+    private long[] edgeRadius = new long[0];
+
+    private final Map<Point, int[]> visibleFromPoint = new LinkedHashMap<Point, int[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Point, int[]> eldest) {
+            return size() > MAX_CACHED_ENDPOINTS;
+        }
+    };
+
+    private static final int[] QDX = { 1, 1, -1, -1 };
+    private static final int[] QDY = { 1, -1, 1, -1 };
+
+    /** ✅ Corner vertices of one mask content (the part of the graph that needs a full mask scan). */
+    public static final class Corners {
+        public final int[] x;
+        public final int[] y;
+        public final byte[] quadrants;
+
+        public Corners(int[] x, int[] y, byte[] quadrants) {
+            if (x.length != y.length || x.length != quadrants.length) throw new IllegalArgumentException("length mismatch");
+            this.x = x;
+            this.y = y;
+            this.quadrants = quadrants;
+        }
+
+        public int size() { return x.length; }
+    }
+
+    // corner sets by mask CONTENT hash: shared by every router on that content, seeded from project caches
+    private static final int SHARED_CORNER_SETS = 8;
+    private static final Map<Long, Corners> SHARED_CORNERS = new LinkedHashMap<Long, Corners>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Corners> eldest) {
+            return size() > SHARED_CORNER_SETS;
+        }
+    };
+
+    /** Corners already found for this mask content, or null. */
+    public static Corners cornersFor(long maskHash) {
+        synchronized (SHARED_CORNERS) {
+            return SHARED_CORNERS.get(maskHash);
+        }
+    }
+
+    /** Makes routers on this mask content skip the corner scan. */
+    public static void seedCorners(long maskHash, Corners corners) {
+        if (corners == null) return;
+        synchronized (SHARED_CORNERS) {
+            SHARED_CORNERS.put(maskHash, corners);
+        }
+    }
+
+    public VisibilityGraphRouter(WalkMask mask, int stridePx) {
+        this(mask, stridePx, DEFAULT_MAX_VERTICES);
+    }
+
+    public VisibilityGraphRouter(WalkMask mask, int stridePx, int maxVertices) {
+        this(mask, stridePx, maxVertices, DEFAULT_RING_PX);
+    }
+
+    public VisibilityGraphRouter(WalkMask mask, int stridePx, int maxVertices, int ringPx) {
+        if (mask == null) throw new IllegalArgumentException("mask is null");
+        this.mask = mask;
+        this.stride = Math.max(1, stridePx);
+        this.maxVertices = Math.max(1, maxVertices);
+        this.ringPx = Math.max(1, ringPx);
+    }
+
+    public WalkMask getMask() { return mask; }
+    public int getStridePx() { return stride; }
+    public int getMaxVertices() { return maxVertices; }
+
+    /** Number of corner vertices (builds the vertex set if needed); -1 if over the limit. */
+    public synchronized int getVertexCount() {
+        ensureBuilt();
+        return tooManyCorners ? -1 : vertexCount;
+    }
+
+    /**
+     * Shortest any-angle path in IMAGE pixel coordinates (endpoints snapped like the grid routers),
+     * or null if the graph is unavailable or found no route.
+     */
+    public synchronized List<Point> findPath(Point startPx, Point goalPx) {
+        if (startPx == null || goalPx == null) return null;
+
+        ensureBuilt();
+        if (tooManyCorners) return null;
+
+        Point s = AStarRouter.snapToNearestWalkable(mask, startPx, stride, 240);
+        Point g = AStarRouter.snapToNearestWalkable(mask, goalPx, stride, 240);
+        if (s == null || g == null) return null;
+
+        if (s.equals(g)) return new ArrayList<>(Arrays.asList(s, new Point(g)));
+        if (visible(s.x, s.y, g.x, g.y)) {
+            return new ArrayList<>(Arrays.asList(s, g));
+        }
+
+        final int n = vertexCount;
+        final int START = n;
+        final int GOAL = n + 1;
+
+        int[] fromStart = visibleFrom(s);
+        int[] toGoal = visibleFrom(g);
+        if (fromStart.length == 0 || toGoal.length == 0) return null;
+
+        boolean[] seesGoal = new boolean[n];
+        for (int v : toGoal) seesGoal[v] = true;
+
+        float[] gScore = new float[n + 2];
+        Arrays.fill(gScore, Float.POSITIVE_INFINITY);
+        int[] cameFrom = new int[n + 2];
+        Arrays.fill(cameFrom, -1);
+        boolean[] closed = new boolean[n + 2];
+
+        PriorityQueue<Node> open = new PriorityQueue<>(Comparator.comparingDouble(a -> a.f));
+
+        gScore[START] = 0f;
+        for (int v : fromStart) {
+            float d = (float) dist(s.x, s.y, vx[v], vy[v]);
+            if (d < gScore[v]) {
+                gScore[v] = d;
+                cameFrom[v] = START;
+                open.add(new Node(v, d + (float) dist(vx[v], vy[v], g.x, g.y)));
+            }
+        }
+
+        final long maxRadius = (long) Math.ceil(Math.hypot(mask.getWidth(), mask.getHeight()));
+
+        while (!open.isEmpty()) {
+            Node cur = open.poll();
+            int u = cur.idx;
+            if (cur.ring == 0) {
+                if (closed[u]) continue;
+                closed[u] = true;
+
+                if (u == GOAL) return reconstruct(cameFrom, GOAL, START, s, g);
+
+                if (seesGoal[u]) {
+                    float t = gScore[u] + (float) dist(vx[u], vy[u], g.x, g.y);
+                    if (t < gScore[GOAL]) {
+                        gScore[GOAL] = t;
+                        cameFrom[GOAL] = u;
+                        open.add(new Node(GOAL, t));
+                    }
+                }
+            }
+
+            // relax the edges in ring (lo, hi] of u
+            long lo = ringInner(cur.ring);
+            long hi = ringInner(cur.ring + 1);
+            ensureEdges(u, hi);
+            int[] to = edgeTo[u];
+            float[] len = edgeLen[u];
+            for (int i = 0; i < to.length; i++) {
+                int v = to[i];
+                long dSq = distSq(u, v);
+                if (dSq <= lo * lo || dSq > hi * hi) continue; // same integer test the ring scan used
+                if (closed[v]) continue;
+                float t = gScore[u] + len[i];
+                if (t < gScore[v]) {
+                    gScore[v] = t;
+                    cameFrom[v] = u;
+                    open.add(new Node(v, t + (float) dist(vx[v], vy[v], g.x, g.y)));
+                }
+            }
+
+            // ✅ anything past hi costs at least g(u) + max(hi, h(u)) (triangle inequality), so the next ring
+            // waits in the queue under that bound and is never scanned once the goal is cheaper
+            if (hi < maxRadius) {
+                float h = (float) dist(vx[u], vy[u], g.x, g.y);
+                open.add(new Node(u, gScore[u] + Math.max((float) hi, h), cur.ring + 1));
+            }
+        }
+        return null;
+    }
+
+    /** Inner radius of ring k: 0, ringPx, 2 ringPx, 4 ringPx, ... */
+    private long ringInner(int k) {
+        return (k == 0) ? 0L : (long) ringPx << (k - 1);
+    }
+
+    // ---------- graph ----------
+
+    private void ensureBuilt() {
+        int v = mask.getVersion();
+        if (built && v == builtVersion) return;
+
+        buildVertices();
+        visibleFromPoint.clear();
+
+        built = true;
+        builtVersion = v;
+    }
+
+    private void buildVertices() {
+        long hash = mask.contentHash();
+        Corners known = cornersFor(hash);
+        if (known != null) {
+            tooManyCorners = known.size() > maxVertices;
+            setVertices(known.x, known.y, known.quadrants, tooManyCorners ? 0 : known.size());
+            return;
+        }
+
+        final int w = mask.getWidth();
+        final int h = mask.getHeight();
+
+        int[] xs = new int[256];
+        int[] ys = new int[256];
+        byte[] qs = new byte[256];
+        int n = 0;
+        tooManyCorners = false;
+
+        for (int y = 0; y < h && !tooManyCorners; y++) {
+            for (int x = 0; x < w; x++) {
+                int q = cornerQuadrants(mask, x, y);
+                if (q == 0) continue;
+
+                if (n == maxVertices) {
+                    tooManyCorners = true;
+                    break;
+                }
+                if (n == xs.length) {
+                    xs = Arrays.copyOf(xs, n * 2);
+                    ys = Arrays.copyOf(ys, n * 2);
+                    qs = Arrays.copyOf(qs, n * 2);
+                }
+                xs[n] = x;
+                ys[n] = y;
+                qs[n] = (byte) q;
+                n++;
+            }
+        }
+
+        if (tooManyCorners) n = 0;
+
+        setVertices(Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), Arrays.copyOf(qs, n), n);
+        if (!tooManyCorners) seedCorners(hash, new Corners(vx, vy, quadrants));
+    }
+
+    /** Blocked diagonals of (x,y) that make it a convex corner (bit k = (QDX[k], QDY[k])), 0 if none. */
+    private static int cornerQuadrants(WalkMask mask, int x, int y) {
+        if (!mask.isWalkable(x, y)) return 0;
+
+        int q = 0;
+        for (int k = 0; k < 4; k++) {
+            int nx = x + QDX[k];
+            int ny = y + QDY[k];
+            if (!mask.inBounds(nx, ny) || mask.isWalkable(nx, ny)) continue;
+            if (!mask.isWalkable(nx, y) || !mask.isWalkable(x, ny)) continue;
+            q |= (1 << k);
+        }
+        return q;
+    }
+
+    /**
+     * ✅ After a local edit: derives the corner set of the new content from the old one, rescanning only the
+     * changed rectangles (grown by the 1 px a corner test looks at). No-op unless the old set is known.
+     */
+    public static void carryOverCorners(long oldHash, long newHash, WalkMask mask, List<Rectangle> changed) {
+        if (mask == null || changed == null || oldHash == newHash) return;
+        Corners old = cornersFor(oldHash);
+        if (old == null || cornersFor(newHash) != null) return;
+
+        Rectangle bounds = new Rectangle(0, 0, mask.getWidth(), mask.getHeight());
+        ArrayList<Rectangle> dirty = new ArrayList<>(changed.size());
+        for (Rectangle r : changed) {
+            if (r == null || r.isEmpty()) continue;
+            Rectangle g = new Rectangle(r);
+            g.grow(1, 1);
+            g = g.intersection(bounds);
+            if (!g.isEmpty()) dirty.add(g);
+        }
+
+        int n = 0;
+        int[] xs = new int[Math.max(16, old.size())];
+        int[] ys = new int[xs.length];
+        byte[] qs = new byte[xs.length];
+        for (int i = 0; i < old.size(); i++) {
+            if (indexOfRect(dirty, old.x[i], old.y[i]) >= 0) continue;
+            xs[n] = old.x[i];
+            ys[n] = old.y[i];
+            qs[n] = old.quadrants[i];
+            n++;
+        }
+
+        for (int ri = 0; ri < dirty.size(); ri++) {
+            Rectangle r = dirty.get(ri);
+            for (int y = r.y; y < r.y + r.height; y++) {
+                for (int x = r.x; x < r.x + r.width; x++) {
+                    if (indexOfRect(dirty, x, y) != ri) continue; // overlapping rectangles: scan each pixel once
+                    int q = cornerQuadrants(mask, x, y);
+                    if (q == 0) continue;
+                    if (n == xs.length) {
+                        xs = Arrays.copyOf(xs, n * 2);
+                        ys = Arrays.copyOf(ys, n * 2);
+                        qs = Arrays.copyOf(qs, n * 2);
+                    }
+                    xs[n] = x;
+                    ys[n] = y;
+                    qs[n] = (byte) q;
+                    n++;
+                }
+            }
+        }
+
+        seedCorners(newHash, new Corners(Arrays.copyOf(xs, n), Arrays.copyOf(ys, n), Arrays.copyOf(qs, n)));
+    }
+
+    private static int indexOfRect(List<Rectangle> rects, int x, int y) {
+        for (int i = 0; i < rects.size(); i++) if (rects.get(i).contains(x, y)) return i;
+        return -1;
+    }
+
+    private void setVertices(int[] xs, int[] ys, byte[] qs, int n) {
+        vertexCount = n;
+        vx = (xs.length == n) ? xs : Arrays.copyOf(xs, n);
+        vy = (ys.length == n) ? ys : Arrays.copyOf(ys, n);
+        quadrants = (qs.length == n) ? qs : Arrays.copyOf(qs, n);
+        edgeTo = new int[n][];
+        edgeLen = new float[n][];
+        edgeRadius = new long[n];
+        buildBuckets();
+    }
+
+    /** Buckets a quarter of the first ring wide, so scanning it looks at about 9x9 of them. */
+    private void buildBuckets() {
+        bucketPx = Math.max(16, ringPx / 4);
+        bucketCols = Math.max(1, (mask.getWidth() + bucketPx - 1) / bucketPx);
+        bucketRows = Math.max(1, (mask.getHeight() + bucketPx - 1) / bucketPx);
+
+        int buckets = bucketCols * bucketRows;
+        bucketStart = new int[buckets + 1];
+        for (int v = 0; v < vertexCount; v++) bucketStart[bucketOf(v) + 1]++;
+        for (int b = 0; b < buckets; b++) bucketStart[b + 1] += bucketStart[b];
+
+        bucketItems = new int[vertexCount];
+        int[] fill = Arrays.copyOf(bucketStart, buckets);
+        for (int v = 0; v < vertexCount; v++) bucketItems[fill[bucketOf(v)]++] = v;
+    }
+
+    private int bucketOf(int v) {
+        return Math.min(bucketRows - 1, vy[v] / bucketPx) * bucketCols + Math.min(bucketCols - 1, vx[v] / bucketPx);
+    }
+
+    /** Extends u's edges out to radius px. */
+    private void ensureEdges(int u, long radius) {
+        long from = edgeRadius[u];
+        if (from >= radius) return;
+
+        int[] to = (edgeTo[u] == null) ? new int[16] : edgeTo[u];
+        float[] len = (edgeLen[u] == null) ? new float[16] : edgeLen[u];
+        int m = (edgeTo[u] == null) ? 0 : to.length;
+
+        int[] near = nearbyVertices(u, from, radius);
+        for (int v : near) {
+            // symmetric: reuse the other side if it already covers this distance
+            if (edgeTo[v] != null && distSq(u, v) <= edgeRadius[v] * edgeRadius[v]) {
+                int at = indexOf(edgeTo[v], u);
+                if (at < 0) continue;
+                if (m == to.length) { to = Arrays.copyOf(to, m * 2); len = Arrays.copyOf(len, m * 2); }
+                to[m] = v;
+                len[m] = edgeLen[v][at];
+                m++;
+                continue;
+            }
+
+            if (!tangent(u, vx[v], vy[v]) || !tangent(v, vx[u], vy[u])) continue;
+            if (!visible(vx[u], vy[u], vx[v], vy[v])) continue;
+
+            if (m == to.length) { to = Arrays.copyOf(to, m * 2); len = Arrays.copyOf(len, m * 2); }
+            to[m] = v;
+            len[m] = (float) dist(vx[u], vy[u], vx[v], vy[v]);
+            m++;
+        }
+
+        edgeTo[u] = Arrays.copyOf(to, m);
+        edgeLen[u] = Arrays.copyOf(len, m);
+        edgeRadius[u] = radius;
+    }
+
+    /** Other vertices at a distance in (minPx, maxPx] from u. */
+    private int[] nearbyVertices(int u, long minPx, long maxPx) {
+        final int ux = vx[u], uy = vy[u];
+        final long minSq = minPx * minPx;
+        final long maxSq = maxPx * maxPx;
+        final int reach = (int) Math.min(Integer.MAX_VALUE / 2, maxPx);
+
+        int bx0 = Math.max(0, (ux - reach) / bucketPx), bx1 = Math.min(bucketCols - 1, (ux + reach) / bucketPx);
+        int by0 = Math.max(0, (uy - reach) / bucketPx), by1 = Math.min(bucketRows - 1, (uy + reach) / bucketPx);
+
+        int[] out = new int[64];
+        int m = 0;
+        for (int by = by0; by <= by1; by++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                int bucket = by * bucketCols + bx;
+                for (int k = bucketStart[bucket]; k < bucketStart[bucket + 1]; k++) {
+                    int v = bucketItems[k];
+                    if (v == u) continue;
+                    long dSq = distSq(u, v);
+                    if (dSq <= minSq || dSq > maxSq) continue;
+                    if (m == out.length) out = Arrays.copyOf(out, m * 2);
+                    out[m++] = v;
+                }
+            }
+        }
+        return Arrays.copyOf(out, m);
+    }
+
+    /** Vertices with line of sight to p (tangent at the vertex end). */
+    private int[] visibleFrom(Point p) {
+        int[] cached = visibleFromPoint.get(p);
+        if (cached != null) return cached;
+
+        int[] out = new int[16];
+        int m = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            if (!tangent(v, p.x, p.y)) continue;
+            if (!visible(p.x, p.y, vx[v], vy[v])) continue;
+            if (m == out.length) out = Arrays.copyOf(out, m * 2);
+            out[m++] = v;
+        }
+        out = Arrays.copyOf(out, m);
+        visibleFromPoint.put(new Point(p), out);
+        return out;
+    }
+
+    /**
+     * True if the line from vertex v toward (x,y) only grazes one of v's corners.
+     * A line heading into the blocked diagonal (or straight away from it) can't be part of a
+     * shortest path that turns at v.
+     */
+    private boolean tangent(int v, int x, int y) {
+        long ex = x - vx[v];
+        long ey = y - vy[v];
+        int q = quadrants[v];
+        for (int k = 0; k < 4; k++) {
+            if ((q & (1 << k)) == 0) continue;
+            if (ex * ey * QDX[k] * QDY[k] <= 0) return true;
+        }
+        return false;
+    }
+
+    // ---------- internals ----------
+
+    /** Bresenham isn't symmetric, and edges are walked both ways: require both directions clear. */
+    private boolean visible(int x0, int y0, int x1, int y1) {
+        return AStarRouter.segmentAllWalkable(mask, x0, y0, x1, y1)
+                && AStarRouter.segmentAllWalkable(mask, x1, y1, x0, y0);
+    }
+
+    private List<Point> reconstruct(int[] cameFrom, int goal, int start, Point s, Point g) {
+        ArrayList<Point> rev = new ArrayList<>();
+        int at = goal;
+        while (at != -1) {
+            if (at == goal) rev.add(new Point(g));
+            else if (at == start) rev.add(new Point(s));
+            else rev.add(new Point(vx[at], vy[at]));
+            at = cameFrom[at];
+        }
+        Collections.reverse(rev);
+        return rev;
+    }
+
+    private static int indexOf(int[] a, int v) {
+        for (int i = 0; i < a.length; i++) if (a[i] == v) return i;
+        return -1;
+    }
+
+    private long distSq(int u, int v) {
+        long ex = vx[v] - vx[u];
+        long ey = vy[v] - vy[u];
+        return ex * ex + ey * ey;
+    }
+
+    private static double dist(int x0, int y0, int x1, int y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -1,19 +1,30 @@
 package sim.floorplan.sim;
 
 import sim.floorplan.model.FloorplanProject;
+import sim.floorplan.model.WalkMask;
+import sim.floorplan.path.FlowField;
+import sim.floorplan.path.RouteStore;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Routing-based TravelTimeProvider for floorplan simulation.
  *
- * Converts A* path length (pixels) into minutes using:
+ * Converts walking distance (pixels) into minutes using:
  *   seconds = (pixels * metersPerPixel) / walkSpeedMps
  *   minutes = ceil(seconds / 60)
  *
+ * Anchor-to-anchor distance is a lookup in the destination's {@link FlowField} (one reverse Dijkstra per
+ * destination, shared by every origin); lengths are memoized per pair.
+ *
  * metersPerPixel:
  *  - If FloorplanProject later gains getMetersPerPixel() or a metersPerPixel field, we auto-read it.
  *  - Otherwise we use DEFAULT_METERS_PER_PIXEL as a placeholder.
@@ -21,10 +32,26 @@ import java.util.List;
 public class FloorplanTravelTimeProvider implements TravelTimeProvider {
 
     private static final double DEFAULT_METERS_PER_PIXEL = 0.05;
+    private static final int SNAP_RADIUS_PX = 240;   // flow-field endpoint snap
 
     private final FloorplanProject project;
     private final FloorplanBindings bindings;
-    private final PathCache pathCache;
+    private final FlowFieldCache flowFields;
+
+    // ✅ anchor-pair distances by (mask CONTENT hash, stride/diagonal): engine asks once per passenger and
+    // anchors are few, so the table is shared by providers on the same plan and saved in project caches
+    private static final int SHARED_TABLES = 8;
+    private static final Map<Map.Entry<Long, Integer>, Map<Map.Entry<Point, Point>, Double>> SHARED_PX =
+            new LinkedHashMap<Map.Entry<Long, Integer>, Map<Map.Entry<Point, Point>, Double>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Map.Entry<Long, Integer>, Map<Map.Entry<Point, Point>, Double>> eldest) {
+                    return size() > SHARED_TABLES;
+                }
+            };
+
+    private final int routingKey;   // stride << 1 | diagonal
+    private Map<Map.Entry<Point, Point>, Double> pxByPair = new HashMap<>();
+    private int pxByPairMaskVersion = -1;
 
     private double walkSpeedMps;
     private double metersPerPixel = DEFAULT_METERS_PER_PIXEL;
@@ -36,8 +63,9 @@ public class FloorplanTravelTimeProvider implements TravelTimeProvider {
     public FloorplanTravelTimeProvider(FloorplanProject project, double walkSpeedMps, int stridePx, boolean allowDiagonal) {
         this.project = project;
         this.bindings = new FloorplanBindings(project);
-        this.pathCache = new PathCache(bindings.getMask(), Math.max(1, stridePx), allowDiagonal);
+        this.flowFields = new FlowFieldCache(bindings.getMask(), Math.max(1, stridePx), allowDiagonal);
         this.walkSpeedMps = Math.max(0.1, walkSpeedMps);
+        this.routingKey = routingKey(Math.max(1, stridePx), allowDiagonal);
 
         // best-effort: pick up scale from project if it exists
         refreshMetersPerPixelFromProject();
@@ -88,14 +116,96 @@ public class FloorplanTravelTimeProvider implements TravelTimeProvider {
         return Math.max(1, minutes);
     }
 
-    private double pathLengthPixels(Point a, Point b) {
-        List<Point> path = pathCache.path(a, b);
-        if (path != null && path.size() >= 2) {
-            return PathCache.polylineLengthPixels(path);
+    private synchronized double pathLengthPixels(Point a, Point b) {
+        WalkMask mask = bindings.getMask();
+        int v = (mask == null) ? 0 : mask.getVersion();
+        if (v != pxByPairMaskVersion) {
+            pxByPair = (mask == null) ? new HashMap<>() : sharedTable(mask.contentHash(), routingKey);
+            pxByPairMaskVersion = v;
+        }
+
+        Map.Entry<Point, Point> key = new AbstractMap.SimpleImmutableEntry<>(new Point(a), new Point(b));
+        Double known;
+        synchronized (pxByPair) {
+            known = pxByPair.get(key);
+        }
+        if (known != null) return known;
+
+        // ✅ O(1) once b's field exists: every origin walking to b reads the same field
+        double px = flowFields.distancePx(a, b);
+        if (Double.isInfinite(px)) px = a.distance(b);
+
+        synchronized (pxByPair) {
+            pxByPair.put(key, px);
+        }
+        return px;
+    }
+
+    // ---------- shared distance tables ----------
+
+    private static int routingKey(int stridePx, boolean allowDiagonal) {
+        return (stridePx << 1) | (allowDiagonal ? 1 : 0);
+    }
+
+    private static Map<Map.Entry<Point, Point>, Double> sharedTable(long maskHash, int routingKey) {
+        synchronized (SHARED_PX) {
+            return SHARED_PX.computeIfAbsent(new AbstractMap.SimpleImmutableEntry<>(maskHash, routingKey), k -> new HashMap<>());
         }
-        return a.distance(b);
     }
 
+    /** Anchor-pair walking distances (px) known for this mask content, keyed by (stride << 1 | diagonal). */
+    public static Map<Integer, Map<Map.Entry<Point, Point>, Double>> knownDistancesPx(long maskHash) {
+        Map<Integer, Map<Map.Entry<Point, Point>, Double>> out = new LinkedHashMap<>();
+        synchronized (SHARED_PX) {
+            for (Map.Entry<Map.Entry<Long, Integer>, Map<Map.Entry<Point, Point>, Double>> e : SHARED_PX.entrySet()) {
+                if (e.getKey().getKey() != maskHash) continue;
+                synchronized (e.getValue()) {
+                    if (!e.getValue().isEmpty()) out.put(e.getKey().getValue(), new HashMap<>(e.getValue()));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * ✅ After a local mask edit, copies the distances of the old content that the edit can't have
+     * changed to the new content (same ellipse test as {@link RouteStore#carryOver}, widened by the
+     * endpoint snap radius since the field distances start at the snapped anchors). Straight-line entries are
+     * skipped: they may be the fallback for an unreachable pair.
+     */
+    public static void carryOverDistancesPx(long oldHash, long newHash, List<Rectangle> changed, int padPx) {
+        if (oldHash == newHash || changed == null) return;
+        List<Rectangle> padded = RouteStore.padded(changed, padPx);
+
+        Map<Integer, Map<Map.Entry<Point, Point>, Double>> old = knownDistancesPx(oldHash);
+        for (Map.Entry<Integer, Map<Map.Entry<Point, Point>, Double>> t : old.entrySet()) {
+            // the snap scans a square of SNAP_RADIUS_PX around the anchor's stride cell
+            double snapReach = Math.sqrt(2) * (SNAP_RADIUS_PX + (t.getKey() >> 1));
+            Map<Map.Entry<Point, Point>, Double> keep = new HashMap<>();
+            for (Map.Entry<Map.Entry<Point, Point>, Double> e : t.getValue().entrySet()) {
+                Point a = e.getKey().getKey();
+                Point b = e.getKey().getValue();
+                double px = e.getValue();
+                if (px <= a.distance(b) + 1e-6) continue;
+                if (RouteStore.touchesEllipse(a.x, a.y, b.x, b.y, px + 2 * snapReach, padded)) continue;
+                keep.put(e.getKey(), px);
+            }
+            seedDistancesPx(newHash, t.getKey(), keep);
+        }
+    }
+
+    /** Seeds distances computed earlier (e.g. from a project cache) for this mask content. */
+    public static void seedDistancesPx(long maskHash, int routingKey, Map<Map.Entry<Point, Point>, Double> px) {
+        if (px == null || px.isEmpty()) return;
+        Map<Map.Entry<Point, Point>, Double> table = sharedTable(maskHash, routingKey);
+        synchronized (table) {
+            for (Map.Entry<Map.Entry<Point, Point>, Double> e : px.entrySet()) table.putIfAbsent(e.getKey(), e.getValue());
+        }
+    }
+
+    /** Shared with the floorplan view so animation follows the same fields. */
+    public FlowFieldCache getFlowFields() { return flowFields; }
+
     private void refreshMetersPerPixelFromProject() {
         if (project == null) return;
 
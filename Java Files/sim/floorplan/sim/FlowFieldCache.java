@@ -0,0 +1,127 @@
+package sim.floorplan.sim;
+
+import sim.floorplan.model.WalkMask;
+import sim.floorplan.path.AStarRouter;
+import sim.floorplan.path.FlowField;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One lazily built {@link FlowField} per destination (ticket counter, checkpoint, hold room anchor...).
+ * Thousands of passengers share a handful of destinations, so this replaces per-pair A* routes.
+ *
+ * When the mask version changes, fields the edit can't reach are kept and the rest are dropped
+ * (all of them if the changed regions aren't known). Each one holds a full-grid float + byte field,
+ * so the cache is an LRU with a byte budget (the most recently used field is always kept).
+ */
+public class FlowFieldCache {
+
+    /** Default budget: 1/16 of the max heap, at least 64 MB. */
+    public static final long DEFAULT_BUDGET_BYTES = Math.max(64L << 20, Runtime.getRuntime().maxMemory() / 16);
+
+    private final WalkMask mask;
+    private final int stridePx;
+    private final boolean allowDiagonal;
+    private final long budgetBytes;
+
+    // key = snapped goal pixel (access order: eldest = least recently used)
+    private final LinkedHashMap<Point, FlowField> fields = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    // ✅ invalidate cached fields when mask changes
+    private int lastMaskVersion;
+
+    public FlowFieldCache(WalkMask mask, int stridePx, boolean allowDiagonal) {
+        this(mask, stridePx, allowDiagonal, DEFAULT_BUDGET_BYTES);
+    }
+
+    public FlowFieldCache(WalkMask mask, int stridePx, boolean allowDiagonal, long budgetBytes) {
+        this.mask = mask;
+        this.stridePx = Math.max(1, stridePx);
+        this.allowDiagonal = allowDiagonal;
+        this.budgetBytes = Math.max(0, budgetBytes);
+        this.lastMaskVersion = (mask == null) ? 0 : mask.getVersion();
+    }
+
+    public synchronized void clear() {
+        fields.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() { return fields.size(); }
+    public synchronized long getUsedBytes() { return bytes; }
+
+    /** Field toward goal (built on first use), or null if the goal can't be placed on the mask. */
+    public synchronized FlowField field(Point goal) {
+        if (mask == null || goal == null) return null;
+
+        int v = mask.getVersion();
+        if (v != lastMaskVersion) {
+            invalidateChangedSince(lastMaskVersion);
+            lastMaskVersion = v;
+        }
+
+        Point key = AStarRouter.snapToNearestWalkable(mask, goal, stridePx, 240);
+        if (key == null) return null;
+
+        FlowField f = fields.get(key);
+        if (f == null) {
+            f = new FlowField(mask, key, stridePx, allowDiagonal);
+            fields.put(key, f);
+            bytes += f.approxBytes();
+            trimToBudget();
+        }
+        return f;
+    }
+
+    private void invalidateChangedSince(int version) {
+        List<Rectangle> changed = mask.getChangedRegionsSince(version);
+        if (changed == null) {
+            clear();
+            return;
+        }
+
+        Iterator<Map.Entry<Point, FlowField>> it = fields.entrySet().iterator();
+        while (it.hasNext()) {
+            FlowField f = it.next().getValue();
+            boolean keep = true;
+            for (Rectangle r : changed) {
+                if (!f.unreachableNear(r)) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                f.forgetRoutes();
+            } else {
+                bytes -= f.approxBytes();
+                it.remove();
+            }
+        }
+    }
+
+    private void trimToBudget() {
+        Iterator<Map.Entry<Point, FlowField>> it = fields.entrySet().iterator();
+        while (bytes > budgetBytes && fields.size() > 1 && it.hasNext()) {
+            bytes -= it.next().getValue().approxBytes();
+            it.remove();
+        }
+    }
+
+    /** Walking distance in pixels from -> goal, or +INF if unreachable. */
+    public double distancePx(Point from, Point goal) {
+        FlowField f = field(goal);
+        return (f == null) ? Double.POSITIVE_INFINITY : f.distancePx(from);
+    }
+
+    /** Route from -> goal following the goal's field, or null if unreachable. */
+    public List<Point> route(Point from, Point goal) {
+        FlowField f = field(goal);
+        return (f == null) ? null : f.routeFrom(from);
+    }
+}
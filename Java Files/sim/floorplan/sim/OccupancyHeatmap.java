@@ -0,0 +1,176 @@
+package sim.floorplan.sim;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * ✅ Passenger-minutes per coarse floorplan cell, accumulated one engine interval at a time.
+ *
+ * Each snapshot of where passengers stand (queue slots, staging, hold rooms, points along walking paths)
+ * adds one passenger-minute per passenger and interval to its cell. Finished runs are folded into a
+ * running sum with {@link #endReplication()}, so the same accumulator gives the averaged density over
+ * Monte Carlo replications.
+ *
+ * Fed once per engine interval from the sim view's step hook (off the EDT), read by the EDT: all state
+ * is guarded by this.
+ */
+public class OccupancyHeatmap {
+
+    /** Grids are coarsened until they have at most this many cells. */
+    public static final int MAX_CELLS = 4_000_000;
+
+    private final int widthPx;
+    private final int heightPx;
+    private final int cellPx;
+    private final int cols;
+    private final int rows;
+
+    private final float[] current;   // passenger-minutes of the run in progress
+    private final float[] sum;       // finished runs
+    private int replications = 0;
+    private boolean currentHasData = false;
+
+    private int run = 0;
+    private int accumulatedThrough = Integer.MIN_VALUE;
+
+    public OccupancyHeatmap(int widthPx, int heightPx, int cellPx) {
+        this.widthPx = Math.max(1, widthPx);
+        this.heightPx = Math.max(1, heightPx);
+
+        int c = Math.max(1, cellPx);
+        while ((long) ceilDiv(this.widthPx, c) * ceilDiv(this.heightPx, c) > MAX_CELLS) c++;
+        this.cellPx = c;
+        this.cols = ceilDiv(this.widthPx, c);
+        this.rows = ceilDiv(this.heightPx, c);
+
+        this.current = new float[cols * rows];
+        this.sum = new float[cols * rows];
+    }
+
+    public int getWidthPx() { return widthPx; }
+    public int getHeightPx() { return heightPx; }
+    public int getCellPx() { return cellPx; }
+    public int getCols() { return cols; }
+    public int getRows() { return rows; }
+
+    /** Token of the run in progress; accumulate() ignores snapshots taken for an earlier run. */
+    public synchronized int getRun() { return run; }
+
+    public synchronized int getReplicationCount() { return replications; }
+
+    /** True once the run in progress has added anything (i.e. {@link #averaged} includes it). */
+    public synchronized boolean hasCurrentData() { return currentHasData; }
+
+    /** True once anything has been accumulated (finished replications or the run in progress). */
+    public synchronized boolean hasData() { return currentHasData || replications > 0; }
+
+    /**
+     * Adds the snapshot of interval step: n passengers at (xs[i], ys[i]) (floorplan px), one passenger-minute each.
+     * Steps already accumulated (rewinds) add nothing; intervals jumped over (timeline scrubbing) are not estimated.
+     */
+    public synchronized boolean accumulate(int run, int step, int[] xs, int[] ys, int n) {
+        if (run != this.run) return false;
+        if (step <= accumulatedThrough) return false;
+        accumulatedThrough = step;
+
+        for (int i = 0; i < n; i++) {
+            int x = xs[i], y = ys[i];
+            if (x < 0 || y < 0 || x >= widthPx || y >= heightPx) continue;
+            current[(y / cellPx) * cols + (x / cellPx)] += 1f;
+            currentHasData = true;
+        }
+        return true;
+    }
+
+    /** Folds the run in progress into the replication average and starts a new run. */
+    public synchronized void endReplication() {
+        if (currentHasData) {
+            for (int i = 0; i < sum.length; i++) sum[i] += current[i];
+            replications++;
+        }
+        Arrays.fill(current, 0f);
+        currentHasData = false;
+        accumulatedThrough = Integer.MIN_VALUE;
+        run++;
+    }
+
+    /** Forgets everything, finished replications included. */
+    public synchronized void clear() {
+        Arrays.fill(current, 0f);
+        Arrays.fill(sum, 0f);
+        replications = 0;
+        currentHasData = false;
+        accumulatedThrough = Integer.MIN_VALUE;
+        run++;
+    }
+
+    /**
+     * Mean passenger-minutes per cell over the finished replications plus the run in progress (if it has data),
+     * into out (reused when large enough).
+     */
+    public synchronized float[] averaged(float[] out) {
+        if (out == null || out.length < current.length) out = new float[current.length];
+
+        int n = replications + (currentHasData ? 1 : 0);
+        float inv = (n == 0) ? 0f : 1f / n;
+        for (int i = 0; i < current.length; i++) out[i] = (sum[i] + current[i]) * inv;
+        return out;
+    }
+
+    // ---------- colormap ----------
+
+    private static final int[] RAMP = buildRamp();
+
+    /** 256 ARGB steps: transparent -> blue -> cyan -> green -> yellow -> red, alpha rising with density. */
+    private static int[] buildRamp() {
+        int[][] stops = {
+                {  40,  70, 255 },
+                {   0, 200, 255 },
+                {  40, 220,  60 },
+                { 255, 230,   0 },
+                { 230,  30,  20 },
+        };
+        int[] lut = new int[256];
+        for (int i = 1; i < 256; i++) {
+            double t = (i - 1) / 254.0 * (stops.length - 1);
+            int k = Math.min(stops.length - 2, (int) t);
+            double f = t - k;
+            int r = (int) Math.round(stops[k][0] + (stops[k + 1][0] - stops[k][0]) * f);
+            int g = (int) Math.round(stops[k][1] + (stops[k + 1][1] - stops[k][1]) * f);
+            int b = (int) Math.round(stops[k][2] + (stops[k + 1][2] - stops[k][2]) * f);
+            int a = 70 + (i * 130) / 255;
+            lut[i] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+        return lut; // lut[0] = fully transparent
+    }
+
+    /**
+     * Colours a grid (one pixel per cell) on a log scale relative to its maximum, into reuse when it has the
+     * right size. Empty cells stay transparent.
+     */
+    public static BufferedImage colormap(float[] grid, int cols, int rows, BufferedImage reuse) {
+        BufferedImage img = (reuse != null && reuse.getWidth() == cols && reuse.getHeight() == rows)
+                ? reuse
+                : new BufferedImage(cols, rows, BufferedImage.TYPE_INT_ARGB);
+
+        int n = cols * rows;
+        float max = 0f;
+        for (int i = 0; i < n; i++) if (grid[i] > max) max = grid[i];
+
+        int[] row = new int[cols];
+        double scale = (max > 0f) ? 254.0 / Math.log1p(max) : 0.0;
+        for (int y = 0; y < rows; y++) {
+            int off = y * cols;
+            for (int x = 0; x < cols; x++) {
+                float v = grid[off + x];
+                row[x] = (v <= 0f) ? 0 : RAMP[1 + (int) Math.min(254, Math.log1p(v) * scale)];
+            }
+            img.setRGB(0, y, cols, 1, row, 0, cols);
+        }
+        return img;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
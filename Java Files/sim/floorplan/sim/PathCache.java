@@ -2,151 +2,122 @@ package sim.floorplan.sim;
 
 import sim.floorplan.model.WalkMask;
 import sim.floorplan.path.AStarRouter;
+import sim.floorplan.path.HierarchicalRouter;
+import sim.floorplan.path.Polyline;
+import sim.floorplan.path.RouteStore;
+import sim.floorplan.path.VisibilityGraphRouter;
 
 import java.awt.Point;
-import java.util.*;
-
-/** Small cache so repainting doesn't re-run A* constantly. */
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * Route lookups so repainting doesn't re-run routing constantly.
+ *
+ * ✅ Routes live in a shared, memory-bounded {@link RouteStore} keyed by the mask CONTENT hash,
+ * so they survive bindings rebuilds and project copies, and can be saved with the .fsp.
+ * Exact point-to-point routes (e.g. {@link RouterTravelTimeProvider}); the floorplan simulation itself
+ * reads distances and walking routes from per-destination {@link FlowFieldCache} fields instead.
+ * Safe to use from several threads.
+ */
 public class PathCache {
 
-    private static final class Key {
-        final int ax, ay, bx, by, stride;
-        Key(int ax, int ay, int bx, int by, int stride) {
-            this.ax = ax; this.ay = ay; this.bx = bx; this.by = by; this.stride = stride;
-        }
-        @Override public boolean equals(Object o) {
-            if (!(o instanceof Key)) return false;
-            Key k = (Key) o;
-            return ax==k.ax && ay==k.ay && bx==k.bx && by==k.by && stride==k.stride;
-        }
-        @Override public int hashCode() {
-            return Objects.hash(ax, ay, bx, by, stride);
-        }
-    }
-
-    private static final class Metrics {
-        final double[] cum; // cumulative distance at each vertex
-        final double total;
-        Metrics(double[] cum, double total) {
-            this.cum = cum;
-            this.total = total;
-        }
-    }
-
     private final WalkMask mask;
     private final int stridePx;
     private final boolean allowDiagonal;
+    private final RouteStore store;
 
-    private final Map<Key, List<Point>> cache = new HashMap<>();
-    private final Map<List<Point>, Metrics> metricsByPath = new IdentityHashMap<>();
+    // ✅ exact any-angle routes first; then the grid: the destination's flow field if one is shared, else HPA*
+    private final VisibilityGraphRouter visibility;
+    private final FlowFieldCache flowFields;
+    private HierarchicalRouter router;
 
-    // ✅ invalidate cached routes when mask changes
-    private int lastMaskVersion;
+    // ✅ mask content this cache last saw: local edits carry unaffected routes over to the new content
+    private int syncedVersion = -1;
+    private long syncedHash;
 
     public PathCache(WalkMask mask, int stridePx, boolean allowDiagonal) {
+        this(mask, stridePx, allowDiagonal, null);
+    }
+
+    /** gridFallback: flow fields on the same mask/stride to fall back on (null = HPA*). */
+    public PathCache(WalkMask mask, int stridePx, boolean allowDiagonal, FlowFieldCache gridFallback) {
         this.mask = mask;
         this.stridePx = Math.max(1, stridePx);
         this.allowDiagonal = allowDiagonal;
-        this.lastMaskVersion = (mask == null) ? 0 : mask.getVersion();
+        this.store = RouteStore.shared();
+        this.visibility = (mask == null) ? null : new VisibilityGraphRouter(mask, this.stridePx);
+        this.flowFields = gridFallback;
     }
 
-    public void clear() {
-        cache.clear();
-        metricsByPath.clear();
-    }
-
-    private void ensureFresh() {
-        if (mask == null) return;
-        int v = mask.getVersion();
-        if (v != lastMaskVersion) {
-            clear();
-            lastMaskVersion = v;
-        }
-    }
+    public int getStridePx() { return stridePx; }
+    public boolean isAllowDiagonal() { return allowDiagonal; }
 
+    /** Route a -> b (immutable), or null if unreachable. */
     public List<Point> path(Point a, Point b) {
         if (mask == null || a == null || b == null) return null;
 
-        ensureFresh();
-
         // ✅ canonicalize endpoints to nearest walkable so caches are stable (and routing doesn't start inside walls)
         Point aa = AStarRouter.snapToNearestWalkable(mask, a, stridePx, 240);
         Point bb = AStarRouter.snapToNearestWalkable(mask, b, stridePx, 240);
         if (aa == null || bb == null) return null;
 
-        Key k = new Key(aa.x, aa.y, bb.x, bb.y, stridePx);
-        List<Point> got = cache.get(k);
-        if (got != null) return got;
+        RouteStore.Key k = new RouteStore.Key(currentHash(), stridePx, allowDiagonal, aa.x, aa.y, bb.x, bb.y);
+        Polyline got = store.get(k);
+        if (got != null) return got.isEmpty() ? null : got;
 
-        List<Point> p = AStarRouter.findPath(mask, aa, bb, stridePx, 2_000_000, allowDiagonal);
-        cache.put(k, p);
-        return p;
+        List<Point> p = visibility.findPath(aa, bb);
+        if (p == null) p = (flowFields != null) ? flowFields.route(aa, bb) : hierarchical().findPath(aa, bb);
+
+        Polyline route = Polyline.of(p);
+        store.put(k, route);
+        return route.isEmpty() ? null : route;
     }
 
     /**
-     * Returns point at fraction t01 along the path measured by Euclidean distance.
-     * (Much smoother than picking an index.)
+     * ✅ After a local mask edit: moves what the edit can't have changed from the old content hash to the
+     * new one in every content-keyed cache (routes, anchor distances, visibility-graph corners).
+     * Flow fields live on one mask and trim themselves on the version change.
      */
-    public Point pointAlong(List<Point> path, double t01) {
-        if (path == null || path.isEmpty()) return null;
-        if (path.size() == 1) return path.get(0);
+    public static void carryOver(WalkMask mask, long oldHash, long newHash, List<Rectangle> changed, int stridePx) {
+        if (oldHash == newHash || changed == null) return;
+        RouteStore.shared().carryOver(oldHash, newHash, changed, stridePx);
+        FloorplanTravelTimeProvider.carryOverDistancesPx(oldHash, newHash, changed, stridePx);
+        VisibilityGraphRouter.carryOverCorners(oldHash, newHash, mask, changed);
+    }
 
-        ensureFresh();
+    private synchronized HierarchicalRouter hierarchical() {
+        if (router == null) router = new HierarchicalRouter(mask, stridePx, allowDiagonal);
+        return router;
+    }
 
-        double t = Math.max(0.0, Math.min(1.0, t01));
+    private synchronized long currentHash() {
+        int v = mask.getVersion();
+        if (v == syncedVersion) return syncedHash;
 
-        Metrics m = metricsByPath.get(path);
-        if (m == null) {
-            m = computeMetrics(path);
-            metricsByPath.put(path, m);
+        long h = mask.contentHash();
+        if (syncedVersion >= 0 && h != syncedHash) {
+            List<Rectangle> changed = mask.getChangedRegionsSince(syncedVersion);
+            if (changed != null) carryOver(mask, syncedHash, h, changed, stridePx);
         }
-
-        if (m.total <= 0.0001) return path.get(0);
-
-        double target = t * m.total;
-
-        int i = 1;
-        while (i < m.cum.length && m.cum[i] < target) i++;
-
-        if (i <= 0) return path.get(0);
-        if (i >= path.size()) return path.get(path.size() - 1);
-
-        Point p0 = path.get(i - 1);
-        Point p1 = path.get(i);
-
-        double d0 = m.cum[i - 1];
-        double d1 = m.cum[i];
-        double seg = Math.max(0.0001, d1 - d0);
-        double u = (target - d0) / seg;
-        u = Math.max(0.0, Math.min(1.0, u));
-
-        int x = (int) Math.round(p0.x + (p1.x - p0.x) * u);
-        int y = (int) Math.round(p0.y + (p1.y - p0.y) * u);
-        return new Point(x, y);
+        syncedVersion = v;
+        syncedHash = h;
+        return h;
     }
 
-    private static Metrics computeMetrics(List<Point> path) {
-        int n = path.size();
-        double[] cum = new double[n];
-        cum[0] = 0.0;
-
-        double total = 0.0;
-        Point prev = path.get(0);
-
-        for (int i = 1; i < n; i++) {
-            Point cur = path.get(i);
-            double d = 0.0;
-            if (prev != null && cur != null) d = prev.distance(cur);
-            total += d;
-            cum[i] = total;
-            prev = cur;
-        }
-        return new Metrics(cum, total);
+    /**
+     * Returns point at fraction t01 along the path measured by Euclidean distance.
+     * (Much smoother than picking an index.)
+     */
+    public Point pointAlong(List<Point> path, double t01) {
+        if (path == null || path.isEmpty()) return null;
+        return Polyline.of(path).pointAt(t01);
     }
 
     /** Utility: polyline length in pixels (Euclidean). */
     public static double polylineLengthPixels(List<Point> path) {
         if (path == null || path.size() < 2) return 0.0;
+        if (path instanceof Polyline) return ((Polyline) path).length();
         double sum = 0.0;
         Point prev = path.get(0);
         for (int i = 1; i < path.size(); i++) {
@@ -8,8 +8,9 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiConsumer;
@@ -35,17 +36,25 @@ public class FloorplanCanvas extends JPanel {
         DRAW_HOLDROOM_AREA,
 
         TEST_ROUTE,
-        MEASURE_SCALE
+        MEASURE_SCALE,
+
+        SELECT_ROI
     }
 
     private BufferedImage image;
     private WalkMask mask;
     private boolean overlayEnabled = true;
 
-    // Cached ARGB overlay, UPDATED INCREMENTALLY
-    private BufferedImage overlayCache;
+    // ✅ mipmapped tiles of the image and the overlay: paint only touches what's visible, at ~screen resolution
+    private TilePyramidCache imageTiles;
+    private TilePyramidCache overlayTiles;
     private int overlayAlpha = 90; // 0..255
 
+    // ✅ overlay tiles are palette-indexed, read straight from the mask bits:
+    // alpha changes swap these palettes, never the pixels
+    private IndexColorModel overlayBitPalette = bitPalette(overlayAlpha);           // level 0: 1 bit per pixel
+    private IndexColorModel overlayCoveragePalette = coveragePalette(overlayAlpha); // coarser: walkable fraction 0..255
+
     // pan/zoom state
     private double zoom = 1.0;
     private double panX = 0;
@@ -71,8 +80,16 @@ public class FloorplanCanvas extends JPanel {
     // notify editor when mask changes (brush/polyfill)
     private Consumer<String> onMaskEdited;
 
-    // precomputed brush offsets
-    private List<Point> brushOffsets = new ArrayList<>();
+    // exact mask ops (for the edit journal)
+    private MaskEditListener maskEditListener;
+
+    // ✅ undo: tiles as they were when the current stroke / fill started
+    private BiConsumer<String, WalkMask.TileDelta> onMaskUndoable;
+    private WalkMask.TileMark editMark;
+    private String editLabel;
+
+    // SELECT_ROI drag completion (image rect)
+    private Consumer<Rectangle> onRoiSelected;
 
     private Point dragStartScreen;
     private Point lastMouseScreen;
@@ -93,6 +110,10 @@ public class FloorplanCanvas extends JPanel {
     private Point measureStartImg = null;
     private Point measureEndImg = null;
 
+    // ROI drag (image coords)
+    private Point roiStartImg = null;
+    private Point roiEndImg = null;
+
     // batch mask-edited notifications
     private boolean pendingMaskEdited = false;
     private String pendingMaskEditReason = null;
@@ -100,7 +121,6 @@ public class FloorplanCanvas extends JPanel {
     public FloorplanCanvas() {
         setBackground(Color.DARK_GRAY);
         setFocusable(true);
-        rebuildBrushOffsets();
 
         // Key controls for polygon tools
         getInputMap(WHEN_FOCUSED).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "polyCancel");
@@ -222,10 +242,19 @@ public class FloorplanCanvas extends JPanel {
                         return;
                     }
 
+                    if (tool == Tool.SELECT_ROI) {
+                        if (locked) return;
+                        roiStartImg = screenToImage(e.getPoint());
+                        roiEndImg = roiStartImg;
+                        repaint();
+                        return;
+                    }
+
                     if (isPaintTool(tool)) {
                         if (locked) return;
                         Point imgPt = screenToImage(e.getPoint());
                         lastPaintImgPt = imgPt;
+                        beginMaskEdit(tool == Tool.PAINT_WALKABLE ? "paint walkable" : "paint blocked");
                         paintCircle(imgPt.x, imgPt.y, tool == Tool.PAINT_WALKABLE);
                     }
                 }
@@ -248,6 +277,12 @@ public class FloorplanCanvas extends JPanel {
                     return;
                 }
 
+                if (SwingUtilities.isLeftMouseButton(e) && tool == Tool.SELECT_ROI && roiStartImg != null) {
+                    roiEndImg = screenToImage(e.getPoint());
+                    repaint();
+                    return;
+                }
+
                 // Paint (stroke interpolation)
                 if (SwingUtilities.isLeftMouseButton(e) && isPaintTool(tool)) {
                     if (locked) return;
@@ -265,7 +300,16 @@ public class FloorplanCanvas extends JPanel {
             @Override public void mouseReleased(MouseEvent e) {
                 dragStartScreen = null;
                 lastPaintImgPt = null;
+                endMaskEdit();
                 flushMaskEdited();
+
+                if (roiStartImg != null) {
+                    Rectangle roi = roiRect();
+                    roiStartImg = null;
+                    roiEndImg = null;
+                    repaint();
+                    if (roi.width > 1 && roi.height > 1 && onRoiSelected != null) onRoiSelected.accept(roi);
+                }
             }
         };
 
@@ -279,6 +323,8 @@ public class FloorplanCanvas extends JPanel {
 
     public void setImage(BufferedImage img) {
         this.image = img;
+        if (imageTiles != null) imageTiles.dispose();
+        imageTiles = (img == null) ? null : new TilePyramidCache(TilePyramidCache.forImage(img), this, tileBudgetBytes());
         zoom = 1.0;
         panX = 0;
         panY = 0;
@@ -291,7 +337,7 @@ public class FloorplanCanvas extends JPanel {
 
         // avoid overlay mismatch if image changes before mask is reset
         if (mask == null || img == null || mask.getWidth() != img.getWidth() || mask.getHeight() != img.getHeight()) {
-            overlayCache = null;
+            disposeOverlayTiles();
         }
 
         revalidate();
@@ -323,7 +369,6 @@ public class FloorplanCanvas extends JPanel {
 
     public void setBrushRadiusPx(int r) {
         this.brushRadiusPx = Math.max(1, r);
-        rebuildBrushOffsets();
         repaint();
     }
 
@@ -361,6 +406,29 @@ public class FloorplanCanvas extends JPanel {
     public void setOnSelectionChanged(Consumer<Zone> cb) { this.onSelectionChanged = cb; }
     public void setOnDeleteRequested(Runnable r) { this.onDeleteRequested = r; }
     public void setOnMaskEdited(Consumer<String> cb) { this.onMaskEdited = cb; }
+    public void setOnRoiSelected(Consumer<Rectangle> cb) { this.onRoiSelected = cb; }
+    public void setMaskEditListener(MaskEditListener l) { this.maskEditListener = l; }
+    public void setOnMaskUndoable(BiConsumer<String, WalkMask.TileDelta> cb) { this.onMaskUndoable = cb; }
+
+    /** ✅ Receives each brush dab / polygon fill that changed the mask, as the exact op applied. */
+    public interface MaskEditListener {
+        void circle(int cx, int cy, int radius, boolean walkable);
+        void polygon(Polygon poly, boolean walkable);
+    }
+
+    /** Mask pixels in imgRect were changed outside the canvas (e.g. ROI regeneration): refresh just that part. */
+    public void maskRegionChanged(Rectangle imgRect) {
+        if (mask == null || imgRect == null) return;
+        if (overlayTiles == null) {
+            rebuildOverlayCache();
+            repaint();
+            return;
+        }
+
+        Rectangle r = imgRect.intersection(new Rectangle(0, 0, mask.getWidth(), mask.getHeight()));
+        overlayTiles.invalidate(r);
+        repaint(imageRectToScreen(r.x - 1, r.y - 1, r.width + 2, r.height + 2));
+    }
 
     public void setTestRoute(Point startImg, Point endImg, List<Point> pathImg) {
         this.testRouteStartImg = (startImg == null) ? null : new Point(startImg);
@@ -525,28 +593,19 @@ public class FloorplanCanvas extends JPanel {
     private void paintCircle(int cx, int cy, boolean makeWalkable, boolean doRepaint) {
         if (mask == null) return;
 
-        boolean changedAny = false;
-
-        for (Point off : brushOffsets) {
-            int x = cx + off.x;
-            int y = cy + off.y;
-            if (!mask.inBounds(x, y)) continue;
+        // ✅ one span fill + one version bump per dab; untouched mask tiles stay shared with copies
+        int before = mask.getVersion();
+        mask.fillCircle(cx, cy, brushRadiusPx, makeWalkable);
+        boolean changedAny = mask.getVersion() != before;
 
-            boolean before = mask.isWalkable(x, y);
-            if (before != makeWalkable) {
-                mask.setWalkable(x, y, makeWalkable);
-                changedAny = true;
-
-                if (overlayCache != null
-                        && x >= 0 && y >= 0
-                        && x < overlayCache.getWidth()
-                        && y < overlayCache.getHeight()) {
-                    overlayCache.setRGB(x, y, overlayColorFor(makeWalkable, overlayAlpha));
-                }
-            }
+        // the mask bits are the overlay: just re-read the tiles under the dab
+        if (changedAny && overlayTiles != null) {
+            int r = brushRadiusPx + 1;
+            overlayTiles.invalidate(new Rectangle(cx - r, cy - r, 2 * r + 1, 2 * r + 1));
         }
 
         if (changedAny) {
+            if (maskEditListener != null) maskEditListener.circle(cx, cy, brushRadiusPx, makeWalkable);
             markMaskEdited(makeWalkable ? "paint walkable" : "paint blocked");
         }
 
@@ -561,6 +620,20 @@ public class FloorplanCanvas extends JPanel {
         }
     }
 
+    private void beginMaskEdit(String label) {
+        if (mask == null || onMaskUndoable == null) return;
+        editMark = mask.markTiles();
+        editLabel = label;
+    }
+
+    /** Hands the tiles the stroke / fill rewrote to the undo history. */
+    private void endMaskEdit() {
+        if (editMark == null) return;
+        WalkMask.TileDelta d = (mask == null) ? null : mask.tilesChangedSince(editMark);
+        editMark = null;
+        if (d != null && onMaskUndoable != null) onMaskUndoable.accept(editLabel, d);
+    }
+
     private void markMaskEdited(String reason) {
         pendingMaskEdited = true;
         if (reason != null && !reason.trim().isEmpty()) {
@@ -580,43 +653,97 @@ public class FloorplanCanvas extends JPanel {
         }
     }
 
-    private void rebuildBrushOffsets() {
-        brushOffsets.clear();
-        int r = brushRadiusPx;
-        int rr = r * r;
-        for (int dy = -r; dy <= r; dy++) {
-            for (int dx = -r; dx <= r; dx++) {
-                if (dx * dx + dy * dy <= rr) {
-                    brushOffsets.add(new Point(dx, dy));
+    private void rebuildOverlayCache() {
+        disposeOverlayTiles();
+        if (mask == null) return;
+        overlayTiles = new TilePyramidCache(overlaySource(mask), this, tileBudgetBytes());
+    }
+
+    /**
+     * ✅ Overlay tiles straight from the mask words: level 0 is a 1-bit copy of the tile (8 KB),
+     * coarser levels store the walkable fraction of each block (popcount) as an 8-bit palette index.
+     */
+    private TilePyramidCache.Source overlaySource(WalkMask m) {
+        return new TilePyramidCache.Source() {
+            @Override public int width() { return m.getWidth(); }
+            @Override public int height() { return m.getHeight(); }
+            @Override public BufferedImage tile(int level, int tx, int ty) {
+                int span = TilePyramidCache.TILE << level;
+                int x0 = tx * span, y0 = ty * span;
+                int tw = Math.min(TilePyramidCache.TILE, ((m.getWidth() - x0) + (1 << level) - 1) >> level);
+                int th = Math.min(TilePyramidCache.TILE, ((m.getHeight() - y0) + (1 << level) - 1) >> level);
+
+                if (level == 0) return m.toOverlayTile(new Rectangle(x0, y0, tw, th), overlayBitPalette);
+
+                BufferedImage t = new BufferedImage(tw, th, BufferedImage.TYPE_BYTE_INDEXED, overlayCoveragePalette);
+                byte[] px = ((DataBufferByte) t.getRaster().getDataBuffer()).getData();
+                int block = 1 << level;
+                for (int y = 0; y < th; y++) {
+                    int by = y0 + y * block;
+                    int bh = Math.min(block, m.getHeight() - by);
+                    for (int x = 0; x < tw; x++) {
+                        int bx = x0 + x * block;
+                        int bw = Math.min(block, m.getWidth() - bx);
+                        int area = bw * bh;
+                        int walk = m.countWalkable(bx, by, bw, bh);
+                        px[y * tw + x] = (byte) ((walk * 255 + area / 2) / area);
+                    }
                 }
+                return t;
             }
-        }
+            @Override public boolean translucent() { return true; }
+        };
     }
 
-    private void rebuildOverlayCache() {
-        if (mask == null) {
-            overlayCache = null;
-            return;
+    /** ✅ New overlay alpha: cached tiles get the new palettes over their existing rasters. */
+    public void setOverlayAlpha(int alpha) {
+        int a = Math.max(0, Math.min(255, alpha));
+        if (a == overlayAlpha) return;
+        overlayAlpha = a;
+        overlayBitPalette = bitPalette(a);
+        overlayCoveragePalette = coveragePalette(a);
+
+        if (overlayTiles != null) {
+            overlayTiles.recolor(t -> new BufferedImage(
+                    t.getColorModel().getPixelSize() == 1 ? overlayBitPalette : overlayCoveragePalette,
+                    t.getRaster(), false, null));
         }
+        repaint();
+    }
 
-        int w = mask.getWidth();
-        int h = mask.getHeight();
-        overlayCache = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    public int getOverlayAlpha() { return overlayAlpha; }
 
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                boolean walk = mask.isWalkable(x, y);
-                overlayCache.setRGB(x, y, overlayColorFor(walk, overlayAlpha));
-            }
+    private void disposeOverlayTiles() {
+        if (overlayTiles != null) overlayTiles.dispose();
+        overlayTiles = null;
+    }
+
+    /** Per-pyramid tile budget: 1/16 of the heap (tiles are re-derived on demand). */
+    private static long tileBudgetBytes() {
+        return Runtime.getRuntime().maxMemory() / 16;
+    }
+
+    /** 1-bit overlay palette: the mask's own ({@link WalkMask#overlayPalette}), so tiles match its overlay image. */
+    private static IndexColorModel bitPalette(int alpha) {
+        return WalkMask.overlayPalette(alpha);
+    }
+
+    /** 8-bit coverage palette: index i = i/255 of the block walkable, blended between the mask's overlay tints. */
+    private static IndexColorModel coveragePalette(int alpha) {
+        byte[] r = new byte[256], g = new byte[256], b = new byte[256], a = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte) blend(WalkMask.OVERLAY_BLOCK_RGB >> 16, WalkMask.OVERLAY_WALK_RGB >> 16, i);
+            g[i] = (byte) blend(WalkMask.OVERLAY_BLOCK_RGB >> 8, WalkMask.OVERLAY_WALK_RGB >> 8, i);
+            b[i] = (byte) blend(WalkMask.OVERLAY_BLOCK_RGB, WalkMask.OVERLAY_WALK_RGB, i);
+            a[i] = (byte) alpha;
         }
+        return new IndexColorModel(8, 256, r, g, b, a);
     }
 
-    private static int overlayColorFor(boolean walkable, int alpha) {
-        alpha = Math.max(0, Math.min(255, alpha));
-        int r = walkable ? 0   : 255;
-        int g = walkable ? 255 : 0;
-        int b = 0;
-        return (alpha << 24) | (r << 16) | (g << 8) | b;
+    /** Channel (low 8 bits of each) i/255 of the way from 'from' to 'to'. */
+    private static int blend(int from, int to, int i) {
+        int f = from & 0xFF, t = to & 0xFF;
+        return f + Math.round((t - f) * i / 255f);
     }
 
     // ==========================================================
@@ -654,74 +781,22 @@ public class FloorplanCanvas extends JPanel {
     private boolean fillPolygon(List<Point> ptsImg, boolean makeWalkable) {
         if (mask == null || image == null) return false;
 
-        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
-        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
-        for (Point p : ptsImg) {
-            minX = Math.min(minX, p.x);
-            minY = Math.min(minY, p.y);
-            maxX = Math.max(maxX, p.x);
-            maxY = Math.max(maxY, p.y);
-        }
-
-        minX = Math.max(0, minX);
-        minY = Math.max(0, minY);
-        maxX = Math.min(image.getWidth() - 1, maxX);
-        maxY = Math.min(image.getHeight() - 1, maxY);
+        Polygon poly = new Polygon();
+        for (Point p : ptsImg) poly.addPoint(p.x, p.y);
 
-        int bw = Math.max(1, maxX - minX + 1);
-        int bh = Math.max(1, maxY - minY + 1);
+        // ✅ scanline spans in the mask itself (one version bump); the same call replays it from the journal
+        int before = mask.getVersion();
+        beginMaskEdit(makeWalkable ? "poly fill walkable" : "poly fill blocked");
+        mask.fillPolygon(poly, makeWalkable);
+        endMaskEdit();
+        if (mask.getVersion() == before) return false;
 
-        BufferedImage polyImg = new BufferedImage(bw, bh, BufferedImage.TYPE_BYTE_BINARY);
-        Graphics2D g2 = polyImg.createGraphics();
-        try {
-            g2.setColor(Color.WHITE);
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-
-            Path2D path = new Path2D.Double();
-            Point p0 = ptsImg.get(0);
-            path.moveTo(p0.x - minX, p0.y - minY);
-            for (int i = 1; i < ptsImg.size(); i++) {
-                Point pi = ptsImg.get(i);
-                path.lineTo(pi.x - minX, pi.y - minY);
-            }
-            path.closePath();
+        if (maskEditListener != null) maskEditListener.polygon(poly, makeWalkable);
 
-            g2.fill(path);
-        } finally {
-            g2.dispose();
-        }
-
-        int changed = 0;
-        for (int y = 0; y < bh; y++) {
-            for (int x = 0; x < bw; x++) {
-                int rgb = polyImg.getRGB(x, y) & 0xFFFFFF;
-                if (rgb == 0) continue;
-
-                int ix = minX + x;
-                int iy = minY + y;
-                if (!mask.inBounds(ix, iy)) continue;
-
-                boolean before = mask.isWalkable(ix, iy);
-                if (before != makeWalkable) {
-                    mask.setWalkable(ix, iy, makeWalkable);
-                    changed++;
-
-                    if (overlayCache != null
-                            && ix >= 0 && iy >= 0
-                            && ix < overlayCache.getWidth()
-                            && iy < overlayCache.getHeight()) {
-                        overlayCache.setRGB(ix, iy, overlayColorFor(makeWalkable, overlayAlpha));
-                    }
-                }
-            }
-        }
-
-        if (changed > 0) {
-            Rectangle dirty = imageRectToScreen(minX, minY, bw, bh);
-            repaint(dirty);
-            return true;
-        }
-        return false;
+        Rectangle b = poly.getBounds().intersection(new Rectangle(0, 0, mask.getWidth(), mask.getHeight()));
+        if (overlayTiles != null) overlayTiles.invalidate(b);
+        repaint(imageRectToScreen(b.x, b.y, b.width, b.height));
+        return true;
     }
 
     // ==========================================================
@@ -747,15 +822,20 @@ public class FloorplanCanvas extends JPanel {
             at.scale(zoom, zoom);
             g2.transform(at);
 
-            g2.drawImage(image, 0, 0, null);
+            if (imageTiles != null) {
+                imageTiles.paint(g2, zoom);
+            } else {
+                g2.drawImage(image, 0, 0, null);
+            }
 
-            if (overlayEnabled && overlayCache != null) {
-                g2.drawImage(overlayCache, 0, 0, null);
+            if (overlayEnabled && overlayTiles != null) {
+                overlayTiles.paint(g2, zoom);
             }
 
             drawZones(g2);
             drawTestRoute(g2);
             drawMeasure(g2);
+            drawRoi(g2);
 
             if (isAnyPolygonTool(tool) && !polyPts.isEmpty()) {
                 g2.setStroke(new BasicStroke((float) (2.0 / zoom)));
@@ -807,6 +887,26 @@ public class FloorplanCanvas extends JPanel {
         }
     }
 
+    private Rectangle roiRect() {
+        int x0 = Math.min(roiStartImg.x, roiEndImg.x);
+        int y0 = Math.min(roiStartImg.y, roiEndImg.y);
+        int x1 = Math.max(roiStartImg.x, roiEndImg.x);
+        int y1 = Math.max(roiStartImg.y, roiEndImg.y);
+        return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    private void drawRoi(Graphics2D g2) {
+        if (roiStartImg == null || roiEndImg == null) return;
+
+        Rectangle r = roiRect();
+        g2.setColor(new Color(255, 220, 0, 40));
+        g2.fillRect(r.x, r.y, r.width, r.height);
+        g2.setStroke(new BasicStroke((float) (2.0 / zoom), BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER,
+                10f, new float[] { (float) (6.0 / zoom), (float) (4.0 / zoom) }, 0f));
+        g2.setColor(new Color(255, 220, 0, 230));
+        g2.drawRect(r.x, r.y, r.width, r.height);
+    }
+
     private void drawMeasure(Graphics2D g2) {
         if (measureStartImg == null || measureEndImg == null) return;
 
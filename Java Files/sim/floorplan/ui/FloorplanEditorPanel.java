@@ -1,14 +1,20 @@
 package sim.floorplan.ui;
 
+import sim.floorplan.io.DiskTilePyramid;
+import sim.floorplan.io.EditJournal;
 import sim.floorplan.io.FloorplanProjectIO;
 import sim.floorplan.io.PdfFloorplanImporter;
 import sim.floorplan.mask.AutoMaskGenerator;
+import sim.floorplan.mask.StreamingMaskBuilder;
 import sim.floorplan.model.FloorplanProject;
+import sim.floorplan.model.MaskUndoHistory;
 import sim.floorplan.model.WalkMask;
 import sim.floorplan.model.Zone;
 import sim.floorplan.model.ZoneType;
 import sim.floorplan.path.AStarRouter;
 import sim.floorplan.sim.FloorplanTravelTimeProvider;
+import sim.floorplan.sim.OccupancyHeatmap;
+import sim.floorplan.sim.PathCache;
 import sim.floorplan.sim.TravelTimeProvider;
 import sim.model.ArrivalCurveConfig;
 import sim.model.Flight;
@@ -21,10 +27,15 @@ import sim.ui.TicketCounterConfig;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.*;
@@ -39,6 +50,7 @@ public class FloorplanEditorPanel extends JPanel {
 
     // Project state (Milestone 4)
     private final FloorplanProject project = new FloorplanProject();
+    private OccupancyHeatmap occupancyHeatmap; // ✅ averaged over the simulation runs of this floorplan image
     private boolean locked = false;
     private List<String> lastValidationErrors = new ArrayList<>();
 
@@ -65,6 +77,7 @@ public class FloorplanEditorPanel extends JPanel {
     private final JSpinner sealGapsSpinner = new JSpinner(new SpinnerNumberModel(14, 0, 80, 1));
 
     private final JButton autoMaskBtn = new JButton("Auto Mask");
+    private final JToggleButton roiMaskBtn = new JToggleButton("Regenerate ROI");
 
     // Tools (mask)
     private final JToggleButton selectToolBtn = new JToggleButton("Select");
@@ -97,8 +110,11 @@ public class FloorplanEditorPanel extends JPanel {
     private final JButton loadProjectBtn = new JButton("Load Project");
 
     private final JSpinner brushSpinner = new JSpinner(new SpinnerNumberModel(10, 1, 120, 1));
+    private final JButton undoMaskBtn = new JButton("Undo");
+    private final JButton redoMaskBtn = new JButton("Redo");
     private final JButton resetViewBtn = new JButton("Reset View");
     private final JCheckBox overlayToggle = new JCheckBox("Mask Overlay", true);
+    private final JSlider overlayAlphaSlider = new JSlider(0, 255, 90);
 
     private final JLabel statusLabel = new JLabel("No project loaded.");
     private final JLabel helpLabel = new JLabel(" ");
@@ -113,6 +129,22 @@ public class FloorplanEditorPanel extends JPanel {
      */
     private WalkMask currentMask;
 
+    // ✅ last auto-generated mask + its version: inflate/seal changes re-run it live until it's hand-edited
+    private WalkMask autoMask;
+    private int autoMaskVersion = -1;
+
+    // ✅ mask built while a big page streamed into its tile pyramid; taken by the next rebuildMaskFromControls
+    private WalkMask streamedMask;
+
+    // ✅ auto-mask distance fields of currentImage (~8 B/px): cleared when the image is replaced or the editor goes away
+    private final AutoMaskGenerator.FieldCache maskFields = new AutoMaskGenerator.FieldCache();
+
+    // ✅ mask undo/redo (tile deltas per stroke / fill); cleared whenever currentMask is replaced
+    private final MaskUndoHistory maskHistory = new MaskUndoHistory(Runtime.getRuntime().maxMemory() / 32);
+
+    // ✅ edit journal of the .fsp the editor state came from / was saved to (null until saved or loaded)
+    private EditJournal journal;
+
     private Zone selectedZone;
 
     // ✅ Test route state
@@ -121,6 +153,10 @@ public class FloorplanEditorPanel extends JPanel {
     private List<Point> routePath = null;
     private SwingWorker<List<Point>, Void> routeWorker = null;
 
+    // ✅ exact-routing note of the last lock (corner scan runs off the EDT)
+    private static final String LOCKED_STATUS = "✅ Floorplan validated & LOCKED.";
+    private SwingWorker<String, Void> routingCheckWorker = null;
+
     // ==========================================================
     // ✅ FLOORPLAN SIM (Editor side)
     // ==========================================================
@@ -154,6 +190,19 @@ public class FloorplanEditorPanel extends JPanel {
 
         // ✅ wire canvas -> editor on mask edits
         canvas.setOnMaskEdited(this::onMaskEdited);
+        canvas.setOnRoiSelected(this::regenerateMaskRegion);
+        canvas.setOnMaskUndoable((label, delta) -> {
+            maskHistory.record(label, delta);
+            updateUndoButtons();
+        });
+        canvas.setMaskEditListener(new FloorplanCanvas.MaskEditListener() {
+            @Override public void circle(int cx, int cy, int radius, boolean walkable) {
+                if (journal != null) journal.circle(cx, cy, radius, walkable);
+            }
+            @Override public void polygon(Polygon poly, boolean walkable) {
+                if (journal != null) journal.polygon(poly, walkable);
+            }
+        });
 
         // inspector callback
         inspector.setOnZoneChanged(() -> {
@@ -213,6 +262,9 @@ public class FloorplanEditorPanel extends JPanel {
         r.add(renderBtn);
         r.add(Box.createHorizontalStrut(12));
         r.add(overlayToggle);
+        overlayAlphaSlider.setToolTipText("Mask overlay opacity");
+        overlayAlphaSlider.setPreferredSize(new Dimension(90, overlayAlphaSlider.getPreferredSize().height));
+        r.add(overlayAlphaSlider);
 
         // ✅ scale
         r.add(Box.createHorizontalStrut(14));
@@ -242,6 +294,8 @@ public class FloorplanEditorPanel extends JPanel {
         r.add(sealGapsSpinner);
 
         r.add(autoMaskBtn);
+        getUnifiedToolGroup().add(roiMaskBtn);
+        r.add(roiMaskBtn);
         return r;
     }
 
@@ -274,6 +328,9 @@ public class FloorplanEditorPanel extends JPanel {
         r.add(new JLabel("Brush(px):"));
         r.add(brushSpinner);
 
+        r.add(undoMaskBtn);
+        r.add(redoMaskBtn);
+
         r.add(resetViewBtn);
         return r;
     }
@@ -362,6 +419,8 @@ public class FloorplanEditorPanel extends JPanel {
 
     private void hookEvents() {
         overlayToggle.addActionListener(e -> canvas.setOverlayEnabled(overlayToggle.isSelected()));
+        // ✅ live: only swaps the overlay palettes
+        overlayAlphaSlider.addChangeListener(e -> canvas.setOverlayAlpha(overlayAlphaSlider.getValue()));
 
         // Tool switching
         selectToolBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.SELECT); updateHelp(); });
@@ -370,6 +429,7 @@ public class FloorplanEditorPanel extends JPanel {
         walkToolBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.PAINT_WALKABLE); updateHelp(); });
         blockToolBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.PAINT_BLOCKED); updateHelp(); });
         polyFillBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.POLY_FILL_WALKABLE); updateHelp(); });
+        roiMaskBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.SELECT_ROI); updateHelp(); });
 
         testRouteBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.TEST_ROUTE); updateHelp(); });
         measureScaleBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.MEASURE_SCALE); updateHelp(); });
@@ -384,8 +444,28 @@ public class FloorplanEditorPanel extends JPanel {
         drawHoldroomAreaBtn.addActionListener(e -> { scaleA = null; canvas.setTool(FloorplanCanvas.Tool.DRAW_HOLDROOM_AREA); updateHelp(); });
 
         brushSpinner.addChangeListener(e -> canvas.setBrushRadiusPx(((Number) brushSpinner.getValue()).intValue()));
+
+        // inflate/seal only re-threshold cached distance fields, so they can apply live
+        inflateSpinner.addChangeListener(e -> rebuildAutoMaskIfUntouched());
+        sealGapsSpinner.addChangeListener(e -> rebuildAutoMaskIfUntouched());
         resetViewBtn.addActionListener(e -> canvas.resetView());
 
+        undoMaskBtn.addActionListener(e -> undoMaskEdit(false));
+        redoMaskBtn.addActionListener(e -> undoMaskEdit(true));
+
+        int menuKey = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        InputMap keys = getInputMap(WHEN_IN_FOCUSED_WINDOW);
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuKey), "maskUndo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuKey), "maskRedo");
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+                menuKey | InputEvent.SHIFT_DOWN_MASK), "maskRedo");
+        getActionMap().put("maskUndo", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { undoMaskEdit(false); }
+        });
+        getActionMap().put("maskRedo", new AbstractAction() {
+            @Override public void actionPerformed(ActionEvent e) { undoMaskEdit(true); }
+        });
+
         clearRouteBtn.addActionListener(e -> clearRoute());
 
         // scale changes apply immediately to project
@@ -461,6 +541,8 @@ public class FloorplanEditorPanel extends JPanel {
             helpLabel.setText("Measure Scale: click point A then point B. You’ll be prompted for meters; scale (m/px) will be set.");
         } else if (t == FloorplanCanvas.Tool.SELECT) {
             helpLabel.setText("Select: click an anchor (near dot) or click inside an area polygon. Delete key removes selected. Right-drag pans.");
+        } else if (t == FloorplanCanvas.Tool.SELECT_ROI) {
+            helpLabel.setText("Regenerate ROI: drag a rectangle. Only that area is re-run with the current threshold/inflate/seal; edits elsewhere are kept.");
         } else if (t == FloorplanCanvas.Tool.PAINT_WALKABLE || t == FloorplanCanvas.Tool.PAINT_BLOCKED) {
             helpLabel.setText("Brush: left-drag to paint. Right-drag to pan. Mouse wheel zoom.");
         } else {
@@ -482,8 +564,14 @@ public class FloorplanEditorPanel extends JPanel {
         }
 
         try {
-            BufferedImage img = PdfFloorplanImporter.renderPage(currentPdf, pageIndex, dpi);
-            currentImage = img;
+            Dimension size = PdfFloorplanImporter.pageSizePx(currentPdf, pageIndex, dpi);
+            BufferedImage img = needsStreamedRender(size)
+                    ? renderStreamed(currentPdf, pageIndex, dpi, size)
+                    : PdfFloorplanImporter.renderPage(currentPdf, pageIndex, dpi);
+            replaceImage(img);
+
+            // a fresh render isn't the saved project any more
+            stopJournal();
 
             canvas.setImage(currentImage);
 
@@ -532,18 +620,27 @@ public class FloorplanEditorPanel extends JPanel {
         int sealPx = ((Number) sealGapsSpinner.getValue()).intValue();
 
         try {
-            AutoMaskGenerator.Params p = new AutoMaskGenerator.Params();
-            p.threshold = thr;
-            p.autoThreshold = autoThrToggle.isSelected();
-            p.inflatePx = inflatePx;
-            p.removeOutside = removeOutsideToggle.isSelected();
-            p.sealGapsPx = sealPx;
-
-            currentMask = AutoMaskGenerator.generate(currentImage, p);
+            AutoMaskGenerator.Params p = maskParamsFromControls();
+
+            DiskTilePyramid pyramid = DiskTilePyramid.of(currentImage);
+            if (streamedMask != null) {
+                currentMask = streamedMask;
+                streamedMask = null;
+            } else if (pyramid != null) {
+                currentMask = StreamingMaskBuilder.build(pyramid.getWidth(), pyramid.getHeight(), p,
+                        sink -> pyramid.replay(sink::band));
+            } else {
+                currentMask = AutoMaskGenerator.generate(currentImage, p, maskFields);
+            }
+            autoMask = currentMask;
+            autoMaskVersion = currentMask.getVersion();
             canvas.setMask(currentMask);
+            maskHistory.clear();
+            updateUndoButtons();
 
             // ✅ CRITICAL: no copy here
             project.setMask(currentMask);
+            if (journal != null) journal.region(currentMask, null);
 
             clearRoute();
 
@@ -559,6 +656,100 @@ public class FloorplanEditorPanel extends JPanel {
         }
     }
 
+    private AutoMaskGenerator.Params maskParamsFromControls() {
+        AutoMaskGenerator.Params p = new AutoMaskGenerator.Params();
+        p.threshold = thresholdSlider.getValue();
+        p.autoThreshold = autoThrToggle.isSelected();
+        p.inflatePx = ((Number) inflateSpinner.getValue()).intValue();
+        p.removeOutside = removeOutsideToggle.isSelected();
+        p.sealGapsPx = ((Number) sealGapsSpinner.getValue()).intValue();
+        return p;
+    }
+
+    /** A full RGB render plus the in-memory mask passes (~12 bytes/px) wouldn't comfortably fit the heap. */
+    private static boolean needsStreamedRender(Dimension size) {
+        return (long) size.width * size.height * 12L > Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * ✅ Big sheets: renders the page in TILE-row bands straight into an on-disk tile pyramid and the
+     * streaming mask builder, and returns a read-only image view over the pyramid.
+     * Tiles go to a fresh temp directory, deleted once the image is replaced (or at exit).
+     */
+    private BufferedImage renderStreamed(File pdf, int pageIndex, int dpi, Dimension size) throws IOException {
+        DiskTilePyramid.Writer tiles = DiskTilePyramid.createTemp(size.width, size.height);
+        try {
+            StreamingMaskBuilder masks = new StreamingMaskBuilder(size.width, size.height, maskParamsFromControls());
+
+            PdfFloorplanImporter.renderPageBands(pdf, pageIndex, dpi, DiskTilePyramid.TILE, (band, y0) -> {
+                tiles.band(band, y0);
+                masks.band(band, y0);
+            });
+
+            DiskTilePyramid pyramid = tiles.finish();
+            streamedMask = masks.finish(sink -> pyramid.replay(sink::band));
+            return pyramid.asImage();
+        } catch (IOException | RuntimeException ex) {
+            tiles.abort();
+            throw ex;
+        }
+    }
+
+    /** New floorplan image (and a new occupancy heatmap); the tiles of a streamed render it replaces are deleted. */
+    private void replaceImage(BufferedImage img) {
+        DiskTilePyramid previous = DiskTilePyramid.of(currentImage);
+        currentImage = img;
+        maskFields.clear();
+        occupancyHeatmap = null;
+        if (previous != null && previous != DiskTilePyramid.of(img)) previous.delete();
+    }
+
+    /**
+     * ✅ ROI mode: re-runs auto-mask inside imgRect only and merges it into the current mask
+     * (same instance, so manual edits outside the rectangle survive). Cached routes, anchor
+     * distances and visibility corners the edit can't reach are carried over to the new mask content.
+     */
+    private void regenerateMaskRegion(Rectangle imgRect) {
+        if (locked || currentImage == null || currentMask == null || imgRect == null) return;
+
+        try {
+            AutoMaskGenerator.Params p = maskParamsFromControls();
+
+            long oldHash = currentMask.contentHash();
+            int oldVersion = currentMask.getVersion();
+
+            WalkMask.TileMark mark = currentMask.markTiles();
+            boolean changed = AutoMaskGenerator.regenerateRegion(currentImage, p, currentMask, imgRect);
+            if (!changed) {
+                statusLabel.setText("ROI regenerated: no change");
+                return;
+            }
+            maskHistory.record("regenerate ROI", currentMask.tilesChangedSince(mark));
+            updateUndoButtons();
+
+            int stride = ((Number) routeStrideSpinner.getValue()).intValue();
+            List<Rectangle> dirty = currentMask.getChangedRegionsSince(oldVersion);
+            PathCache.carryOver(currentMask, oldHash, currentMask.contentHash(), dirty, stride);
+
+            canvas.maskRegionChanged(imgRect);
+            if (journal != null) journal.region(currentMask, imgRect);
+            onMaskEdited("regenerate ROI " + imgRect.width + "x" + imgRect.height);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            JOptionPane.showMessageDialog(this,
+                    "ROI regeneration failed: " + ex.getMessage(),
+                    "Auto Mask",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /** Re-runs auto-mask only while the current mask is still exactly what it generated (no hand edits lost). */
+    private void rebuildAutoMaskIfUntouched() {
+        if (locked || currentImage == null) return;
+        if (currentMask == null || currentMask != autoMask || currentMask.getVersion() != autoMaskVersion) return;
+        rebuildMaskFromControls();
+    }
+
     private void showErrors(List<String> errors) {
         JOptionPane.showMessageDialog(
                 this,
@@ -587,15 +778,14 @@ public class FloorplanEditorPanel extends JPanel {
             int res = chooser.showSaveDialog(this);
             if (res != JFileChooser.APPROVE_OPTION) return;
 
-            project.setPdfFile(currentPdf);
-            project.setPageIndex(((Number) pageSpinner.getValue()).intValue());
-            project.setDpi((Integer) dpiCombo.getSelectedItem());
-            project.setFloorplanImage(currentImage);
-
-            project.setMask(currentMask);
-            project.setMetersPerPixel(((Number) metersPerPixelSpinner.getValue()).doubleValue());
+            // the journal thread may be compacting into the same file
+            EditJournal previous = journal;
+            stopJournal();
 
-            FloorplanProjectIO.saveToFile(project.copy(), chooser.getSelectedFile());
+            File saved = FloorplanProjectIO.saveToFile(snapshotProject(), chooser.getSelectedFile());
+            // saved elsewhere: the edits live in the new file, the old .fsp stays as it was last saved
+            if (previous != null && !previous.getFile().equals(EditJournal.fileFor(saved))) previous.discard();
+            startJournal(saved);
             statusLabel.setText("✅ Saved project: " + chooser.getSelectedFile().getName());
 
         } catch (Exception ex) {
@@ -628,10 +818,11 @@ public class FloorplanEditorPanel extends JPanel {
             int res = chooser.showOpenDialog(this);
             if (res != JFileChooser.APPROVE_OPTION) return;
 
+            stopJournal();
             FloorplanProject loaded = FloorplanProjectIO.loadFromFile(chooser.getSelectedFile());
 
             currentPdf = loaded.getPdfFile();
-            currentImage = loaded.getFloorplanImage();
+            replaceImage(loaded.getFloorplanImage());
             currentMask = loaded.getMask();
 
             project.setPdfFile(currentPdf);
@@ -652,6 +843,7 @@ public class FloorplanEditorPanel extends JPanel {
             canvas.setImage(currentImage);
             canvas.setMask(currentMask);
             canvas.setOverlayEnabled(overlayToggle.isSelected());
+            maskHistory.clear();
 
             clearRoute();
 
@@ -672,6 +864,8 @@ public class FloorplanEditorPanel extends JPanel {
             canvas.setTool(FloorplanCanvas.Tool.PAN);
             updateHelp();
 
+            startJournal(chooser.getSelectedFile());
+
             statusLabel.setText("✅ Loaded project: " + chooser.getSelectedFile().getName()
                     + (currentPdf != null ? (" | PDF link: " + currentPdf.getName()) : " | (PDF path not found; image/mask loaded)"));
 
@@ -684,10 +878,103 @@ public class FloorplanEditorPanel extends JPanel {
         }
     }
 
+    /** Editor state as a detached project (what Save writes). */
+    private FloorplanProject snapshotProject() {
+        project.setPdfFile(currentPdf);
+        project.setPageIndex(((Number) pageSpinner.getValue()).intValue());
+        project.setDpi((Integer) dpiCombo.getSelectedItem());
+        project.setFloorplanImage(currentImage);
+
+        project.setMask(currentMask);
+        project.setMetersPerPixel(((Number) metersPerPixelSpinner.getValue()).doubleValue());
+        return project.copy();
+    }
+
+    @Override
+    public void removeNotify() {
+        maskFields.clear(); // rebuilt from currentImage if the editor is shown again
+        super.removeNotify();
+    }
+
+    /**
+     * Flushes the edit journal (unsaved edits come back when the .fsp is reopened) and releases the editor's
+     * temp files (streamed render tiles). The editor can't be used afterwards.
+     */
+    public void dispose() {
+        stopJournal();
+        replaceImage(null);
+        if (project != null) project.setFloorplanImage(null);
+    }
+
+    // ==========================================================
+    // ✅ Edit journal (crash-safe autosave between saves)
+    // ==========================================================
+
+    private void startJournal(File fsp) {
+        stopJournal();
+        if (fsp == null) return;
+        try {
+            journal = EditJournal.start(fsp, project.getZones());
+        } catch (IOException ignored) {
+            journal = null; // read-only location etc.: edits just aren't journaled
+        }
+    }
+
+    private void stopJournal() {
+        if (journal != null) journal.close();
+        journal = null;
+    }
+
+    /** Folds a large journal back into the .fsp in the background (snapshot taken here, on the EDT). */
+    private void compactJournalIfNeeded() {
+        if (journal == null) return;
+        if (journal.getFailure() != null) {
+            statusLabel.setText("⚠ Autosave journal stopped: " + journal.getFailure().getMessage()
+                    + " (save to keep edits)");
+            stopJournal();
+            return;
+        }
+        journal.compactIfNeeded(this::snapshotProject);
+    }
+
     // ==========================================================
     // Canvas -> editor handlers
     // ==========================================================
 
+    /** ✅ Swaps the tiles of the last (or next) mask edit back in; routes/caches see an ordinary edit. */
+    private void undoMaskEdit(boolean redo) {
+        if (locked || currentMask == null) return;
+
+        String label = redo ? maskHistory.getRedoLabel() : maskHistory.getUndoLabel();
+        Rectangle r;
+        try {
+            r = redo ? maskHistory.redo(currentMask) : maskHistory.undo(currentMask);
+        } catch (UncheckedIOException ex) {
+            maskHistory.clear();
+            updateUndoButtons();
+            JOptionPane.showMessageDialog(this, ex.getMessage(), "Undo", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (r == null) return;
+
+        canvas.maskRegionChanged(r);
+        if (journal != null) journal.region(currentMask, r);
+        updateUndoButtons();
+        onMaskEdited((redo ? "redo " : "undo ") + label);
+    }
+
+    private void updateUndoButtons() {
+        undoMaskBtn.setEnabled(!locked && maskHistory.canUndo());
+        redoMaskBtn.setEnabled(!locked && maskHistory.canRedo());
+        undoMaskBtn.setToolTipText(maskHistory.canUndo() ? "Undo " + maskHistory.getUndoLabel() : null);
+        redoMaskBtn.setToolTipText(maskHistory.canRedo() ? "Redo " + maskHistory.getRedoLabel() : null);
+    }
+
+    /** Heap kept for mask undo steps before older ones spill to a temp file. */
+    public void setUndoBudgetBytes(long bytes) {
+        maskHistory.setBudgetBytes(bytes);
+    }
+
     private void onMaskEdited(String reason) {
         if (locked) {
             locked = false;
@@ -699,6 +986,7 @@ public class FloorplanEditorPanel extends JPanel {
         lastValidationErrors = new ArrayList<>();
         clearRoute();
         canvas.repaint();
+        compactJournalIfNeeded();
 
         if (reason != null && !reason.isEmpty()) {
             statusLabel.setText("Mask edited: " + reason + " (re-Validate & Lock before sim)");
@@ -1109,6 +1397,11 @@ public class FloorplanEditorPanel extends JPanel {
     private void syncZonesToCanvas() {
         canvas.setZones(project.getZones());
         canvas.repaint();
+
+        if (journal != null) {
+            journal.zones(project.getZones());
+            compactJournalIfNeeded();
+        }
     }
 
     private void updateStatusSelection() {
@@ -1149,15 +1442,45 @@ public class FloorplanEditorPanel extends JPanel {
         canvas.setLocked(true);
         setEditingEnabled(false);
 
-        statusLabel.setText("✅ Floorplan validated & LOCKED.");
+        statusLabel.setText(LOCKED_STATUS);
+        checkExactRouting(stride);
         return true;
     }
 
+    /** Appends the exact-routing note to the lock status once the corner scan (on a mask copy) answers. */
+    private void checkExactRouting(int stride) {
+        FloorplanProject snapshot = project.copy();
+
+        routingCheckWorker = new SwingWorker<>() {
+            @Override
+            protected String doInBackground() {
+                return sim.floorplan.path.FloorplanConnectivity.exactRoutingWarning(snapshot, stride);
+            }
+
+            @Override
+            protected void done() {
+                if (routingCheckWorker != this) return;
+                routingCheckWorker = null;
+                try {
+                    String routing = get();
+                    if (routing != null && locked && LOCKED_STATUS.equals(statusLabel.getText())) {
+                        statusLabel.setText(LOCKED_STATUS + " ⚠ " + routing);
+                    }
+                } catch (Exception ex) {
+                    ex.printStackTrace();
+                }
+            }
+        };
+
+        routingCheckWorker.execute();
+    }
+
     public boolean isLocked() { return locked; }
 
     public List<String> getLastValidationErrors() { return new ArrayList<>(lastValidationErrors); }
 
     private void unlockForEditing() {
+        routingCheckWorker = null; // its answer is about the locked plan
         locked = false;
         canvas.setLocked(false);
         setEditingEnabled(true);
@@ -1191,9 +1514,11 @@ public class FloorplanEditorPanel extends JPanel {
         drawHoldroomAreaBtn.setEnabled(enabled);
 
         deleteSelectedBtn.setEnabled(enabled);
+        updateUndoButtons();
 
         // generators
         autoMaskBtn.setEnabled(enabled);
+        roiMaskBtn.setEnabled(enabled);
         thresholdSlider.setEnabled(enabled);
         autoThrToggle.setEnabled(enabled);
         inflateSpinner.setEnabled(enabled);
@@ -1249,6 +1574,11 @@ public class FloorplanEditorPanel extends JPanel {
         return project.copy();
     }
 
+    /** Occupancy accumulator of the earlier simulation runs on this floorplan image (null before the first). */
+    public OccupancyHeatmap getOccupancyHeatmap() { return occupancyHeatmap; }
+
+    public void setOccupancyHeatmap(OccupancyHeatmap heatmap) { this.occupancyHeatmap = heatmap; }
+
     public void setMask(WalkMask mask) {
         if (locked) {
             JOptionPane.showMessageDialog(this, "Unlock to edit mask.", "Locked", JOptionPane.WARNING_MESSAGE);
@@ -1256,8 +1586,11 @@ public class FloorplanEditorPanel extends JPanel {
         }
         this.currentMask = mask;
         canvas.setMask(mask);
+        maskHistory.clear();
+        updateUndoButtons();
 
         project.setMask(mask);
+        if (journal != null) journal.region(mask, null);
 
         clearRoute();
         statusLabel.setText(statusLabel.getText() + " | mask updated");
@@ -1373,7 +1706,9 @@ public class FloorplanEditorPanel extends JPanel {
 
             // Open windows
             new DataTableFrame(tableEngine).setVisible(true);
-            new SimulationFrame(simEngine, fpCopy).setVisible(true);
+            SimulationFrame simFrame = new SimulationFrame(simEngine, fpCopy, occupancyHeatmap);
+            occupancyHeatmap = simFrame.getOccupancyHeatmap();
+            simFrame.setVisible(true);
 
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -3,23 +3,34 @@ package sim.floorplan.ui;
 import sim.floorplan.model.FloorplanProject;
 import sim.floorplan.model.WalkMask;
 import sim.floorplan.path.AStarRouter;
+import sim.floorplan.path.Polyline;
 import sim.floorplan.sim.FloorplanBindings;
-import sim.floorplan.sim.PathCache;
+import sim.floorplan.sim.FlowFieldCache;
+import sim.floorplan.sim.OccupancyHeatmap;
 import sim.floorplan.sim.TravelTimeProvider;
 import sim.model.Flight;
 import sim.model.Passenger;
 import sim.service.SimulationEngine;
+import sim.ui.HitGrid;
+import sim.ui.ScrollMouseHandler;
+import sim.ui.ShapePainter;
+import sim.ui.SpriteAtlas;
 
+import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.lang.reflect.Field;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.time.LocalTime;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FloorplanSimulationPanel extends JPanel {
 
@@ -27,11 +38,15 @@ public class FloorplanSimulationPanel extends JPanel {
     private FloorplanProject project;
 
     private FloorplanBindings bindings;
-    private PathCache pathCache;
+    private FlowFieldCache flowFields;   // one field per destination: walk distances and walking routes
 
     private int slotSpacingPx = 10;
     private int pathStridePx = 4;
 
+    // ✅ mipmapped floorplan tiles (rebuilt if the project's image changes)
+    private TilePyramidCache floorTiles;
+    private BufferedImage floorTilesImage;
+
     // pan/zoom
     private double zoom = 1.0;
     private double panX = 0;
@@ -42,8 +57,11 @@ public class FloorplanSimulationPanel extends JPanel {
     private static final int PAN_MARGIN_PX = 40;
 
     // small smoothing so movement is visible between discrete engine steps
+    // ✅ the timer only runs while something moves (paint wakes it when the engine steps)
     private javax.swing.Timer animTimer;
     private static final int ANIM_FPS_MS = 33;           // ~30 fps
+    private static final int ANIM_MAX_FRAME_MS = 250;    // slowest interpolation rate under load
+    private static final int REPAINT_STALE_MS = 500;     // a requested frame that never painted is given up on
     private static final int ANIM_STEP_MS_DEFAULT = 900; // interpolate within one engine step
     private int animStepMs = ANIM_STEP_MS_DEFAULT;
 
@@ -51,17 +69,57 @@ public class FloorplanSimulationPanel extends JPanel {
     private long stepStartMs = 0L;
     private double stepAlpha01 = 1.0;
 
-    private final Map<Integer, Integer> nearestCheckpointByTicket = new HashMap<>();
+    // frame-time budget: paint may use about half of the frame interval, else the rate drops
+    private double paintMsAvg = 0.0;
+    private long repaintRequestedMs = 0L;    // 0 = the last requested frame has painted
+
+    // walkers' bounds as last painted (world px; min > max = none), so a frame repaints only where they move
+    private int paintedMinX = 1, paintedMinY = 1, paintedMaxX = 0, paintedMaxY = 0;
+    private int moverMinX, moverMinY, moverMaxX, moverMaxY;
+    private final Rectangle dirtyRect = new Rectangle();
+    private final Rectangle paintClip = new Rectangle();
+    private final Rectangle badgeClip = new Rectangle();
+
+    // ✅ occupancy heatmap: accumulated by the render-list builder once per engine step, averaged over runs
+    private OccupancyHeatmap heatmap;
+    private int heatmapCellPx = 16;
+    private boolean heatmapVisible = false;
+    private static final int HEATMAP_EXPORT_MAX_PX = 4096;
+
+    // ✅ hit-testing (world px): parked passengers and aggregates are indexed once per shown list and LOD state,
+    // walkers are tested where the last frame drew them; ids index hitTargets (Passenger, or a group's tooltip)
+    private final HitGrid hits = new HitGrid();
+    private Object[] hitTargets = new Object[256];
+    private int hitCount = 0;
+    private PassengerRenderList hitsList;                // list the index holds (null = rebuild on the next frame)
+    private boolean[] hitsAggregated = new boolean[0];   // its LOD decisions
+    private double hitsTime;                             // timeNow of the last frame
+
+    // per bindings (captured by render-list builds, so a rebuild never sees another floorplan's entries)
+    private Map<Integer, Integer> nearestCheckpointByTicket = new ConcurrentHashMap<>();
 
     // ✅ walk speed (now also propagates into floorplan travel-time provider)
     private double walkSpeedMps = 1.34;
 
-    private int paintCurStep = 0;
-    private LocalTime paintStartTime = null;
-    private int paintStartMinutesOfDay = 0;
-    private int paintBoardingCloseOffsetMin = 20;
-    private final Map<Flight, Integer> departureIntervalByFlight = new HashMap<>();
-    private final Map<Flight, Integer> boardingCloseIntervalByFlight = new HashMap<>();
+    // ✅ render lists: built off the EDT once per engine step; paint only interpolates walkers and draws.
+    // front is what paint shows, spare is recycled into the next build (EDT-owned fields).
+    private static final ExecutorService RENDER_LIST_BUILDER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "floorplan-render-list");
+        t.setDaemon(true);
+        return t;
+    });
+    private PassengerRenderList frontList;
+    private PassengerRenderList spareList;
+    private boolean buildInFlight = false;
+    private int requestedStep = Integer.MIN_VALUE;
+    private int renderGeneration = 0;          // bumped when engine/project/layout settings change
+    private int requestedGeneration = -1;
+    private final Point framePt = new Point();
+
+    // ✅ heatmap feed: last interval queued per accumulator run (EDT)
+    private OccupancyHeatmap heatQueuedFor;
+    private int heatQueuedRun;
+    private int heatQueuedThrough = Integer.MIN_VALUE;
 
     public FloorplanSimulationPanel(FloorplanProject projectCopy, SimulationEngine engine) {
         this.project = projectCopy;
@@ -99,6 +157,16 @@ public class FloorplanSimulationPanel extends JPanel {
                 repaint();
             }
 
+            @Override public void mouseClicked(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e)) return;
+                Object hit = hitAt(e.getPoint());
+                if (hit instanceof Passenger && ((Passenger) hit).getFlight() != null && engine != null) {
+                    JOptionPane.showMessageDialog(FloorplanSimulationPanel.this,
+                            ScrollMouseHandler.passengerInfo(engine, (Passenger) hit),
+                            "Passenger Info", JOptionPane.INFORMATION_MESSAGE);
+                }
+            }
+
             @Override public void mouseWheelMoved(MouseWheelEvent e) {
                 double old = zoom;
                 double factor = (e.getWheelRotation() < 0) ? 1.12 : (1.0 / 1.12);
@@ -119,6 +187,7 @@ public class FloorplanSimulationPanel extends JPanel {
         addMouseListener(ma);
         addMouseMotionListener(ma);
         addMouseWheelListener(ma);
+        ToolTipManager.sharedInstance().registerComponent(this);
 
         addComponentListener(new ComponentAdapter() {
             @Override public void componentResized(ComponentEvent e) {
@@ -178,7 +247,7 @@ public class FloorplanSimulationPanel extends JPanel {
     @Override
     public void addNotify() {
         super.addNotify();
-        ensureAnimTimer();
+        wakeAnimTimer();
         clampPan();
     }
 
@@ -188,55 +257,274 @@ public class FloorplanSimulationPanel extends JPanel {
         super.removeNotify();
     }
 
-    private void ensureAnimTimer() {
-        if (animTimer != null) return;
+    /** (Re)starts the animation loop; it stops itself again once nothing moves. */
+    private void wakeAnimTimer() {
+        if (animTimer == null) {
+            animTimer = new javax.swing.Timer(ANIM_FPS_MS, e -> onAnimTick());
+            animTimer.setCoalesce(true);
+        }
+        if (!animTimer.isRunning()) {
+            repaintRequestedMs = 0L;
+            animTimer.start();
+        }
+    }
 
-        animTimer = new javax.swing.Timer(ANIM_FPS_MS, e -> {
-            if (!isShowing()) return;
-            if (engine == null) return;
+    private void onAnimTick() {
+        if (!isShowing() || engine == null) {
+            animTimer.stop();
+            return;
+        }
 
-            int step = safeInt(() -> engine.getCurrentInterval(), 0);
+        long now = System.currentTimeMillis();
 
-            long now = System.currentTimeMillis();
-            if (step != lastEngineStep) {
-                lastEngineStep = step;
-                stepStartMs = now;
-                stepAlpha01 = 0.0;
-            } else {
-                long dt = Math.max(0L, now - stepStartMs);
-                stepAlpha01 = Math.min(1.0, dt / (double) Math.max(50, animStepMs));
-            }
-            repaint();
-        });
-        animTimer.setCoalesce(true);
-        animTimer.start();
+        // ✅ drop frames rather than queue them: wait until the last one has painted
+        if (repaintRequestedMs != 0L && now - repaintRequestedMs < REPAINT_STALE_MS) return;
+
+        int step = safeInt(() -> engine.getCurrentInterval(), 0);
+        if (step != lastEngineStep) {
+            lastEngineStep = step;
+            stepStartMs = now;
+            stepAlpha01 = 0.0;
+            requestFrame(null); // queues moved too
+            return;
+        }
+
+        if (stepAlpha01 >= 1.0) {
+            animTimer.stop(); // paused / walkers arrived: idle until the engine steps again
+            return;
+        }
+
+        long dt = Math.max(0L, now - stepStartMs);
+        stepAlpha01 = Math.min(1.0, dt / (double) Math.max(50, animStepMs));
+
+        PassengerRenderList rl = frontList;
+        if (rl == null || rl.step != lastEngineStep) return; // the landing list repaints everything
+
+        // repaint only where walkers were and will be
+        if (!moverBounds(rl, rl.step + stepAlpha01)) {
+            if (paintedMinX > paintedMaxX) return;
+            moverMinX = paintedMinX; moverMinY = paintedMinY;
+            moverMaxX = paintedMaxX; moverMaxY = paintedMaxY;
+        } else if (paintedMinX <= paintedMaxX) {
+            moverMinX = Math.min(moverMinX, paintedMinX);
+            moverMinY = Math.min(moverMinY, paintedMinY);
+            moverMaxX = Math.max(moverMaxX, paintedMaxX);
+            moverMaxY = Math.max(moverMaxY, paintedMaxY);
+        }
+
+        int x0 = (int) Math.floor(moverMinX * zoom + panX) - 1;
+        int y0 = (int) Math.floor(moverMinY * zoom + panY) - 1;
+        int x1 = (int) Math.ceil(moverMaxX * zoom + panX) + 1;
+        int y1 = (int) Math.ceil(moverMaxY * zoom + panY) + 1;
+        dirtyRect.setBounds(x0, y0, x1 - x0, y1 - y0);
+        requestFrame(dirtyRect);
+    }
+
+    /** Repaints dirty (null = everything) where it is visible; nothing visible paints nothing, so no frame waits. */
+    private void requestFrame(Rectangle dirty) {
+        Rectangle visible = getVisibleRect();
+        Rectangle r = (dirty == null) ? visible : visible.intersection(dirty);
+        if (r.isEmpty()) {
+            repaintRequestedMs = 0L;
+            return;
+        }
+        repaintRequestedMs = System.currentTimeMillis();
+        repaint(r);
+    }
+
+    /** Adapts the frame interval so painting stays within about half of it. */
+    private void recordPaintTime(long nanos) {
+        double ms = nanos / 1e6;
+        paintMsAvg = (paintMsAvg == 0.0) ? ms : paintMsAvg * 0.8 + ms * 0.2;
+        repaintRequestedMs = 0L;
+
+        if (animTimer == null) return;
+        int delay = (int) Math.max(ANIM_FPS_MS, Math.min(ANIM_MAX_FRAME_MS, Math.round(paintMsAvg * 2)));
+        if (Math.abs(delay - animTimer.getDelay()) > 2) animTimer.setDelay(delay);
     }
 
     public void setEngine(SimulationEngine engine) {
+        // a new engine on the same floorplan is the next replication of the heatmap
+        if (heatmap != null && engine != this.engine) heatmap.endReplication();
         this.engine = engine;
         lastEngineStep = Integer.MIN_VALUE;
         stepAlpha01 = 1.0;
+        invalidateRenderList(true);
+        wakeAnimTimer();
         repaint();
     }
 
     public void setProject(FloorplanProject projectCopy) {
         this.project = projectCopy;
         rebuildBindings();
+        invalidateRenderList(true);
         clampPan();
         repaint();
     }
 
     public void setSlotSpacingPx(int px) {
         this.slotSpacingPx = Math.max(4, px);
+        invalidateRenderList(false);
         repaint();
     }
 
     public void setPathStridePx(int px) {
         this.pathStridePx = Math.max(1, px);
         rebuildBindings();
+        invalidateRenderList(false);
+        repaint();
+    }
+
+    /**
+     * Call after every engine step (even if this view isn't showing): while the heatmap is shown, or its
+     * accumulator already holds data (e.g. earlier runs), the interval is queued for it here, so it
+     * accumulates every interval whether or not a render list gets built for it.
+     */
+    public void engineAdvanced() {
+        queueHeatSnapshot();
+        repaint();
+    }
+
+    /** Captures the current interval (EDT) and adds everyone's position to the heatmap on the builder thread. */
+    private void queueHeatSnapshot() {
+        if (engine == null || bindings == null) return;
+        if (!heatmapVisible && (heatmap == null || !heatmap.hasData())) return; // nobody will look at it
+        OccupancyHeatmap h = ensureHeatmap();
+        if (h == null) return;
+
+        int step = safeInt(() -> engine.getCurrentInterval(), 0);
+        int run = h.getRun();
+        if (h == heatQueuedFor && run == heatQueuedRun && step <= heatQueuedThrough) return; // rewinds, repeats
+
+        StepState st;
+        try {
+            st = captureStep(step);
+        } catch (RuntimeException ex) {
+            return; // engine mid-change: the next step is captured instead
+        }
+        heatQueuedFor = h;
+        heatQueuedRun = run;
+        heatQueuedThrough = step;
+
+        submitBuild(st, true);
+    }
+
+    // ----------------- Occupancy heatmap -----------------
+
+    public boolean isHeatmapVisible() { return heatmapVisible; }
+
+    public void setHeatmapVisible(boolean visible) {
+        if (heatmapVisible == visible) return;
+        heatmapVisible = visible;
+        invalidateRenderList(false); // the layer is colormapped by the builder
         repaint();
     }
 
+    public int getHeatmapCellPx() { return heatmapCellPx; }
+
+    /** Cell size (floorplan px) of the heatmap grid; changing it starts a new, empty accumulator. */
+    public void setHeatmapCellPx(int px) {
+        px = Math.max(1, px);
+        if (px == heatmapCellPx) return;
+        heatmapCellPx = px;
+        heatmap = null;
+        invalidateRenderList(false);
+        repaint();
+    }
+
+    /** The accumulator this view feeds, created for the floorplan if needed (null without a floorplan image). */
+    public OccupancyHeatmap getOccupancyHeatmap() { return ensureHeatmap(); }
+
+    /**
+     * Feeds an accumulator kept across runs (Monte Carlo replications): the run it holds is folded into its
+     * average and this view's run starts a new one. Ignored unless it matches the floorplan size.
+     */
+    public void setOccupancyHeatmap(OccupancyHeatmap heatmap) {
+        BufferedImage img = (project == null) ? null : project.getFloorplanImage();
+        if (heatmap == null || heatmap == this.heatmap || img == null) return;
+        if (heatmap.getWidthPx() != img.getWidth() || heatmap.getHeightPx() != img.getHeight()) return;
+
+        heatmap.endReplication();
+        this.heatmap = heatmap;
+        heatmapCellPx = heatmap.getCellPx();
+        invalidateRenderList(false);
+        repaint();
+    }
+
+    private OccupancyHeatmap ensureHeatmap() {
+        BufferedImage img = (project == null) ? null : project.getFloorplanImage();
+        if (img == null) return null;
+
+        OccupancyHeatmap h = heatmap;
+        if (h == null || h.getWidthPx() != img.getWidth() || h.getHeightPx() != img.getHeight()) {
+            heatmap = h = new OccupancyHeatmap(img.getWidth(), img.getHeight(), heatmapCellPx);
+        }
+        return h;
+    }
+
+    /**
+     * Writes the averaged heatmap over the floorplan as a PNG (scaled so the longer side is at most
+     * {@value #HEATMAP_EXPORT_MAX_PX} px).
+     */
+    public void exportHeatmapPng(File file) throws IOException {
+        BufferedImage floor = (project == null) ? null : project.getFloorplanImage();
+        OccupancyHeatmap h = heatmap;
+        if (floor == null || h == null) throw new IOException("No heatmap has been accumulated yet.");
+
+        float[] grid;
+        int runs;
+        boolean withCurrent;
+        synchronized (h) { // the grid and the caption must describe the same runs
+            grid = h.averaged(null);
+            runs = h.getReplicationCount();
+            withCurrent = h.hasCurrentData();
+        }
+        BufferedImage layer = OccupancyHeatmap.colormap(grid, h.getCols(), h.getRows(), null);
+        float max = 0f;
+        for (float v : grid) max = Math.max(max, v);
+
+        double s = Math.min(1.0, HEATMAP_EXPORT_MAX_PX / (double) Math.max(floor.getWidth(), floor.getHeight()));
+        int w = Math.max(1, (int) Math.round(floor.getWidth() * s));
+        int hgt = Math.max(1, (int) Math.round(floor.getHeight() * s));
+
+        BufferedImage out = new BufferedImage(w, hgt, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, w, hgt);
+            g.drawImage(floor, 0, 0, w, hgt, null);
+            g.drawImage(layer, 0, 0,
+                    (int) Math.round(h.getCols() * h.getCellPx() * s),
+                    (int) Math.round(h.getRows() * h.getCellPx() * s), null);
+
+            String source = (runs == 0) ? "current run"
+                    : "mean of " + runs + " run(s)" + (withCurrent ? " + current" : "");
+            String caption = String.format("Occupancy: passenger-minutes per %d px cell (max %.0f), %s",
+                    h.getCellPx(), max, source);
+            g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+            FontMetrics fm = g.getFontMetrics();
+            g.setColor(new Color(255, 255, 255, 220));
+            g.fillRect(4, 4, fm.stringWidth(caption) + 8, fm.getHeight() + 4);
+            g.setColor(Color.BLACK);
+            g.drawString(caption, 8, 6 + fm.getAscent());
+        } finally {
+            g.dispose();
+        }
+
+        if (!ImageIO.write(out, "png", file)) throw new IOException("No PNG writer available.");
+    }
+
+    private void drawHeatLayer(Graphics2D g2, PassengerRenderList rl) {
+        if (!heatmapVisible || rl == null || !rl.heatLayerValid || rl.heatLayer == null) return;
+
+        Object oldInterp = g2.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(rl.heatLayer, 0, 0,
+                rl.heatLayer.getWidth() * rl.heatCellPx, rl.heatLayer.getHeight() * rl.heatCellPx, null);
+        if (oldInterp != null) g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterp);
+    }
+
     public void resetView() {
         zoom = 1.0;
         panX = 0;
@@ -276,19 +564,29 @@ public class FloorplanSimulationPanel extends JPanel {
     }
 
     private void rebuildBindings() {
-        nearestCheckpointByTicket.clear();
+        nearestCheckpointByTicket = new ConcurrentHashMap<>();
 
         if (project == null) {
             bindings = null;
-            pathCache = null;
+            flowFields = null;
             return;
         }
         bindings = new FloorplanBindings(project);
-        pathCache = new PathCache(bindings.getMask(), pathStridePx, true);
+        flowFields = new FlowFieldCache(bindings.getMask(), pathStridePx, true);
+    }
+
+    private TilePyramidCache tilesFor(BufferedImage img) {
+        if (floorTiles == null || floorTilesImage != img) {
+            if (floorTiles != null) floorTiles.dispose();
+            floorTiles = new TilePyramidCache(TilePyramidCache.forImage(img), this, Runtime.getRuntime().maxMemory() / 16);
+            floorTilesImage = img;
+        }
+        return floorTiles;
     }
 
     @Override
     protected void paintComponent(Graphics g) {
+        long t0 = System.nanoTime();
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D) g.create();
 
@@ -305,193 +603,491 @@ public class FloorplanSimulationPanel extends JPanel {
             at.scale(zoom, zoom);
             g2.setTransform(at);
 
-            g2.drawImage(img, 0, 0, null);
+            tilesFor(img).paint(g2, zoom);
+            drawHeatLayer(g2, frontList);
             drawZones(g2);
 
-            if (engine == null || bindings == null || pathCache == null) return;
+            if (engine == null || bindings == null) return;
 
             int curStep = safeInt(() -> engine.getCurrentInterval(), 0);
-            double timeNow = curStep + stepAlpha01;
-
-            paintCurStep = curStep;
-            rebuildFlightTimeCaches();
-
-            Map<Integer, List<Passenger>> pendingToTicket = readPendingMap(engine,
-                    new String[]{"getPendingToTicket", "getPendingToTC", "getPendingToCounter"},
-                    new String[]{"pendingToTicket", "pendingToTC", "pendingToCounter"});
-
-            Map<Integer, List<Passenger>> pendingToCP = readPendingMap(engine,
-                    new String[]{"getPendingToCP", "getPendingToCheckpoint"},
-                    new String[]{"pendingToCP", "pendingToCheckpoint"});
-
-            Map<Integer, List<Passenger>> pendingToHold = readPendingMap(engine,
-                    new String[]{"getPendingToHold", "getPendingToHoldroom"},
-                    new String[]{"pendingToHold", "pendingToHoldroom"});
-
-            Set<Passenger> inTransitToTicket = collectAll(pendingToTicket);
-            Set<Passenger> inTransitToCP     = collectAll(pendingToCP);
-            Set<Passenger> inTransitToHold   = collectAll(pendingToHold);
-
-            Map<Passenger, Integer> ticketDoneOf     = indexOf(engine.getCompletedTicketLines());
-            Map<Passenger, Integer> checkpointDoneOf = indexOf(engine.getCompletedCheckpointLines());
-
-            // 0) walking: spawn -> ticket counter (if pending exists)
-            if (!pendingToTicket.isEmpty()) {
-                Point spawn = getSpawnAnchorFallback();
-                if (spawn != null) {
-                    for (Map.Entry<Integer, List<Passenger>> e : pendingToTicket.entrySet()) {
-                        int arriveStep = e.getKey();
-                        for (Passenger p : safeList(e.getValue())) {
-                            if (p == null) continue;
-                            if (!shouldRenderPassengerNow(p)) continue;
-
-                            int startStep = passengerArrivalStep(p, curStep);
-                            double t01 = frac01(timeNow, startStep, arriveStep);
-
-                            int ticketIdx = passengerIndex(p,
-                                    new String[]{"getAssignedTicketCounterIndex", "getTicketCounterIndex", "getTargetTicketCounterIndex", "getChosenTicketCounterIndex"},
-                                    new String[]{"assignedTicketCounterIndex", "ticketCounterIndex", "targetTicketCounterIndex", "chosenTicketCounterIndex"},
-                                    -1);
-
-                            if (ticketIdx < 0) {
-                                ticketIdx = findInLines(engine.getTicketLines(), p, -1);
-                            }
-                            if (ticketIdx < 0) ticketIdx = 0;
-
-                            Point b = bindings.getTicketAnchor(ticketIdx);
-                            Point pos = walkPoint(spawn, b, t01);
-                            drawPassenger(g2, p, pos, 7);
-                        }
-                    }
-                }
-            }
+            if (curStep != lastEngineStep) wakeAnimTimer();
+            requestRenderList(curStep);
 
-            // 1) walking: ticket -> checkpoint (pending)
-            for (Map.Entry<Integer, List<Passenger>> e : pendingToCP.entrySet()) {
-                int arriveStep = e.getKey();
-                for (Passenger p : safeList(e.getValue())) {
-                    if (p == null) continue;
-                    if (!shouldRenderPassengerNow(p)) continue;
+            PassengerRenderList rl = frontList;
+            if (rl == null) return;
 
-                    int startStep = passengerTicketDoneStep(p, curStep);
-                    double t01 = frac01(timeNow, startStep, arriveStep);
+            // a list for an older step is shown at its end until the current one lands
+            double alpha = (rl.step == lastEngineStep) ? stepAlpha01 : 1.0;
+            drawRenderList(g2, rl, rl.step + alpha);
 
-                    int ticketIdx = passengerIndex(p,
-                            new String[]{"getAssignedTicketCounterIndex", "getTicketCounterIndex", "getTargetTicketCounterIndex", "getChosenTicketCounterIndex"},
-                            new String[]{"assignedTicketCounterIndex", "ticketCounterIndex", "targetTicketCounterIndex", "chosenTicketCounterIndex"},
-                            -1);
-                    if (ticketIdx < 0) ticketIdx = ticketDoneOf.getOrDefault(p, 0);
+        } finally {
+            g2.dispose();
+            recordPaintTime(System.nanoTime() - t0);
+        }
+    }
 
-                    Point a = bindings.getTicketAnchor(ticketIdx);
+    // ----------------- Render list (EDT side) -----------------
 
-                    int cpIdx = passengerIndex(p,
-                            new String[]{"getAssignedCheckpointIndex", "getCheckpointIndex", "getTargetCheckpointIndex", "getChosenCheckpointIndex"},
-                            new String[]{"assignedCheckpointIndex", "checkpointIndex", "targetCheckpointIndex", "chosenCheckpointIndex"},
-                            -1);
+    /** Forces a rebuild; hideCurrent also blanks the shown list until it lands (new engine/floorplan). */
+    private void invalidateRenderList(boolean hideCurrent) {
+        renderGeneration++;
+        if (hideCurrent) {
+            frontList = null;
+            hits.clear();
+            hitCount = 0;
+            hitsList = null;
+        }
+    }
 
-                    Point b = (cpIdx >= 0) ? bindings.getCheckpointAnchor(cpIdx) : getNearestCheckpointForTicket(ticketIdx, a);
+    /** Captures the engine state for step (EDT) and builds its render list in the background, one build at a time. */
+    private void requestRenderList(int step) {
+        if (buildInFlight) return; // re-checked by the repaint that follows the landing build
+        if (step == requestedStep && renderGeneration == requestedGeneration) return;
 
-                    Point pos = walkPoint(a, b, t01);
-                    drawPassenger(g2, p, pos, 7);
+        StepState st;
+        try {
+            st = captureStep(step);
+        } catch (RuntimeException ex) {
+            return; // engine mid-change: next frame tries again
+        }
+        submitBuild(st, false);
+    }
+
+    /**
+     * Builds st's render list on the builder thread (accumulate: also adds the step to the heatmap).
+     * The list lands as the shown one unless another build is already in flight; heatmap builds are
+     * queued regardless, so no interval is skipped.
+     */
+    private void submitBuild(StepState st, boolean accumulate) {
+        boolean show = !buildInFlight;
+        if (show) {
+            requestedStep = st.step;
+            requestedGeneration = st.generation;
+            buildInFlight = true;
+        }
+
+        PassengerRenderList out = (spareList != null) ? spareList : new PassengerRenderList();
+        spareList = null;
+
+        RENDER_LIST_BUILDER.execute(() -> {
+            boolean ok = false;
+            try {
+                buildRenderList(st, out, accumulate);
+                ok = true;
+            } catch (Throwable ex) {
+                // not retried: requestedStep/Generation stay set until the engine step or the inputs change
+                ex.printStackTrace();
+            }
+
+            boolean built = ok;
+            SwingUtilities.invokeLater(() -> {
+                if (!show) {
+                    if (spareList == null) spareList = out;
+                    return;
                 }
+                buildInFlight = false;
+                if (built && st.generation == renderGeneration) {
+                    spareList = frontList;
+                    frontList = out;
+                    hitsList = null; // out may be a recycled list the index still points at
+                } else {
+                    spareList = out;
+                }
+                repaint();
+            });
+        });
+    }
+
+    /** Engine state one render list needs, copied on the EDT so the builder never touches live engine collections. */
+    private static final class StepState {
+        int step;
+        int generation;
+
+        FloorplanBindings bindings;
+        FlowFieldCache flowFields;
+        Map<Integer, Integer> nearestCheckpointByTicket;
+        int slotSpacingPx;
+        int pathStridePx;
+        Point spawn;
+
+        OccupancyHeatmap heatmap;
+        int heatRun;
+        boolean heatVisible;
+
+        List<Flight> flights;
+        int arrivalSpanMin;
+        int boardingCloseOffsetMin;
+
+        Pending toTicket;
+        Pending toCP;
+        Pending toHold;
+
+        Passenger[][] ticketLines;
+        Passenger[][] completedTicketLines;
+        Passenger[][] visibleCompletedTicketLines;
+        Passenger[][] checkpointLines;
+        Passenger[][] completedCheckpointLines;
+        Passenger[][] holdLines;
+    }
+
+    /** A pending map (arrival step -> walkers) as parallel arrays. */
+    private static final class Pending {
+        final int[] arriveStep;
+        final Passenger[][] passengers;
+
+        private Pending(int[] arriveStep, Passenger[][] passengers) {
+            this.arriveStep = arriveStep;
+            this.passengers = passengers;
+        }
+
+        static Pending of(Map<Integer, List<Passenger>> m) {
+            if (m == null || m.isEmpty()) return new Pending(new int[0], new Passenger[0][]);
+            int[] steps = new int[m.size()];
+            Passenger[][] ps = new Passenger[m.size()][];
+            int i = 0;
+            for (Map.Entry<Integer, List<Passenger>> e : m.entrySet()) {
+                if (e.getKey() == null) continue;
+                steps[i] = e.getKey();
+                ps[i] = toArray(e.getValue());
+                i++;
             }
+            return new Pending(Arrays.copyOf(steps, i), Arrays.copyOf(ps, i));
+        }
 
-            // 2) walking: checkpoint -> holdroom (pending)
-            for (Map.Entry<Integer, List<Passenger>> e : pendingToHold.entrySet()) {
-                int arriveStep = e.getKey();
-                for (Passenger p : safeList(e.getValue())) {
-                    if (p == null) continue;
-                    if (!shouldRenderPassengerNow(p)) continue;
+        boolean isEmpty() { return arriveStep.length == 0; }
+    }
 
-                    int startStep = passengerCheckpointDoneStep(p, curStep);
-                    double t01 = frac01(timeNow, startStep, arriveStep);
+    private StepState captureStep(int step) {
+        StepState st = new StepState();
+        st.step = step;
+        st.generation = renderGeneration;
 
-                    int cpIdx = passengerIndex(p,
-                            new String[]{"getAssignedCheckpointIndex", "getCheckpointIndex", "getTargetCheckpointIndex", "getChosenCheckpointIndex"},
-                            new String[]{"assignedCheckpointIndex", "checkpointIndex", "targetCheckpointIndex", "chosenCheckpointIndex"},
-                            -1);
+        st.bindings = bindings;
+        st.flowFields = flowFields;
+        st.nearestCheckpointByTicket = nearestCheckpointByTicket;
+        st.slotSpacingPx = slotSpacingPx;
+        st.pathStridePx = pathStridePx;
+        st.spawn = getSpawnAnchorFallback();
 
-                    if (cpIdx < 0) cpIdx = checkpointDoneOf.getOrDefault(p, 0);
+        st.heatmap = (heatmapVisible || heatmap != null) ? ensureHeatmap() : null;
+        st.heatRun = (st.heatmap == null) ? 0 : st.heatmap.getRun();
+        st.heatVisible = heatmapVisible;
 
-                    Point a = bindings.getCheckpointAnchor(cpIdx);
+        RenderAccess.EngineView ev = RenderAccess.EngineView.of(engine);
+        List<Flight> flights;
+        try {
+            flights = engine.getFlights();
+        } catch (Throwable t) {
+            flights = null;
+        }
+        st.flights = (flights == null) ? Collections.emptyList() : new ArrayList<>(flights);
+        st.arrivalSpanMin = ev.arrivalSpan(engine, 0);
+        st.boardingCloseOffsetMin = ev.boardingCloseMinutes(engine, 20);
+
+        st.toTicket = Pending.of(ev.pendingToTicket(engine));
+        st.toCP = Pending.of(ev.pendingToCP(engine));
+        st.toHold = Pending.of(ev.pendingToHold(engine));
+
+        st.ticketLines = toArrays(engine.getTicketLines());
+        st.completedTicketLines = toArrays(engine.getCompletedTicketLines());
+        st.visibleCompletedTicketLines = new Passenger[st.completedTicketLines.length][];
+        for (int c = 0; c < st.completedTicketLines.length; c++) {
+            st.visibleCompletedTicketLines[c] = toArray(engine.getVisibleCompletedTicketLine(c));
+        }
+        st.checkpointLines = toArrays(engine.getCheckpointLines());
+        st.completedCheckpointLines = toArrays(engine.getCompletedCheckpointLines());
+        st.holdLines = toArrays(engine.getHoldRoomLines());
+        return st;
+    }
+
+    // ----------------- Render list (builder side) -----------------
+
+    /** Per-build working state: flight time caches and one route per (from, to) anchor pair. */
+    private static final class Build {
+        final StepState st;
+        final PassengerRenderList out;
 
-                    int holdIdx = passengerIndex(p,
-                            new String[]{"getAssignedHoldRoomIndex", "getAssignedHoldroomIndex", "getHoldRoomIndex", "getHoldroomIndex", "getTargetHoldRoomIndex"},
-                            new String[]{"assignedHoldRoomIndex", "assignedHoldroomIndex", "holdRoomIndex", "holdroomIndex", "targetHoldRoomIndex"},
-                            -1);
-                    if (holdIdx < 0) holdIdx = 0;
+        final Map<Flight, Integer> departureIntervalByFlight = new HashMap<>();
+        final Map<Flight, Integer> boardingCloseIntervalByFlight = new HashMap<>();
+        final Map<List<Point>, Polyline> routeByEnds = new HashMap<>();
 
-                    Point b = bindings.getHoldroomAnchor(holdIdx);
+        // per-flight tally of the group being built (reused)
+        final Map<Flight, int[]> groupTally = new LinkedHashMap<>();
+        boolean groupOpen = false;
+
+        Build(StepState st, PassengerRenderList out) {
+            this.st = st;
+            this.out = out;
+        }
+    }
 
-                    Point pos = walkPoint(a, b, t01);
-                    drawPassenger(g2, p, pos, 7);
+    private static void buildRenderList(StepState st, PassengerRenderList out, boolean accumulate) {
+        out.reset(st.step);
+        Build b = new Build(st, out);
+        rebuildFlightTimeCaches(b);
+
+        Set<Passenger> inTransitToTicket = collectAll(st.toTicket);
+        Set<Passenger> inTransitToCP     = collectAll(st.toCP);
+        Set<Passenger> inTransitToHold   = collectAll(st.toHold);
+
+        Set<Passenger> walkingFromOrToTicket = new HashSet<>(inTransitToTicket);
+        walkingFromOrToTicket.addAll(inTransitToCP);
+
+        Map<Passenger, Integer> ticketDoneOf     = indexOf(st.completedTicketLines);
+        Map<Passenger, Integer> checkpointDoneOf = indexOf(st.completedCheckpointLines);
+
+        FloorplanBindings bindings = st.bindings;
+
+        // 0) walking: spawn -> ticket counter (if pending exists)
+        if (!st.toTicket.isEmpty() && st.spawn != null) {
+            for (int e = 0; e < st.toTicket.arriveStep.length; e++) {
+                int arriveStep = st.toTicket.arriveStep[e];
+                for (Passenger p : st.toTicket.passengers[e]) {
+                    if (p == null) continue;
+                    if (!shouldRenderPassenger(b, p)) continue;
+
+                    RenderAccess.PassengerView pv = RenderAccess.PassengerView.of(p);
+                    int startStep = pv.arrivalStep(p, st.step);
+
+                    int ticketIdx = pv.ticketIndex(p, -1);
+                    if (ticketIdx < 0) ticketIdx = findInLines(st.ticketLines, p, -1);
+                    if (ticketIdx < 0) ticketIdx = 0;
+
+                    addWalker(b, p, st.spawn, bindings.getTicketAnchor(ticketIdx), startStep, arriveStep, 7);
                 }
             }
+        }
 
-            // 3) ticket queues (skip those walking)
-            List<LinkedList<Passenger>> ticketLines = engine.getTicketLines();
-            for (int c = 0; c < ticketLines.size(); c++) {
-                List<Point> slots = bindings.getTicketQueueSlots(c, slotSpacingPx);
-                Point anchor = bindings.getTicketAnchor(c);
+        // 1) walking: ticket -> checkpoint (pending)
+        for (int e = 0; e < st.toCP.arriveStep.length; e++) {
+            int arriveStep = st.toCP.arriveStep[e];
+            for (Passenger p : st.toCP.passengers[e]) {
+                if (p == null) continue;
+                if (!shouldRenderPassenger(b, p)) continue;
 
-                Set<Passenger> skip = new HashSet<>();
-                skip.addAll(inTransitToTicket);
-                skip.addAll(inTransitToCP);
+                RenderAccess.PassengerView pv = RenderAccess.PassengerView.of(p);
+                int startStep = pv.ticketDoneStep(p, st.step);
 
-                drawQueue(g2, ticketLines.get(c), slots, anchor, skip, 7);
-            }
+                int ticketIdx = pv.ticketIndex(p, -1);
+                if (ticketIdx < 0) ticketIdx = ticketDoneOf.getOrDefault(p, 0);
 
-            // 4) completed ticket staging
-            for (int c = 0; c < engine.getCompletedTicketLines().size(); c++) {
-                Point anchor = bindings.getTicketAnchor(c);
-                List<Passenger> visible = engine.getVisibleCompletedTicketLine(c);
-                drawStagingAtAnchor(g2, visible, anchor, inTransitToCP, 7);
-            }
+                Point a = bindings.getTicketAnchor(ticketIdx);
+
+                int cpIdx = pv.checkpointIndex(p, -1);
+                Point to = (cpIdx >= 0) ? bindings.getCheckpointAnchor(cpIdx) : getNearestCheckpointForTicket(st, ticketIdx, a);
 
-            // 5) checkpoint queues
-            List<LinkedList<Passenger>> cpLines = engine.getCheckpointLines();
-            for (int c = 0; c < cpLines.size(); c++) {
-                List<Point> slots = bindings.getCheckpointQueueSlots(c, slotSpacingPx);
-                Point anchor = bindings.getCheckpointAnchor(c);
-                drawQueue(g2, cpLines.get(c), slots, anchor, inTransitToHold, 7);
+                addWalker(b, p, a, to, startStep, arriveStep, 7);
             }
+        }
+
+        // 2) walking: checkpoint -> holdroom (pending)
+        for (int e = 0; e < st.toHold.arriveStep.length; e++) {
+            int arriveStep = st.toHold.arriveStep[e];
+            for (Passenger p : st.toHold.passengers[e]) {
+                if (p == null) continue;
+                if (!shouldRenderPassenger(b, p)) continue;
+
+                RenderAccess.PassengerView pv = RenderAccess.PassengerView.of(p);
+                int startStep = pv.checkpointDoneStep(p, st.step);
+
+                int cpIdx = pv.checkpointIndex(p, -1);
+                if (cpIdx < 0) cpIdx = checkpointDoneOf.getOrDefault(p, 0);
 
-            // 6) completed checkpoint staging
-            List<LinkedList<Passenger>> doneCP = engine.getCompletedCheckpointLines();
-            for (int c = 0; c < doneCP.size(); c++) {
-                Point anchor = bindings.getCheckpointAnchor(c);
-                drawStagingAtAnchor(g2, doneCP.get(c), anchor, inTransitToHold, 7);
+                Point a = bindings.getCheckpointAnchor(cpIdx);
+                int holdIdx = pv.holdRoomIndex(p, 0);
+
+                addWalker(b, p, a, bindings.getHoldroomAnchor(holdIdx), startStep, arriveStep, 7);
             }
+        }
+
+        // 3) ticket queues (skip those walking)
+        for (int c = 0; c < st.ticketLines.length; c++) {
+            List<Point> slots = bindings.getTicketQueueSlots(c, st.slotSpacingPx);
+            addQueue(b, st.ticketLines[c], slots, bindings.getTicketAnchor(c), walkingFromOrToTicket, 7);
+        }
+
+        // 4) completed ticket staging
+        for (int c = 0; c < st.visibleCompletedTicketLines.length; c++) {
+            addStaging(b, st.visibleCompletedTicketLines[c], bindings.getTicketAnchor(c), inTransitToCP, 7);
+        }
 
-            // 7) hold rooms
-            List<LinkedList<Passenger>> holdLines = engine.getHoldRoomLines();
-            for (int h = 0; h < holdLines.size(); h++) {
-                List<Point> slots = bindings.getHoldroomAreaSlots(h, slotSpacingPx);
-                Point anchor = bindings.getHoldroomAnchor(h);
-                drawQueue(g2, holdLines.get(h), slots, anchor, Collections.emptySet(), 8);
+        // 5) checkpoint queues
+        for (int c = 0; c < st.checkpointLines.length; c++) {
+            List<Point> slots = bindings.getCheckpointQueueSlots(c, st.slotSpacingPx);
+            addQueue(b, st.checkpointLines[c], slots, bindings.getCheckpointAnchor(c), inTransitToHold, 7);
+        }
+
+        // 6) completed checkpoint staging
+        for (int c = 0; c < st.completedCheckpointLines.length; c++) {
+            addStaging(b, st.completedCheckpointLines[c], bindings.getCheckpointAnchor(c), inTransitToHold, 7);
+        }
+
+        // 7) hold rooms
+        for (int h = 0; h < st.holdLines.length; h++) {
+            List<Point> slots = bindings.getHoldroomAreaSlots(h, st.slotSpacingPx);
+            addQueue(b, st.holdLines[h], slots, bindings.getHoldroomAnchor(h), Collections.emptySet(), 8);
+        }
+
+        if (st.heatmap == null) return;
+        if (accumulate) accumulateHeat(st, out);
+        if (st.heatVisible) colorHeatLayer(st, out);
+    }
+
+    /** Adds everyone's position at this step (walkers along their route) to the heatmap. */
+    private static void accumulateHeat(StepState st, PassengerRenderList out) {
+        int n = out.count;
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        Point pt = new Point();
+
+        for (int i = 0; i < n; i++) {
+            Polyline route = out.route[i];
+            if (route == null || !route.pointAt(frac01(st.step, out.startStep[i], out.endStep[i]), pt)) {
+                pt.setLocation(out.x[i], out.y[i]);
             }
+            xs[i] = pt.x;
+            ys[i] = pt.y;
+        }
+        st.heatmap.accumulate(st.heatRun, st.step, xs, ys, n);
+    }
 
-        } finally {
-            g2.dispose();
+    /** Colours the averaged heatmap into the list's layer (the heatmap already holds this step). */
+    private static void colorHeatLayer(StepState st, PassengerRenderList out) {
+        out.heatGrid = st.heatmap.averaged(out.heatGrid);
+        out.heatLayer = OccupancyHeatmap.colormap(out.heatGrid, st.heatmap.getCols(), st.heatmap.getRows(), out.heatLayer);
+        out.heatCellPx = st.heatmap.getCellPx();
+        out.heatLayerValid = true;
+    }
+
+    private static void addWalker(Build b, Passenger p, Point a, Point to, int startStep, int endStep, int size) {
+        if (a == null && to == null) return;
+        if (a == null || to == null) {
+            Point at = (a == null) ? to : a;
+            addParked(b, p, at.x, at.y, size);
+            return;
         }
+
+        Polyline route = walkRoute(b, a, to);
+        RenderAccess.PassengerView pv = RenderAccess.PassengerView.of(p);
+        b.out.addWalker(p, route, startStep, endStep, shapeOrdinal(pv.flight(p)), lookOf(pv, p), size);
+    }
+
+    private static void addParked(Build b, Passenger p, int x, int y, int size) {
+        RenderAccess.PassengerView pv = RenderAccess.PassengerView.of(p);
+        Flight f = pv.flight(p);
+        b.out.addParked(p, x, y, shapeOrdinal(f), lookOf(pv, p), size);
+
+        if (!b.groupOpen) return;
+        int[] n = b.groupTally.get(f);
+        if (n == null) b.groupTally.put(f, n = new int[1]);
+        n[0]++;
+    }
+
+    // ----------------- Groups (LOD aggregates) -----------------
+
+    private static void beginGroup(Build b, Point anchor, int slots) {
+        b.groupTally.clear();
+        b.groupOpen = true;
+        b.out.beginGroup(anchor.x, anchor.y, slots);
+    }
+
+    /** Closes the group with its per-flight tallies, busiest flight first (labels are built here, not per frame). */
+    private static void endGroup(Build b) {
+        b.groupOpen = false;
+
+        List<Map.Entry<Flight, int[]>> flights = new ArrayList<>(b.groupTally.entrySet());
+        flights.sort((x, y) -> Integer.compare(y.getValue()[0], x.getValue()[0]));
+
+        int total = 0;
+        StringBuilder tip = new StringBuilder();
+        for (Map.Entry<Flight, int[]> e : flights) {
+            Flight f = e.getKey();
+            int n = e.getValue()[0];
+            total += n;
+
+            String name = (f == null || f.getFlightNumber() == null) ? "?" : f.getFlightNumber();
+            String line = String.format("%s  %,d", name, n);
+            b.out.addGroupFlight(shapeOrdinal(f), n, line);
+            tip.append("<br>").append(line);
+        }
+        String totalText = String.format("%,d", total);
+        b.out.endGroup(totalText, "<html><b>" + totalText + " passengers</b>" + tip + "</html>");
+    }
+
+    private static void addQueue(Build b, Passenger[] passengers, List<Point> slots, Point fallbackAnchor,
+                                 Set<Passenger> skip, int size) {
+        if (passengers == null) return;
+
+        Point groupAnchor = (fallbackAnchor != null) ? fallbackAnchor
+                : (slots != null && !slots.isEmpty()) ? slots.get(0) : null;
+        if (groupAnchor != null) beginGroup(b, groupAnchor, (slots == null) ? 0 : slots.size());
+
+        int i = 0;
+        for (Passenger p : passengers) {
+            if (p == null) continue;
+            if (!shouldRenderPassenger(b, p)) continue;
+            if (skip != null && skip.contains(p)) continue;
+
+            Point pos = null;
+            if (slots != null && i < slots.size()) pos = slots.get(i);
+            if (pos == null) pos = fallbackAnchor;
+
+            if (pos != null) addParked(b, p, pos.x, pos.y, size);
+            i++;
+        }
+
+        if (groupAnchor != null) endGroup(b);
+    }
+
+    private static void addStaging(Build b, Passenger[] passengers, Point anchor, Set<Passenger> skip, int size) {
+        if (passengers == null || anchor == null) return;
+
+        beginGroup(b, anchor, 0);
+
+        int k = 0;
+        for (Passenger p : passengers) {
+            if (p == null) continue;
+            if (!shouldRenderPassenger(b, p)) continue;
+            if (skip != null && skip.contains(p)) continue;
+
+            double ang = (k * 0.75);
+            int r = 10 + (k / 10) * 6;
+            addParked(b, p,
+                    anchor.x + (int) Math.round(Math.cos(ang) * r),
+                    anchor.y + (int) Math.round(Math.sin(ang) * r),
+                    size);
+            k++;
+        }
+
+        endGroup(b);
+    }
+
+    private static int shapeOrdinal(Flight f) {
+        return (f == null || f.getShape() == null) ? -1 : f.getShape().ordinal();
+    }
+
+    private static byte lookOf(RenderAccess.PassengerView pv, Passenger p) {
+        if (pv.missed(p)) return PassengerRenderList.LOOK_MISSED;
+        return pv.inPerson(p) ? PassengerRenderList.LOOK_IN_PERSON : PassengerRenderList.LOOK_ONLINE;
     }
 
     // ----------------- Routing helpers -----------------
 
-    private Point snapToWalkable(Point p) {
-        if (p == null || bindings == null) return p;
-        WalkMask m = bindings.getMask();
+    private static Point snapToWalkable(StepState st, Point p) {
+        if (p == null || st.bindings == null) return p;
+        WalkMask m = st.bindings.getMask();
         if (m == null) return p;
-        Point s = AStarRouter.snapToNearestWalkable(m, p, Math.max(1, pathStridePx), 240);
+        Point s = AStarRouter.snapToNearestWalkable(m, p, Math.max(1, st.pathStridePx), 240);
         return (s != null) ? s : p;
     }
 
-    private Point getNearestCheckpointForTicket(int ticketIdx, Point fromAnchor) {
+    private static Point getNearestCheckpointForTicket(StepState st, int ticketIdx, Point fromAnchor) {
+        FloorplanBindings bindings = st.bindings;
         if (bindings == null) return null;
         int n = safeInt(() -> bindings.checkpointCount(), 0);
         if (n <= 0) return null;
 
-        Integer cachedIdx = nearestCheckpointByTicket.get(ticketIdx);
+        Integer cachedIdx = st.nearestCheckpointByTicket.get(ticketIdx);
         if (cachedIdx != null) {
             Point c = bindings.getCheckpointAnchor(cachedIdx);
             if (c != null) return c;
@@ -507,8 +1103,8 @@ public class FloorplanSimulationPanel extends JPanel {
             Point c = bindings.getCheckpointAnchor(i);
             if (c == null) continue;
 
-            List<Point> path = pathCache.path(from, c);
-            double score = (path != null && path.size() >= 2) ? PathCache.polylineLengthPixels(path) : from.distance(c);
+            double score = st.flowFields.distancePx(from, c);
+            if (Double.isInfinite(score)) score = from.distance(c);
 
             if (score < bestScore) {
                 bestScore = score;
@@ -516,29 +1112,24 @@ public class FloorplanSimulationPanel extends JPanel {
             }
         }
 
-        nearestCheckpointByTicket.put(ticketIdx, bestI);
+        st.nearestCheckpointByTicket.put(ticketIdx, bestI);
         return bindings.getCheckpointAnchor(bestI);
     }
 
-    private Point walkPoint(Point a, Point b, double t01) {
-        if (a == null && b == null) return null;
-        if (a == null) return b;
-        if (b == null) return a;
-
-        double t = Math.max(0.0, Math.min(1.0, t01));
-
-        // ✅ snap endpoints to walkable so drawing doesn't cut through walls if anchors are inside blocked pixels
-        Point aa = snapToWalkable(a);
-        Point bb = snapToWalkable(b);
-
-        List<Point> path = pathCache.path(aa, bb);
-        if (path != null && path.size() >= 2) {
-            return pathCache.pointAlong(path, t);
-        }
-
-        int x = (int) Math.round(aa.x + (bb.x - aa.x) * t);
-        int y = (int) Math.round(aa.y + (bb.y - aa.y) * t);
-        return new Point(x, y);
+    /**
+     * Route a walker follows from a to b: down the gradient of b's flow field (the field its walking time
+     * was read from), else a straight line (endpoints snapped to walkable). Shared per anchor pair.
+     */
+    private static Polyline walkRoute(Build b, Point a, Point to) {
+        return b.routeByEnds.computeIfAbsent(Arrays.asList(a, to), k -> {
+            Point aa = snapToWalkable(b.st, a);
+            Point bb = snapToWalkable(b.st, to);
+
+            // ✅ follow the next-step directions of the destination's field (shared by every walker headed there)
+            List<Point> path = b.st.flowFields.route(aa, bb);
+            if (path != null && path.size() >= 2) return Polyline.of(path);
+            return Polyline.of(Arrays.asList(aa, bb));
+        });
     }
 
     private static double frac01(double now, int start, int end) {
@@ -576,9 +1167,8 @@ public class FloorplanSimulationPanel extends JPanel {
 
     private Point getSpawnAnchorFallback() {
         try {
-            Method m = bindings.getClass().getMethod("getSpawnAnchor");
-            Object out = m.invoke(bindings);
-            if (out instanceof Point) return (Point) out;
+            Point out = bindings.getSpawnAnchor();
+            if (out != null) return out;
         } catch (Throwable ignored) {}
 
         if (project != null && project.getZones() != null) {
@@ -594,162 +1184,317 @@ public class FloorplanSimulationPanel extends JPanel {
         return null;
     }
 
-    // ----------------- Pending map reflection helpers -----------------
+    // ----------------- Passenger drawing -----------------
 
-    @SuppressWarnings("unchecked")
-    private static Map<Integer, List<Passenger>> readPendingMap(SimulationEngine engine, String[] getterNames, String[] fieldNames) {
-        if (engine == null) return Collections.emptyMap();
+    private static final Color FILL_ONLINE = new Color(30, 30, 30, 200);
+    private static final Color FILL_IN_PERSON = new Color(30, 120, 255, 210);
+    private static final Color FILL_MISSED = new Color(200, 0, 0, 220);
+    private static final Color OUTLINE = new Color(255, 255, 255, 200);
+    private static final float OUTLINE_WIDTH = 1.2f;
 
-        if (getterNames != null) {
-            for (String getterName : getterNames) {
-                try {
-                    Method m = engine.getClass().getMethod(getterName);
-                    Object out = m.invoke(engine);
-                    if (out instanceof Map) return (Map<Integer, List<Passenger>>) out;
-                } catch (Throwable ignored) {}
-            }
+    private static final Flight.ShapeType[] SHAPES = Flight.ShapeType.values();
+
+    /** Per frame: walkers are placed along their route at timeNow, everyone else is already placed; glyphs are atlas blits. */
+    private void drawRenderList(Graphics2D g2, PassengerRenderList rl, double timeNow) {
+        Point pt = framePt;
+        paintClip.setBounds(-(1 << 28), -(1 << 28), 1 << 29, 1 << 29); // kept as-is when there is no clip
+        Rectangle clip = g2.getClipBounds(paintClip);
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+        for (int gi = 0; gi < rl.groupCount; gi++) rl.groupAggregated[gi] = shouldAggregate(rl, gi);
+        boolean reindex = !hitsCurrentFor(rl);
+        if (reindex) {
+            hits.clear();
+            hitCount = 0;
         }
 
-        if (fieldNames != null) {
-            for (String fieldName : fieldNames) {
-                try {
-                    Field f = engine.getClass().getDeclaredField(fieldName);
-                    f.setAccessible(true);
-                    Object out = f.get(engine);
-                    if (out instanceof Map) return (Map<Integer, List<Passenger>>) out;
-                } catch (Throwable ignored) {}
+        SpriteAtlas.Batch glyphs = SpriteAtlas.shared().begin(g2);
+
+        for (int i = 0; i < rl.count; i++) {
+            int gi = rl.group[i];
+            if (gi >= 0 && rl.groupAggregated[gi]) {
+                i = rl.groupTo[gi] - 1; // the whole group is drawn as one aggregate below
+                continue;
             }
-        }
 
-        return Collections.emptyMap();
-    }
+            Polyline route = rl.route[i];
+            if (route == null || !route.pointAt(frac01(timeNow, rl.startStep[i], rl.endStep[i]), pt)) {
+                pt.setLocation(rl.x[i], rl.y[i]);
+            }
 
-    // ----------------- Queue + passenger drawing -----------------
+            int r = rl.size[i];
+            int pad = r + 2; // glyph + outline
+            if (route != null) {
+                minX = Math.min(minX, pt.x - pad);
+                minY = Math.min(minY, pt.y - pad);
+                maxX = Math.max(maxX, pt.x + pad);
+                maxY = Math.max(maxY, pt.y + pad);
+            }
+            if (reindex && route == null) addHit(pt.x - r, pt.y - r, 2 * r, 2 * r, rl.passenger[i]); // walkers: hitAt
 
-    private void drawQueue(Graphics2D g2,
-                           List<Passenger> passengers,
-                           List<Point> slots,
-                           Point fallbackAnchor,
-                           Set<Passenger> skip,
-                           int size) {
-        if (passengers == null) return;
+            if (pt.x + pad < clip.x || pt.y + pad < clip.y
+                    || pt.x - pad > clip.x + clip.width || pt.y - pad > clip.y + clip.height) continue;
 
-        int i = 0;
-        for (Passenger p : passengers) {
-            if (p == null) continue;
-            if (!shouldRenderPassengerNow(p)) continue;
-            if (skip != null && skip.contains(p)) continue;
+            int shape = rl.shape[i];
+            byte look = rl.look[i];
+            Color fill = (look == PassengerRenderList.LOOK_MISSED) ? FILL_MISSED
+                    : (look == PassengerRenderList.LOOK_IN_PERSON) ? FILL_IN_PERSON : FILL_ONLINE;
 
-            Point pos = null;
-            if (slots != null && i < slots.size()) pos = slots.get(i);
-            if (pos == null) pos = fallbackAnchor;
+            glyphs.paint((shape < 0 || shape >= SHAPES.length) ? Flight.ShapeType.CIRCLE : SHAPES[shape],
+                    fill, OUTLINE, OUTLINE_WIDTH, pt.x - r, pt.y - r, 2 * r, 2 * r);
+        }
+        glyphs.end();
 
-            drawPassenger(g2, p, pos, size);
-            i++;
+        drawAggregates(g2, rl, clip, reindex);
+
+        if (reindex) {
+            hitsList = rl;
+            if (hitsAggregated.length < rl.groupCount) hitsAggregated = new boolean[rl.groupAggregated.length];
+            System.arraycopy(rl.groupAggregated, 0, hitsAggregated, 0, rl.groupCount);
         }
+        hitsTime = timeNow;
+
+        paintedMinX = minX;
+        paintedMinY = minY;
+        paintedMaxX = maxX;
+        paintedMaxY = maxY;
     }
 
-    private void drawStagingAtAnchor(Graphics2D g2,
-                                     List<Passenger> passengers,
-                                     Point anchor,
-                                     Set<Passenger> skip,
-                                     int size) {
-        if (passengers == null || anchor == null) return;
+    // ----------------- Level of detail -----------------
 
-        int k = 0;
-        for (Passenger p : passengers) {
-            if (p == null) continue;
-            if (!shouldRenderPassengerNow(p)) continue;
-            if (skip != null && skip.contains(p)) continue;
+    private static final int LOD_GLYPH_LIMIT = 300;       // groups larger than this are always aggregated
+    private static final int LOD_SMALL_GROUP = 12;        // ... and groups this small never are
+    private static final double LOD_MIN_GLYPH_PX = 3.0;   // glyph radius on screen below which glyphs blur together
+    private static final int LOD_BADGE_MIN_PX = 64;       // on-screen width an area needs for the per-flight badge
+    private static final int LOD_BADGE_FLIGHTS = 4;       // flights listed on a badge
 
-            double ang = (k * 0.75);
-            int r = 10 + (k / 10) * 6;
-            Point pos = new Point(
-                    anchor.x + (int) Math.round(Math.cos(ang) * r),
-                    anchor.y + (int) Math.round(Math.sin(ang) * r)
-            );
-            drawPassenger(g2, p, pos, size);
-            k++;
+    private static final Color[] DENSITY_FILL = new Color[16];
+    static {
+        for (int i = 0; i < DENSITY_FILL.length; i++) {
+            DENSITY_FILL[i] = new Color(220, 80, 30, 40 + (i * 150) / (DENSITY_FILL.length - 1));
         }
     }
+    private static final Color BADGE_BACK = new Color(255, 255, 255, 225);
+    private static final Color BADGE_EDGE = new Color(90, 90, 90, 220);
+    private static final Color BADGE_GLYPH_EDGE = new Color(60, 60, 60);
+    private static final Font BADGE_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
+    private static final Font BADGE_TOTAL_FONT = BADGE_FONT.deriveFont(Font.BOLD);
+    private static final AffineTransform DEVICE = new AffineTransform();
+
+    /** Whether group gi is drawn as a density tile + badge this frame (depends on zoom, so decided per frame). */
+    private boolean shouldAggregate(PassengerRenderList rl, int gi) {
+        int n = rl.groupSize(gi);
+        if (n > LOD_GLYPH_LIMIT) return true;
+        if (n < LOD_SMALL_GROUP) return false;
+
+        int slots = rl.groupSlots[gi];
+        if (slots > 0 && n - slots > LOD_SMALL_GROUP) return true; // overflow would pile on the anchor
+
+        return rl.size[rl.groupFrom[gi]] * zoom < LOD_MIN_GLYPH_PX;
+    }
 
-    private void drawPassenger(Graphics2D g2, Passenger p, Point pos, int size) {
-        if (p == null || pos == null) return;
+    /** Density tiles (world space) then badges (screen space) for every aggregated group. */
+    private void drawAggregates(Graphics2D g2, PassengerRenderList rl, Rectangle clip, boolean addHits) {
+        boolean any = false;
+        for (int gi = 0; gi < rl.groupCount; gi++) {
+            if (!rl.groupAggregated[gi]) continue;
+            any = true;
+
+            int r = rl.size[rl.groupFrom[gi]] + 2;
+            int x = rl.groupMinX[gi] - r, y = rl.groupMinY[gi] - r;
+            int w = rl.groupMaxX[gi] - rl.groupMinX[gi] + 2 * r, h = rl.groupMaxY[gi] - rl.groupMinY[gi] + 2 * r;
+            if (addHits) addHit(x, y, w, h, rl.groupTooltip[gi]);
+            if (!clip.intersects(x, y, w, h)) continue;
+
+            int slots = rl.groupSlots[gi];
+            double density = (slots > 0) ? rl.groupSize(gi) / (double) slots : rl.groupSize(gi) / (double) LOD_GLYPH_LIMIT;
+            int level = (int) Math.round(Math.min(1.0, density) * (DENSITY_FILL.length - 1));
+            g2.setColor(DENSITY_FILL[level]);
+            g2.fillRect(x, y, w, h);
+        }
+        if (!any) return;
 
-        Flight f = safeFlight(p);
-        Flight.ShapeType shape = (f == null) ? Flight.ShapeType.CIRCLE : f.getShape();
+        AffineTransform world = g2.getTransform();
+        g2.setTransform(DEVICE);
+        try {
+            badgeClip.setBounds(0, 0, getWidth(), getHeight());
+            Rectangle screenClip = g2.getClipBounds(badgeClip);
+            for (int gi = 0; gi < rl.groupCount; gi++) {
+                if (rl.groupAggregated[gi]) drawBadge(g2, rl, gi, screenClip);
+            }
+        } finally {
+            g2.setTransform(world);
+        }
+    }
 
-        boolean inPerson = isInPerson(p);
-        boolean missed = isMissed(p);
+    /** Total (bold) plus the busiest flights' glyph and count, centred on the group's area; total only when the area is small on screen. */
+    private void drawBadge(Graphics2D g2, PassengerRenderList rl, int gi, Rectangle screenClip) {
+        int cx = (int) Math.round(((rl.groupMinX[gi] + rl.groupMaxX[gi]) / 2.0) * zoom + panX);
+        int cy = (int) Math.round(((rl.groupMinY[gi] + rl.groupMaxY[gi]) / 2.0) * zoom + panY);
+        boolean detailed = (rl.groupMaxX[gi] - rl.groupMinX[gi]) * zoom >= LOD_BADGE_MIN_PX;
+
+        int from = rl.groupFlightFrom[gi];
+        int to = detailed ? Math.min(rl.groupFlightTo[gi], from + LOD_BADGE_FLIGHTS) : from;
+        int more = detailed ? rl.groupFlightTo[gi] - to : 0;
+
+        FontMetrics totalFm = g2.getFontMetrics(BADGE_TOTAL_FONT);
+        FontMetrics fm = g2.getFontMetrics(BADGE_FONT);
+        int lineH = fm.getHeight();
+        int glyph = Math.max(6, fm.getAscent() - 2);
+
+        int w = totalFm.stringWidth(rl.groupText[gi]);
+        for (int f = from; f < to; f++) w = Math.max(w, glyph + 4 + fm.stringWidth(rl.flightText[f]));
+        String moreText = (more > 0) ? "+" + more + " more" : null;
+        if (moreText != null) w = Math.max(w, fm.stringWidth(moreText));
+
+        int h = totalFm.getHeight() + (to - from) * lineH + (moreText != null ? lineH : 0);
+        int x = cx - w / 2 - 4, y = cy - h / 2 - 3;
+        if (!screenClip.intersects(x, y, w + 8, h + 6)) return;
+
+        g2.setColor(BADGE_BACK);
+        g2.fillRoundRect(x, y, w + 8, h + 6, 8, 8);
+        g2.setColor(BADGE_EDGE);
+        g2.drawRoundRect(x, y, w + 8, h + 6, 8, 8);
+
+        int tx = x + 4;
+        int ty = y + 3 + totalFm.getAscent();
+        g2.setColor(Color.BLACK);
+        g2.setFont(BADGE_TOTAL_FONT);
+        g2.drawString(rl.groupText[gi], tx, ty);
+        ty += totalFm.getDescent();
+
+        g2.setFont(BADGE_FONT);
+        for (int f = from; f < to; f++) {
+            int shape = rl.flightShape[f];
+            g2.setColor(FILL_ONLINE);
+            ShapePainter.paintShape(g2, (shape < 0 || shape >= SHAPES.length) ? Flight.ShapeType.CIRCLE : SHAPES[shape],
+                    tx, ty + (lineH - glyph) / 2, glyph, glyph, BADGE_GLYPH_EDGE, 1f);
+            g2.setColor(Color.BLACK);
+            g2.drawString(rl.flightText[f], tx + glyph + 4, ty + fm.getAscent());
+            ty += lineH;
+        }
+        if (moreText != null) {
+            g2.setColor(Color.DARK_GRAY);
+            g2.drawString(moreText, tx, ty + fm.getAscent());
+        }
+    }
 
-        Color fill = inPerson ? new Color(30, 120, 255, 210) : new Color(30, 30, 30, 200);
-        if (missed) fill = new Color(200, 0, 0, 220);
+    // ----------------- Hit-testing -----------------
 
-        g2.setColor(fill);
-        drawShapeSafe(g2, shape, pos.x, pos.y, size);
+    /** Whether the hit index already holds rl with this frame's LOD decisions. */
+    private boolean hitsCurrentFor(PassengerRenderList rl) {
+        if (rl != hitsList || hitsAggregated.length < rl.groupCount) return false;
+        for (int gi = 0; gi < rl.groupCount; gi++) {
+            if (hitsAggregated[gi] != rl.groupAggregated[gi]) return false;
+        }
+        return true;
+    }
 
-        g2.setColor(new Color(255, 255, 255, 200));
-        g2.setStroke(new BasicStroke(1.2f));
-        drawShapeOutlineSafe(g2, shape, pos.x, pos.y, size);
+    private void addHit(int x, int y, int w, int h, Object target) {
+        if (target == null) return;
+        if (hitCount == hitTargets.length) hitTargets = Arrays.copyOf(hitTargets, hitCount * 2);
+        hitTargets[hitCount] = target;
+        hits.add(x, y, w, h, hitCount++);
     }
 
-    // ----------------- Missed visibility policy -----------------
+    /** Passenger (or aggregated group tooltip) drawn under the screen point in the last frame, or null. */
+    private Object hitAt(Point screen) {
+        PassengerRenderList rl = hitsList;
+        if (rl == null) return null;
+        int wx = (int) Math.floor((screen.x - panX) / zoom);
+        int wy = (int) Math.floor((screen.y - panY) / zoom);
+
+        // walkers come first in the list, so (first added wins) they take precedence over the indexed boxes
+        Point pt = new Point();
+        for (int i = 0; i < rl.count; i++) {
+            Polyline route = rl.route[i];
+            if (route == null || rl.passenger[i] == null) continue;
+            if (!route.pointAt(frac01(hitsTime, rl.startStep[i], rl.endStep[i]), pt)) pt.setLocation(rl.x[i], rl.y[i]);
+            int r = rl.size[i];
+            if (wx >= pt.x - r && wy >= pt.y - r && wx < pt.x + r && wy < pt.y + r) return rl.passenger[i];
+        }
 
-    private void rebuildFlightTimeCaches() {
-        departureIntervalByFlight.clear();
-        boardingCloseIntervalByFlight.clear();
+        int id = hits.hitTest(wx, wy);
+        return (id >= 0) ? hitTargets[id] : null;
+    }
 
-        if (engine == null) return;
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        Object hit = hitAt(e.getPoint());
+        if (hit instanceof String) return (String) hit;
+        if (hit instanceof Passenger && engine != null) return ScrollMouseHandler.tooltipFor(engine, (Passenger) hit);
+        return null;
+    }
 
-        List<Flight> flights;
-        try {
-            flights = engine.getFlights();
-        } catch (Throwable t) {
-            flights = null;
+    /** Bounds (world px, into mover*) of the walkers at timeNow, without drawing. False when nobody walks. */
+    private boolean moverBounds(PassengerRenderList rl, double timeNow) {
+        Point pt = framePt;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+        for (int i = 0; i < rl.count; i++) {
+            Polyline route = rl.route[i];
+            if (route == null) continue;
+            if (!route.pointAt(frac01(timeNow, rl.startStep[i], rl.endStep[i]), pt)) pt.setLocation(rl.x[i], rl.y[i]);
+
+            int pad = rl.size[i] + 2;
+            minX = Math.min(minX, pt.x - pad);
+            minY = Math.min(minY, pt.y - pad);
+            maxX = Math.max(maxX, pt.x + pad);
+            maxY = Math.max(maxY, pt.y + pad);
         }
-        if (flights == null || flights.isEmpty()) return;
+        if (minX > maxX) return false;
+
+        moverMinX = minX;
+        moverMinY = minY;
+        moverMaxX = maxX;
+        moverMaxY = maxY;
+        return true;
+    }
 
-        int arrivalSpanMin = engineInt(engine, 0, "getArrivalSpan", "getArrivalSpanMinutes", "arrivalSpanMinutes");
-        LocalTime firstDep = flights.stream()
+    // ----------------- Missed visibility policy -----------------
+
+    private static void rebuildFlightTimeCaches(Build b) {
+        StepState st = b.st;
+        if (st.flights.isEmpty()) return;
+
+        LocalTime firstDep = st.flights.stream()
                 .filter(Objects::nonNull)
                 .map(Flight::getDepartureTime)
                 .filter(Objects::nonNull)
                 .min(LocalTime::compareTo)
                 .orElse(LocalTime.MIDNIGHT);
 
-        paintStartTime = firstDep.minusMinutes(Math.max(0, arrivalSpanMin));
-        paintStartMinutesOfDay = timeToMinutesOfDay(paintStartTime);
+        LocalTime startTime = firstDep.minusMinutes(Math.max(0, st.arrivalSpanMin));
+        int startMinutesOfDay = timeToMinutesOfDay(startTime);
 
-        paintBoardingCloseOffsetMin = engineInt(engine, 20,
-                "getBoardingCloseMinutes", "getBoardingCloseOffsetMinutes", "boardingCloseMinutes");
-
-        for (Flight f : flights) {
+        for (Flight f : st.flights) {
             if (f == null || f.getDepartureTime() == null) continue;
-            int depInterval = minutesFromStartTo(paintStartMinutesOfDay, f.getDepartureTime());
-            departureIntervalByFlight.put(f, depInterval);
+            int depInterval = minutesFromStartTo(startMinutesOfDay, f.getDepartureTime());
+            b.departureIntervalByFlight.put(f, depInterval);
 
-            int closeInterval = Math.max(0, depInterval - Math.max(0, paintBoardingCloseOffsetMin));
-            boardingCloseIntervalByFlight.put(f, closeInterval);
+            int closeInterval = Math.max(0, depInterval - Math.max(0, st.boardingCloseOffsetMin));
+            b.boardingCloseIntervalByFlight.put(f, closeInterval);
         }
     }
 
-    private boolean shouldRenderPassengerNow(Passenger p) {
+    private static boolean shouldRenderPassenger(Build b, Passenger p) {
         if (p == null) return false;
 
-        if (!isMissed(p)) return true;
+        RenderAccess.PassengerView pv = RenderAccess.PassengerView.of(p);
+        if (!pv.missed(p)) return true;
 
-        Flight f = safeFlight(p);
+        Flight f = pv.flight(p);
         if (f == null) return true;
 
-        Integer dep = departureIntervalByFlight.get(f);
-        Integer close = boardingCloseIntervalByFlight.get(f);
+        Integer dep = b.departureIntervalByFlight.get(f);
+        Integer close = b.boardingCloseIntervalByFlight.get(f);
         if (dep == null || close == null) return true;
 
-        int holdEntry = passengerHoldEntryStep(p, -1);
+        int holdEntry = pv.holdEntryStep(p, -1);
         boolean reachedHold = holdEntry >= 0;
 
         int vanishAt = reachedHold ? dep : close;
-        return paintCurStep < vanishAt;
+        return b.st.step < vanishAt;
     }
 
     private static int timeToMinutesOfDay(LocalTime t) {
@@ -764,270 +1509,41 @@ public class FloorplanSimulationPanel extends JPanel {
         return d;
     }
 
-    // ----------------- Passenger reflection helpers -----------------
-
-    private static Flight safeFlight(Passenger p) {
-        if (p == null) return null;
-        try {
-            Method m = p.getClass().getMethod("getFlight");
-            Object out = m.invoke(p);
-            if (out instanceof Flight) return (Flight) out;
-        } catch (Throwable ignored) {}
-        return null;
-    }
-
-    private static boolean isInPerson(Passenger p) {
-        if (p == null) return false;
-
-        try {
-            Method m = p.getClass().getMethod("isInPerson");
-            Object out = m.invoke(p);
-            if (out instanceof Boolean) return (Boolean) out;
-        } catch (Throwable ignored) {}
-
-        try {
-            Method m = p.getClass().getMethod("getInPerson");
-            Object out = m.invoke(p);
-            if (out instanceof Boolean) return (Boolean) out;
-        } catch (Throwable ignored) {}
-
-        Boolean f = tryFieldBool(p, "inPerson", "isInPerson");
-        return f != null && f;
-    }
-
-    private static boolean isMissed(Passenger p) {
-        if (p == null) return false;
-
-        try {
-            Method m = p.getClass().getMethod("isMissed");
-            Object out = m.invoke(p);
-            if (out instanceof Boolean) return (Boolean) out;
-        } catch (Throwable ignored) {}
-
-        try {
-            Method m = p.getClass().getMethod("getMissed");
-            Object out = m.invoke(p);
-            if (out instanceof Boolean) return (Boolean) out;
-        } catch (Throwable ignored) {}
-
-        Boolean f = tryFieldBool(p, "missed", "isMissed");
-        return f != null && f;
-    }
-
-    private static int passengerArrivalStep(Passenger p, int fallback) {
-        Integer v = tryInvokeInt(p, "getArrivalMinute", "getArrivalInterval", "getArrivalStep", "getSpawnMinute", "getSpawnInterval");
-        if (v != null && v >= 0) return v;
-        Integer f = tryFieldInt(p, "arrivalMinute", "arrivalInterval", "arrivalStep", "spawnMinute", "spawnInterval");
-        if (f != null && f >= 0) return f;
-        return Math.max(0, fallback - 1);
-    }
-
-    private static int passengerTicketDoneStep(Passenger p, int fallback) {
-        Integer v = tryInvokeInt(p, "getTicketCompletionMinute", "getTicketCompleteMinute", "getTicketDoneMinute", "getTicketCompletionInterval");
-        if (v != null && v >= 0) return v;
-        Integer f = tryFieldInt(p, "ticketCompletionMinute", "ticketCompleteMinute", "ticketDoneMinute", "ticketCompletionInterval");
-        if (f != null && f >= 0) return f;
-        return Math.max(0, fallback - 1);
-    }
-
-    private static int passengerCheckpointDoneStep(Passenger p, int fallback) {
-        Integer v = tryInvokeInt(p, "getCheckpointCompletionMinute", "getCheckpointCompleteMinute", "getCheckpointDoneMinute", "getCheckpointCompletionInterval");
-        if (v != null && v >= 0) return v;
-        Integer f = tryFieldInt(p, "checkpointCompletionMinute", "checkpointCompleteMinute", "checkpointDoneMinute", "checkpointCompletionInterval");
-        if (f != null && f >= 0) return f;
-        return Math.max(0, fallback - 1);
-    }
-
-    private static int passengerHoldEntryStep(Passenger p, int fallback) {
-        Integer v = tryInvokeInt(p, "getHoldRoomEntryMinute", "getHoldroomEntryMinute", "getHoldEntryMinute");
-        if (v != null && v >= 0) return v;
-        Integer f = tryFieldInt(p, "holdRoomEntryMinute", "holdroomEntryMinute", "holdEntryMinute");
-        if (f != null && f >= 0) return f;
-        return fallback;
-    }
-
-    private static int passengerIndex(Passenger p, String[] methodNames, String[] fieldNames, int fallback) {
-        if (p == null) return fallback;
-
-        if (methodNames != null) {
-            for (String n : methodNames) {
-                Integer v = tryInvokeInt(p, n);
-                if (v != null && v >= 0) return v;
-            }
-        }
-        if (fieldNames != null) {
-            for (String f : fieldNames) {
-                Integer v = tryFieldInt(p, f);
-                if (v != null && v >= 0) return v;
-            }
-        }
-        return fallback;
-    }
-
-    private static Integer tryInvokeInt(Object target, String... methodNames) {
-        if (target == null || methodNames == null) return null;
-        for (String name : methodNames) {
-            try {
-                Method m = target.getClass().getMethod(name);
-                Class<?> rt = m.getReturnType();
-                if (rt == int.class || rt == Integer.class) {
-                    Object out = m.invoke(target);
-                    return (out == null) ? null : ((Number) out).intValue();
-                }
-            } catch (Throwable ignored) {}
-        }
-        return null;
-    }
-
-    private static Integer tryFieldInt(Object target, String... fieldNames) {
-        if (target == null || fieldNames == null) return null;
-        for (String fn : fieldNames) {
-            try {
-                Field f = target.getClass().getDeclaredField(fn);
-                f.setAccessible(true);
-                Object out = f.get(target);
-                if (out instanceof Number) return ((Number) out).intValue();
-            } catch (Throwable ignored) {}
-        }
-        return null;
-    }
-
-    private static Boolean tryFieldBool(Object target, String... fieldNames) {
-        if (target == null || fieldNames == null) return null;
-        for (String fn : fieldNames) {
-            try {
-                Field f = target.getClass().getDeclaredField(fn);
-                f.setAccessible(true);
-                Object out = f.get(target);
-                if (out instanceof Boolean) return (Boolean) out;
-            } catch (Throwable ignored) {}
-        }
-        return null;
-    }
-
-    private static int engineInt(SimulationEngine eng, int fallback, String... methodOrFieldNames) {
-        if (eng == null || methodOrFieldNames == null) return fallback;
-
-        for (String name : methodOrFieldNames) {
-            if (name == null || name.trim().isEmpty()) continue;
-
-            try {
-                Method m = eng.getClass().getMethod(name);
-                Object out = m.invoke(eng);
-                if (out instanceof Number) return ((Number) out).intValue();
-            } catch (Throwable ignored) {}
-
-            try {
-                Field f = eng.getClass().getDeclaredField(name);
-                f.setAccessible(true);
-                Object out = f.get(eng);
-                if (out instanceof Number) return ((Number) out).intValue();
-            } catch (Throwable ignored) {}
-        }
-
-        return fallback;
-    }
-
-    // ----------------- Shapes -----------------
-
-    private void drawShapeSafe(Graphics2D g2, Flight.ShapeType s, int cx, int cy, int r) {
-        String name = (s == null) ? "CIRCLE" : s.name();
-        switch (name) {
-            case "TRIANGLE": {
-                Polygon p = new Polygon(
-                        new int[]{cx, cx - r, cx + r},
-                        new int[]{cy - r, cy + r, cy + r}, 3);
-                g2.fillPolygon(p);
-                break;
-            }
-            case "SQUARE":
-                g2.fillRect(cx - r, cy - r, 2 * r, 2 * r);
-                break;
-            case "PENTAGON":
-                g2.fillPolygon(regularPolygon(cx, cy, r, 5));
-                break;
-            case "HEXAGON":
-                g2.fillPolygon(regularPolygon(cx, cy, r, 6));
-                break;
-            case "OCTAGON":
-                g2.fillPolygon(regularPolygon(cx, cy, r, 8));
-                break;
-            default:
-                g2.fillOval(cx - r, cy - r, 2 * r, 2 * r);
-        }
-    }
+    // ----------------- Utilities -----------------
 
-    private void drawShapeOutlineSafe(Graphics2D g2, Flight.ShapeType s, int cx, int cy, int r) {
-        String name = (s == null) ? "CIRCLE" : s.name();
-        switch (name) {
-            case "TRIANGLE": {
-                Polygon p = new Polygon(
-                        new int[]{cx, cx - r, cx + r},
-                        new int[]{cy - r, cy + r, cy + r}, 3);
-                g2.drawPolygon(p);
-                break;
-            }
-            case "SQUARE":
-                g2.drawRect(cx - r, cy - r, 2 * r, 2 * r);
-                break;
-            case "PENTAGON":
-                g2.drawPolygon(regularPolygon(cx, cy, r, 5));
-                break;
-            case "HEXAGON":
-                g2.drawPolygon(regularPolygon(cx, cy, r, 6));
-                break;
-            case "OCTAGON":
-                g2.drawPolygon(regularPolygon(cx, cy, r, 8));
-                break;
-            default:
-                g2.drawOval(cx - r, cy - r, 2 * r, 2 * r);
-        }
+    private static Passenger[] toArray(List<Passenger> list) {
+        return (list == null) ? new Passenger[0] : list.toArray(new Passenger[0]);
     }
 
-    private static Polygon regularPolygon(int cx, int cy, int r, int n) {
-        int[] xs = new int[n];
-        int[] ys = new int[n];
-        for (int i = 0; i < n; i++) {
-            double a = -Math.PI / 2 + i * (2 * Math.PI / n);
-            xs[i] = cx + (int) Math.round(Math.cos(a) * r);
-            ys[i] = cy + (int) Math.round(Math.sin(a) * r);
-        }
-        return new Polygon(xs, ys, n);
-    }
-
-    // ----------------- Utilities -----------------
-
-    private static <T> List<T> safeList(List<T> list) {
-        return (list == null) ? Collections.emptyList() : list;
+    private static Passenger[][] toArrays(List<? extends List<Passenger>> lines) {
+        if (lines == null) return new Passenger[0][];
+        Passenger[][] out = new Passenger[lines.size()][];
+        for (int i = 0; i < out.length; i++) out[i] = toArray(lines.get(i));
+        return out;
     }
 
-    private static Set<Passenger> collectAll(Map<Integer, List<Passenger>> m) {
+    private static Set<Passenger> collectAll(Pending m) {
         Set<Passenger> s = new HashSet<>();
-        if (m == null) return s;
-        for (List<Passenger> list : m.values()) {
-            if (list == null) continue;
+        for (Passenger[] list : m.passengers) {
             for (Passenger p : list) if (p != null) s.add(p);
         }
         return s;
     }
 
-    private static Map<Passenger, Integer> indexOf(List<LinkedList<Passenger>> lines) {
+    private static Map<Passenger, Integer> indexOf(Passenger[][] lines) {
         Map<Passenger, Integer> map = new HashMap<>();
-        if (lines == null) return map;
-        for (int i = 0; i < lines.size(); i++) {
-            for (Passenger p : lines.get(i)) {
+        for (int i = 0; i < lines.length; i++) {
+            for (Passenger p : lines[i]) {
                 if (p != null && !map.containsKey(p)) map.put(p, i);
             }
         }
         return map;
     }
 
-    private static int findInLines(List<LinkedList<Passenger>> lines, Passenger target, int fallback) {
-        if (lines == null || target == null) return fallback;
-        for (int i = 0; i < lines.size(); i++) {
-            LinkedList<Passenger> line = lines.get(i);
-            if (line == null) continue;
-            for (Passenger p : line) {
+    private static int findInLines(Passenger[][] lines, Passenger target, int fallback) {
+        if (target == null) return fallback;
+        for (int i = 0; i < lines.length; i++) {
+            for (Passenger p : lines[i]) {
                 if (p == target) return i;
             }
         }
@@ -0,0 +1,213 @@
+package sim.floorplan.ui;
+
+import sim.floorplan.path.Polyline;
+import sim.model.Passenger;
+
+import java.awt.image.BufferedImage;
+
+import java.util.Arrays;
+
+/**
+ * ✅ Everything the sim view draws for one engine step, as parallel primitive arrays in draw order.
+ *
+ * Built off the EDT once per step; painting only places walkers along their route for the frame's
+ * time and draws. Arrays only grow, so a list reused for later steps stops allocating.
+ *
+ * Parked passengers are grouped per queue / staging area / hold room, with per-flight tallies,
+ * so a crowded group can be drawn as one aggregate instead of a glyph each.
+ */
+final class PassengerRenderList {
+
+    /** Fill styles. */
+    static final byte LOOK_ONLINE = 0;
+    static final byte LOOK_IN_PERSON = 1;
+    static final byte LOOK_MISSED = 2;
+
+    /** Engine step this list shows. */
+    int step = Integer.MIN_VALUE;
+    int count;
+
+    // per passenger; route == null means parked at (x, y)
+    Passenger[] passenger = new Passenger[0];
+    Polyline[] route = new Polyline[0];
+    int[] x = new int[0];
+    int[] y = new int[0];
+    int[] startStep = new int[0];
+    int[] endStep = new int[0];
+    byte[] shape = new byte[0];   // Flight.ShapeType ordinal, -1 = default circle
+    byte[] look = new byte[0];
+    byte[] size = new byte[0];
+    int[] group = new int[0];     // group index, -1 = walker / ungrouped
+
+    // ---------- groups: items [groupFrom, groupTo) parked in one area ----------
+
+    int groupCount;
+    int[] groupFrom = new int[0];
+    int[] groupTo = new int[0];
+    int[] groupAnchorX = new int[0];
+    int[] groupAnchorY = new int[0];
+    int[] groupMinX = new int[0];   // area covered by the group's items (centres)
+    int[] groupMinY = new int[0];
+    int[] groupMaxX = new int[0];
+    int[] groupMaxY = new int[0];
+    int[] groupSlots = new int[0];  // slots the area offers (density = items / slots)
+    int[] groupFlightFrom = new int[0];
+    int[] groupFlightTo = new int[0];
+    String[] groupText = new String[0];
+    String[] groupTooltip = new String[0];
+    boolean[] groupAggregated = new boolean[0];   // LOD decision of the frame being painted (EDT)
+
+    // ---------- per (group, flight) tallies ----------
+
+    int flightCount;
+    byte[] flightShape = new byte[0];
+    int[] flightPassengers = new int[0];
+    String[] flightText = new String[0];
+
+    private int openGroup = -1;
+
+    // ---------- occupancy heatmap layer (colormapped at grid resolution, one pixel per cell) ----------
+
+    BufferedImage heatLayer;
+    float[] heatGrid;
+    int heatCellPx;
+    boolean heatLayerValid;
+
+    void reset(int step) {
+        // drop route refs so old flow-field routes can be collected
+        Arrays.fill(route, 0, count, null);
+        Arrays.fill(passenger, 0, count, null);
+        Arrays.fill(groupText, 0, groupCount, null);
+        Arrays.fill(groupTooltip, 0, groupCount, null);
+        Arrays.fill(flightText, 0, flightCount, null);
+        this.step = step;
+        this.count = 0;
+        this.groupCount = 0;
+        this.flightCount = 0;
+        this.openGroup = -1;
+        this.heatLayerValid = false;
+    }
+
+    /** Items added until {@link #endGroup(String, String)} belong to one area anchored at (ax, ay). */
+    void beginGroup(int ax, int ay, int slots) {
+        if (groupCount == groupFrom.length) {
+            int cap = Math.max(32, groupCount * 2);
+            groupFrom = Arrays.copyOf(groupFrom, cap);
+            groupTo = Arrays.copyOf(groupTo, cap);
+            groupAnchorX = Arrays.copyOf(groupAnchorX, cap);
+            groupAnchorY = Arrays.copyOf(groupAnchorY, cap);
+            groupMinX = Arrays.copyOf(groupMinX, cap);
+            groupMinY = Arrays.copyOf(groupMinY, cap);
+            groupMaxX = Arrays.copyOf(groupMaxX, cap);
+            groupMaxY = Arrays.copyOf(groupMaxY, cap);
+            groupSlots = Arrays.copyOf(groupSlots, cap);
+            groupFlightFrom = Arrays.copyOf(groupFlightFrom, cap);
+            groupFlightTo = Arrays.copyOf(groupFlightTo, cap);
+            groupText = Arrays.copyOf(groupText, cap);
+            groupTooltip = Arrays.copyOf(groupTooltip, cap);
+            groupAggregated = Arrays.copyOf(groupAggregated, cap);
+        }
+        int g = groupCount++;
+        groupFrom[g] = count;
+        groupTo[g] = count;
+        groupAnchorX[g] = ax;
+        groupAnchorY[g] = ay;
+        groupMinX[g] = ax;
+        groupMinY[g] = ay;
+        groupMaxX[g] = ax;
+        groupMaxY[g] = ay;
+        groupSlots[g] = slots;
+        groupFlightFrom[g] = flightCount;
+        groupFlightTo[g] = flightCount;
+        groupText[g] = null;
+        groupTooltip[g] = null;
+        groupAggregated[g] = false;
+        openGroup = g;
+    }
+
+    /** Adds one flight's tally to the open group. */
+    void addGroupFlight(int shapeOrdinal, int passengers, String text) {
+        if (flightCount == flightShape.length) {
+            int cap = Math.max(64, flightCount * 2);
+            flightShape = Arrays.copyOf(flightShape, cap);
+            flightPassengers = Arrays.copyOf(flightPassengers, cap);
+            flightText = Arrays.copyOf(flightText, cap);
+        }
+        int f = flightCount++;
+        flightShape[f] = (byte) shapeOrdinal;
+        flightPassengers[f] = passengers;
+        flightText[f] = text;
+        groupFlightTo[openGroup] = flightCount;
+    }
+
+    /** Closes the open group; empty groups are dropped. */
+    void endGroup(String totalText, String tooltip) {
+        int g = openGroup;
+        openGroup = -1;
+        if (g < 0) return;
+
+        groupTo[g] = count;
+        if (groupTo[g] == groupFrom[g]) {
+            flightCount = groupFlightFrom[g];
+            groupCount--;
+            return;
+        }
+        groupText[g] = totalText;
+        groupTooltip[g] = tooltip;
+    }
+
+    int groupSize(int g) { return groupTo[g] - groupFrom[g]; }
+
+    void addParked(Passenger p, int px, int py, int shapeOrdinal, byte look, int sizePx) {
+        int i = next();
+        passenger[i] = p;
+        route[i] = null;
+        x[i] = px;
+        y[i] = py;
+        startStep[i] = 0;
+        endStep[i] = 0;
+        shape[i] = (byte) shapeOrdinal;
+        this.look[i] = look;
+        size[i] = (byte) sizePx;
+
+        int g = openGroup;
+        group[i] = g;
+        if (g >= 0) {
+            if (px < groupMinX[g]) groupMinX[g] = px;
+            if (py < groupMinY[g]) groupMinY[g] = py;
+            if (px > groupMaxX[g]) groupMaxX[g] = px;
+            if (py > groupMaxY[g]) groupMaxY[g] = py;
+        }
+    }
+
+    void addWalker(Passenger p, Polyline r, int fromStep, int toStep, int shapeOrdinal, byte look, int sizePx) {
+        int i = next();
+        passenger[i] = p;
+        route[i] = r;
+        x[i] = r.getX(0);
+        y[i] = r.getY(0);
+        startStep[i] = fromStep;
+        endStep[i] = toStep;
+        shape[i] = (byte) shapeOrdinal;
+        this.look[i] = look;
+        size[i] = (byte) sizePx;
+        group[i] = -1;
+    }
+
+    private int next() {
+        if (count == x.length) {
+            int cap = Math.max(256, count * 2);
+            passenger = Arrays.copyOf(passenger, cap);
+            route = Arrays.copyOf(route, cap);
+            x = Arrays.copyOf(x, cap);
+            y = Arrays.copyOf(y, cap);
+            startStep = Arrays.copyOf(startStep, cap);
+            endStep = Arrays.copyOf(endStep, cap);
+            shape = Arrays.copyOf(shape, cap);
+            look = Arrays.copyOf(look, cap);
+            size = Arrays.copyOf(size, cap);
+            group = Arrays.copyOf(group, cap);
+        }
+        return count++;
+    }
+}
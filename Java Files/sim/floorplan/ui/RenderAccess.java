@@ -0,0 +1,277 @@
+package sim.floorplan.ui;
+
+import sim.model.Flight;
+import sim.model.Passenger;
+import sim.service.SimulationEngine;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ✅ Reflection-tolerant accessors for the sim paint loop, resolved once per runtime class.
+ *
+ * The panel still accepts engines/passengers that name things differently (getter or field, several
+ * spellings), but the lookups happen when a class is first seen; per-frame calls are plain
+ * MethodHandle invocations over the names that actually exist, with no getMethod/getDeclaredField and
+ * no NoSuchMethodException.
+ */
+final class RenderAccess {
+
+    private RenderAccess() { }
+
+    private static final MethodType INT_GETTER = MethodType.methodType(int.class, Object.class);
+    private static final MethodType BOOL_GETTER = MethodType.methodType(boolean.class, Object.class);
+    private static final MethodType OBJ_GETTER = MethodType.methodType(Object.class, Object.class);
+
+    // =========================
+    // Passenger
+    // =========================
+
+    static final class PassengerView {
+
+        private static final ClassValue<PassengerView> BY_CLASS = new ClassValue<>() {
+            @Override protected PassengerView computeValue(Class<?> type) { return new PassengerView(type); }
+        };
+
+        static PassengerView of(Passenger p) { return BY_CLASS.get(p.getClass()); }
+
+        private final MethodHandle[] flight;
+        private final MethodHandle[] inPerson;
+        private final MethodHandle[] missed;
+        private final MethodHandle[] arrivalStep;
+        private final MethodHandle[] ticketDoneStep;
+        private final MethodHandle[] checkpointDoneStep;
+        private final MethodHandle[] holdEntryStep;
+        private final MethodHandle[] ticketIndex;
+        private final MethodHandle[] checkpointIndex;
+        private final MethodHandle[] holdRoomIndex;
+
+        private PassengerView(Class<?> c) {
+            flight = getters(c, OBJ_GETTER, Flight.class, names("getFlight"), names());
+            inPerson = getters(c, BOOL_GETTER, boolean.class,
+                    names("isInPerson", "getInPerson"), names("inPerson", "isInPerson"));
+            missed = getters(c, BOOL_GETTER, boolean.class,
+                    names("isMissed", "getMissed"), names("missed", "isMissed"));
+
+            arrivalStep = getters(c, INT_GETTER, int.class,
+                    names("getArrivalMinute", "getArrivalInterval", "getArrivalStep", "getSpawnMinute", "getSpawnInterval"),
+                    names("arrivalMinute", "arrivalInterval", "arrivalStep", "spawnMinute", "spawnInterval"));
+            ticketDoneStep = getters(c, INT_GETTER, int.class,
+                    names("getTicketCompletionMinute", "getTicketCompleteMinute", "getTicketDoneMinute", "getTicketCompletionInterval"),
+                    names("ticketCompletionMinute", "ticketCompleteMinute", "ticketDoneMinute", "ticketCompletionInterval"));
+            checkpointDoneStep = getters(c, INT_GETTER, int.class,
+                    names("getCheckpointCompletionMinute", "getCheckpointCompleteMinute", "getCheckpointDoneMinute", "getCheckpointCompletionInterval"),
+                    names("checkpointCompletionMinute", "checkpointCompleteMinute", "checkpointDoneMinute", "checkpointCompletionInterval"));
+            holdEntryStep = getters(c, INT_GETTER, int.class,
+                    names("getHoldRoomEntryMinute", "getHoldroomEntryMinute", "getHoldEntryMinute"),
+                    names("holdRoomEntryMinute", "holdroomEntryMinute", "holdEntryMinute"));
+
+            ticketIndex = getters(c, INT_GETTER, int.class,
+                    names("getAssignedTicketCounterIndex", "getTicketCounterIndex", "getTargetTicketCounterIndex", "getChosenTicketCounterIndex"),
+                    names("assignedTicketCounterIndex", "ticketCounterIndex", "targetTicketCounterIndex", "chosenTicketCounterIndex"));
+            checkpointIndex = getters(c, INT_GETTER, int.class,
+                    names("getAssignedCheckpointIndex", "getCheckpointIndex", "getTargetCheckpointIndex", "getChosenCheckpointIndex"),
+                    names("assignedCheckpointIndex", "checkpointIndex", "targetCheckpointIndex", "chosenCheckpointIndex"));
+            holdRoomIndex = getters(c, INT_GETTER, int.class,
+                    names("getAssignedHoldRoomIndex", "getAssignedHoldroomIndex", "getHoldRoomIndex", "getHoldroomIndex", "getTargetHoldRoomIndex"),
+                    names("assignedHoldRoomIndex", "assignedHoldroomIndex", "holdRoomIndex", "holdroomIndex", "targetHoldRoomIndex"));
+        }
+
+        Flight flight(Passenger p) { return (Flight) firstObject(flight, p); }
+        boolean inPerson(Passenger p) { return firstBool(inPerson, p); }
+        boolean missed(Passenger p) { return firstBool(missed, p); }
+
+        /** Step the passenger spawned at (fallback - 1 if unknown). */
+        int arrivalStep(Passenger p, int fallback) {
+            int v = firstNonNegative(arrivalStep, p);
+            return (v >= 0) ? v : Math.max(0, fallback - 1);
+        }
+
+        int ticketDoneStep(Passenger p, int fallback) {
+            int v = firstNonNegative(ticketDoneStep, p);
+            return (v >= 0) ? v : Math.max(0, fallback - 1);
+        }
+
+        int checkpointDoneStep(Passenger p, int fallback) {
+            int v = firstNonNegative(checkpointDoneStep, p);
+            return (v >= 0) ? v : Math.max(0, fallback - 1);
+        }
+
+        int holdEntryStep(Passenger p, int fallback) {
+            int v = firstNonNegative(holdEntryStep, p);
+            return (v >= 0) ? v : fallback;
+        }
+
+        int ticketIndex(Passenger p, int fallback) {
+            int v = firstNonNegative(ticketIndex, p);
+            return (v >= 0) ? v : fallback;
+        }
+
+        int checkpointIndex(Passenger p, int fallback) {
+            int v = firstNonNegative(checkpointIndex, p);
+            return (v >= 0) ? v : fallback;
+        }
+
+        int holdRoomIndex(Passenger p, int fallback) {
+            int v = firstNonNegative(holdRoomIndex, p);
+            return (v >= 0) ? v : fallback;
+        }
+    }
+
+    // =========================
+    // Engine
+    // =========================
+
+    static final class EngineView {
+
+        private static final ClassValue<EngineView> BY_CLASS = new ClassValue<>() {
+            @Override protected EngineView computeValue(Class<?> type) { return new EngineView(type); }
+        };
+
+        static EngineView of(SimulationEngine e) { return BY_CLASS.get(e.getClass()); }
+
+        private final MethodHandle[] pendingToTicket;
+        private final MethodHandle[] pendingToCP;
+        private final MethodHandle[] pendingToHold;
+        private final MethodHandle[] arrivalSpan;
+        private final MethodHandle[] boardingCloseMinutes;
+
+        private EngineView(Class<?> c) {
+            pendingToTicket = getters(c, OBJ_GETTER, Map.class,
+                    names("getPendingToTicket", "getPendingToTC", "getPendingToCounter"),
+                    names("pendingToTicket", "pendingToTC", "pendingToCounter"));
+            pendingToCP = getters(c, OBJ_GETTER, Map.class,
+                    names("getPendingToCP", "getPendingToCheckpoint"),
+                    names("pendingToCP", "pendingToCheckpoint"));
+            pendingToHold = getters(c, OBJ_GETTER, Map.class,
+                    names("getPendingToHold", "getPendingToHoldroom"),
+                    names("pendingToHold", "pendingToHoldroom"));
+
+            arrivalSpan = getters(c, INT_GETTER, int.class,
+                    names("getArrivalSpan", "getArrivalSpanMinutes", "arrivalSpanMinutes"),
+                    names("getArrivalSpan", "getArrivalSpanMinutes", "arrivalSpanMinutes"));
+            boardingCloseMinutes = getters(c, INT_GETTER, int.class,
+                    names("getBoardingCloseMinutes", "getBoardingCloseOffsetMinutes", "boardingCloseMinutes"),
+                    names("getBoardingCloseMinutes", "getBoardingCloseOffsetMinutes", "boardingCloseMinutes"));
+        }
+
+        Map<Integer, List<Passenger>> pendingToTicket(SimulationEngine e) { return pending(pendingToTicket, e); }
+        Map<Integer, List<Passenger>> pendingToCP(SimulationEngine e) { return pending(pendingToCP, e); }
+        Map<Integer, List<Passenger>> pendingToHold(SimulationEngine e) { return pending(pendingToHold, e); }
+
+        int arrivalSpan(SimulationEngine e, int fallback) { return firstInt(arrivalSpan, e, fallback); }
+        int boardingCloseMinutes(SimulationEngine e, int fallback) { return firstInt(boardingCloseMinutes, e, fallback); }
+
+        @SuppressWarnings("unchecked")
+        private static Map<Integer, List<Passenger>> pending(MethodHandle[] hs, SimulationEngine e) {
+            Object out = firstObject(hs, e);
+            return (out instanceof Map) ? (Map<Integer, List<Passenger>>) out : Collections.emptyMap();
+        }
+    }
+
+    // ---------- invocation (no lookups here) ----------
+
+    private static Object firstObject(MethodHandle[] hs, Object target) {
+        for (MethodHandle h : hs) {
+            try {
+                Object out = (Object) h.invokeExact(target);
+                if (out != null) return out;
+            } catch (Throwable ignored) { }
+        }
+        return null;
+    }
+
+    private static boolean firstBool(MethodHandle[] hs, Object target) {
+        for (MethodHandle h : hs) {
+            try {
+                return (boolean) h.invokeExact(target);
+            } catch (Throwable ignored) { } // boxed null: try the next name
+        }
+        return false;
+    }
+
+    private static int firstNonNegative(MethodHandle[] hs, Object target) {
+        for (MethodHandle h : hs) {
+            try {
+                int v = (int) h.invokeExact(target);
+                if (v >= 0) return v;
+            } catch (Throwable ignored) { }
+        }
+        return -1;
+    }
+
+    private static int firstInt(MethodHandle[] hs, Object target, int fallback) {
+        for (MethodHandle h : hs) {
+            try {
+                return (int) h.invokeExact(target);
+            } catch (Throwable ignored) { }
+        }
+        return fallback;
+    }
+
+    // ---------- resolution (once per class) ----------
+
+    private static String[] names(String... n) { return n; }
+
+    /**
+     * Handles of type {@code type} for the no-arg public methods, then the fields (declared anywhere up the
+     * hierarchy), that exist on c with a value compatible with {@code valueType} (a primitive also accepts
+     * its box). Name order is kept; missing names are simply left out.
+     */
+    private static MethodHandle[] getters(Class<?> c, MethodType type, Class<?> valueType,
+                                          String[] methodNames, String[] fieldNames) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<MethodHandle> out = new ArrayList<>();
+
+        Map<String, Method> noArg = new HashMap<>();
+        for (Method m : c.getMethods()) {
+            if (m.getParameterCount() == 0 && !Modifier.isStatic(m.getModifiers())) noArg.putIfAbsent(m.getName(), m);
+        }
+
+        for (String n : methodNames) {
+            Method m = noArg.get(n);
+            if (m == null || !compatible(m.getReturnType(), valueType)) continue;
+            try {
+                m.setAccessible(true); // public method of a non-public class
+            } catch (RuntimeException ignored) { }
+            try {
+                out.add(lookup.unreflect(m).asType(type));
+            } catch (IllegalAccessException | RuntimeException ignored) { }
+        }
+
+        for (String n : fieldNames) {
+            Field f = findField(c, n);
+            if (f == null || Modifier.isStatic(f.getModifiers()) || !compatible(f.getType(), valueType)) continue;
+            try {
+                f.setAccessible(true);
+                out.add(lookup.unreflectGetter(f).asType(type));
+            } catch (IllegalAccessException | RuntimeException ignored) { }
+        }
+
+        return out.toArray(new MethodHandle[0]);
+    }
+
+    private static Field findField(Class<?> c, String name) {
+        for (Class<?> k = c; k != null && k != Object.class; k = k.getSuperclass()) {
+            for (Field f : k.getDeclaredFields()) {
+                if (f.getName().equals(name)) return f;
+            }
+        }
+        return null;
+    }
+
+    private static boolean compatible(Class<?> actual, Class<?> wanted) {
+        if (wanted == int.class) return actual == int.class || actual == Integer.class;
+        if (wanted == boolean.class) return actual == boolean.class || actual == Boolean.class;
+        return wanted.isAssignableFrom(actual);
+    }
+}
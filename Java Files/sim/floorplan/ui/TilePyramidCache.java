@@ -0,0 +1,362 @@
+package sim.floorplan.ui;
+
+import sim.floorplan.io.DiskTilePyramid;
+import sim.floorplan.io.ProjectCache;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+/**
+ * ✅ Mipmapped, tiled view of a big image for pan/zoom painting.
+ *
+ * Paint draws only the tiles under the clip, from the level whose pixels are closest to (not coarser than)
+ * one screen pixel: a zoomed-out 20k plan costs a few hundred thousand pixels per frame instead of resampling
+ * the whole image. Level 0 tiles come straight from the source (cheap, built on the paint thread);
+ * coarser tiles are 2x2 box-filtered from the level below on a background thread and cached (LRU by bytes).
+ * Until a tile is ready, the nearest cached coarser tile stands in for it.
+ *
+ * Used for the floorplan image and for the walk-mask overlay; {@link #invalidate} re-derives tiles over an
+ * edited area, keeping the stale ones on screen until their replacements arrive.
+ */
+final class TilePyramidCache {
+
+    static final int TILE = DiskTilePyramid.TILE;
+
+    /** Where level tiles come from. */
+    interface Source {
+        int width();
+        int height();
+
+        /** Tile (level, tx, ty) cropped to the level size, or null to have it box-filtered from level - 1. */
+        BufferedImage tile(int level, int tx, int ty) throws IOException;
+
+        /** True if pixels carry alpha (filtered tiles are then ARGB; opaque ones stay RGB and draw without blending). */
+        boolean translucent();
+    }
+
+    // one worker shared by every cache: tile builds are short and should never compete with painting
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tile-pyramid");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    private final Source source;
+    private final JComponent target;
+    private final int levels;
+    private final long budgetBytes;
+
+    private final LinkedHashMap<Long, Entry> tiles = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+    private final Set<Long> inFlight = new HashSet<>();
+    private final Set<Long> invalidatedInFlight = new HashSet<>();
+    private volatile boolean disposed = false;
+
+    private static final class Entry {
+        final BufferedImage img;
+        boolean stale;
+
+        Entry(BufferedImage img) { this.img = img; }
+
+        long bytes() { return ((long) img.getWidth() * img.getHeight() * img.getColorModel().getPixelSize() + 7) / 8; }
+    }
+
+    TilePyramidCache(Source source, JComponent target, long budgetBytes) {
+        this.source = source;
+        this.target = target;
+        this.budgetBytes = Math.max(8L << 20, budgetBytes);
+
+        int l = 1;
+        while (ceilShift(source.width(), l - 1) > TILE || ceilShift(source.height(), l - 1) > TILE) l++;
+        this.levels = l;
+    }
+
+    // ---------- sources ----------
+
+    /** The floorplan: disk pyramid tiles for a streamed image, mapped tiles for a cached one, sub-images otherwise. */
+    static Source forImage(BufferedImage img) {
+        DiskTilePyramid pyramid = DiskTilePyramid.of(img);
+        if (pyramid != null) {
+            return new Source() {
+                @Override public int width() { return pyramid.getWidth(); }
+                @Override public int height() { return pyramid.getHeight(); }
+                @Override public BufferedImage tile(int level, int tx, int ty) throws IOException {
+                    return pyramid.readTile(level, tx, ty);
+                }
+                @Override public boolean translucent() { return false; }
+            };
+        }
+        ProjectCache.Mapping mapped = ProjectCache.of(img);
+        if (mapped != null) {
+            return new Source() {
+                @Override public int width() { return mapped.getWidth(); }
+                @Override public int height() { return mapped.getHeight(); }
+                @Override public BufferedImage tile(int level, int tx, int ty) {
+                    return (level > 0) ? null : mapped.readTile(tx, ty);
+                }
+                @Override public boolean translucent() { return false; }
+            };
+        }
+        return new Source() {
+            @Override public int width() { return img.getWidth(); }
+            @Override public int height() { return img.getHeight(); }
+            @Override public BufferedImage tile(int level, int tx, int ty) {
+                if (level > 0) return null;
+                int x = tx * TILE, y = ty * TILE;
+                return img.getSubimage(x, y, Math.min(TILE, img.getWidth() - x), Math.min(TILE, img.getHeight() - y));
+            }
+            @Override public boolean translucent() { return img.getColorModel().hasAlpha(); }
+        };
+    }
+
+    // ---------- paint ----------
+
+    /** Finest level that is not finer than the screen: level L pixels cover 2^L image pixels. */
+    int levelForZoom(double zoom) {
+        int level = 0;
+        while (level + 1 < levels && zoom * (1 << (level + 1)) <= 1.0) level++;
+        return level;
+    }
+
+    /** Paints the visible tiles; g2 must already be in IMAGE coordinates. */
+    void paint(Graphics2D g2, double zoom) {
+        Rectangle bounds = new Rectangle(0, 0, source.width(), source.height());
+        Rectangle clip = g2.getClipBounds();
+        clip = (clip == null) ? bounds : clip.intersection(bounds);
+        if (clip.isEmpty()) return;
+
+        int level = levelForZoom(zoom);
+        int span = TILE << level;
+
+        int tx0 = clip.x / span, tx1 = (clip.x + clip.width - 1) / span;
+        int ty0 = clip.y / span, ty1 = (clip.y + clip.height - 1) / span;
+
+        ArrayList<long[]> wanted = new ArrayList<>();
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                BufferedImage t = (level == 0) ? levelZero(tx, ty) : cached(level, tx, ty, wanted);
+                if (t != null) {
+                    g2.drawImage(t, tx * span, ty * span, t.getWidth() << level, t.getHeight() << level, null);
+                } else {
+                    drawFromAncestor(g2, level, tx, ty);
+                }
+            }
+        }
+        if (!wanted.isEmpty()) request(wanted);
+    }
+
+    /** Marks every tile over imgRect stale (level 0 tiles are re-read from the source on the next paint). */
+    synchronized void invalidate(Rectangle imgRect) {
+        if (imgRect == null || imgRect.isEmpty()) return;
+        for (int level = 0; level < levels; level++) {
+            int span = TILE << level;
+            int tx0 = Math.max(0, imgRect.x / span), tx1 = (imgRect.x + imgRect.width - 1) / span;
+            int ty0 = Math.max(0, imgRect.y / span), ty1 = (imgRect.y + imgRect.height - 1) / span;
+            for (int ty = ty0; ty <= ty1; ty++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    long k = key(level, tx, ty);
+                    Entry e = tiles.get(k);
+                    if (e != null) e.stale = true;
+                    if (inFlight.contains(k)) invalidatedInFlight.add(k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-wraps every cached tile (e.g. with a new palette over the same raster); pixels aren't re-derived.
+     * Tiles built later must already use the new look, so change what the source produces first.
+     */
+    synchronized void recolor(UnaryOperator<BufferedImage> f) {
+        for (Map.Entry<Long, Entry> me : tiles.entrySet()) {
+            Entry e = me.getValue();
+            Entry n = new Entry(f.apply(e.img));
+            n.stale = e.stale;
+            me.setValue(n); // same pixel size, so the byte count holds
+        }
+    }
+
+    /** Stops repainting the target; queued builds finish quietly. */
+    void dispose() {
+        disposed = true;
+        synchronized (this) {
+            tiles.clear();
+            bytes = 0;
+        }
+    }
+
+    // ---------- cache ----------
+
+    private BufferedImage levelZero(int tx, int ty) {
+        synchronized (this) {
+            Entry e = tiles.get(key(0, tx, ty));
+            if (e != null && !e.stale) return e.img;
+        }
+        try {
+            BufferedImage t = source.tile(0, tx, ty);
+            if (t != null) put(key(0, tx, ty), t);
+            return t;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /** Cached tile (possibly stale: shown while its rebuild runs); queues a build if it's missing or stale. */
+    private synchronized BufferedImage cached(int level, int tx, int ty, ArrayList<long[]> wanted) {
+        Entry e = tiles.get(key(level, tx, ty));
+        if (e == null || e.stale) wanted.add(new long[] { level, tx, ty });
+        return (e == null) ? null : e.img;
+    }
+
+    private void drawFromAncestor(Graphics2D g2, int level, int tx, int ty) {
+        for (int a = level + 1; a < levels; a++) {
+            int shift = a - level;
+            Entry e;
+            synchronized (this) {
+                e = tiles.get(key(a, tx >> shift, ty >> shift));
+            }
+            if (e == null) continue;
+
+            // this tile's part of the ancestor, in ancestor pixels
+            int part = TILE >> shift;
+            int sx = (tx & ((1 << shift) - 1)) * part;
+            int sy = (ty & ((1 << shift) - 1)) * part;
+            int sw = Math.min(part, e.img.getWidth() - sx);
+            int sh = Math.min(part, e.img.getHeight() - sy);
+            if (sw <= 0 || sh <= 0) return;
+
+            int dx = tx * (TILE << level), dy = ty * (TILE << level);
+            g2.drawImage(e.img, dx, dy, dx + (sw << a), dy + (sh << a), sx, sy, sx + sw, sy + sh, null);
+            return;
+        }
+    }
+
+    private synchronized void put(long k, BufferedImage img) {
+        Entry old = tiles.remove(k);
+        if (old != null) bytes -= old.bytes();
+        Entry e = new Entry(img);
+        tiles.put(k, e);
+        bytes += e.bytes();
+
+        // evict least recently used (level 0 sub-images are views of the source, but count them anyway)
+        Iterator<Map.Entry<Long, Entry>> it = tiles.entrySet().iterator();
+        while (bytes > budgetBytes && it.hasNext()) {
+            Map.Entry<Long, Entry> eldest = it.next();
+            if (eldest.getKey() == k) continue;
+            bytes -= eldest.getValue().bytes();
+            it.remove();
+        }
+    }
+
+    // ---------- background builds ----------
+
+    private void request(ArrayList<long[]> wanted) {
+        ArrayList<long[]> todo = new ArrayList<>();
+        synchronized (this) {
+            for (long[] t : wanted) {
+                if (inFlight.add(key((int) t[0], (int) t[1], (int) t[2]))) todo.add(t);
+            }
+        }
+        if (todo.isEmpty()) return;
+
+        WORKER.execute(() -> {
+            for (long[] t : todo) {
+                if (disposed) return;
+                long k = key((int) t[0], (int) t[1], (int) t[2]);
+                try {
+                    build((int) t[0], (int) t[1], (int) t[2]);
+                } catch (RuntimeException | IOException ex) {
+                    ex.printStackTrace();
+                } finally {
+                    synchronized (this) {
+                        inFlight.remove(k);
+                        Entry e = tiles.get(k);
+                        if (invalidatedInFlight.remove(k) && e != null) e.stale = true;
+                    }
+                }
+            }
+            if (!disposed) SwingUtilities.invokeLater(target::repaint);
+        });
+    }
+
+    /** Builds (and caches) a tile, reusing fresh cached children and building the missing ones. Worker thread only. */
+    private BufferedImage build(int level, int tx, int ty) throws IOException {
+        long k = key(level, tx, ty);
+        synchronized (this) {
+            Entry e = tiles.get(k);
+            if (e != null && !e.stale) return e.img;
+        }
+
+        BufferedImage t = source.tile(level, tx, ty);
+        if (t == null) {
+            int w = Math.min(TILE, ceilShift(source.width(), level) - tx * TILE);
+            int h = Math.min(TILE, ceilShift(source.height(), level) - ty * TILE);
+            t = new BufferedImage(w, h, source.translucent() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+
+            int[] a = new int[2 * TILE];
+            int[] b = new int[2 * TILE];
+            int[] out = new int[TILE];
+            for (int cy = 0; cy < 2; cy++) {
+                for (int cx = 0; cx < 2; cx++) {
+                    int ctx = 2 * tx + cx, cty = 2 * ty + cy;
+                    if (ctx * TILE >= ceilShift(source.width(), level - 1)
+                            || cty * TILE >= ceilShift(source.height(), level - 1)) continue;
+
+                    BufferedImage child = build(level - 1, ctx, cty);
+                    downsampleInto(child, t, cx * (TILE / 2), cy * (TILE / 2), a, b, out);
+                }
+            }
+        }
+        put(k, t);
+        return t;
+    }
+
+    /** 2x2 box filter of child into dst at (ox,oy) (odd edges reuse the last column/row). */
+    private static void downsampleInto(BufferedImage child, BufferedImage dst, int ox, int oy, int[] a, int[] b, int[] out) {
+        int cw = child.getWidth();
+        int ch = child.getHeight();
+        int hw = Math.min((cw + 1) / 2, dst.getWidth() - ox);
+        int hh = Math.min((ch + 1) / 2, dst.getHeight() - oy);
+
+        for (int y = 0; y < hh; y++) {
+            child.getRGB(0, 2 * y, cw, 1, a, 0, cw);
+            child.getRGB(0, Math.min(ch - 1, 2 * y + 1), cw, 1, b, 0, cw);
+            for (int x = 0; x < hw; x++) {
+                int x0 = 2 * x;
+                int x1 = Math.min(cw - 1, x0 + 1);
+                out[x] = avg4(a[x0], a[x1], b[x0], b[x1]);
+            }
+            dst.setRGB(ox, oy + y, hw, 1, out, 0, hw);
+        }
+    }
+
+    private static int avg4(int p, int q, int r, int s) {
+        int alpha = ((p >>> 24) + (q >>> 24) + (r >>> 24) + (s >>> 24) + 2) >> 2;
+        int red = (((p >> 16) & 0xFF) + ((q >> 16) & 0xFF) + ((r >> 16) & 0xFF) + ((s >> 16) & 0xFF) + 2) >> 2;
+        int grn = (((p >> 8) & 0xFF) + ((q >> 8) & 0xFF) + ((r >> 8) & 0xFF) + ((s >> 8) & 0xFF) + 2) >> 2;
+        int blu = ((p & 0xFF) + (q & 0xFF) + (r & 0xFF) + (s & 0xFF) + 2) >> 2;
+        return (alpha << 24) | (red << 16) | (grn << 8) | blu;
+    }
+
+    private static long key(int level, int tx, int ty) {
+        return ((long) level << 48) | ((long) ty << 24) | tx;
+    }
+
+    private static int ceilShift(int v, int level) {
+        return (int) (((long) v + (1L << level) - 1) >> level);
+    }
+}
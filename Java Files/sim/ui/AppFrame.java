@@ -5,6 +5,8 @@ import sim.floorplan.ui.FloorplanEditorPanel;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.lang.reflect.Method;
 
 public class AppFrame extends JFrame {
@@ -33,6 +35,12 @@ public class AppFrame extends JFrame {
     public AppFrame() {
         super("AirportSim — Blank Canvas + Floorplan");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                floorplanEditor.dispose(); // ✅ streamed render tiles live in a temp dir
+            }
+        });
         setLayout(new BorderLayout());
 
         // ----------------------------
@@ -6,6 +6,7 @@ import sim.service.SimulationEngine;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -20,6 +21,7 @@ public class CheckpointLinesPanel extends JPanel {
     private final List<Passenger> clickablePassengers;
     private final List<Rectangle> counterAreas;
     private final Flight filterFlight;
+    private final ScrollMouseHandler handler;
 
     public CheckpointLinesPanel(SimulationEngine engine,
                                 List<Rectangle> clickableAreas,
@@ -35,7 +37,7 @@ public class CheckpointLinesPanel extends JPanel {
         setFocusable(true);
 
         // install shared scroll handler
-        ScrollMouseHandler handler = new ScrollMouseHandler.CheckpointScrollHandler(
+        handler = new ScrollMouseHandler.CheckpointScrollHandler(
             engine, clickableAreas, clickablePassengers,
             checkpointQueuedOffsets, checkpointServedOffsets,
             filterFlight,
@@ -43,6 +45,12 @@ public class CheckpointLinesPanel extends JPanel {
         );
         addMouseListener(handler);
         addMouseMotionListener(handler);
+        ToolTipManager.sharedInstance().registerComponent(this);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        return handler.tooltipAt(e.getPoint());
     }
 
     @Override
@@ -4,6 +4,7 @@ import sim.floorplan.model.FloorplanProject;
 import sim.floorplan.model.Zone;
 import sim.floorplan.model.ZoneType;
 import sim.floorplan.sim.FloorplanTravelTimeProvider;
+import sim.floorplan.sim.OccupancyHeatmap;
 import sim.floorplan.sim.TravelTimeProvider;
 import sim.model.ArrivalCurveConfig;
 import sim.model.Flight;
@@ -11,6 +12,7 @@ import sim.service.SimulationEngine;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.util.*;
 import java.util.List;
 
@@ -28,6 +30,7 @@ public class FloorplanSetupPanel extends JPanel {
     private final JButton startBtn = new JButton("Start Floorplan Simulation");
 
     private FloorplanProject floorplanProjectCopy;
+    private OccupancyHeatmap occupancyHeatmap; // ✅ averaged over the runs started here on the same floorplan image
 
     public FloorplanSetupPanel() {
         super(new BorderLayout());
@@ -75,7 +78,9 @@ public class FloorplanSetupPanel extends JPanel {
     }
 
     public void setFloorplanProjectCopy(FloorplanProject copy) {
+        BufferedImage previousImage = (floorplanProjectCopy == null) ? null : floorplanProjectCopy.getFloorplanImage();
         this.floorplanProjectCopy = (copy == null) ? null : copy.copy();
+        if (copy == null || copy.getFloorplanImage() != previousImage) occupancyHeatmap = null;
 
         boolean usable = isUsableFloorplan(this.floorplanProjectCopy);
         startBtn.setEnabled(usable);
@@ -216,7 +221,9 @@ public class FloorplanSetupPanel extends JPanel {
             new DataTableFrame(tableEngine).setVisible(true);
 
             // show floorplan sim
-            new SimulationFrame(simEngine, floorplanProjectCopy.copy()).setVisible(true);
+            SimulationFrame simFrame = new SimulationFrame(simEngine, floorplanProjectCopy.copy(), occupancyHeatmap);
+            occupancyHeatmap = simFrame.getOccupancyHeatmap();
+            simFrame.setVisible(true);
 
         } catch (Exception ex) {
             ex.printStackTrace();
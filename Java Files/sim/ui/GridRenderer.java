@@ -21,6 +21,8 @@ public class GridRenderer {
     public static final int MIN_CELL_SIZE   = 3;       // never shrink below 3px
     public static final int HOLD_GAP        = 10;      // horizontal gap between hold rooms
 
+    private static final Color IN_PERSON_BORDER = new Color(200, 100, 0);
+
     /**
      * Draws both the queued and served ticket‐counter grids,
      * including scrollbars and click‐to‐inspect hit rectangles.
@@ -244,6 +246,8 @@ public class GridRenderer {
         int fullCols = (size + rows - 1) / rows;
         int total    = Math.min(size, fullCols * rows);
 
+        Color fill = g.getColor();
+        SpriteAtlas.Batch glyphs = SpriteAtlas.shared().begin((Graphics2D) g);
         for (int idx = 0; idx < total; idx++) {
             int row = idx % rows;
             int col = idx / rows;
@@ -254,22 +258,21 @@ public class GridRenderer {
             int y = startY + row * cellH;
 
             Passenger p = list.get(idx);
-            Color darkerOrange = new Color(200, 100, 0);
             boolean completedCkpt = p.getCheckpointCompletionMinute() >= 0;
             Color borderColor = (p.isMissed() && !completedCkpt)
                     ? Color.RED
-                    : (p.isInPerson() ? darkerOrange : Color.BLUE);
+                    : (p.isInPerson() ? IN_PERSON_BORDER : Color.BLUE);
 
-            ShapePainter.paintShape(
-                    g,
+            glyphs.paint(
                     p.getFlight().getShape(),
-                    x, y, cellW, cellH,
-                    borderColor
+                    fill, borderColor, ShapePainter.DEFAULT_BORDER_WIDTH,
+                    x, y, cellW, cellH
             );
 
             clickableAreas.add(new Rectangle(x, y, cellW, cellH));
             clickablePassengers.add(p);
         }
+        glyphs.end();
     }
 
     /**
@@ -341,6 +344,9 @@ public class GridRenderer {
             int cellSize = bestCellSizeForBox(n);
             int rowsFit  = Math.max(1, HOLD_BOX_SIZE / cellSize);
 
+            Color fill = g.getColor();
+            SpriteAtlas.Batch glyphs = SpriteAtlas.shared().begin((Graphics2D) g);
+
             for (int idx = 0; idx < n; idx++) {
                 int r = idx % rowsFit;
                 int c = idx / rowsFit;
@@ -356,18 +362,18 @@ public class GridRenderer {
 
                 Color borderColor = p.isMissed()
                         ? Color.RED
-                        : (p.isInPerson() ? new Color(200, 100, 0) : Color.BLUE);
+                        : (p.isInPerson() ? IN_PERSON_BORDER : Color.BLUE);
 
-                ShapePainter.paintShape(
-                        g,
+                glyphs.paint(
                         p.getFlight().getShape(),
-                        x, y, cellSize, cellSize,
-                        borderColor
+                        fill, borderColor, ShapePainter.DEFAULT_BORDER_WIDTH,
+                        x, y, cellSize, cellSize
                 );
 
                 clickableAreas.add(new Rectangle(x, y, cellSize, cellSize));
                 clickablePassengers.add(p);
             }
+            glyphs.end();
         }
     }
 
@@ -0,0 +1,199 @@
+package sim.ui;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * ✅ Uniform-grid spatial index over drawn hit boxes, for click-to-inspect and hover.
+ *
+ * Boxes are added as (x, y, w, h, id); the grid is built lazily on the first query after a change,
+ * so a view that repaints often only pays for it when the mouse actually asks. Point queries look at
+ * one cell; when boxes overlap the one added first wins (same as a front-to-back linear search).
+ * All storage is primitive arrays that only grow.
+ *
+ * EDT only.
+ */
+public final class HitGrid {
+
+    private static final int MAX_CELLS_PER_AXIS = 4096;
+
+    // boxes, in insertion order
+    private int count = 0;
+    private int[] bx = new int[64], by = new int[64], bw = new int[64], bh = new int[64], bid = new int[64];
+
+    // grid (valid while built == true): cell c holds cellItems[cellStart[c] .. cellStart[c + 1])
+    private boolean built = false;
+    private int originX, originY, cellSize, cols, rows;
+    private int[] cellStart = new int[0];
+    private int[] cellItems = new int[0];
+
+    // rectangle-query dedupe (box -> last query that reported it)
+    private int[] seen = new int[64];
+    private int querySerial = 0;
+
+    // what syncTo() last indexed
+    private List<Rectangle> syncedList;
+    private int syncedSize = -1;
+    private Rectangle syncedFirst, syncedLast;
+
+    public int size() { return count; }
+
+    public void clear() {
+        count = 0;
+        built = false;
+        syncedList = null;
+    }
+
+    public void add(int x, int y, int w, int h, int id) {
+        if (w <= 0 || h <= 0) return;
+        if (count == bx.length) {
+            int cap = count * 2;
+            bx = Arrays.copyOf(bx, cap);
+            by = Arrays.copyOf(by, cap);
+            bw = Arrays.copyOf(bw, cap);
+            bh = Arrays.copyOf(bh, cap);
+            bid = Arrays.copyOf(bid, cap);
+        }
+        bx[count] = x;
+        by[count] = y;
+        bw[count] = w;
+        bh[count] = h;
+        bid[count] = id;
+        count++;
+        built = false;
+    }
+
+    /**
+     * Re-indexes a renderer's clickable list (id = list index) if it was refilled since the last call.
+     * Renderers allocate fresh Rectangles every paint, so same size + same first/last objects means unchanged.
+     */
+    public void syncTo(List<Rectangle> areas) {
+        int n = areas.size();
+        Rectangle first = (n > 0) ? areas.get(0) : null;
+        Rectangle last = (n > 0) ? areas.get(n - 1) : null;
+        if (areas == syncedList && n == syncedSize && first == syncedFirst && last == syncedLast) return;
+
+        clear();
+        for (int i = 0; i < n; i++) {
+            Rectangle r = areas.get(i);
+            if (r != null) add(r.x, r.y, r.width, r.height, i);
+        }
+        syncedList = areas;
+        syncedSize = n;
+        syncedFirst = first;
+        syncedLast = last;
+    }
+
+    /** Id of the first-added box containing (px, py), or -1. */
+    public int hitTest(int px, int py) {
+        if (count == 0) return -1;
+        build();
+
+        int cx = Math.floorDiv(px - originX, cellSize);
+        int cy = Math.floorDiv(py - originY, cellSize);
+        if (cx < 0 || cy < 0 || cx >= cols || cy >= rows) return -1;
+
+        int c = cy * cols + cx;
+        for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+            int i = cellItems[k]; // ascending, so the first match is the first added
+            if (px >= bx[i] && py >= by[i] && px < bx[i] + bw[i] && py < by[i] + bh[i]) return bid[i];
+        }
+        return -1;
+    }
+
+    /** Reports the id of every box intersecting (x, y, w, h) once. */
+    public void query(int x, int y, int w, int h, IntConsumer out) {
+        if (count == 0 || w <= 0 || h <= 0) return;
+        build();
+
+        int cx0 = Math.max(0, Math.floorDiv(x - originX, cellSize));
+        int cy0 = Math.max(0, Math.floorDiv(y - originY, cellSize));
+        int cx1 = Math.min(cols - 1, Math.floorDiv(x + w - 1 - originX, cellSize));
+        int cy1 = Math.min(rows - 1, Math.floorDiv(y + h - 1 - originY, cellSize));
+        if (cx0 > cx1 || cy0 > cy1) return;
+
+        if (++querySerial == 0) {
+            Arrays.fill(seen, 0);
+            querySerial = 1;
+        }
+
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * cols + cx;
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int i = cellItems[k];
+                    if (seen[i] == querySerial) continue;
+                    seen[i] = querySerial;
+                    if (bx[i] < x + w && by[i] < y + h && bx[i] + bw[i] > x && by[i] + bh[i] > y) out.accept(bid[i]);
+                }
+            }
+        }
+    }
+
+    // ---------- build ----------
+
+    /** Cell size ~ twice the average box side, so a box usually spans 1-4 cells; at most ~2 cells per box. */
+    private void build() {
+        if (built) return;
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        long sideSum = 0;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, bx[i]);
+            minY = Math.min(minY, by[i]);
+            maxX = Math.max(maxX, bx[i] + bw[i]);
+            maxY = Math.max(maxY, by[i] + bh[i]);
+            sideSum += bw[i] + bh[i];
+        }
+
+        int spanX = maxX - minX, spanY = maxY - minY;
+        int size = (int) Math.max(4, sideSum / Math.max(1, count)); // 2 * average side
+        size = Math.max(size, (Math.max(spanX, spanY) + MAX_CELLS_PER_AXIS - 1) / MAX_CELLS_PER_AXIS);
+
+        // few boxes spread far apart: coarser cells, so building never costs more than the boxes do
+        long maxCells = 2L * count;
+        size = Math.max(size, (int) Math.ceil(Math.sqrt((double) spanX * spanY / maxCells)));
+        while ((long) cellsAlong(spanX, size) * cellsAlong(spanY, size) > maxCells) size += Math.max(1, size / 8);
+
+        originX = minX;
+        originY = minY;
+        cellSize = size;
+        cols = cellsAlong(spanX, size);
+        rows = cellsAlong(spanY, size);
+
+        int cells = cols * rows;
+        if (cellStart.length < cells + 1) cellStart = new int[cells + 1];
+        else Arrays.fill(cellStart, 0, cells + 1, 0);
+
+        // count per cell, prefix-sum, then fill (in box order, so each cell's list is ascending)
+        for (int i = 0; i < count; i++) {
+            int cx0 = (bx[i] - originX) / size, cx1 = Math.min(cols - 1, (bx[i] + bw[i] - 1 - originX) / size);
+            int cy0 = (by[i] - originY) / size, cy1 = Math.min(rows - 1, (by[i] + bh[i] - 1 - originY) / size);
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) cellStart[cy * cols + cx + 1]++;
+            }
+        }
+        for (int c = 0; c < cells; c++) cellStart[c + 1] += cellStart[c];
+
+        int total = cellStart[cells];
+        if (cellItems.length < total) cellItems = new int[Math.max(total, cellItems.length * 2)];
+        int[] fill = Arrays.copyOf(cellStart, cells);
+
+        for (int i = 0; i < count; i++) {
+            int cx0 = (bx[i] - originX) / size, cx1 = Math.min(cols - 1, (bx[i] + bw[i] - 1 - originX) / size);
+            int cy0 = (by[i] - originY) / size, cy1 = Math.min(rows - 1, (by[i] + bh[i] - 1 - originY) / size);
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) cellItems[fill[cy * cols + cx]++] = i;
+            }
+        }
+
+        if (seen.length < count) seen = new int[bx.length];
+        built = true;
+    }
+
+    private static int cellsAlong(int span, int size) {
+        return Math.max(1, (span + size - 1) / size);
+    }
+}
@@ -22,6 +22,7 @@ public class HoldRoomsPanel extends JPanel {
     private final Flight           filterFlight;
     private final List<Rectangle>  clickableAreas;
     private final List<Passenger>  clickablePassengers;
+    private final HitGrid          hits = new HitGrid();
 
     public HoldRoomsPanel(SimulationEngine engine,
                           List<Rectangle> clickableAreas,
@@ -49,15 +50,17 @@ public class HoldRoomsPanel extends JPanel {
         addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                for (int i = 0; i < clickableAreas.size(); i++) {
-                    if (clickableAreas.get(i).contains(e.getPoint())) {
-                        Passenger p = clickablePassengers.get(i);
-                        showPassengerDetails(p);
-                        return;
-                    }
-                }
+                Passenger p = ScrollMouseHandler.passengerAt(hits, clickableAreas, clickablePassengers, e.getPoint());
+                if (p != null) showPassengerDetails(p);
             }
         });
+        ToolTipManager.sharedInstance().registerComponent(this);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        Passenger p = ScrollMouseHandler.passengerAt(hits, clickableAreas, clickablePassengers, e.getPoint());
+        return (p == null) ? null : ScrollMouseHandler.tooltipFor(engine, p);
     }
 
     public HoldRoomsPanel(SimulationEngine engine, Flight filterFlight) {
@@ -9,6 +9,8 @@ import sim.service.SimulationEngine;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.Constructor;
@@ -35,6 +37,12 @@ public class MainFrame extends JFrame {
     public MainFrame() {
         super("Airport Setup");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (floorplanEditorPanel != null) floorplanEditorPanel.dispose(); // ✅ streamed render tiles live in a temp dir
+            }
+        });
         setLayout(new BorderLayout());
 
         JPanel root = new JPanel(new BorderLayout());
@@ -213,7 +221,10 @@ public class MainFrame extends JFrame {
 
             // ✅ If we have a floorplan, show it in SimulationFrame as a tab
             if (floorplanCopy != null && floorplanCopy.getFloorplanImage() != null) {
-                new SimulationFrame(simEngine, floorplanCopy).setVisible(true);
+                SimulationFrame simFrame = new SimulationFrame(simEngine, floorplanCopy,
+                        floorplanEditorPanel.getOccupancyHeatmap());
+                floorplanEditorPanel.setOccupancyHeatmap(simFrame.getOccupancyHeatmap());
+                simFrame.setVisible(true);
             } else {
                 new SimulationFrame(simEngine).setVisible(true);
             }
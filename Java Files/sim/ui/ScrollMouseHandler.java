@@ -30,6 +30,9 @@ public abstract class ScrollMouseHandler extends MouseAdapter {
     protected final Flight filterFlight;
     protected final List<Rectangle> counterAreas;  // ← new field
 
+    // ✅ index over clickableAreas (re-synced after each paint refills them)
+    protected final HitGrid hits = new HitGrid();
+
     // drag state
     protected boolean dragging = false;
     protected boolean draggingQueued;
@@ -65,48 +68,72 @@ public abstract class ScrollMouseHandler extends MouseAdapter {
      * Click on a passenger “dot” shows its info.
      */
     protected void handleClick(MouseEvent e) {
-        Point pt = e.getPoint();
-        for (int i = 0; i < clickableAreas.size(); i++) {
-            if (clickableAreas.get(i).contains(pt)) {
-                Passenger p = clickablePassengers.get(i);
-                LocalTime simStart = p.getFlight()
-                                       .getDepartureTime()
-                                       .minusMinutes(engine.getArrivalSpan());
-                String flightNum = p.getFlight().getFlightNumber();
-                String arrivalTime = simStart.plusMinutes(p.getArrivalMinute())
-                                             .format(DateTimeFormatter.ofPattern("HH:mm"));
-                String purchase = p.isInPerson() ? "In Person" : "Online";
-
-                StringBuilder msg = new StringBuilder();
-                msg.append("Flight: ").append(flightNum)
-                   .append("\nArrived at: ").append(arrivalTime)
-                   .append("\nPurchase Type: ").append(purchase);
-
-                if (p.isInPerson() && p.getTicketCompletionMinute() > 0) {
-                    String ticketTime = simStart.plusMinutes(p.getTicketCompletionMinute())
-                                                .format(DateTimeFormatter.ofPattern("HH:mm"));
-                    msg.append("\nTicketed at: ").append(ticketTime);
-                }
-                if (p.getCheckpointEntryMinute() > 0) {
-                    String ckptEntry = simStart.plusMinutes(p.getCheckpointEntryMinute())
-                                               .format(DateTimeFormatter.ofPattern("HH:mm"));
-                    msg.append("\nCheckpoint Entry: ").append(ckptEntry);
-                }
-                if (p.getCheckpointCompletionMinute() > 0) {
-                    String ckptDone = simStart.plusMinutes(p.getCheckpointCompletionMinute())
-                                              .format(DateTimeFormatter.ofPattern("HH:mm"));
-                    msg.append("\nCheckpoint Completion: ").append(ckptDone);
-                }
+        Passenger p = passengerAt(e.getPoint());
+        if (p == null || p.getFlight() == null) return;
+
+        JOptionPane.showMessageDialog(
+            (Component)e.getComponent(),
+            passengerInfo(engine, p),
+            "Passenger Info",
+            JOptionPane.INFORMATION_MESSAGE
+        );
+    }
 
-                JOptionPane.showMessageDialog(
-                    (Component)e.getComponent(),
-                    msg.toString(),
-                    "Passenger Info",
-                    JOptionPane.INFORMATION_MESSAGE
-                );
-                return;
-            }
+    /** Passenger drawn at pt in the last paint, or null. */
+    public Passenger passengerAt(Point pt) {
+        return passengerAt(hits, clickableAreas, clickablePassengers, pt);
+    }
+
+    /** Hover text for the passenger at pt, or null. */
+    public String tooltipAt(Point pt) {
+        Passenger p = passengerAt(pt);
+        return (p == null) ? null : tooltipFor(engine, p);
+    }
+
+    /** Hit-tests a renderer's clickable lists through index (synced to them first). */
+    public static Passenger passengerAt(HitGrid index, List<Rectangle> areas, List<Passenger> passengers, Point pt) {
+        index.syncTo(areas);
+        int i = index.hitTest(pt.x, pt.y);
+        return (i >= 0 && i < passengers.size()) ? passengers.get(i) : null;
+    }
+
+    /** The info shown when a passenger is clicked. */
+    public static String passengerInfo(SimulationEngine engine, Passenger p) {
+        LocalTime simStart = p.getFlight()
+                               .getDepartureTime()
+                               .minusMinutes(engine.getArrivalSpan());
+        String flightNum = p.getFlight().getFlightNumber();
+        String arrivalTime = simStart.plusMinutes(p.getArrivalMinute())
+                                     .format(DateTimeFormatter.ofPattern("HH:mm"));
+        String purchase = p.isInPerson() ? "In Person" : "Online";
+
+        StringBuilder msg = new StringBuilder();
+        msg.append("Flight: ").append(flightNum)
+           .append("\nArrived at: ").append(arrivalTime)
+           .append("\nPurchase Type: ").append(purchase);
+
+        if (p.isInPerson() && p.getTicketCompletionMinute() > 0) {
+            String ticketTime = simStart.plusMinutes(p.getTicketCompletionMinute())
+                                        .format(DateTimeFormatter.ofPattern("HH:mm"));
+            msg.append("\nTicketed at: ").append(ticketTime);
         }
+        if (p.getCheckpointEntryMinute() > 0) {
+            String ckptEntry = simStart.plusMinutes(p.getCheckpointEntryMinute())
+                                       .format(DateTimeFormatter.ofPattern("HH:mm"));
+            msg.append("\nCheckpoint Entry: ").append(ckptEntry);
+        }
+        if (p.getCheckpointCompletionMinute() > 0) {
+            String ckptDone = simStart.plusMinutes(p.getCheckpointCompletionMinute())
+                                      .format(DateTimeFormatter.ofPattern("HH:mm"));
+            msg.append("\nCheckpoint Completion: ").append(ckptDone);
+        }
+        return msg.toString();
+    }
+
+    /** {@link #passengerInfo} as tooltip HTML. */
+    public static String tooltipFor(SimulationEngine engine, Passenger p) {
+        if (p == null || p.getFlight() == null) return null;
+        return "<html>" + passengerInfo(engine, p).replace("\n", "<br>") + "</html>";
     }
 
     // ----------------------------------------------------------------
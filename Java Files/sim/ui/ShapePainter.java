@@ -13,6 +13,11 @@ import sim.model.Flight.ShapeType;
 public class ShapePainter {
     private ShapePainter() {}
 
+    /** Border width used by the queue / hold-room grids. */
+    public static final float DEFAULT_BORDER_WIDTH = 2.5f;
+
+    private static final BasicStroke DEFAULT_STROKE = new BasicStroke(DEFAULT_BORDER_WIDTH);
+
     /**
      * Draws a filled shape with a thicker colored border.
      *
@@ -25,6 +30,34 @@ public class ShapePainter {
                                   int x, int y,
                                   int w, int h,
                                   Color borderColor) {
+        paintShape(g, type, x, y, w, h, borderColor, DEFAULT_BORDER_WIDTH);
+    }
+
+    /**
+     * Same, with the border width given. Drawn as a {@link SpriteAtlas} blit; for many shapes in a row
+     * use one {@link SpriteAtlas.Batch} instead.
+     */
+    public static void paintShape(Graphics g,
+                                  ShapeType type,
+                                  int x, int y,
+                                  int w, int h,
+                                  Color borderColor,
+                                  float borderWidth) {
+        SpriteAtlas.Batch batch = SpriteAtlas.shared().begin((Graphics2D) g);
+        try {
+            batch.paint(type, g.getColor(), borderColor, borderWidth, x, y, w, h);
+        } finally {
+            batch.end();
+        }
+    }
+
+    /** The geometry itself (fill + border), drawn as vectors; what sprites are rasterized from. */
+    static void paintVector(Graphics g,
+                            ShapeType type,
+                            int x, int y,
+                            int w, int h,
+                            Color borderColor,
+                            float borderWidth) {
         Graphics2D g2 = (Graphics2D) g;
         Color originalColor = g2.getColor();
         java.awt.Stroke originalStroke = g2.getStroke();
@@ -32,6 +65,7 @@ public class ShapePainter {
         // =========================
         // Fill
         // =========================
+        if (type == null) type = ShapeType.CIRCLE;
         switch (type) {
             case CIRCLE:
                 g2.fillOval(x, y, w, h);
@@ -97,7 +131,7 @@ public class ShapePainter {
         // Border
         // =========================
         g2.setColor(borderColor);
-        g2.setStroke(new BasicStroke(2.5f));
+        g2.setStroke(borderWidth == DEFAULT_BORDER_WIDTH ? DEFAULT_STROKE : new BasicStroke(borderWidth));
 
         switch (type) {
             case CIRCLE:
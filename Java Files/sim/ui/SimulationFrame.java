@@ -3,6 +3,7 @@ package sim.ui;
 import sim.floorplan.model.FloorplanProject;
 import sim.floorplan.ui.FloorplanSimulationPanel;
 import sim.floorplan.sim.FloorplanTravelTimeProvider;   // ✅ best-effort update
+import sim.floorplan.sim.OccupancyHeatmap;
 import sim.model.Flight;
 import sim.model.Passenger;
 import sim.service.SimulationEngine;
@@ -10,6 +11,8 @@ import sim.service.SimulationEngine;
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -228,6 +231,14 @@ public class SimulationFrame extends JFrame {
     }
 
     public SimulationFrame(SimulationEngine engine, FloorplanProject floorplanProjectCopy) {
+        this(engine, floorplanProjectCopy, null);
+    }
+
+    /**
+     * heatmap: the occupancy accumulator of earlier runs on this floorplan (may be null); this run is
+     * averaged in as the next replication. Keep {@link #getOccupancyHeatmap()} for the run after.
+     */
+    public SimulationFrame(SimulationEngine engine, FloorplanProject floorplanProjectCopy, OccupancyHeatmap heatmap) {
         super(floorplanProjectCopy != null ? "Simulation View (Floorplan)" : "Simulation View");
         this.engineRef = engine;
 
@@ -316,6 +327,7 @@ public class SimulationFrame extends JFrame {
 
         if (floorplanProjectCopy != null && floorplanProjectCopy.getFloorplanImage() != null) {
             floorplanPanel = new FloorplanSimulationPanel(floorplanProjectCopy, engine);
+            floorplanPanel.setOccupancyHeatmap(heatmap);
 
             JPanel fpWrap = new JPanel(new BorderLayout());
 
@@ -338,6 +350,16 @@ public class SimulationFrame extends JFrame {
             applyWalkBtn.addActionListener(e -> applyWalkSpeedBestEffort(walkSpeedSpinner));
             fpBar.add(applyWalkBtn);
 
+            // ✅ occupancy heatmap (accumulates from when it's first shown, averaged with later runs; exported on demand)
+            fpBar.addSeparator();
+            JToggleButton heatmapBtn = new JToggleButton("Heatmap");
+            heatmapBtn.addActionListener(e -> floorplanPanel.setHeatmapVisible(heatmapBtn.isSelected()));
+            fpBar.add(heatmapBtn);
+
+            JButton exportHeatmapBtn = new JButton("Export Heatmap…");
+            exportHeatmapBtn.addActionListener(e -> exportHeatmap());
+            fpBar.add(exportHeatmapBtn);
+
             fpWrap.add(fpBar, BorderLayout.NORTH);
             fpWrap.add(floorplanPanel, BorderLayout.CENTER);
 
@@ -463,7 +485,7 @@ public class SimulationFrame extends JFrame {
             timeLabel.setText(now.format(TIME_FMT));
 
             split.repaint();
-            if (floorplanPanel != null) floorplanPanel.repaint();
+            if (floorplanPanel != null) floorplanPanel.engineAdvanced();
 
             int maxComputed = engine.getMaxComputedInterval();
 
@@ -655,6 +677,33 @@ public class SimulationFrame extends JFrame {
         setLocationRelativeTo(null);
     }
 
+    /** The occupancy accumulator this run feeds (null without a floorplan tab). */
+    public OccupancyHeatmap getOccupancyHeatmap() {
+        return (floorplanPanel == null) ? null : floorplanPanel.getOccupancyHeatmap();
+    }
+
+    private void exportHeatmap() {
+        if (floorplanPanel == null) return;
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export Occupancy Heatmap");
+        chooser.setSelectedFile(new File("occupancy-heatmap.png"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        File file = chooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith(".png")) {
+            file = new File(file.getParentFile(), file.getName() + ".png");
+        }
+
+        try {
+            floorplanPanel.exportHeatmapPng(file);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this,
+                    "Heatmap export failed:\n" + ex.getMessage(),
+                    "Export Heatmap", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     /**
      * ✅ Best-effort walk speed update:
      * 1) If FloorplanSimulationPanel supports setWalkSpeedMps(double), call it.
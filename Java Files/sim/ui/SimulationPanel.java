@@ -39,6 +39,7 @@ public class SimulationPanel extends JPanel {
     // click-to-inspect support
     private final List<Rectangle> clickableAreas = new ArrayList<>();
     private final List<Passenger> clickablePassengers = new ArrayList<>();
+    private final HitGrid hits = new HitGrid();
 
     // Drag state
     private boolean dragging = false;
@@ -67,6 +68,13 @@ public class SimulationPanel extends JPanel {
         };
         addMouseListener(ma);
         addMouseMotionListener(ma);
+        ToolTipManager.sharedInstance().registerComponent(this);
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        Passenger p = ScrollMouseHandler.passengerAt(hits, clickableAreas, clickablePassengers, e.getPoint());
+        return (p == null) ? null : ScrollMouseHandler.tooltipFor(engine, p);
     }
 
     // ==========================================================
@@ -237,31 +245,25 @@ public class SimulationPanel extends JPanel {
     }
 
     private void handleClick(MouseEvent e) {
-        Point pt = e.getPoint();
-        for (int i = 0; i < clickableAreas.size(); i++) {
-            if (clickableAreas.get(i).contains(pt)) {
-                Passenger p = clickablePassengers.get(i);
-                if (p == null || p.getFlight() == null) return;
+        Passenger p = ScrollMouseHandler.passengerAt(hits, clickableAreas, clickablePassengers, e.getPoint());
+        if (p == null || p.getFlight() == null) return;
 
-                LocalTime arrivalTime = null;
+        LocalTime arrivalTime = null;
 
-                LocalTime gs = tryGetGlobalStart(engine);
-                if (gs != null && p.getArrivalMinute() >= 0) {
-                    arrivalTime = gs.plusMinutes(p.getArrivalMinute());
-                }
+        LocalTime gs = tryGetGlobalStart(engine);
+        if (gs != null && p.getArrivalMinute() >= 0) {
+            arrivalTime = gs.plusMinutes(p.getArrivalMinute());
+        }
 
-                if (arrivalTime == null) {
-                    LocalTime start = p.getFlight().getDepartureTime().minusMinutes(engine.getArrivalSpan());
-                    arrivalTime = start.plusMinutes(p.getArrivalMinute());
-                }
+        if (arrivalTime == null) {
+            LocalTime start = p.getFlight().getDepartureTime().minusMinutes(engine.getArrivalSpan());
+            arrivalTime = start.plusMinutes(p.getArrivalMinute());
+        }
 
-                String msg = "Flight: " + p.getFlight().getFlightNumber()
-                        + "\nArrived: " + arrivalTime.format(TIME_FMT);
+        String msg = "Flight: " + p.getFlight().getFlightNumber()
+                + "\nArrived: " + arrivalTime.format(TIME_FMT);
 
-                JOptionPane.showMessageDialog(this, msg, "Passenger Info", JOptionPane.INFORMATION_MESSAGE);
-                return;
-            }
-        }
+        JOptionPane.showMessageDialog(this, msg, "Passenger Info", JOptionPane.INFORMATION_MESSAGE);
     }
 
     private static LocalTime tryGetGlobalStart(SimulationEngine engine) {
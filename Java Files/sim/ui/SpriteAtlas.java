@@ -0,0 +1,354 @@
+package sim.ui;
+
+import sim.model.Flight.ShapeType;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ✅ Pre-rendered passenger glyphs, blitted with drawImage instead of filling polygons per passenger.
+ *
+ * Sprites are keyed by (shape, fill, border, border width, device size, antialiasing), rasterized once
+ * with {@link ShapePainter}'s geometry into packed pages, and drawn from a VolatileImage copy of each page
+ * (the BufferedImage master re-fills it whenever the accelerated copy is lost).
+ *
+ * EDT only.
+ */
+public final class SpriteAtlas {
+
+    /** Sprites larger than this (device px) are drawn as vectors instead. */
+    public static final int MAX_SPRITE_PX = 64;
+
+    private static final int PAGE_PX = 512;
+    private static final int MAX_PAGES = 16;       // 16 MB of ARGB; flushed and rebuilt past this
+    private static final int MAX_STYLES = 256;
+
+    private static final SpriteAtlas SHARED = new SpriteAtlas();
+
+    public static SpriteAtlas shared() { return SHARED; }
+
+    // ---------- styles (fill, border, quarter-px stroke, aa) ----------
+
+    private int[] styleFill = new int[16];
+    private int[] styleBorder = new int[16];
+    private int[] styleStrokeQ = new int[16];
+    private boolean[] styleAa = new boolean[16];
+    private int styleCount = 0;
+
+    // ---------- sprites ----------
+
+    private static final class Sprite {
+        final Page page;
+        final int x, y, w, h;   // cell in page, padding included
+        final int pad;
+
+        Sprite(Page page, int x, int y, int w, int h, int pad) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.pad = pad;
+        }
+    }
+
+    private static final class Page {
+        final BufferedImage master = new BufferedImage(PAGE_PX, PAGE_PX, BufferedImage.TYPE_INT_ARGB_PRE);
+        VolatileImage accel;
+        boolean accelFailed = false;
+        boolean dirty = true;        // master has sprites the accelerated copy lacks
+        long validatedFor = -1;
+
+        int shelfX = 0, shelfY = 0, shelfH = 0;
+    }
+
+    private final List<Page> pages = new ArrayList<>();
+
+    // open-addressing long -> sprite (keys stored +1 so 0 means empty)
+    private long[] keys = new long[1024];
+    private Sprite[] vals = new Sprite[1024];
+    private int size = 0;
+
+    private long batchSerial = 0;
+
+    private SpriteAtlas() {}
+
+    /** Starts drawing glyphs on g; call {@link Batch#end()} when done (g's transform is restored there). */
+    public Batch begin(Graphics2D g) {
+        return new Batch(g);
+    }
+
+    /** Drops every sprite (they are rebuilt on demand; styles are kept). */
+    public void flush() {
+        for (Page p : pages) {
+            if (p.accel != null) p.accel.flush();
+        }
+        pages.clear();
+        Arrays.fill(keys, 0L);
+        Arrays.fill(vals, null);
+        size = 0;
+    }
+
+    // =========================
+    // Batch
+    // =========================
+
+    /**
+     * Draws glyphs in device space: begin() swaps g to an identity transform when it only
+     * translates/scales, so every blit lands 1:1 on device pixels.
+     */
+    public final class Batch {
+        private final Graphics2D g;
+        private final AffineTransform saved;
+        private final boolean spritesOk;
+        private final double sx, sy, tx, ty;
+        private final boolean aa;
+        private final long serial = ++batchSerial;
+        private final GraphicsConfiguration gc;
+
+        // last style looked up (callers draw runs of the same colours)
+        private Color lastFill, lastBorder;
+        private float lastBorderWidth = Float.NaN;
+        private int lastStyle = -1;
+
+        private Batch(Graphics2D g) {
+            this.g = g;
+            this.saved = g.getTransform();
+            this.aa = RenderingHints.VALUE_ANTIALIAS_ON.equals(g.getRenderingHint(RenderingHints.KEY_ANTIALIASING));
+            this.gc = g.getDeviceConfiguration();
+
+            int t = saved.getType() & ~(AffineTransform.TYPE_TRANSLATION
+                    | AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_SCALE);
+            boolean ok = t == 0 && saved.getScaleX() > 0 && saved.getScaleY() > 0;
+
+            this.sx = saved.getScaleX();
+            this.sy = saved.getScaleY();
+            this.tx = saved.getTranslateX();
+            this.ty = saved.getTranslateY();
+            this.spritesOk = ok;
+
+            if (ok && !saved.isIdentity()) g.setTransform(new AffineTransform());
+        }
+
+        /** Fills type in the box (x, y, w, h) (user space) with fill, outlined with border. */
+        public void paint(ShapeType type, Color fill, Color border, float borderWidth, int x, int y, int w, int h) {
+            if (type == null) type = ShapeType.CIRCLE;
+
+            if (spritesOk) {
+                int dw = (int) Math.round(w * sx);
+                int dh = (int) Math.round(h * sy);
+                if (dw >= 1 && dh >= 1 && dw <= MAX_SPRITE_PX && dh <= MAX_SPRITE_PX) {
+                    int style = styleFor(fill, border, borderWidth);
+                    if (style >= 0) {
+                        Sprite s = spriteFor(style, type, dw, dh);
+                        if (s != null) {
+                            int dx = (int) Math.round(x * sx + tx) - s.pad;
+                            int dy = (int) Math.round(y * sy + ty) - s.pad;
+                            g.drawImage(pageImage(s.page), dx, dy, dx + s.w, dy + s.h,
+                                    s.x, s.y, s.x + s.w, s.y + s.h, null);
+                            return;
+                        }
+                    }
+                }
+            }
+            paintVector(type, fill, border, borderWidth, x, y, w, h);
+        }
+
+        /** Restores g's transform and notes pages whose accelerated copy was lost mid-batch. */
+        public void end() {
+            if (spritesOk && !saved.isIdentity()) g.setTransform(saved);
+            for (Page p : pages) {
+                if (p.validatedFor == serial && p.accel != null && p.accel.contentsLost()) p.dirty = true;
+            }
+        }
+
+        private void paintVector(ShapeType type, Color fill, Color border, float borderWidth,
+                                 int x, int y, int w, int h) {
+            boolean swapped = spritesOk && !saved.isIdentity();
+            if (swapped) g.setTransform(saved);
+            Color c = g.getColor();
+            g.setColor(fill);
+            ShapePainter.paintVector(g, type, x, y, w, h, border, borderWidth);
+            g.setColor(c);
+            if (swapped) g.setTransform(new AffineTransform());
+        }
+
+        private int styleFor(Color fill, Color border, float borderWidth) {
+            if (fill == lastFill && border == lastBorder && borderWidth == lastBorderWidth) return lastStyle;
+
+            int strokeQ = (int) Math.round(borderWidth * Math.min(sx, sy) * 4.0);
+            int style = findStyle(fill.getRGB(), border.getRGB(), strokeQ, aa);
+
+            lastFill = fill;
+            lastBorder = border;
+            lastBorderWidth = borderWidth;
+            lastStyle = style;
+            return style;
+        }
+
+        /** The accelerated page for this batch's device, re-filled from the master when lost or stale. */
+        private java.awt.Image pageImage(Page p) {
+            if (p.accelFailed || gc == null) return p.master;
+            if (p.validatedFor == serial && !p.dirty) return p.accel;
+
+            try {
+                int v = (p.accel == null) ? VolatileImage.IMAGE_INCOMPATIBLE : p.accel.validate(gc);
+                if (v == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    if (p.accel != null) p.accel.flush();
+                    p.accel = gc.createCompatibleVolatileImage(PAGE_PX, PAGE_PX, Transparency.TRANSLUCENT);
+                    p.dirty = true;
+                } else if (v == VolatileImage.IMAGE_RESTORED) {
+                    p.dirty = true;
+                }
+                if (p.dirty) {
+                    Graphics2D vg = p.accel.createGraphics();
+                    try {
+                        vg.setComposite(AlphaComposite.Src);
+                        vg.drawImage(p.master, 0, 0, null);
+                    } finally {
+                        vg.dispose();
+                    }
+                    p.dirty = false;
+                }
+                p.validatedFor = serial;
+                return p.accel;
+            } catch (RuntimeException ex) {
+                // no accelerated surface here (headless / printing): blit the master instead
+                p.accelFailed = true;
+                return p.master;
+            }
+        }
+    }
+
+    // =========================
+    // Styles + sprite cache
+    // =========================
+
+    private int findStyle(int fill, int border, int strokeQ, boolean aa) {
+        for (int i = 0; i < styleCount; i++) {
+            if (styleFill[i] == fill && styleBorder[i] == border && styleStrokeQ[i] == strokeQ && styleAa[i] == aa) {
+                return i;
+            }
+        }
+        if (styleCount == MAX_STYLES) return -1;
+
+        if (styleCount == styleFill.length) {
+            int cap = styleCount * 2;
+            styleFill = Arrays.copyOf(styleFill, cap);
+            styleBorder = Arrays.copyOf(styleBorder, cap);
+            styleStrokeQ = Arrays.copyOf(styleStrokeQ, cap);
+            styleAa = Arrays.copyOf(styleAa, cap);
+        }
+        styleFill[styleCount] = fill;
+        styleBorder[styleCount] = border;
+        styleStrokeQ[styleCount] = strokeQ;
+        styleAa[styleCount] = aa;
+        return styleCount++;
+    }
+
+    private static long keyOf(int style, ShapeType type, int dw, int dh) {
+        return (((long) style << 24) | ((long) type.ordinal() << 16) | ((long) dw << 8) | dh) + 1;
+    }
+
+    private Sprite spriteFor(int style, ShapeType type, int dw, int dh) {
+        long key = keyOf(style, type, dw, dh);
+        int mask = keys.length - 1;
+        int i = (int) (mix(key) & mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) return vals[i];
+            i = (i + 1) & mask;
+        }
+
+        Sprite s = rasterize(style, type, dw, dh);
+        if (s != null) put(key, s);
+        return s;
+    }
+
+    private void put(long key, Sprite s) {
+        if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+        int mask = keys.length - 1;
+        int i = (int) (mix(key) & mask);
+        while (keys[i] != 0) i = (i + 1) & mask;
+        keys[i] = key;
+        vals[i] = s;
+        size++;
+    }
+
+    private void rehash(int cap) {
+        long[] ok = keys;
+        Sprite[] ov = vals;
+        keys = new long[cap];
+        vals = new Sprite[cap];
+        size = 0;
+        for (int i = 0; i < ok.length; i++) {
+            if (ok[i] != 0) put(ok[i], ov[i]);
+        }
+    }
+
+    private static long mix(long k) {
+        k *= 0x9E3779B97F4A7C15L;
+        return k ^ (k >>> 29);
+    }
+
+    // =========================
+    // Rasterizing
+    // =========================
+
+    private Sprite rasterize(int style, ShapeType type, int dw, int dh) {
+        float stroke = styleStrokeQ[style] / 4f;
+        int pad = (int) Math.ceil(stroke / 2f) + 1;
+        int cw = dw + 2 * pad;
+        int ch = dh + 2 * pad;
+
+        Page page = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+        int[] at = (page == null) ? null : place(page, cw, ch);
+        if (at == null) {
+            if (pages.size() == MAX_PAGES) {
+                flush();
+                return null; // caller draws this one as a vector; the atlas refills from the next frame
+            }
+            page = new Page();
+            pages.add(page);
+            at = place(page, cw, ch);
+            if (at == null) return null;
+        }
+
+        Graphics2D sg = page.master.createGraphics();
+        try {
+            sg.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    styleAa[style] ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            sg.translate(at[0] + pad, at[1] + pad);
+            sg.setColor(new Color(styleFill[style], true));
+            ShapePainter.paintVector(sg, type, 0, 0, dw, dh, new Color(styleBorder[style], true), stroke);
+        } finally {
+            sg.dispose();
+        }
+        page.dirty = true;
+        return new Sprite(page, at[0], at[1], cw, ch, pad);
+    }
+
+    /** Shelf packing: left to right, new shelf when the row is full. Null when the page is full. */
+    private static int[] place(Page p, int w, int h) {
+        if (p.shelfX + w > PAGE_PX) {
+            p.shelfY += p.shelfH;
+            p.shelfX = 0;
+            p.shelfH = 0;
+        }
+        if (p.shelfY + h > PAGE_PX) return null;
+
+        int[] at = { p.shelfX, p.shelfY };
+        p.shelfX += w;
+        p.shelfH = Math.max(p.shelfH, h);
+        return at;
+    }
+}